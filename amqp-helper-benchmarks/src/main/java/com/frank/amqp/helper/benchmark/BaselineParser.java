@@ -1,53 +1,52 @@
-package com.frank.amqp.helper.parser;
+package com.frank.amqp.helper.benchmark;
 
-import org.springframework.amqp.core.DirectExchange;
-import org.springframework.amqp.core.Exchange;
-import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
 
 /**
- * 基于的amqp的通用化MQ配置解析器
- * 目前交换机类型只支持fanout
+ * 单遍扫描之前基于String#split的CommonMqParser副本,只作为ParserBenchmark的对照
+ * 解析逻辑保持原样,交换机类型补充了topic、headers,使其能够解析Topologies生成的配置
  */
-public class CommonMqParser
+final class BaselineParser
 {
-    private static Set<String> supportExchangeType = new HashSet<>(2);
+    private static Set<String> supportExchangeType = new HashSet<>(4);
 
     static
     {
         supportExchangeType.add("fanout");
         supportExchangeType.add("direct");
+        supportExchangeType.add("topic");
+        supportExchangeType.add("headers");
     }
 
-    public static boolean isExchangeTypeValid(String exchangeType)
+    private BaselineParser()
     {
-        return supportExchangeType.contains(exchangeType);
     }
 
-    public static Exchange initExchange(String exchangeName,String exchangeType)
+    /**
+     * 按原CommonMqManager的流程解析完整配置:先解析队列定义,再校验交换机名称
+     *
+     * @return 合法交换机的队列定义
+     */
+    static Map<String,Map<String,List<String>>> parse(Map<String,String> config)
     {
-        switch (exchangeType)
-        {
-            case "fanout":
-                return new FanoutExchange(exchangeName);
-            case "direct":
-                return new DirectExchange(exchangeName);
-            default:
-                return null;
-        }
+        Map<String,Map<String,List<String>>> parsedBindDefineMap = new HashMap<>();
+        config.forEach((exchangeName, queueDefines) -> parsedBindDefineMap
+                .put(exchangeName, parserQueueDefines(queueDefines)));
+        parsedBindDefineMap.entrySet().removeIf(
+                entry -> !isExchangeConfigValid(entry.getKey(), entry.getValue()));
+        return parsedBindDefineMap;
     }
 
-    public static boolean isExchangeConfigValid(String exchangeName,
+    static boolean isExchangeConfigValid(String exchangeName,
             Map<String,List<String>> queueDefineMap)
     {
         String[] exchangeMetaNames = exchangeName.split("\\.");
 
         if (exchangeMetaNames.length < 3
                 || !"exchange".equals(exchangeMetaNames[0])
-                || !CommonMqParser
-                .isExchangeTypeValid(exchangeMetaNames[1])
+                || !supportExchangeType.contains(exchangeMetaNames[1])
                 || null == queueDefineMap
                 || queueDefineMap.isEmpty())
         {
@@ -56,8 +55,7 @@ public class CommonMqParser
         return true;
     }
 
-    public static Map<String,List<String>> parserQueueDefines(
-            String queueDefines)
+    static Map<String,List<String>> parserQueueDefines(String queueDefines)
     {
         if (StringUtils.isEmpty(queueDefines))
         {
@@ -95,13 +93,8 @@ public class CommonMqParser
                         final String queueName = queueDefineMeta[0];
                         queueDefineMap.put(queueName,null);
                     }
-                    else
-                    {
-                        return;
-                    }
                 }
                 );
         return queueDefineMap;
     }
-
 }
@@ -0,0 +1,94 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.config.ICommonMqConfig;
+import com.frank.amqp.helper.spi.CustomMqAutoConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以queueCount个队列启动Spring容器的耗时,分别使用common.mq.inject.mode的两种注册方式:
+ * assistant在CommonMqManager初始化时注册bean,此时容器已开始创建bean,每次注册都会清理元数据缓存;
+ * registrar在bean定义注册阶段提前完成注册。
+ * assistant模式下启动后才注册的bean不会被提前实例化,启动后按RabbitAdmin初始化时的方式按类型获取全部Declarable,
+ * 两种模式都以全部bean实例化完成为终点。
+ * 只引入CustomMqAutoConfiguration,容器中没有ConnectionFactory,不会连接broker
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class BootBenchmark
+{
+    @Param({ "assistant", "registrar" })
+    public String injectMode;
+
+    @Param({ "10000" })
+    public int queueCount;
+
+    private Map<String, String> config;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup
+    public void setup()
+    {
+        config = Topologies.config(queueCount);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeContext()
+    {
+        if (null != context)
+        {
+            context.close();
+            context = null;
+        }
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext boot()
+    {
+        //ICommonMqConfig在registrar模式下会在后置处理阶段被提前获取,直接以实例注册
+        final ICommonMqConfig commonMqConfig = () -> config;
+        context = new SpringApplicationBuilder(BootConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .initializers(applicationContext -> ((GenericApplicationContext) applicationContext)
+                        .registerBean(ICommonMqConfig.class, () -> commonMqConfig))
+                .properties("common.mq.inject.mode=" + injectMode)
+                .run();
+        context.getBeansOfType(Declarable.class);
+        return context;
+    }
+
+    @Configuration
+    @ImportAutoConfiguration(CustomMqAutoConfiguration.class)
+    public static class BootConfiguration
+    {
+    }
+}
@@ -0,0 +1,151 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.declare.CommonMqBulkDeclarer;
+import com.frank.amqp.helper.listener.CommonMqBatch;
+import com.frank.amqp.helper.listener.CommonMqListenerContainerRegistry;
+import com.frank.amqp.helper.listener.ICommonMqBatchListener;
+import com.frank.amqp.helper.listener.ICommonMqListener;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 监听容器的消费吞吐:CommonMqListenerContainerRegistry创建的容器从broker接收、
+ * 经统计包装后回调监听器并确认,每批BATCH条消息全部消费后计入结果;
+ * batchSize大于0时使用ICommonMqBatchListener,每batchSize条回调一次并以一次multiple确认
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsumeBenchmark
+{
+    private static final int BATCH = 1000;
+
+    private static final String EXCHANGE = "exchange.direct.bench.consume";
+
+    private static final String QUEUE = "bench.consume.queue";
+
+    private static final String ROUTING_KEY = "bench.consume";
+
+    @Param({ "1", "250" })
+    public int prefetch;
+
+    @Param({ "0", "100" })
+    public int batchSize;
+
+    private final AtomicLong consumed = new AtomicLong();
+
+    private CommonMqListenerContainerRegistry registry;
+
+    private Channel channel;
+
+    private AMQP.BasicProperties properties;
+
+    private byte[] body;
+
+    private long published;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        InProcessBroker broker = new InProcessBroker();
+        CommonMqManager manager = Topologies.manager(Collections
+                .singletonMap(EXCHANGE, QUEUE + ":" + ROUTING_KEY));
+        new CommonMqBulkDeclarer(broker, manager, 500)
+                .declare(broker.createConnection(), manager.getDeclarables());
+
+        CommonMqProperties.Listener listenerProperties = new CommonMqProperties.Listener();
+        listenerProperties.getDefaults().setPrefetch(prefetch);
+        listenerProperties.getDefaults().setBatchSize(batchSize);
+        listenerProperties.setScaleIntervalMillis(0);
+        registry = CommonMqListenerContainerRegistry.builder(broker, manager,
+                Collections.singletonList(batchSize > 0
+                        ? new CountingBatchListener()
+                        : new CountingListener()),
+                listenerProperties).build();
+        registry.afterPropertiesSet();
+        registry.start();
+
+        channel = broker.createConnection().createChannel(false);
+        properties = new AMQP.BasicProperties.Builder()
+                .contentType("application/octet-stream").build();
+        body = new byte[128];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        registry.stop();
+        registry.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long consume() throws Exception
+    {
+        for (int i = 0; i < BATCH; i++)
+        {
+            channel.basicPublish(EXCHANGE, ROUTING_KEY, properties, body);
+        }
+        published += BATCH;
+        while (consumed.get() < published)
+        {
+            LockSupport.parkNanos(1000);
+        }
+        return published;
+    }
+
+    private class CountingListener implements ICommonMqListener
+    {
+        @Override
+        public String getQueueName()
+        {
+            return QUEUE;
+        }
+
+        @Override
+        public void onMessage(Message message)
+        {
+            consumed.incrementAndGet();
+        }
+    }
+
+    private class CountingBatchListener implements ICommonMqBatchListener
+    {
+        @Override
+        public String getQueueName()
+        {
+            return QUEUE;
+        }
+
+        @Override
+        public void onBatch(CommonMqBatch batch)
+        {
+            consumed.addAndGet(batch.size());
+        }
+    }
+}
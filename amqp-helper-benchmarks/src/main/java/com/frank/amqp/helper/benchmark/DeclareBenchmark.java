@@ -0,0 +1,76 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.declare.AmqpAdminDeclarer;
+import com.frank.amqp.helper.declare.BulkDeclareReport;
+import com.frank.amqp.helper.declare.CommonMqBulkDeclarer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将管理器生成的全部声明项声明到broker的耗时,比较RabbitAdmin逐条声明与bulk模式
+ * 进程内broker没有网络往返,两者的差异主要来自客户端侧的开销
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class DeclareBenchmark
+{
+    @Param({ "100", "10000" })
+    public int queueCount;
+
+    private InProcessBroker broker;
+
+    private CommonMqManager manager;
+
+    private CommonMqBulkDeclarer bulkDeclarer;
+
+    private RabbitAdmin rabbitAdmin;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        broker = new InProcessBroker();
+        manager = Topologies.manager(Topologies.config(queueCount));
+        bulkDeclarer = new CommonMqBulkDeclarer(broker, manager, 500);
+        rabbitAdmin = new RabbitAdmin(broker);
+        rabbitAdmin.setAutoStartup(false);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetBroker()
+    {
+        broker.reset();
+    }
+
+    @Benchmark
+    public BulkDeclareReport bulk()
+    {
+        return bulkDeclarer.declare(broker.createConnection(),
+                manager.getDeclarables());
+    }
+
+    @Benchmark
+    public long rabbitAdmin()
+    {
+        AmqpAdminDeclarer.declare(rabbitAdmin, manager.getDeclarables());
+        return broker.getDeclareCount();
+    }
+}
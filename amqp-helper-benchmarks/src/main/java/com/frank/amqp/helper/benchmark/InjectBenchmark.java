@@ -0,0 +1,68 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.inject.DynamicInjectAssistant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Queue;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DynamicInjectAssistant#inject向空的bean工厂注册beanCount个队列bean的耗时
+ * 每次调用前重建bean工厂,避免重复注册变为覆盖
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InjectBenchmark
+{
+    @Param({ "100", "1000" })
+    public int beanCount;
+
+    private Map<String, Queue> beans;
+
+    private DefaultListableBeanFactory beanFactory;
+
+    private DynamicInjectAssistant dynamicInjectAssistant;
+
+    @Setup
+    public void setup()
+    {
+        beans = new LinkedHashMap<>(beanCount * 4 / 3 + 1);
+        for (int i = 0; i < beanCount; i++)
+        {
+            String queueName = "bench.queue." + i;
+            beans.put(queueName, new Queue(queueName));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetBeanFactory()
+    {
+        beanFactory = new DefaultListableBeanFactory();
+        dynamicInjectAssistant = new DynamicInjectAssistant(beanFactory);
+    }
+
+    @Benchmark
+    public DefaultListableBeanFactory inject()
+    {
+        dynamicInjectAssistant.inject(beans, Queue.class);
+        return beanFactory;
+    }
+}
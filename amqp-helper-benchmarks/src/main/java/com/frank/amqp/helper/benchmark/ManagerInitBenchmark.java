@@ -0,0 +1,57 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.CommonMqManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommonMqManager完整初始化的耗时:解析、创建交换机/队列/绑定实例、构建路由索引与注册bean
+ * 初始化是一次性的启动开销,以单次执行时间度量
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class ManagerInitBenchmark
+{
+    @Param({ "100", "10000", "100000" })
+    public int queueCount;
+
+    private Map<String, String> config;
+
+    private DefaultListableBeanFactory beanFactory;
+
+    @Setup
+    public void setup()
+    {
+        config = Topologies.config(queueCount);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetBeanFactory()
+    {
+        beanFactory = new DefaultListableBeanFactory();
+    }
+
+    @Benchmark
+    public CommonMqManager init() throws Exception
+    {
+        return Topologies.manager(config, beanFactory);
+    }
+}
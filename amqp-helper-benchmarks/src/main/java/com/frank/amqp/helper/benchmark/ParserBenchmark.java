@@ -0,0 +1,74 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.parser.CommonMqParser;
+import com.frank.amqp.helper.parser.CommonMqTopologyScanner;
+import com.frank.amqp.helper.parser.model.MqTopology;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置解析的耗时,baseline前缀的方法为基于String#split的原解析器BaselineParser,作为对照
+ * parserQueueDefines:单个交换机的队列定义串解析;
+ * scan:完整配置解析为MqTopology,包括交换机类型识别与错误收集;
+ * baselineParse:原CommonMqManager的解析流程,先解析队列定义再校验交换机名称
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark
+{
+    @Param({ "100", "10000" })
+    public int queueCount;
+
+    private Map<String, String> config;
+
+    private String directQueueDefines;
+
+    @Setup
+    public void setup()
+    {
+        config = Topologies.config(queueCount);
+        directQueueDefines = Topologies.queueDefines("direct", 0, 0,
+                Topologies.QUEUES_PER_EXCHANGE);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> parserQueueDefines()
+    {
+        return CommonMqParser.parserQueueDefines(directQueueDefines);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> baselineParserQueueDefines()
+    {
+        return BaselineParser.parserQueueDefines(directQueueDefines);
+    }
+
+    @Benchmark
+    public MqTopology scan()
+    {
+        return CommonMqTopologyScanner.scan(config);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, List<String>>> baselineParse()
+    {
+        return BaselineParser.parse(config);
+    }
+}
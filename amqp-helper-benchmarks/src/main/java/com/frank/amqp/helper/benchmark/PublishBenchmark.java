@@ -0,0 +1,119 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.declare.CommonMqBulkDeclarer;
+import com.frank.amqp.helper.publisher.CommonMqPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommonMqPublisher的发送吞吐,包括路由校验、属性转换与publisher confirm的处理
+ * confirmEach:逐条等待确认;pipelined:每批BATCH条消息发送后统一等待确认;
+ * pipelinedConcurrent:THREADS个线程同时发送,比较stripes个发送通道下的多核扩展性。
+ * 目标交换机没有绑定队列,broker丢弃消息,结果只反映发送侧的开销
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PublishBenchmark
+{
+    private static final int BATCH = 1000;
+
+    private static final String EXCHANGE = "exchange.direct.bench.publish";
+
+    private static final String ROUTING_KEY = "bench.publish";
+
+    private static final int THREADS = 4;
+
+    @Param({ "128", "4096" })
+    public int payloadSize;
+
+    @Param({ "1", "4" })
+    public int stripes;
+
+    private CommonMqPublisher publisher;
+
+    private Message message;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        InProcessBroker broker = new InProcessBroker();
+        CommonMqManager manager = Topologies.manager(Collections
+                .singletonMap(EXCHANGE, "bench.publish.queue:" + ROUTING_KEY));
+        new CommonMqBulkDeclarer(broker, manager, 500)
+                .declare(broker.createConnection(), manager.getDeclarables());
+        broker.reset();
+        broker.createConnection().createChannel(false)
+                .exchangeDeclare(EXCHANGE, "direct");
+
+        publisher = CommonMqPublisher.builder(EXCHANGE,
+                Collections.nCopies(stripes, broker),
+                new SimpleMessageConverter())
+                .routingIndex(manager::getRoutingIndex)
+                .maxInFlight(BATCH * THREADS * stripes)
+                .metrics(manager.getMetrics().exchange(EXCHANGE, "direct"))
+                .build();
+        message = new Message(new byte[payloadSize], new MessageProperties());
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        publisher.close();
+    }
+
+    @Benchmark
+    public void confirmEach()
+    {
+        publisher.send(ROUTING_KEY, message).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pipelined()
+    {
+        sendBatch();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    @OperationsPerInvocation(BATCH)
+    public void pipelinedConcurrent()
+    {
+        sendBatch();
+    }
+
+    private void sendBatch()
+    {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++)
+        {
+            futures[i] = publisher.send(ROUTING_KEY, message);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
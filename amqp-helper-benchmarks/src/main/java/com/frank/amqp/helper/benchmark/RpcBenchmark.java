@@ -0,0 +1,135 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.declare.CommonMqBulkDeclarer;
+import com.frank.amqp.helper.listener.CommonMqListenerContainerRegistry;
+import com.frank.amqp.helper.rpc.CommonMqRpcClient;
+import com.frank.amqp.helper.rpc.ICommonMqRpcHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RPC往返耗时:RabbitTemplate.convertSendAndReceive每次调用声明临时应答队列并阻塞等待,
+ * CommonMqRpcClient经direct reply-to在同一channel上接收应答;
+ * pipelined一次发出BATCH个调用后等待全部返回,计入单次调用的平均耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RpcBenchmark
+{
+    private static final int BATCH = 1000;
+
+    private static final String EXCHANGE = "exchange.direct.bench.rpc";
+
+    private static final String QUEUE = "bench.rpc.queue";
+
+    private static final String ROUTING_KEY = "bench.rpc";
+
+    private CommonMqListenerContainerRegistry registry;
+
+    private RabbitTemplate template;
+
+    private CommonMqRpcClient client;
+
+    private byte[] request;
+
+    @SuppressWarnings("unchecked")
+    private final CompletableFuture<Object>[] calls = new CompletableFuture[BATCH];
+
+    @Setup
+    public void setup() throws Exception
+    {
+        InProcessBroker broker = new InProcessBroker();
+        CommonMqManager manager = Topologies.manager(Collections
+                .singletonMap(EXCHANGE, QUEUE + ":" + ROUTING_KEY));
+        new CommonMqBulkDeclarer(broker, manager, 500)
+                .declare(broker.createConnection(), manager.getDeclarables());
+
+        CommonMqProperties.Listener listenerProperties = new CommonMqProperties.Listener();
+        listenerProperties.setScaleIntervalMillis(0);
+        registry = CommonMqListenerContainerRegistry.builder(broker, manager,
+                Collections.singletonList(new EchoHandler()),
+                listenerProperties).build();
+        registry.afterPropertiesSet();
+        registry.start();
+
+        template = new RabbitTemplate(broker);
+        template.setUseTemporaryReplyQueues(true);
+        template.setReplyTimeout(5000);
+        client = new CommonMqRpcClient(EXCHANGE,
+                Collections.singleton(ROUTING_KEY), broker,
+                new MessageCodecRegistry(new SimpleMessageConverter()), null,
+                5000, BATCH * 2, 20);
+        request = new byte[128];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        client.close();
+        registry.stop();
+        registry.destroy();
+    }
+
+    @Benchmark
+    public Object templateSendAndReceive()
+    {
+        return template.convertSendAndReceive(EXCHANGE, ROUTING_KEY, request);
+    }
+
+    @Benchmark
+    public Object clientCall()
+    {
+        return client.call(ROUTING_KEY, request).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object clientPipelined()
+    {
+        for (int i = 0; i < BATCH; i++)
+        {
+            calls[i] = client.call(ROUTING_KEY, request);
+        }
+        return CompletableFuture.allOf(calls).join();
+    }
+
+    private static class EchoHandler implements ICommonMqRpcHandler
+    {
+        @Override
+        public String getQueueName()
+        {
+            return QUEUE;
+        }
+
+        @Override
+        public Object handle(Object request, Message message)
+        {
+            return request;
+        }
+    }
+}
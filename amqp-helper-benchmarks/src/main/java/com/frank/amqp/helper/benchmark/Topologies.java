@@ -0,0 +1,98 @@
+package com.frank.amqp.helper.benchmark;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.inject.DynamicInjectAssistant;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基准测试使用的拓扑配置,按固定规则生成,保证每次运行的输入一致
+ */
+public final class Topologies
+{
+    /**
+     * 单个交换机下的队列数
+     */
+    public static final int QUEUES_PER_EXCHANGE = 100;
+
+    private Topologies()
+    {
+    }
+
+    /**
+     * 生成包含queueCount个队列的配置,交换机依次为direct、topic、fanout、headers,
+     * 每个交换机下QUEUES_PER_EXCHANGE个队列,direct、topic、headers队列各绑定两个routingKey
+     */
+    public static Map<String, String> config(int queueCount)
+    {
+        String[] types = { "direct", "topic", "fanout", "headers" };
+        Map<String, String> config = new LinkedHashMap<>();
+        int exchangeIndex = 0;
+        for (int from = 0; from < queueCount; from += QUEUES_PER_EXCHANGE)
+        {
+            String type = types[exchangeIndex % types.length];
+            String exchangeName = "exchange." + type + ".bench" + exchangeIndex;
+            config.put(exchangeName, queueDefines(type, exchangeIndex, from,
+                    Math.min(from + QUEUES_PER_EXCHANGE, queueCount)));
+            exchangeIndex++;
+        }
+        return config;
+    }
+
+    /**
+     * 单个交换机的队列定义串
+     */
+    public static String queueDefines(String type, int exchangeIndex, int from,
+            int to)
+    {
+        StringBuilder defines = new StringBuilder((to - from) * 48);
+        for (int i = from; i < to; i++)
+        {
+            if (i > from)
+            {
+                defines.append(',');
+            }
+            defines.append("bench.queue.").append(i);
+            switch (type)
+            {
+                case "direct":
+                    defines.append(":bench.rk.").append(i).append("&bench.rk.all.")
+                            .append(exchangeIndex);
+                    break;
+                case "topic":
+                    defines.append(":bench.").append(i).append(".*&bench.#.")
+                            .append(exchangeIndex);
+                    break;
+                case "headers":
+                    defines.append(":queue=").append(i).append("&exchange=")
+                            .append(exchangeIndex);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return defines.toString();
+    }
+
+    /**
+     * 创建并初始化管理器,bean注册到独立的bean工厂中
+     */
+    public static CommonMqManager manager(Map<String, String> config)
+            throws Exception
+    {
+        return manager(config, new DefaultListableBeanFactory());
+    }
+
+    public static CommonMqManager manager(Map<String, String> config,
+            DefaultListableBeanFactory beanFactory) throws Exception
+    {
+        CommonMqManager manager = new CommonMqManager(() -> config,
+                new DynamicInjectAssistant(beanFactory),
+                new CommonMqProperties());
+        manager.afterPropertiesSet();
+        return manager;
+    }
+}
@@ -0,0 +1,696 @@
+package com.frank.amqp.helper;
+
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.config.DeclareMode;
+import com.frank.amqp.helper.config.ICommonMqConfig;
+import com.frank.amqp.helper.config.PrecompiledCommonMqConfig;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.declare.TopologyFingerprint;
+import com.frank.amqp.helper.inject.DynamicInjectAssistant;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.frank.amqp.helper.parser.CommonMqParser;
+import com.frank.amqp.helper.parser.CommonMqTopologyScanner;
+import com.frank.amqp.helper.parser.QueueArguments;
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.MqTopology;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import com.frank.amqp.helper.refresh.TopologyDiff;
+import com.frank.amqp.helper.retry.RetryTopology;
+import com.frank.amqp.helper.routing.RoutingIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.*;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 负责通用化的处理MQ配置与初始化,管理器会将配置信息合法的mq注册至容器,根据交换机名称前缀来实例话对应类型的交换机
+ * exchange.fanout.xxxxx.transpay.result
+ * [1]     [2]    [...]     [n]
+ * n >= 3
+ * [1]:确认是交换机名称
+ * [2]:获取交换机类型:fanout,direct,topic,headers
+ * 队列的名称解析规则通过此处解析出的交换机类型来进行解析
+ * <p>
+ * fanout交换机的队列命名规则:
+ * 单个队列的命名规则:
+ * queueName
+ * <p>
+ * direct交换机的队列命名规则:
+ * 单个队列的命名格式:
+ * queueName     :     routingKeyName1   &   routingKeyName2
+ * [1]        [2]         [3]         [4]        [5]         [...]
+ * [1]队列名
+ * [2]区分队列名与routingKey的分隔符
+ * [3]第一个需要建立绑定关系的routingKeyName
+ * [4]区分多个routingKey的分隔符
+ * [5]第二个需要建立绑定关系的routingKeyName
+ * <p>
+ * e.g: queue.loan:routing.key.risk&routing.key.admin
+ * <p>
+ * 队列名后可在括号内指定队列参数,参数简写见QueueArguments;
+ * 首个没有队列名的括号为交换机级别的默认参数,作用于该交换机下的全部队列
+ * e.g: (lazy,ttl=60000),queue.loan(quorum,max-length=100000,overflow=reject-publish):routing.key.risk
+ * <p>
+ * direct交换机的队列名后可用[N]声明分区队列,展开为N个队列queueName.i,分别以routingKey.i绑定,
+ * 发送时由PartitionedPublisher按分区key的一致性哈希选择分区
+ * e.g: queue.orders[16]:order.created
+ * <p>
+ * 队列参数中配置retry=1s/10s/60s时,为队列生成重试交换机、各梯度的重试队列与停放队列,命名规则见RetryTopology
+ * e.g: queue.loan(retry=1s/10s/60s):routing.key.risk
+ * <p>
+ * topic交换机的队列命名规则与direct一致,routingKey可使用*与#通配符
+ * e.g: queue.loan:loan.*.created&loan.#
+ * <p>
+ * headers交换机的队列命名规则与direct一致,routingKey位置为header条件key=value,
+ * 同一队列的全部条件合并为一个绑定,默认需全部匹配,可通过x-match=any改为任一匹配
+ * e.g: queue.loan:type=loan&region=cn&x-match=any
+ * <p>
+ * 如单个交换机下绑定多个queue，则用","分隔
+ * e.g:queueDefine1,queueDefine2,queueDefine3
+ * <p>
+ * 初始化后可通过reload重新读取配置,仅注册新增、移除删除的bean,未变化的实例保持不变;
+ * lazy声明模式下只解析拓扑,交换机在activate时才连同其队列、绑定关系一起注册;
+ * 通过common.mq.placement映射到连接分组的交换机,其队列、绑定关系只由所在分组的RabbitAdmin声明
+ *
+ * @author frank
+ */
+@Slf4j
+@Component
+public class CommonMqManager implements InitializingBean
+{
+    private static final String BIND_TO = "BindTo";
+
+    private static final String BIND_WITH = "With";
+
+    private ICommonMqConfig commonMqConfig;
+
+    private DynamicInjectAssistant dynamicInjectAssistant;
+
+    private CommonMqProperties commonMqProperties;
+
+    /**
+     * 经过解析的交换机与队列定义
+     */
+    private volatile MqTopology topology = MqTopology.empty();
+
+    /**
+     * 交换机实例与队列实例绑定映射
+     */
+    private volatile Map<Exchange, List<Queue>> instanceBindMap = Collections.emptyMap();
+
+    /**
+     * bean名称与交换机、队列、绑定关系实例的映射,按创建顺序排列
+     */
+    private volatile Map<String, Declarable> declarableBeans = Collections.emptyMap();
+
+    /**
+     * 根据绑定关系预编译的进程内路由索引
+     */
+    private volatile RoutingIndex routingIndex = RoutingIndex.empty();
+
+    /**
+     * 已创建并注册的交换机名称
+     */
+    private volatile Set<String> registeredExchanges = Collections.emptySet();
+
+    /**
+     * lazy模式下已被使用的交换机,只有这些交换机会被创建并注册
+     */
+    private final Set<String> activeExchanges = new HashSet<>();
+
+    /**
+     * 初始化各阶段耗时与发送、消费统计
+     */
+    private final CommonMqMetrics metrics = new CommonMqMetrics();
+
+    /**
+     * 最近一次应用的配置,配置未变化时reload不再解析
+     */
+    private Map<String, String> appliedConfig = Collections.emptyMap();
+
+    /**
+     * 由CommonMqBeanRegistrar提前初始化时,容器回调afterPropertiesSet不再重复初始化
+     */
+    private volatile boolean initialized;
+
+    public CommonMqManager(
+            ICommonMqConfig commonMqConfig,
+            DynamicInjectAssistant dynamicInjectAssistant)
+    {
+        this(commonMqConfig, dynamicInjectAssistant, new CommonMqProperties());
+    }
+
+    @Autowired
+    public CommonMqManager(
+            ICommonMqConfig commonMqConfig,
+            DynamicInjectAssistant dynamicInjectAssistant,
+            CommonMqProperties commonMqProperties)
+    {
+        this.commonMqConfig = commonMqConfig;
+        this.dynamicInjectAssistant = dynamicInjectAssistant;
+        this.commonMqProperties = commonMqProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        init();
+    }
+
+    private synchronized void init()
+    {
+        if (initialized)
+        {
+            return;
+        }
+        initialized = true;
+        log.debug("###CommonMqManager->init###  start...");
+        Map<String, String> nameBindMap = commonMqConfig.getConfig();
+        apply(parse(nameBindMap, commonMqProperties.getParser().isFailOnError()));
+        appliedConfig = copy(nameBindMap);
+        log.debug("###CommonMqManager->init###  end...");
+    }
+
+    /**
+     * 重新读取ICommonMqConfig中的配置,与当前拓扑比较后只注册新增的bean、移除删除的bean,
+     * 未变化的交换机、队列、绑定关系沿用原实例;broker侧的声明与解绑由TopologyRefresher完成。
+     * 新配置存在格式错误时不做任何变更,避免误删原本合法的绑定关系
+     *
+     * @return 拓扑变更,配置未变化时为空
+     * @throws IllegalStateException 新配置存在格式错误
+     */
+    public synchronized TopologyDiff reload()
+    {
+        init();
+        Map<String, String> nameBindMap = commonMqConfig.getConfig();
+        if (appliedConfig.equals(copy(nameBindMap)))
+        {
+            return TopologyDiff.empty();
+        }
+
+        log.debug("###CommonMqManager->reload###  start...");
+        TopologyDiff diff = apply(parse(nameBindMap, true));
+        appliedConfig = copy(nameBindMap);
+        log.info("###CommonMqManager->reload###  end, {}", diff);
+        return diff;
+    }
+
+    /**
+     * lazy模式下创建并注册交换机及其队列、绑定关系,其他模式下交换机已在初始化时注册
+     *
+     * @param exchangeName 交换机名称
+     * @return 新注册的交换机、队列、绑定关系,交换机已注册或不在拓扑中时为空
+     */
+    public synchronized TopologyDiff activate(String exchangeName)
+    {
+        init();
+        if (DeclareMode.LAZY != commonMqProperties.getDeclare().getMode()
+                || null == topology.getExchangeDefine(exchangeName)
+                || !activeExchanges.add(exchangeName))
+        {
+            return TopologyDiff.empty();
+        }
+
+        TopologyDiff diff = apply(topology);
+        log.debug(
+                "###CommonMqManager->activate###  Exchange:{} activated, {}",
+                exchangeName, diff);
+        return diff;
+    }
+
+    /**
+     * @return 交换机及其队列、绑定关系是否已创建并注册
+     */
+    public boolean isRegistered(String exchangeName)
+    {
+        return registeredExchanges.contains(exchangeName);
+    }
+
+    /**
+     * 用于根据CommonMqConfig中的map映射来确定exchange与queue的绑定关系
+     * 为了动态支持单exchange
+     */
+    private MqTopology parse(Map<String, String> nameBindMap,
+            boolean failOnError)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            //构建期已完成解析的拓扑直接使用
+            if (commonMqConfig instanceof PrecompiledCommonMqConfig)
+            {
+                return ((PrecompiledCommonMqConfig) commonMqConfig).getTopology();
+            }
+            return doParse(nameBindMap, failOnError);
+        }
+        finally
+        {
+            metrics.phase(CommonMqMetrics.Phase.PARSE)
+                    .record(System.nanoTime() - start);
+        }
+    }
+
+    private MqTopology doParse(Map<String, String> nameBindMap,
+            boolean failOnError)
+    {
+        if (null == nameBindMap || nameBindMap.isEmpty())
+        {
+            log.debug(
+                    "###CommonMqManager->init###  parse->Can get nameBindMap for mq...");
+            return MqTopology.empty();
+        }
+
+        //单遍扫描解析交换机与队列定义，格式错误的条目不会进入拓扑
+        MqTopology parsed = CommonMqTopologyScanner.scan(nameBindMap);
+        if (parsed.hasErrors())
+        {
+            parsed.getErrors().forEach(error -> log.warn(
+                    "###CommonMqManager->init###  parse->illegal define {}, do not init...",
+                    error));
+            if (failOnError)
+            {
+                throw new IllegalStateException(
+                        "###CommonMqManager->init### parse->illegal mq config: "
+                                + parsed.getErrors());
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * 实例化交换机、队列与绑定关系,并与当前实例比较得出变更
+     */
+    private TopologyDiff apply(MqTopology newTopology)
+    {
+        Reconciliation reconciliation = new Reconciliation(declarableBeans);
+        Map<Exchange, List<Queue>> bindMap = new LinkedHashMap<>();
+
+        final boolean lazy = DeclareMode.LAZY == commonMqProperties.getDeclare()
+                .getMode();
+        for (ExchangeDefine exchangeDefine : newTopology.getExchangeDefines())
+        {
+            final String exchangeName = exchangeDefine.getName();
+            if (lazy && !activeExchanges.contains(exchangeName))
+            {
+                continue;
+            }
+
+            final Exchange candidate = CommonMqParser
+                    .initExchange(exchangeName, exchangeDefine.getType());
+
+            if (null == candidate)
+            {
+                log.debug(
+                        "###CommonMqManager->init###  parse->Exchange:{} can not get exchange instance...",
+                        exchangeName);
+                continue;
+            }
+
+            reconciliation.group = commonMqProperties.getPlacement()
+                    .getOrDefault(exchangeName, ConnectionGroups.DEFAULT_GROUP);
+
+            //将交换机实例动态注入到spring容器中
+            final Exchange exchange = reconciliation
+                    .accept(exchangeName, candidate, candidate.getClass());
+            if (null == exchange)
+            {
+                continue;
+            }
+
+            log.debug(
+                    "###CommonMqManager->init###  parse->Exchange:{} init success!",
+                    exchangeName);
+
+            List<Queue> queueList = initQueues(exchangeDefine, reconciliation);
+
+            //建立绑定关系
+            queueList.forEach(queue -> binding(exchange, queue,
+                    exchangeDefine.getQueueDefine(queue.getName())
+                            .getRoutingKeys(), reconciliation));
+
+            //将对应的exchange与queue注册到nameBindMap
+            bindMap.put(exchange, queueList);
+
+            //延迟重试拓扑
+            for (Queue queue : queueList)
+            {
+                QueueDefine queueDefine = exchangeDefine
+                        .getQueueDefine(queue.getName());
+                if (queueDefine.isRetryable())
+                {
+                    initRetry(queue.getName(), queueDefine.getRetryTiers(),
+                            reconciliation, bindMap);
+                }
+            }
+        }
+
+        TopologyDiff diff = reconciliation.finish();
+        metrics.phase(CommonMqMetrics.Phase.INJECT)
+                .record(reconciliation.injectNanos);
+        metrics.phase(CommonMqMetrics.Phase.BIND)
+                .record(reconciliation.bindNanos);
+        declarableBeans = Collections.unmodifiableMap(reconciliation.current);
+        instanceBindMap = Collections.unmodifiableMap(bindMap);
+        Set<String> exchangeNames = new HashSet<>();
+        bindMap.keySet().forEach(exchange -> exchangeNames.add(exchange.getName()));
+        registeredExchanges = Collections.unmodifiableSet(exchangeNames);
+        topology = newTopology;
+        routingIndex = RoutingIndex.build(reconciliation.current.values());
+        return diff;
+    }
+
+    private List<Queue> initQueues(ExchangeDefine exchangeDefine,
+            Reconciliation reconciliation)
+    {
+        //分区队列展开为每个分区一个队列
+        List<QueueDefine> queueDefines = new ArrayList<>();
+        exchangeDefine.getQueueDefines()
+                .forEach(queueDefine -> queueDefines.addAll(queueDefine.expand()));
+
+        List<Queue> queueList = new ArrayList<>(queueDefines.size());
+        for (QueueDefine queueDefine : queueDefines)
+        {
+            final String queueName = queueDefine.getName();
+
+            Map<String, Object> arguments = queueDefine.getArguments().isEmpty()
+                    ? null
+                    : new HashMap<>(queueDefine.getArguments());
+            //未经重试策略处理的拒绝进入首个重试梯度,显式配置的死信交换机优先
+            if (queueDefine.isRetryable())
+            {
+                arguments = null == arguments ? new HashMap<>(4) : arguments;
+                arguments.putIfAbsent(QueueArguments.DEAD_LETTER_EXCHANGE,
+                        RetryTopology.retryExchange(queueName));
+                arguments.putIfAbsent(QueueArguments.DEAD_LETTER_ROUTING_KEY,
+                        RetryTopology.retryQueue(queueName,
+                                queueDefine.getRetryTiers().get(0)));
+            }
+
+            Queue queue = reconciliation.accept(queueName,
+                    new Queue(queueName, true, false, false, arguments),
+                    Queue.class);
+            if (null == queue)
+            {
+                continue;
+            }
+            queueList.add(queue);
+            log.debug(
+                    "###CommonMqManager->init###  parse->queue:{} init success!",
+                    queueName);
+        }
+        return queueList;
+    }
+
+    /**
+     * 创建队列的重试交换机、各梯度的重试队列与停放队列
+     * 重试队列中的消息在TTL到期后经默认交换机投递回原队列
+     */
+    private void initRetry(String queueName, List<Long> retryTiers,
+            Reconciliation reconciliation, Map<Exchange, List<Queue>> bindMap)
+    {
+        final String retryExchangeName = RetryTopology.retryExchange(queueName);
+        final Exchange retryExchange = reconciliation.accept(retryExchangeName,
+                new DirectExchange(retryExchangeName), DirectExchange.class);
+        if (null == retryExchange)
+        {
+            return;
+        }
+
+        List<Queue> retryQueues = new ArrayList<>(retryTiers.size() + 1);
+        for (Long delayMillis : retryTiers)
+        {
+            final String retryQueueName = RetryTopology.retryQueue(queueName,
+                    delayMillis);
+            Map<String, Object> arguments = new HashMap<>(4);
+            arguments.put(QueueArguments.MESSAGE_TTL, delayMillis.intValue());
+            arguments.put(QueueArguments.DEAD_LETTER_EXCHANGE, "");
+            arguments.put(QueueArguments.DEAD_LETTER_ROUTING_KEY, queueName);
+            Queue retryQueue = reconciliation.accept(retryQueueName,
+                    new Queue(retryQueueName, true, false, false, arguments),
+                    Queue.class);
+            if (null != retryQueue)
+            {
+                retryQueues.add(retryQueue);
+            }
+        }
+        final String parkingQueueName = RetryTopology.parkingQueue(queueName);
+        Queue parkingQueue = reconciliation.accept(parkingQueueName,
+                new Queue(parkingQueueName), Queue.class);
+        if (null != parkingQueue)
+        {
+            retryQueues.add(parkingQueue);
+        }
+
+        //以队列名为routingKey,重试策略按梯度选择目标队列
+        retryQueues.forEach(retryQueue -> binding(retryExchange, retryQueue,
+                Collections.singletonList(retryQueue.getName()), reconciliation));
+        bindMap.put(retryExchange, retryQueues);
+        log.debug(
+                "###CommonMqManager->init###  parse->queue:{} retry tiers:{} init success!",
+                queueName, retryTiers);
+    }
+
+    /**
+     * 建立绑定关系
+     */
+    private void binding(Exchange exchange, Queue queue,
+            List<String> routingKeys, Reconciliation reconciliation)
+    {
+        final String bindBeanName = exchange.getName() + BIND_TO + queue.getName();
+        if (exchange instanceof FanoutExchange)
+        {
+            reconciliation.accept(bindBeanName, BindingBuilder.bind(queue)
+                    .to((FanoutExchange) exchange), Binding.class);
+        }
+        else if (exchange instanceof HeadersExchange)
+        {
+            //headers交换机的全部header条件合并为一个绑定
+            reconciliation.accept(bindBeanName, new Binding(queue.getName(),
+                            Binding.DestinationType.QUEUE,
+                            exchange.getName(), "",
+                            CommonMqParser.parseHeaderArguments(routingKeys)),
+                    Binding.class);
+        }
+        else if (exchange instanceof DirectExchange)
+        {
+            BindingBuilder.DirectExchangeRoutingKeyConfigurer directExchangeRoutingKeyConfigurer = BindingBuilder
+                    .bind(queue)
+                    .to((DirectExchange) exchange);
+            routingKeys.forEach(routingKey -> reconciliation.accept(
+                    bindBeanName + BIND_WITH + routingKey,
+                    directExchangeRoutingKeyConfigurer.with(routingKey),
+                    Binding.class));
+        }
+        else if (exchange instanceof TopicExchange)
+        {
+            BindingBuilder.TopicExchangeRoutingKeyConfigurer topicExchangeRoutingKeyConfigurer = BindingBuilder
+                    .bind(queue)
+                    .to((TopicExchange) exchange);
+            routingKeys.forEach(routingKey -> reconciliation.accept(
+                    bindBeanName + BIND_WITH + routingKey,
+                    topicExchangeRoutingKeyConfigurer.with(routingKey),
+                    Binding.class));
+        }
+    }
+
+    /**
+     * 记录已创建的声明项,bulk模式下由CommonMqBulkDeclarer统一声明,不再交由RabbitAdmin声明;
+     * 非默认分组的声明项限定由分组的RabbitAdmin声明
+     */
+    private void register(Declarable declarable, String group)
+    {
+        if (!(declarable instanceof AbstractDeclarable))
+        {
+            return;
+        }
+        if (DeclareMode.BULK == commonMqProperties.getDeclare().getMode())
+        {
+            ((AbstractDeclarable) declarable).setShouldDeclare(false);
+        }
+        if (!ConnectionGroups.DEFAULT_GROUP.equals(group))
+        {
+            ((AbstractDeclarable) declarable)
+                    .setAdminsThatShouldDeclare(ConnectionGroups.adminName(group));
+        }
+    }
+
+    private static Map<String, String> copy(Map<String, String> nameBindMap)
+    {
+        return null == nameBindMap
+                ? Collections.emptyMap()
+                : new HashMap<>(nameBindMap);
+    }
+
+    public List<Declarable> getDeclarables()
+    {
+        return Collections.unmodifiableList(
+                new ArrayList<>(declarableBeans.values()));
+    }
+
+    /**
+     * @param group 连接分组名称
+     * @return 位于该分组的交换机、队列、绑定关系
+     */
+    public List<Declarable> getDeclarables(String group)
+    {
+        List<Declarable> declarables = new ArrayList<>();
+        for (Declarable declarable : declarableBeans.values())
+        {
+            if (group.equals(ConnectionGroups.groupOf(declarable)))
+            {
+                declarables.add(declarable);
+            }
+        }
+        return Collections.unmodifiableList(declarables);
+    }
+
+    public Map<Exchange, List<Queue>> getInstanceBindMap()
+    {
+        return instanceBindMap;
+    }
+
+    public RoutingIndex getRoutingIndex()
+    {
+        return routingIndex;
+    }
+
+    public MqTopology getTopology()
+    {
+        return topology;
+    }
+
+    public CommonMqMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * 以bean名称比较新旧声明项:
+     * 名称与声明属性均相同的沿用原实例,新增的注入容器,不再出现的从容器中移除
+     */
+    private final class Reconciliation
+    {
+        private final Map<String, Declarable> previous;
+
+        private final Map<String, Declarable> current = new LinkedHashMap<>();
+
+        private final List<Declarable> added = new ArrayList<>();
+
+        private final List<String> conflicts = new ArrayList<>(0);
+
+        /**
+         * 交换机与队列、绑定关系的实例化与注入耗时
+         */
+        private long injectNanos;
+
+        private long bindNanos;
+
+        /**
+         * 当前处理的交换机所在的连接分组
+         */
+        private String group = ConnectionGroups.DEFAULT_GROUP;
+
+        private Reconciliation(Map<String, Declarable> previous)
+        {
+            this.previous = previous;
+        }
+
+        /**
+         * @return 生效的实例,注入失败时返回null
+         */
+        private <T extends Declarable> T accept(String beanName, T candidate,
+                Class<?> beanClass)
+        {
+            long start = System.nanoTime();
+            try
+            {
+                return doAccept(beanName, candidate, beanClass);
+            }
+            finally
+            {
+                if (candidate instanceof Binding)
+                {
+                    bindNanos += System.nanoTime() - start;
+                }
+                else
+                {
+                    injectNanos += System.nanoTime() - start;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Declarable> T doAccept(String beanName,
+                T candidate, Class<?> beanClass)
+        {
+            final Declarable existing = previous.get(beanName);
+            if (null != existing)
+            {
+                if (TopologyFingerprint.canonicalize(existing)
+                        .equals(TopologyFingerprint.canonicalize(candidate)))
+                {
+                    current.put(beanName, existing);
+                    return (T) existing;
+                }
+                //交换机与队列的声明属性无法在broker上原地修改,沿用原实例
+                if (!(existing instanceof Binding))
+                {
+                    log.warn(
+                            "###CommonMqManager->reload###  {} changed, it can not be redeclared in place, keep the existing one...",
+                            beanName);
+                    conflicts.add(beanName);
+                    current.put(beanName, existing);
+                    return (T) existing;
+                }
+                dynamicInjectAssistant.remove(beanName);
+            }
+
+            register(candidate, group);
+            try
+            {
+                dynamicInjectAssistant.inject(candidate, beanName, beanClass);
+            }
+            catch (BeansException e)
+            {
+                log.error(
+                        "###CommonMqManager->init###  parse->{} can not inject instance, error:",
+                        beanName, e);
+                return null;
+            }
+            current.put(beanName, candidate);
+            added.add(candidate);
+            return candidate;
+        }
+
+        private TopologyDiff finish()
+        {
+            List<Declarable> removed = new ArrayList<>(0);
+            previous.forEach((beanName, declarable) ->
+            {
+                Declarable retained = current.get(beanName);
+                if (retained == declarable)
+                {
+                    return;
+                }
+                //被替换的绑定关系已在accept中移除bean
+                if (null == retained)
+                {
+                    dynamicInjectAssistant.remove(beanName);
+                }
+                removed.add(declarable);
+            });
+            return new TopologyDiff(added, removed, conflicts);
+        }
+    }
+}
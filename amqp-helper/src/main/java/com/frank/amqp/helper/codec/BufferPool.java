@@ -0,0 +1,130 @@
+package com.frank.amqp.helper.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 编解码缓冲区与Deflater、Inflater的对象池
+ * 池满时归还的对象直接丢弃,池空时新建,不会阻塞;
+ * 容量超过上限的缓冲区不归还,避免个别大消息长期占用内存
+ */
+public final class BufferPool
+{
+    private final BlockingQueue<PooledBuffer> buffers;
+
+    private final BlockingQueue<Deflater> deflaters;
+
+    private final BlockingQueue<Inflater> inflaters;
+
+    private final int maxPooledBufferBytes;
+
+    /**
+     * @param poolSize             每种对象的最大池化数量
+     * @param maxPooledBufferBytes 可归还的缓冲区最大容量
+     */
+    public BufferPool(int poolSize, int maxPooledBufferBytes)
+    {
+        int size = Math.max(1, poolSize);
+        this.buffers = new ArrayBlockingQueue<>(size);
+        this.deflaters = new ArrayBlockingQueue<>(size);
+        this.inflaters = new ArrayBlockingQueue<>(size);
+        this.maxPooledBufferBytes = maxPooledBufferBytes;
+    }
+
+    public PooledBuffer acquire()
+    {
+        PooledBuffer buffer = buffers.poll();
+        return null == buffer ? new PooledBuffer() : buffer;
+    }
+
+    public void release(PooledBuffer buffer)
+    {
+        if (null == buffer || buffer.capacity() > maxPooledBufferBytes)
+        {
+            return;
+        }
+        buffer.reset();
+        buffers.offer(buffer);
+    }
+
+    public Deflater acquireDeflater()
+    {
+        Deflater deflater = deflaters.poll();
+        return null == deflater ? new Deflater(Deflater.BEST_SPEED) : deflater;
+    }
+
+    public void release(Deflater deflater)
+    {
+        deflater.reset();
+        if (!deflaters.offer(deflater))
+        {
+            deflater.end();
+        }
+    }
+
+    public Inflater acquireInflater()
+    {
+        Inflater inflater = inflaters.poll();
+        return null == inflater ? new Inflater() : inflater;
+    }
+
+    public void release(Inflater inflater)
+    {
+        inflater.reset();
+        if (!inflaters.offer(inflater))
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 可直接访问内部数组的缓冲区
+     */
+    public static final class PooledBuffer extends ByteArrayOutputStream
+    {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private PooledBuffer()
+        {
+            super(INITIAL_CAPACITY);
+        }
+
+        /**
+         * @return 内部数组,有效数据为[0, size())
+         */
+        public byte[] array()
+        {
+            return buf;
+        }
+
+        public int capacity()
+        {
+            return buf.length;
+        }
+
+        /**
+         * 保证至少还有minFree字节的剩余空间
+         */
+        public void ensureFree(int minFree)
+        {
+            if (buf.length - count >= minFree)
+            {
+                return;
+            }
+            byte[] grown = new byte[Math.max(buf.length << 1, count + minFree)];
+            System.arraycopy(buf, 0, grown, 0, count);
+            buf = grown;
+        }
+
+        /**
+         * 在直接写入内部数组后推进有效长度
+         */
+        public void advance(int written)
+        {
+            count += written;
+        }
+    }
+}
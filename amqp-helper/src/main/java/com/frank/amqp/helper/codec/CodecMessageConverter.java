@@ -0,0 +1,219 @@
+package com.frank.amqp.helper.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 以MessageCodec编解码消息体的MessageConverter
+ * 1.编码写入池化的缓冲区,编码后达到压缩阈值时以Deflate压缩到另一个池化的缓冲区,
+ * 压缩后不小于原大小时放弃压缩,最终只为消息体分配一次精确大小的数组;
+ * 2.编解码器名称写入消息头x-codec,压缩的消息contentEncoding为deflate;
+ * 3.解码时优先使用x-codec指定的编解码器,缺失时使用本转换器的编解码器;
+ * 4.解压后的大小超过maxInflatedBytes时立即停止解压并拒绝消息。
+ */
+public class CodecMessageConverter implements MessageConverter
+{
+    public static final String CODEC_HEADER = "x-codec";
+
+    public static final String DEFLATE = "deflate";
+
+    private final MessageCodec codec;
+
+    private final Map<String, MessageCodec> codecs;
+
+    private final BufferPool bufferPool;
+
+    private final int compressThreshold;
+
+    private final int maxInflatedBytes;
+
+    /**
+     * @param codec             编码使用的编解码器
+     * @param codecs            解码时按名称查找的编解码器
+     * @param bufferPool        缓冲区池
+     * @param compressThreshold 压缩阈值(字节),小于等于0时不压缩
+     * @param maxInflatedBytes  解压后消息体的最大字节数
+     */
+    public CodecMessageConverter(MessageCodec codec,
+            Map<String, MessageCodec> codecs, BufferPool bufferPool,
+            int compressThreshold, int maxInflatedBytes)
+    {
+        this.codec = codec;
+        this.codecs = codecs;
+        this.bufferPool = bufferPool;
+        this.compressThreshold = compressThreshold;
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    public MessageCodec getCodec()
+    {
+        return codec;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties)
+    {
+        BufferPool.PooledBuffer encoded = bufferPool.acquire();
+        try
+        {
+            codec.encode(object, messageProperties, encoded);
+            if (null != codec.getContentType())
+            {
+                messageProperties.setContentType(codec.getContentType());
+            }
+            messageProperties.setHeader(CODEC_HEADER, codec.getName());
+
+            if (compressThreshold > 0 && encoded.size() >= compressThreshold)
+            {
+                BufferPool.PooledBuffer compressed = bufferPool.acquire();
+                try
+                {
+                    if (deflate(encoded, compressed))
+                    {
+                        messageProperties.setContentEncoding(DEFLATE);
+                        return new Message(compressed.toByteArray(),
+                                messageProperties);
+                    }
+                }
+                finally
+                {
+                    bufferPool.release(compressed);
+                }
+            }
+            return new Message(encoded.toByteArray(), messageProperties);
+        }
+        catch (IOException e)
+        {
+            throw new MessageConversionException(
+                    "codec:" + codec.getName() + " encode failed", e);
+        }
+        finally
+        {
+            bufferPool.release(encoded);
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message)
+    {
+        MessageProperties messageProperties = message.getMessageProperties();
+        MessageCodec messageCodec = resolve(messageProperties);
+        byte[] body = message.getBody();
+        try
+        {
+            if (!DEFLATE.equals(messageProperties.getContentEncoding()))
+            {
+                return messageCodec.decode(body, 0, body.length,
+                        messageProperties);
+            }
+
+            BufferPool.PooledBuffer inflated = bufferPool.acquire();
+            try
+            {
+                inflate(body, inflated);
+                //contentEncoding已处理,避免委托的MessageConverter将其当作字符集
+                messageProperties.setContentEncoding(null);
+                return messageCodec.decode(inflated.array(), 0, inflated.size(),
+                        messageProperties);
+            }
+            finally
+            {
+                bufferPool.release(inflated);
+            }
+        }
+        catch (IOException | DataFormatException e)
+        {
+            throw new MessageConversionException(
+                    "codec:" + messageCodec.getName() + " decode failed", e);
+        }
+    }
+
+    private MessageCodec resolve(MessageProperties messageProperties)
+    {
+        Object name = messageProperties.getHeaders().get(CODEC_HEADER);
+        if (null == name || codec.getName().equals(name))
+        {
+            return codec;
+        }
+        MessageCodec messageCodec = codecs.get(name.toString());
+        if (null == messageCodec)
+        {
+            throw new MessageConversionException("unknown codec:" + name);
+        }
+        return messageCodec;
+    }
+
+    /**
+     * @return 是否压缩,压缩后不小于原大小时返回false
+     */
+    private boolean deflate(BufferPool.PooledBuffer source,
+            BufferPool.PooledBuffer target)
+    {
+        final int limit = source.size();
+        Deflater deflater = bufferPool.acquireDeflater();
+        try
+        {
+            deflater.setInput(source.array(), 0, limit);
+            deflater.finish();
+            target.ensureFree(limit);
+            while (!deflater.finished())
+            {
+                if (target.size() >= limit)
+                {
+                    return false;
+                }
+                target.advance(deflater.deflate(target.array(), target.size(),
+                        target.capacity() - target.size()));
+            }
+            return target.size() < limit;
+        }
+        finally
+        {
+            bufferPool.release(deflater);
+        }
+    }
+
+    /**
+     * 最多解压出maxInflatedBytes + 1字节,多出的一个字节用于判断是否超限
+     */
+    private void inflate(byte[] body, BufferPool.PooledBuffer target)
+            throws DataFormatException
+    {
+        Inflater inflater = bufferPool.acquireInflater();
+        try
+        {
+            inflater.setInput(body);
+            while (!inflater.finished())
+            {
+                int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                        (long) maxInflatedBytes + 1 - target.size()));
+                target.ensureFree(Math.min(Math.max(body.length, 1024), remaining));
+                int inflated = inflater.inflate(target.array(), target.size(),
+                        Math.min(target.capacity() - target.size(), remaining));
+                if (0 == inflated && (inflater.needsInput()
+                        || inflater.needsDictionary()))
+                {
+                    throw new DataFormatException("truncated deflate stream");
+                }
+                target.advance(inflated);
+                if (target.size() > maxInflatedBytes)
+                {
+                    throw new MessageConversionException(
+                            "inflated body exceeds " + maxInflatedBytes + " bytes");
+                }
+            }
+        }
+        finally
+        {
+            bufferPool.release(inflater);
+        }
+    }
+}
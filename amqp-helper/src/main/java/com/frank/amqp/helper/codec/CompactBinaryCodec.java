@@ -0,0 +1,372 @@
+package com.frank.amqp.helper.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 自描述的紧凑二进制编解码器,名称为binary
+ * 每个值以一个字节的类型标记开头,整数使用zigzag变长编码,字符串与字节数组以变长长度为前缀;
+ * 支持null、Boolean、Byte/Short/Integer、Long、Float/Double、String、byte[]、Collection与Map,
+ * 解码时Collection为ArrayList、Map为LinkedHashMap,数值按编码时的宽度还原为Integer、Long或Double。
+ * 适用于结构简单、对体积与分配敏感的消息,POJO需先转换为Map或使用自定义编解码器
+ */
+public class CompactBinaryCodec implements MessageCodec
+{
+    public static final String NAME = "binary";
+
+    public static final String CONTENT_TYPE = "application/x-common-mq-binary";
+
+    private static final int NULL = 0;
+
+    private static final int FALSE = 1;
+
+    private static final int TRUE = 2;
+
+    private static final int INT = 3;
+
+    private static final int LONG = 4;
+
+    private static final int DOUBLE = 5;
+
+    private static final int STRING = 6;
+
+    private static final int BYTES = 7;
+
+    private static final int LIST = 8;
+
+    private static final int MAP = 9;
+
+    /**
+     * 嵌套层数上限,防止异常数据导致栈溢出
+     */
+    private static final int MAX_DEPTH = 64;
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void encode(Object payload, MessageProperties messageProperties,
+            OutputStream out) throws IOException
+    {
+        write(payload, out, 0);
+    }
+
+    @Override
+    public Object decode(byte[] body, int offset, int length,
+            MessageProperties messageProperties)
+    {
+        Reader reader = new Reader(body, offset, offset + length);
+        Object value = reader.read(0);
+        if (reader.pos != reader.end)
+        {
+            throw new MessageConversionException(
+                    "binary codec found " + (reader.end - reader.pos)
+                            + " trailing bytes");
+        }
+        return value;
+    }
+
+    private static void write(Object value, OutputStream out, int depth)
+            throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new MessageConversionException(
+                    "binary codec nesting exceeds " + MAX_DEPTH);
+        }
+        if (null == value)
+        {
+            out.write(NULL);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.write((Boolean) value ? TRUE : FALSE);
+        }
+        else if (value instanceof Integer || value instanceof Short
+                || value instanceof Byte)
+        {
+            out.write(INT);
+            writeVarLong(zigzag(((Number) value).intValue()), out);
+        }
+        else if (value instanceof Long)
+        {
+            out.write(LONG);
+            writeVarLong(zigzag((Long) value), out);
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            out.write(DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                out.write((int) (bits >>> shift));
+            }
+        }
+        else if (value instanceof String)
+        {
+            out.write(STRING);
+            writeString((String) value, out);
+        }
+        else if (value instanceof byte[])
+        {
+            byte[] bytes = (byte[]) value;
+            out.write(BYTES);
+            writeVarLong(bytes.length, out);
+            out.write(bytes);
+        }
+        else if (value instanceof Collection)
+        {
+            Collection<?> collection = (Collection<?>) value;
+            out.write(LIST);
+            writeVarLong(collection.size(), out);
+            for (Object item : collection)
+            {
+                write(item, out, depth + 1);
+            }
+        }
+        else if (value instanceof Map)
+        {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(MAP);
+            writeVarLong(map.size(), out);
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                write(entry.getKey(), out, depth + 1);
+                write(entry.getValue(), out, depth + 1);
+            }
+        }
+        else
+        {
+            throw new MessageConversionException(
+                    "binary codec does not support type:" + value.getClass());
+        }
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(long value, OutputStream out)
+            throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * 先计算UTF-8编码后的长度写入前缀,再逐字符写入,不分配中间数组
+     */
+    private static void writeString(String value, OutputStream out)
+            throws IOException
+    {
+        final int length = value.length();
+        long utf8Length = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                utf8Length++;
+            }
+            else if (c < 0x800)
+            {
+                utf8Length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                utf8Length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c))
+            {
+                utf8Length++;
+            }
+            else
+            {
+                utf8Length += 3;
+            }
+        }
+        writeVarLong(utf8Length, out);
+
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                out.write(c);
+            }
+            else if (c < 0x800)
+            {
+                out.write(0xC0 | (c >> 6));
+                out.write(0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.write(0xF0 | (codePoint >> 18));
+                out.write(0x80 | ((codePoint >> 12) & 0x3F));
+                out.write(0x80 | ((codePoint >> 6) & 0x3F));
+                out.write(0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                //与String#getBytes一致,不成对的代理字符替换为'?'
+                out.write('?');
+            }
+            else
+            {
+                out.write(0xE0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static final class Reader
+    {
+        private final byte[] bytes;
+
+        private final int end;
+
+        private int pos;
+
+        private Reader(byte[] bytes, int pos, int end)
+        {
+            this.bytes = bytes;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        private Object read(int depth)
+        {
+            if (depth > MAX_DEPTH)
+            {
+                throw new MessageConversionException(
+                        "binary codec nesting exceeds " + MAX_DEPTH);
+            }
+            int tag = readByte();
+            switch (tag)
+            {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INT:
+                    return (int) unzigzag(readVarLong());
+                case LONG:
+                    return unzigzag(readVarLong());
+                case DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++)
+                    {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                case STRING:
+                    int stringLength = readLength();
+                    String string = new String(bytes, pos, stringLength,
+                            StandardCharsets.UTF_8);
+                    pos += stringLength;
+                    return string;
+                case BYTES:
+                    int bytesLength = readLength();
+                    byte[] value = Arrays.copyOfRange(bytes, pos, pos + bytesLength);
+                    pos += bytesLength;
+                    return value;
+                case LIST:
+                    int size = readLength();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++)
+                    {
+                        list.add(read(depth + 1));
+                    }
+                    return list;
+                case MAP:
+                    int entries = readLength();
+                    Map<Object, Object> map = new LinkedHashMap<>(
+                            entries * 4 / 3 + 1);
+                    for (int i = 0; i < entries; i++)
+                    {
+                        map.put(read(depth + 1), read(depth + 1));
+                    }
+                    return map;
+                default:
+                    throw new MessageConversionException(
+                            "binary codec found unknown tag:" + tag + " at:"
+                                    + (pos - 1));
+            }
+        }
+
+        private int readByte()
+        {
+            if (pos >= end)
+            {
+                throw new MessageConversionException(
+                        "binary codec reached end of message unexpectedly");
+            }
+            return bytes[pos++] & 0xFF;
+        }
+
+        private long readVarLong()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+            throw new MessageConversionException("binary codec found malformed varint");
+        }
+
+        /**
+         * 长度不能超过剩余字节数,集合的元素至少占一个字节
+         */
+        private int readLength()
+        {
+            long length = readVarLong();
+            if (length < 0 || length > end - pos)
+            {
+                throw new MessageConversionException(
+                        "binary codec found illegal length:" + length);
+            }
+            return (int) length;
+        }
+
+        private static long unzigzag(long value)
+        {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.frank.amqp.helper.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 消息体编解码器
+ * 以名称注册到MessageCodecRegistry,交换机通过common.mq.codec.exchanges选择编解码器;
+ * 实现需线程安全,编码直接写入池化的缓冲区,解码从缓冲区的指定区间读取,避免中间数组
+ */
+public interface MessageCodec
+{
+    /**
+     * @return 编解码器名称,写入消息头x-codec,消费端据此选择编解码器
+     */
+    String getName();
+
+    /**
+     * @return 消息的contentType,为null时不设置
+     */
+    String getContentType();
+
+    /**
+     * @param payload           消息对象
+     * @param messageProperties 消息属性,可写入解码所需的消息头
+     * @param out               池化的编码缓冲区
+     */
+    void encode(Object payload, MessageProperties messageProperties,
+            OutputStream out) throws IOException;
+
+    /**
+     * @param body              消息体
+     * @param offset            起始下标
+     * @param length            长度
+     * @param messageProperties 消息属性
+     * @return 消息对象
+     */
+    Object decode(byte[] body, int offset, int length,
+            MessageProperties messageProperties) throws IOException;
+}
@@ -0,0 +1,126 @@
+package com.frank.amqp.helper.codec;
+
+import com.frank.amqp.helper.config.CommonMqProperties;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 编解码器注册表
+ * 内置bytes与binary,容器中存在MessageConverter时以json注册,容器中的MessageCodec按名称注册并可覆盖内置的编解码器;
+ * 按common.mq.codec.exchanges为交换机创建CodecMessageConverter,发送器与监听容器按消息所在的交换机自动选择,
+ * 未配置的交换机使用容器中的MessageConverter
+ */
+public class MessageCodecRegistry
+{
+    private final Map<String, MessageCodec> codecs;
+
+    private final Map<String, MessageConverter> exchangeConverters;
+
+    private final MessageConverter defaultConverter;
+
+    /**
+     * 解码携带x-codec消息头、但所在交换机未配置编解码器的消息
+     */
+    private final Map<String, MessageConverter> codecConverters;
+
+    /**
+     * 所有交换机均使用给定的MessageConverter
+     */
+    public MessageCodecRegistry(MessageConverter defaultConverter)
+    {
+        this(Collections.emptyList(), defaultConverter,
+                new CommonMqProperties.Codec());
+    }
+
+    /**
+     * @param customCodecs     自定义的编解码器
+     * @param messageConverter 容器中的MessageConverter,为null时未配置的交换机使用SimpleMessageConverter且不注册json
+     * @param properties       编解码配置
+     * @throws IllegalStateException 交换机配置了不存在的编解码器
+     */
+    public MessageCodecRegistry(Collection<MessageCodec> customCodecs,
+            MessageConverter messageConverter,
+            CommonMqProperties.Codec properties)
+    {
+        Map<String, MessageCodec> codecs = new LinkedHashMap<>();
+        codecs.put(RawBytesCodec.NAME, new RawBytesCodec());
+        codecs.put(CompactBinaryCodec.NAME, new CompactBinaryCodec());
+        if (null != messageConverter)
+        {
+            codecs.put(MessageConverterCodec.JSON, new MessageConverterCodec(
+                    MessageConverterCodec.JSON, messageConverter));
+        }
+        customCodecs.forEach(codec -> codecs.put(codec.getName(), codec));
+        this.codecs = Collections.unmodifiableMap(codecs);
+        this.defaultConverter = null == messageConverter
+                ? new SimpleMessageConverter()
+                : messageConverter;
+
+        BufferPool bufferPool = new BufferPool(properties.getBufferPoolSize(),
+                properties.getMaxPooledBufferBytes());
+        Map<String, MessageConverter> codecConverters = new HashMap<>();
+        this.codecs.forEach((name, codec) -> codecConverters.put(name,
+                new CodecMessageConverter(codec, this.codecs, bufferPool,
+                        properties.getCompressThreshold(),
+                        properties.getMaxInflatedBytes())));
+        this.codecConverters = Collections.unmodifiableMap(codecConverters);
+
+        Map<String, MessageConverter> exchangeConverters = new HashMap<>();
+        properties.getExchanges().forEach((exchange, name) ->
+        {
+            MessageConverter converter = codecConverters.get(name);
+            if (null == converter)
+            {
+                throw new IllegalStateException(
+                        "###MessageCodecRegistry### init->exchange:" + exchange
+                                + " uses undefined codec:" + name
+                                + ", available:" + this.codecs.keySet());
+            }
+            exchangeConverters.put(exchange, converter);
+        });
+        this.exchangeConverters = Collections.unmodifiableMap(exchangeConverters);
+    }
+
+    /**
+     * @return 交换机使用的MessageConverter
+     */
+    public MessageConverter converterFor(String exchange)
+    {
+        return exchangeConverters.getOrDefault(exchange, defaultConverter);
+    }
+
+    /**
+     * 解码消息,消息头x-codec指定的编解码器优先,其次为交换机的编解码器
+     *
+     * @param exchange 消息所在的交换机
+     */
+    public Object decode(String exchange, Message message)
+    {
+        MessageConverter converter = exchangeConverters.get(exchange);
+        if (null == converter)
+        {
+            Object name = message.getMessageProperties().getHeaders()
+                    .get(CodecMessageConverter.CODEC_HEADER);
+            converter = null == name ? null : codecConverters.get(name.toString());
+        }
+        return (null == converter ? defaultConverter : converter)
+                .fromMessage(message);
+    }
+
+    public MessageCodec getCodec(String name)
+    {
+        return codecs.get(name);
+    }
+
+    public Collection<MessageCodec> getCodecs()
+    {
+        return codecs.values();
+    }
+}
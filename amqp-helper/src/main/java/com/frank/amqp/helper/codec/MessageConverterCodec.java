@@ -0,0 +1,59 @@
+package com.frank.amqp.helper.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 以MessageConverter实现的编解码器
+ * 容器中的MessageConverter(如Jackson2JsonMessageConverter)以名称json注册,
+ * contentType与类型信息等消息头由MessageConverter自行写入
+ */
+public class MessageConverterCodec implements MessageCodec
+{
+    public static final String JSON = "json";
+
+    private final String name;
+
+    private final MessageConverter messageConverter;
+
+    public MessageConverterCodec(String name, MessageConverter messageConverter)
+    {
+        this.name = name;
+        this.messageConverter = messageConverter;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return null;
+    }
+
+    @Override
+    public void encode(Object payload, MessageProperties messageProperties,
+            OutputStream out) throws IOException
+    {
+        out.write(messageConverter.toMessage(payload, messageProperties)
+                .getBody());
+    }
+
+    @Override
+    public Object decode(byte[] body, int offset, int length,
+            MessageProperties messageProperties)
+    {
+        byte[] exact = 0 == offset && body.length == length
+                ? body
+                : Arrays.copyOfRange(body, offset, offset + length);
+        return messageConverter.fromMessage(new Message(exact, messageProperties));
+    }
+}
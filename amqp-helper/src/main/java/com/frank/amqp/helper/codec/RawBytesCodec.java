@@ -0,0 +1,59 @@
+package com.frank.amqp.helper.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 原始字节编解码器,名称为bytes
+ * 编码支持byte[]与String(UTF-8),解码得到byte[]
+ */
+public class RawBytesCodec implements MessageCodec
+{
+    public static final String NAME = "bytes";
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return MessageProperties.CONTENT_TYPE_BYTES;
+    }
+
+    @Override
+    public void encode(Object payload, MessageProperties messageProperties,
+            OutputStream out) throws IOException
+    {
+        if (payload instanceof byte[])
+        {
+            out.write((byte[]) payload);
+        }
+        else if (payload instanceof String)
+        {
+            out.write(((String) payload).getBytes(StandardCharsets.UTF_8));
+        }
+        else
+        {
+            throw new MessageConversionException(
+                    "bytes codec only supports byte[] and String, but got:"
+                            + (null == payload ? null : payload.getClass()));
+        }
+    }
+
+    @Override
+    public Object decode(byte[] body, int offset, int length,
+            MessageProperties messageProperties)
+    {
+        return 0 == offset && body.length == length
+                ? body
+                : Arrays.copyOfRange(body, offset, offset + length);
+    }
+}
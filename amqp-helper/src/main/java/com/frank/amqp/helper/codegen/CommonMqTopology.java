@@ -0,0 +1,41 @@
+package com.frank.amqp.helper.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明静态拓扑,由CommonMqTopologyProcessor在编译期解析并生成"类名+MqConfig"的PrecompiledCommonMqConfig实现
+ * 定义串的文法与ICommonMqConfig#getConfig一致,格式错误在编译期报告
+ * e.g:
+ * <pre>
+ * &#64;CommonMqTopology({
+ *         &#64;CommonMqTopology.Exchange(name = "exchange.direct.order", queues = "order.created:order.created"),
+ *         &#64;CommonMqTopology.Exchange(name = "exchange.fanout.notify", queues = "notify.sms,notify.mail") })
+ * public class OrderTopology
+ * {
+ * }
+ * </pre>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface CommonMqTopology
+{
+    Exchange[] value();
+
+    @Target({})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Exchange
+    {
+        /**
+         * @return 交换机名称
+         */
+        String name();
+
+        /**
+         * @return 队列定义串
+         */
+        String queues();
+    }
+}
@@ -0,0 +1,268 @@
+package com.frank.amqp.helper.codegen;
+
+import com.frank.amqp.helper.parser.CommonMqTopologyScanner;
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.ParseError;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译期解析CommonMqTopology声明的拓扑
+ * 1.使用与运行期相同的CommonMqTopologyScanner解析定义串,格式错误作为编译错误报告;
+ * 2.为被注解的类生成"类名+MqConfig"的PrecompiledCommonMqConfig实现,以构造器直接创建拓扑模型,
+ * 启动时不再解析定义串,也不依赖反射,生成的类以@Component标注,需位于组件扫描范围内
+ */
+@SupportedAnnotationTypes("com.frank.amqp.helper.codegen.CommonMqTopology")
+public class CommonMqTopologyProcessor extends AbstractProcessor
+{
+    static final String CLASS_NAME_SUFFIX = "MqConfig";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv)
+    {
+        for (Element element : roundEnv
+                .getElementsAnnotatedWith(CommonMqTopology.class))
+        {
+            if (!(element instanceof TypeElement))
+            {
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            List<ExchangeDefine> exchangeDefines = scan(typeElement);
+            if (null == exchangeDefines)
+            {
+                continue;
+            }
+
+            Map<String, String> config = new LinkedHashMap<>();
+            for (CommonMqTopology.Exchange exchange : typeElement
+                    .getAnnotation(CommonMqTopology.class).value())
+            {
+                config.put(exchange.name(), exchange.queues());
+            }
+            write(typeElement, config, exchangeDefines);
+        }
+        return true;
+    }
+
+    /**
+     * @return 解析得到的交换机定义,存在错误时返回null
+     */
+    private List<ExchangeDefine> scan(TypeElement typeElement)
+    {
+        List<ParseError> errors = new ArrayList<>(0);
+        Map<String, ExchangeDefine> exchangeDefines = new LinkedHashMap<>();
+        for (CommonMqTopology.Exchange exchange : typeElement
+                .getAnnotation(CommonMqTopology.class).value())
+        {
+            ExchangeDefine exchangeDefine = CommonMqTopologyScanner
+                    .scanExchange(exchange.name(), exchange.queues(), errors);
+            if (null != exchangeDefine && null != exchangeDefines
+                    .put(exchangeDefine.getName(), exchangeDefine))
+            {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        "duplicate exchange '" + exchange.name() + "'",
+                        typeElement);
+                return null;
+            }
+        }
+        if (!errors.isEmpty())
+        {
+            //javac对同一位置只输出一条错误,全部错误合并为一条
+            StringBuilder message = new StringBuilder("illegal mq define:");
+            errors.forEach(error -> message.append("\n  ").append(error));
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    message, typeElement);
+            return null;
+        }
+        return new ArrayList<>(exchangeDefines.values());
+    }
+
+    private void write(TypeElement typeElement, Map<String, String> config,
+            List<ExchangeDefine> exchangeDefines)
+    {
+        PackageElement packageElement = processingEnv.getElementUtils()
+                .getPackageOf(typeElement);
+        String packageName = packageElement.isUnnamed()
+                ? ""
+                : packageElement.getQualifiedName().toString();
+        String className = typeElement.getSimpleName() + CLASS_NAME_SUFFIX;
+
+        StringBuilder source = new StringBuilder(1024);
+        if (!packageName.isEmpty())
+        {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.frank.amqp.helper.config.PrecompiledCommonMqConfig;\n")
+                .append("import com.frank.amqp.helper.parser.model.ExchangeDefine;\n")
+                .append("import com.frank.amqp.helper.parser.model.MqTopology;\n")
+                .append("import com.frank.amqp.helper.parser.model.QueueDefine;\n")
+                .append("import org.springframework.stereotype.Component;\n\n")
+                .append("import java.util.ArrayList;\n")
+                .append("import java.util.Arrays;\n")
+                .append("import java.util.Collections;\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.LinkedHashMap;\n")
+                .append("import java.util.List;\n")
+                .append("import java.util.Map;\n\n")
+                .append("/**\n * 由CommonMqTopologyProcessor根据")
+                .append(typeElement.getQualifiedName())
+                .append("生成,请勿修改\n */\n")
+                .append("@Component\n")
+                .append("public class ").append(className)
+                .append(" implements PrecompiledCommonMqConfig\n{\n")
+                .append("    private static final Map<String, String> CONFIG;\n\n")
+                .append("    private static final MqTopology TOPOLOGY;\n\n")
+                .append("    static\n    {\n")
+                .append("        Map<String, String> config = new LinkedHashMap<>();\n");
+        config.forEach((name, queues) -> source.append("        config.put(")
+                .append(literal(name)).append(", ").append(literal(queues))
+                .append(");\n"));
+        source.append("        CONFIG = Collections.unmodifiableMap(config);\n\n")
+                .append("        List<ExchangeDefine> exchangeDefines = new ArrayList<>(")
+                .append(exchangeDefines.size()).append(");\n");
+        for (ExchangeDefine exchangeDefine : exchangeDefines)
+        {
+            source.append("        exchangeDefines.add(new ExchangeDefine(")
+                    .append(literal(exchangeDefine.getName())).append(", ")
+                    .append(literal(exchangeDefine.getType()))
+                    .append(", Arrays.asList(");
+            List<QueueDefine> queueDefines = exchangeDefine.getQueueDefines();
+            for (int i = 0; i < queueDefines.size(); i++)
+            {
+                source.append(i == 0 ? "\n" : ",\n").append("                ");
+                appendQueueDefine(source, queueDefines.get(i));
+            }
+            source.append(")));\n");
+        }
+        source.append("        TOPOLOGY = new MqTopology(exchangeDefines, Collections.emptyList());\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Map<String, String> getConfig()\n    {\n        return CONFIG;\n    }\n\n")
+                .append("    @Override\n")
+                .append("    public MqTopology getTopology()\n    {\n        return TOPOLOGY;\n    }\n\n")
+                .append("    private static Map<String, Object> arguments(Object... keyValues)\n    {\n")
+                .append("        Map<String, Object> arguments = new HashMap<>(keyValues.length);\n")
+                .append("        for (int i = 0; i < keyValues.length; i += 2)\n        {\n")
+                .append("            arguments.put((String) keyValues[i], keyValues[i + 1]);\n")
+                .append("        }\n        return arguments;\n    }\n}\n");
+
+        String qualifiedName = packageName.isEmpty()
+                ? className
+                : packageName + "." + className;
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(qualifiedName, typeElement).openWriter())
+        {
+            writer.write(source.toString());
+        }
+        catch (IOException e)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "can not generate " + qualifiedName + ": " + e.getMessage(),
+                    typeElement);
+        }
+    }
+
+    private static void appendQueueDefine(StringBuilder source,
+            QueueDefine queueDefine)
+    {
+        source.append("QueueDefine.builder(").append(literal(queueDefine.getName()))
+                .append(")");
+        if (!queueDefine.getRoutingKeys().isEmpty())
+        {
+            source.append(".routingKeys(Arrays.asList(");
+            for (int i = 0; i < queueDefine.getRoutingKeys().size(); i++)
+            {
+                source.append(i == 0 ? "" : ", ")
+                        .append(literal(queueDefine.getRoutingKeys().get(i)));
+            }
+            source.append("))");
+        }
+        if (!queueDefine.getArguments().isEmpty())
+        {
+            source.append(".arguments(arguments(");
+            boolean first = true;
+            for (Map.Entry<String, Object> argument : queueDefine.getArguments()
+                    .entrySet())
+            {
+                source.append(first ? "" : ", ").append(literal(argument.getKey()))
+                        .append(", ").append(literal(argument.getValue()));
+                first = false;
+            }
+            source.append("))");
+        }
+        if (queueDefine.isPartitioned())
+        {
+            source.append(".partitions(").append(queueDefine.getPartitions())
+                    .append(")");
+        }
+        if (queueDefine.isRetryable())
+        {
+            source.append(".retryTiers(Arrays.asList(");
+            for (int i = 0; i < queueDefine.getRetryTiers().size(); i++)
+            {
+                source.append(i == 0 ? "" : ", ")
+                        .append(literal(queueDefine.getRetryTiers().get(i)));
+            }
+            source.append("))");
+        }
+        source.append(".build()");
+    }
+
+    /**
+     * 生成Java字面量,队列参数的值只会是String、Integer、Long
+     */
+    private static String literal(Object value)
+    {
+        if (value instanceof Long)
+        {
+            return value + "L";
+        }
+        if (value instanceof Integer)
+        {
+            return value.toString();
+        }
+        String text = String.valueOf(value);
+        StringBuilder literal = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if ('"' == c || '\\' == c)
+            {
+                literal.append('\\').append(c);
+            }
+            else if (c < 0x20 || c > 0x7e)
+            {
+                literal.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
@@ -0,0 +1,410 @@
+package com.frank.amqp.helper.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * amqp-helper的可选配置项,前缀为common.mq
+ */
+@Data
+@ConfigurationProperties(prefix = "common.mq")
+public class CommonMqProperties
+{
+    /**
+     * 拓扑声明相关配置
+     */
+    private Declare declare = new Declare();
+
+    /**
+     * bean注册相关配置
+     */
+    private Inject inject = new Inject();
+
+    /**
+     * 配置解析相关配置
+     */
+    private Parser parser = new Parser();
+
+    /**
+     * 异步发送器相关配置
+     */
+    private Publisher publisher = new Publisher();
+
+    /**
+     * 监听容器相关配置
+     */
+    private Listener listener = new Listener();
+
+    /**
+     * 拓扑热刷新相关配置
+     */
+    private Refresh refresh = new Refresh();
+
+    /**
+     * 消息编解码相关配置
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * RPC客户端相关配置
+     */
+    private Rpc rpc = new Rpc();
+
+    /**
+     * 消息飞行记录相关配置
+     */
+    private Recorder recorder = new Recorder();
+
+    /**
+     * 默认连接之外的命名连接分组,key为分组名称
+     */
+    private Map<String, ConnectionGroup> connections = new HashMap<>();
+
+    /**
+     * 交换机所在的连接分组,key为交换机名称,需使用placement[exchange.direct.xxx]=group的形式;
+     * 未配置的交换机使用默认连接
+     */
+    private Map<String, String> placement = new HashMap<>();
+
+    @Data
+    public static class Declare
+    {
+        /**
+         * 声明模式,默认由RabbitAdmin逐个声明
+         */
+        private DeclareMode mode = DeclareMode.BEAN;
+
+        /**
+         * bulk模式下单个批次内以nowait方式流水线发送的声明数量
+         */
+        private int batchSize = 500;
+
+        /**
+         * bulk模式下的拓扑快照文件路径,为空时不启用
+         * 启动时拓扑指纹与快照一致则跳过声明,仅在声明全部成功后更新快照
+         */
+        private String snapshotPath;
+    }
+
+    @Data
+    public static class Inject
+    {
+        /**
+         * bean注册方式,默认在CommonMqManager初始化时注册
+         */
+        private InjectMode mode = InjectMode.ASSISTANT;
+    }
+
+    @Data
+    public static class Refresh
+    {
+        /**
+         * 周期性检查配置变化的间隔,小于等于0时不检查,仅可通过TopologyRefresher#refresh手动刷新
+         */
+        private long intervalMillis = 0;
+    }
+
+    @Data
+    public static class Codec
+    {
+        /**
+         * 交换机使用的编解码器名称,需使用exchanges[exchange.direct.xxx]=binary的形式;
+         * 内置bytes、binary,容器中存在MessageConverter时为json,未配置的交换机使用容器中的MessageConverter
+         */
+        private Map<String, String> exchanges = new HashMap<>();
+
+        /**
+         * 编码后的消息体达到该字节数时以Deflate压缩,小于等于0时不压缩
+         */
+        private int compressThreshold = 0;
+
+        /**
+         * 池化的编码缓冲区、Deflater、Inflater的最大数量
+         */
+        private int bufferPoolSize = 64;
+
+        /**
+         * 可归还到池中的缓冲区最大容量,超过的缓冲区用后直接丢弃
+         */
+        private int maxPooledBufferBytes = 1024 * 1024;
+
+        /**
+         * 解压后消息体的最大字节数,超过时以MessageConversionException拒绝,防止压缩炸弹耗尽内存
+         */
+        private int maxInflatedBytes = 16 * 1024 * 1024;
+    }
+
+    @Data
+    public static class Dedup
+    {
+        /**
+         * 是否在处理前按消息id跳过已成功处理过的消息,用于故障切换后大批重新投递的场景
+         */
+        private boolean enabled = false;
+
+        /**
+         * 作为消息id的消息头,为空时使用message-id属性
+         */
+        private String header;
+
+        /**
+         * 已处理的id在缓存中的保留时间
+         */
+        private long ttlMillis = 10 * 60 * 1000;
+
+        /**
+         * 缓存的id数上限,每个id占用16字节堆外内存,所有开启去重的队列共用
+         */
+        private long maxEntries = 1024 * 1024;
+
+        /**
+         * 开启去重的队列,为空时对全部队列生效,分区队列使用配置中的队列名
+         */
+        private Set<String> queues = new HashSet<>();
+
+        public boolean appliesTo(String queueName)
+        {
+            return enabled && (queues.isEmpty() || queues.contains(queueName));
+        }
+    }
+
+    @Data
+    public static class Rpc
+    {
+        /**
+         * 是否为配置的direct交换机生成CommonMqRpcClient
+         */
+        private boolean enabled = false;
+
+        /**
+         * 允许RPC调用的routing key,key为交换机名称,需使用routing-keys[exchange.direct.xxx]=a,b的形式
+         */
+        private Map<String, Set<String>> routingKeys = new HashMap<>();
+
+        /**
+         * 默认的调用超时时间,同时作为请求的expiration
+         */
+        private long timeoutMillis = 5000;
+
+        /**
+         * 单个交换机未返回的调用数上限,向上取整为2的幂
+         */
+        private int maxInFlight = 16384;
+
+        /**
+         * 超时扫描间隔,即超时的精度
+         */
+        private long sweepIntervalMillis = 20;
+    }
+
+    @Data
+    public static class Recorder
+    {
+        /**
+         * 是否为每个交换机、队列记录最近的发送、确认、投递与处理结果,用于定位延迟突增
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每个交换机、队列保留的条目数,向上取整为2的幂,每条约占30字节
+         */
+        private int capacity = 1024;
+    }
+
+    @Data
+    public static class ConnectionGroup
+    {
+        /**
+         * broker地址列表,格式为host:port,多个地址以","分隔,配置后忽略host与port
+         */
+        private String addresses;
+
+        private String host = "localhost";
+
+        private int port = 5672;
+
+        private String virtualHost = "/";
+
+        private String username = "guest";
+
+        private String password = "guest";
+
+        /**
+         * 缓存的channel数量
+         */
+        private int channelCacheSize = 25;
+    }
+
+    @Data
+    public static class Parser
+    {
+        /**
+         * 存在格式错误的交换机或队列定义时是否中止启动,默认仅输出告警并忽略错误条目
+         */
+        private boolean failOnError = false;
+    }
+
+    @Data
+    public static class Publisher
+    {
+        /**
+         * 是否为每个交换机生成CommonMqPublisher
+         */
+        private boolean enabled = false;
+
+        /**
+         * 单个交换机未确认消息数上限,达到上限后新的发送立即失败
+         */
+        private int maxInFlight = 4096;
+
+        /**
+         * 每个连接分组用于发送的独立连接数,也是每个发送器的发送通道数,默认与消费共用一个连接;
+         * 单个AMQP连接由broker上的单个进程处理,多线程高吞吐发送时可设置为CPU核数
+         */
+        private int stripes = 1;
+
+        /**
+         * 发送前是否通过路由索引校验消息可路由,交换机上存在helper之外的绑定时不应开启
+         */
+        private boolean checkRoutable = false;
+
+        /**
+         * 本地发送缓冲相关配置
+         */
+        private Spool spool = new Spool();
+    }
+
+    @Data
+    public static class Spool
+    {
+        /**
+         * 是否先将消息写入本地日志再异步转发,broker阻塞连接或故障切换时发送方不受影响;
+         * 发送结果在写入日志后即完成,消息至少投递一次,交换机内保持顺序
+         */
+        private boolean enabled = false;
+
+        /**
+         * 日志目录,每个交换机使用以交换机名称命名的子目录
+         */
+        private String directory = "common-mq-spool";
+
+        /**
+         * 单个分段文件的字节数
+         */
+        private int segmentBytes = 64 * 1024 * 1024;
+
+        /**
+         * 单个交换机的分段数上限,全部写满且未确认时发送失败
+         */
+        private int maxSegments = 16;
+
+        /**
+         * 使用本地发送缓冲的交换机,为空时对全部交换机生效
+         */
+        private Set<String> exchanges = new HashSet<>();
+
+        public boolean appliesTo(String exchange)
+        {
+            return enabled && (exchanges.isEmpty() || exchanges.contains(exchange));
+        }
+    }
+
+    @Data
+    public static class Listener
+    {
+        /**
+         * 是否为存在ICommonMqConsumer的队列创建监听容器
+         */
+        private boolean enabled = false;
+
+        /**
+         * 消息的执行方式,virtual模式下在虚拟线程上处理消息,适用于调用HTTP、数据库等I/O密集的消费者;
+         * 分区队列需按序处理,始终在消费者线程上执行
+         */
+        private ListenerExecutionMode executionMode = ListenerExecutionMode.PLATFORM;
+
+        /**
+         * 消费端去重相关配置
+         */
+        private Dedup dedup = new Dedup();
+
+        /**
+         * 默认的队列级配置
+         */
+        private QueueListener defaults = new QueueListener(250, 1, 4, 100, 50L);
+
+        /**
+         * 按队列名称覆盖的配置,队列名含"."时需使用queues[queue.name].prefetch的形式
+         */
+        private Map<String, QueueListener> queues = new HashMap<>();
+
+        /**
+         * 根据队列深度与处理耗时调整消费者数量的间隔,小于等于0时不调整
+         */
+        private long scaleIntervalMillis = 5000;
+
+        /**
+         * 期望在多少秒内消费完当前积压,用于计算所需的消费者数量
+         */
+        private int targetDrainSeconds = 10;
+
+        /**
+         * 获取队列的配置,未覆盖的项使用默认配置
+         */
+        public QueueListener resolve(String queueName)
+        {
+            QueueListener queueListener = queues.get(queueName);
+            if (null == queueListener)
+            {
+                return defaults;
+            }
+            QueueListener resolved = new QueueListener();
+            resolved.setPrefetch(null != queueListener.getPrefetch()
+                    ? queueListener.getPrefetch() : defaults.getPrefetch());
+            resolved.setMinConcurrency(null != queueListener.getMinConcurrency()
+                    ? queueListener.getMinConcurrency() : defaults.getMinConcurrency());
+            resolved.setMaxConcurrency(null != queueListener.getMaxConcurrency()
+                    ? queueListener.getMaxConcurrency() : defaults.getMaxConcurrency());
+            resolved.setBatchSize(null != queueListener.getBatchSize()
+                    ? queueListener.getBatchSize() : defaults.getBatchSize());
+            resolved.setBatchTimeoutMillis(null != queueListener.getBatchTimeoutMillis()
+                    ? queueListener.getBatchTimeoutMillis() : defaults.getBatchTimeoutMillis());
+            return resolved;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QueueListener
+    {
+        private Integer prefetch;
+
+        private Integer minConcurrency;
+
+        private Integer maxConcurrency;
+
+        /**
+         * ICommonMqBatchListener每批处理的消息数上限,prefetch小于该值时按该值设置
+         */
+        private Integer batchSize;
+
+        /**
+         * ICommonMqBatchListener攒批的最长等待时间,超过后不足batchSize条也会处理
+         */
+        private Long batchTimeoutMillis;
+
+        public QueueListener(Integer prefetch, Integer minConcurrency,
+                Integer maxConcurrency)
+        {
+            this(prefetch, minConcurrency, maxConcurrency, null, null);
+        }
+    }
+}
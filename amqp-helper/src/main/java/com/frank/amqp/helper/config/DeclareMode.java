@@ -0,0 +1,23 @@
+package com.frank.amqp.helper.config;
+
+/**
+ * 拓扑(交换机、队列、绑定关系)的声明模式
+ */
+public enum DeclareMode
+{
+    /**
+     * 将交换机、队列、绑定关系注册为bean,由RabbitAdmin逐个声明
+     */
+    BEAN,
+
+    /**
+     * 仍然注册bean但不交由RabbitAdmin声明,由CommonMqBulkDeclarer在单个channel上分批流水线声明
+     */
+    BULK,
+
+    /**
+     * 启动时只解析拓扑,不注册也不声明;交换机在首次被发送器或监听容器使用时,
+     * 连同其队列、绑定关系一起注册为bean并声明,之后由RabbitAdmin在重连时声明
+     */
+    LAZY
+}
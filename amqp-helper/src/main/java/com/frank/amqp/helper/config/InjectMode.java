@@ -0,0 +1,17 @@
+package com.frank.amqp.helper.config;
+
+/**
+ * 交换机、队列、绑定关系bean的注册方式
+ */
+public enum InjectMode
+{
+    /**
+     * 在CommonMqManager初始化时通过DynamicInjectAssistant注册
+     */
+    ASSISTANT,
+
+    /**
+     * 在BeanDefinitionRegistryPostProcessor阶段提前注册,避免容器启动后注册bean定义带来的元数据缓存清理
+     */
+    REGISTRAR
+}
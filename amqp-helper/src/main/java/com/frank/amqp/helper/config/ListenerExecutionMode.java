@@ -0,0 +1,18 @@
+package com.frank.amqp.helper.config;
+
+/**
+ * 监听容器中消息的执行方式
+ */
+public enum ListenerExecutionMode
+{
+    /**
+     * 在容器的消费者线程上处理,并发度为消费者数量
+     */
+    PLATFORM,
+
+    /**
+     * 容器只保留一个消费者负责接收,每条消息在独立的虚拟线程上处理,
+     * 单个队列同时处理的消息数不超过prefetch,确认按投递顺序发出;需要JDK 21及以上
+     */
+    VIRTUAL
+}
@@ -0,0 +1,15 @@
+package com.frank.amqp.helper.config;
+
+import com.frank.amqp.helper.parser.model.MqTopology;
+
+/**
+ * 构建期已完成解析的配置,由CommonMqTopologyProcessor生成
+ * CommonMqManager直接使用getTopology返回的拓扑,启动时不再解析getConfig中的定义串
+ */
+public interface PrecompiledCommonMqConfig extends ICommonMqConfig
+{
+    /**
+     * @return 构建期解析得到的拓扑,不包含错误
+     */
+    MqTopology getTopology();
+}
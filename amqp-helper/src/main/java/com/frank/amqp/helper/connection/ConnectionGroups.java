@@ -0,0 +1,420 @@
+package com.frank.amqp.helper.connection;
+
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.rabbitmq.client.Address;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.rabbit.connection.AbstractConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 连接分组
+ * 默认分组使用spring boot创建的ConnectionFactory,其余分组按common.mq.connections各自创建连接,可指向不同的broker或vhost;
+ * 交换机按common.mq.placement映射到分组,未映射的交换机位于默认分组,交换机下的队列、绑定关系与交换机位于同一分组。
+ * 非默认分组的声明项以"commonMqAdmin.分组名称"限定声明者,容器中的RabbitAdmin不会声明它们,
+ * 由ConnectionGroupDeclarer通过分组自己的RabbitAdmin声明。
+ * common.mq.publisher.stripes大于1时,每个分组另建对应数量的发送连接,发送器在其上按线程分散发送,
+ * 默认分组的发送连接复用spring boot连接工厂底层的RabbitMQ ConnectionFactory(认证与SSL配置),
+ * 并复制spring连接工厂上的集群地址列表、vhost与publisher confirm/return设置,保证发送连接同样可以故障切换
+ */
+@Slf4j
+public class ConnectionGroups implements DisposableBean
+{
+    public static final String DEFAULT_GROUP = "default";
+
+    private static final String ADMIN_NAME_PREFIX = "commonMqAdmin.";
+
+    private static final Field ADDRESSES_FIELD = findAddressesField();
+
+    private final Map<String, ConnectionFactory> connectionFactories;
+
+    private final Map<String, AmqpAdmin> admins;
+
+    private final Map<String, String> placement;
+
+    /**
+     * 分组名称与发送连接的映射,未开启条带化时为分组自身的连接
+     */
+    private final Map<String, List<ConnectionFactory>> publisherConnectionFactories;
+
+    /**
+     * 由本类创建、需要在销毁时关闭的连接
+     */
+    private final List<CachingConnectionFactory> created;
+
+    /**
+     * 只有默认分组
+     */
+    public ConnectionGroups(ConnectionFactory defaultConnectionFactory)
+    {
+        this(defaultConnectionFactory, Collections.emptyMap(),
+                Collections.emptyMap());
+    }
+
+    /**
+     * @param defaultConnectionFactory 默认分组的连接
+     * @param groupConnectionFactories 分组名称与连接的映射
+     * @param placement                交换机名称与分组名称的映射
+     * @throws IllegalStateException 交换机映射到了不存在的分组
+     */
+    public ConnectionGroups(ConnectionFactory defaultConnectionFactory,
+            Map<String, ConnectionFactory> groupConnectionFactories,
+            Map<String, String> placement)
+    {
+        this(defaultConnectionFactory, groupConnectionFactories, placement,
+                Collections.emptyMap(), Collections.emptyList());
+    }
+
+    private ConnectionGroups(ConnectionFactory defaultConnectionFactory,
+            Map<String, ConnectionFactory> groupConnectionFactories,
+            Map<String, String> placement,
+            Map<String, List<ConnectionFactory>> stripes,
+            List<CachingConnectionFactory> created)
+    {
+        Map<String, ConnectionFactory> connectionFactories = new LinkedHashMap<>();
+        connectionFactories.put(DEFAULT_GROUP, defaultConnectionFactory);
+        groupConnectionFactories.forEach((group, connectionFactory) ->
+        {
+            if (DEFAULT_GROUP.equals(group))
+            {
+                throw new IllegalStateException(
+                        "###ConnectionGroups### init->connection group name can not be:"
+                                + DEFAULT_GROUP);
+            }
+            connectionFactories.put(group, connectionFactory);
+        });
+        placement.forEach((exchange, group) ->
+        {
+            if (!connectionFactories.containsKey(group))
+            {
+                throw new IllegalStateException(
+                        "###ConnectionGroups### init->exchange:" + exchange
+                                + " is placed on undefined connection group:"
+                                + group);
+            }
+        });
+
+        Map<String, AmqpAdmin> admins = new HashMap<>();
+        connectionFactories.forEach((group, connectionFactory) ->
+                admins.put(group, new RabbitAdmin(connectionFactory)));
+
+        Map<String, List<ConnectionFactory>> publisherConnectionFactories = new HashMap<>();
+        connectionFactories.forEach((group, connectionFactory) ->
+                publisherConnectionFactories.put(group, Collections
+                        .unmodifiableList(stripes.getOrDefault(group,
+                                Collections.singletonList(connectionFactory)))));
+
+        this.connectionFactories = Collections.unmodifiableMap(connectionFactories);
+        this.publisherConnectionFactories = Collections
+                .unmodifiableMap(publisherConnectionFactories);
+        this.admins = Collections.unmodifiableMap(admins);
+        this.placement = Collections.unmodifiableMap(new HashMap<>(placement));
+        this.created = created;
+    }
+
+    /**
+     * 按配置为每个命名分组创建连接
+     */
+    public static ConnectionGroups create(
+            ConnectionFactory defaultConnectionFactory,
+            CommonMqProperties commonMqProperties)
+    {
+        Map<String, ConnectionFactory> groupConnectionFactories = new LinkedHashMap<>();
+        List<CachingConnectionFactory> created = new ArrayList<>();
+        commonMqProperties.getConnections().forEach((group, properties) ->
+        {
+            CachingConnectionFactory connectionFactory = createConnectionFactory(
+                    properties);
+            connectionFactory.setBeanName(group + "ConnectionFactory");
+            groupConnectionFactories.put(group, connectionFactory);
+            created.add(connectionFactory);
+            log.debug(
+                    "###ConnectionGroups### init->connection group:{} -> {}/{}",
+                    group, StringUtils.hasText(properties.getAddresses())
+                            ? properties.getAddresses()
+                            : properties.getHost() + ":" + properties.getPort(),
+                    properties.getVirtualHost());
+        });
+        Map<String, List<ConnectionFactory>> stripes = new HashMap<>();
+        int stripeCount = commonMqProperties.getPublisher().getStripes();
+        if (stripeCount > 1)
+        {
+            List<ConnectionFactory> defaultStripes = createStripes(
+                    DEFAULT_GROUP, stripeCount,
+                    () -> createConnectionFactory(defaultConnectionFactory),
+                    created);
+            stripes.put(DEFAULT_GROUP, null == defaultStripes
+                    ? Collections.nCopies(stripeCount, defaultConnectionFactory)
+                    : defaultStripes);
+            commonMqProperties.getConnections().forEach((group, properties) ->
+                    stripes.put(group, createStripes(group, stripeCount,
+                            () -> createConnectionFactory(properties), created)));
+        }
+        try
+        {
+            return new ConnectionGroups(defaultConnectionFactory,
+                    groupConnectionFactories, commonMqProperties.getPlacement(),
+                    stripes, created);
+        }
+        catch (RuntimeException e)
+        {
+            created.forEach(CachingConnectionFactory::destroy);
+            throw e;
+        }
+    }
+
+    private static CachingConnectionFactory createConnectionFactory(
+            CommonMqProperties.ConnectionGroup properties)
+    {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(
+                properties.getHost(), properties.getPort());
+        if (StringUtils.hasText(properties.getAddresses()))
+        {
+            connectionFactory.setAddresses(properties.getAddresses());
+        }
+        connectionFactory.setVirtualHost(properties.getVirtualHost());
+        connectionFactory.setUsername(properties.getUsername());
+        connectionFactory.setPassword(properties.getPassword());
+        connectionFactory.setChannelCacheSize(properties.getChannelCacheSize());
+        return connectionFactory;
+    }
+
+    /**
+     * 创建分组的发送连接,连接名称带有分组与下标,便于在管理界面区分
+     *
+     * @return 发送连接,无法创建时为null
+     */
+    private static List<ConnectionFactory> createStripes(String group,
+            int stripeCount, Supplier<CachingConnectionFactory> factory,
+            List<CachingConnectionFactory> created)
+    {
+        List<ConnectionFactory> stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++)
+        {
+            CachingConnectionFactory connectionFactory = factory.get();
+            if (null == connectionFactory)
+            {
+                log.warn(
+                        "###ConnectionGroups### init->connection group:{} can not create publisher stripes, publishers share its connection",
+                        group);
+                return null;
+            }
+            final String name = "common-mq-publisher." + group + "." + i;
+            connectionFactory.setBeanName(name);
+            connectionFactory.setConnectionNameStrategy(cf -> name);
+            stripes.add(connectionFactory);
+            created.add(connectionFactory);
+        }
+        log.debug(
+                "###ConnectionGroups### init->connection group:{} publisher stripes:{}",
+                group, stripeCount);
+        return stripes;
+    }
+
+    /**
+     * 以spring连接工厂底层的RabbitMQ ConnectionFactory创建新的连接工厂
+     * RabbitMQ ConnectionFactory只保存单个host,集群地址列表保存在spring连接工厂上,需一并复制
+     *
+     * @return 新的连接工厂,连接工厂不基于RabbitMQ ConnectionFactory时为null
+     */
+    private static CachingConnectionFactory createConnectionFactory(
+            ConnectionFactory connectionFactory)
+    {
+        if (!(connectionFactory instanceof AbstractConnectionFactory))
+        {
+            return null;
+        }
+        AbstractConnectionFactory source = (AbstractConnectionFactory) connectionFactory;
+        CachingConnectionFactory stripe = new CachingConnectionFactory(
+                source.getRabbitConnectionFactory());
+        String addresses = addressesOf(source);
+        if (StringUtils.hasText(addresses))
+        {
+            stripe.setAddresses(addresses);
+        }
+        stripe.setVirtualHost(source.getVirtualHost());
+        stripe.setCloseTimeout(source.getCloseTimeout());
+        if (source instanceof CachingConnectionFactory)
+        {
+            CachingConnectionFactory caching = (CachingConnectionFactory) source;
+            if (caching.isPublisherConfirms())
+            {
+                stripe.setPublisherConfirms(true);
+            }
+            if (caching.isSimplePublisherConfirms())
+            {
+                stripe.setSimplePublisherConfirms(true);
+            }
+            stripe.setPublisherReturns(caching.isPublisherReturns());
+        }
+        stripe.setChannelCacheSize(1);
+        return stripe;
+    }
+
+    /**
+     * spring-rabbit 2.1未提供读取地址列表的方法,通过反射读取setAddresses设置的地址
+     *
+     * @return 逗号分隔的地址列表,未设置时为null
+     */
+    private static String addressesOf(AbstractConnectionFactory connectionFactory)
+    {
+        if (null == ADDRESSES_FIELD)
+        {
+            return null;
+        }
+        Address[] addresses = (Address[]) ReflectionUtils.getField(ADDRESSES_FIELD,
+                connectionFactory);
+        if (null == addresses || 0 == addresses.length)
+        {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Address address : addresses)
+        {
+            if (builder.length() > 0)
+            {
+                builder.append(',');
+            }
+            builder.append(address.getHost());
+            if (address.getPort() > 0)
+            {
+                builder.append(':').append(address.getPort());
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Field findAddressesField()
+    {
+        Field field = ReflectionUtils.findField(AbstractConnectionFactory.class,
+                "addresses", Address[].class);
+        if (null == field)
+        {
+            log.warn(
+                    "###ConnectionGroups### init->can not read addresses of connection factory, publisher stripes connect to its host only");
+            return null;
+        }
+        ReflectionUtils.makeAccessible(field);
+        return field;
+    }
+
+    /**
+     * 非默认分组的声明项在declaringAdmins中使用的名称
+     */
+    public static String adminName(String group)
+    {
+        return ADMIN_NAME_PREFIX + group;
+    }
+
+    /**
+     * 根据声明项的declaringAdmins判断其所在分组
+     */
+    public static String groupOf(Declarable declarable)
+    {
+        for (Object admin : declarable.getDeclaringAdmins())
+        {
+            if (admin instanceof String
+                    && ((String) admin).startsWith(ADMIN_NAME_PREFIX))
+            {
+                return ((String) admin).substring(ADMIN_NAME_PREFIX.length());
+            }
+        }
+        return DEFAULT_GROUP;
+    }
+
+    /**
+     * 按所在分组归类声明项,保持原有顺序
+     */
+    public static Map<String, List<Declarable>> partition(
+            Collection<? extends Declarable> declarables)
+    {
+        Map<String, List<Declarable>> partitioned = new LinkedHashMap<>();
+        for (Declarable declarable : declarables)
+        {
+            partitioned.computeIfAbsent(groupOf(declarable),
+                    group -> new ArrayList<>()).add(declarable);
+        }
+        return partitioned;
+    }
+
+    /**
+     * @return 交换机所在的分组
+     */
+    public String groupOf(String exchange)
+    {
+        return placement.getOrDefault(exchange, DEFAULT_GROUP);
+    }
+
+    /**
+     * @return 交换机所在分组的连接
+     */
+    public ConnectionFactory connectionFactoryFor(String exchange)
+    {
+        return getConnectionFactory(groupOf(exchange));
+    }
+
+    public ConnectionFactory getConnectionFactory(String group)
+    {
+        ConnectionFactory connectionFactory = connectionFactories.get(group);
+        if (null == connectionFactory)
+        {
+            throw new IllegalArgumentException(
+                    "###ConnectionGroups### undefined connection group:" + group);
+        }
+        return connectionFactory;
+    }
+
+    /**
+     * @return 交换机所在分组的发送连接,未开启条带化时只有分组自身的连接
+     */
+    public List<ConnectionFactory> publisherConnectionFactoriesFor(
+            String exchange)
+    {
+        return publisherConnectionFactories.get(groupOf(exchange));
+    }
+
+    /**
+     * @return 分组的RabbitAdmin,未关联ApplicationContext,只声明显式传入的声明项
+     */
+    public AmqpAdmin getAdmin(String group)
+    {
+        AmqpAdmin admin = admins.get(group);
+        if (null == admin)
+        {
+            throw new IllegalArgumentException(
+                    "###ConnectionGroups### undefined connection group:" + group);
+        }
+        return admin;
+    }
+
+    /**
+     * @return 全部分组名称,默认分组在首位
+     */
+    public Set<String> getGroups()
+    {
+        return connectionFactories.keySet();
+    }
+
+    @Override
+    public void destroy()
+    {
+        created.forEach(CachingConnectionFactory::destroy);
+    }
+}
@@ -0,0 +1,48 @@
+package com.frank.amqp.helper.declare;
+
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+
+import java.util.Collection;
+
+/**
+ * 通过AmqpAdmin同步声明一组声明项,用于拓扑刷新、按需声明等少量声明的场景
+ */
+public final class AmqpAdminDeclarer
+{
+    private AmqpAdminDeclarer()
+    {
+    }
+
+    /**
+     * 交换机与队列必须先于绑定关系声明
+     */
+    public static void declare(AmqpAdmin amqpAdmin,
+            Collection<? extends Declarable> declarables)
+    {
+        for (Declarable declarable : declarables)
+        {
+            if (declarable instanceof Exchange)
+            {
+                amqpAdmin.declareExchange((Exchange) declarable);
+            }
+        }
+        for (Declarable declarable : declarables)
+        {
+            if (declarable instanceof Queue)
+            {
+                amqpAdmin.declareQueue((Queue) declarable);
+            }
+        }
+        for (Declarable declarable : declarables)
+        {
+            if (declarable instanceof Binding)
+            {
+                amqpAdmin.declareBinding((Binding) declarable);
+            }
+        }
+    }
+}
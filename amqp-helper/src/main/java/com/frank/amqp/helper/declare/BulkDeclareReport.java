@@ -0,0 +1,92 @@
+package com.frank.amqp.helper.declare;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次bulk声明的执行报告,记录每个批次的耗时以及最终声明失败的条目
+ */
+@Getter
+public class BulkDeclareReport
+{
+    private final List<BatchTiming> batchTimings = new ArrayList<>();
+
+    private final List<String> failedItems = new ArrayList<>();
+
+    private long totalNanos;
+
+    /**
+     * 拓扑指纹与本地快照一致,本次未进行声明
+     */
+    private boolean skipped;
+
+    static BulkDeclareReport skipped()
+    {
+        BulkDeclareReport report = new BulkDeclareReport();
+        report.skipped = true;
+        return report;
+    }
+
+    void addBatch(BatchTiming batchTiming)
+    {
+        batchTimings.add(batchTiming);
+    }
+
+    void addFailedItem(String item)
+    {
+        failedItems.add(item);
+    }
+
+    void finish(long totalNanos)
+    {
+        this.totalNanos = totalNanos;
+    }
+
+    public List<BatchTiming> getBatchTimings()
+    {
+        return Collections.unmodifiableList(batchTimings);
+    }
+
+    public List<String> getFailedItems()
+    {
+        return Collections.unmodifiableList(failedItems);
+    }
+
+    public boolean isSuccess()
+    {
+        return failedItems.isEmpty();
+    }
+
+    /**
+     * 单个批次的耗时统计
+     */
+    @Getter
+    public static class BatchTiming
+    {
+        private final int index;
+
+        private final int size;
+
+        private final long nanos;
+
+        /**
+         * 批次整体失败后是否退化为逐条声明
+         */
+        private final boolean fallback;
+
+        private final int failedCount;
+
+        BatchTiming(int index, int size, long nanos, boolean fallback,
+                int failedCount)
+        {
+            this.index = index;
+            this.size = size;
+            this.nanos = nanos;
+            this.fallback = fallback;
+            this.failedCount = failedCount;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.frank.amqp.helper.declare;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 在单个channel上批量声明CommonMqManager解析出的拓扑
+ * 1.按交换机、队列、绑定关系的顺序排列所有声明项,并按batchSize切分批次;
+ * 2.批次内的声明项以nowait方式连续发送,不等待broker逐条应答;
+ * 3.每个批次末尾发送一次同步的passive声明作为屏障,屏障返回即代表批次内的声明已全部被broker处理;
+ * 4.nowait声明失败会导致channel被broker关闭,此时仅对失败批次内的条目在新channel上逐条同步声明。
+ * 服务端命名(名称为空)的队列需要同步获取队列名,不会以nowait方式声明。
+ * 连接建立时只声明默认连接分组的声明项,其余分组由ConnectionGroupDeclarer在各自的连接上声明。
+ */
+@Slf4j
+public class CommonMqBulkDeclarer implements ConnectionListener, InitializingBean
+{
+    /**
+     * 作为同步屏障的交换机,所有AMQP 0-9-1 broker均会预先声明
+     */
+    private static final String BARRIER_EXCHANGE = "amq.direct";
+
+    private static final String DELAYED_EXCHANGE_TYPE = "x-delayed-message";
+
+    /**
+     * 快照匹配时抽查的队列数
+     */
+    private static final int VERIFY_QUEUE_SAMPLE = 32;
+
+    private final ConnectionFactory connectionFactory;
+
+    private final CommonMqManager commonMqManager;
+
+    private final int batchSize;
+
+    /**
+     * 拓扑快照,为null时每次连接均完整声明
+     */
+    private final TopologySnapshotStore snapshotStore;
+
+    private final AtomicBoolean firstConnection = new AtomicBoolean(true);
+
+    private volatile BulkDeclareReport lastReport;
+
+    public CommonMqBulkDeclarer(ConnectionFactory connectionFactory,
+            CommonMqManager commonMqManager, int batchSize)
+    {
+        this(connectionFactory, commonMqManager, batchSize, null);
+    }
+
+    public CommonMqBulkDeclarer(ConnectionFactory connectionFactory,
+            CommonMqManager commonMqManager, int batchSize,
+            TopologySnapshotStore snapshotStore)
+    {
+        this.connectionFactory = connectionFactory;
+        this.commonMqManager = commonMqManager;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.snapshotStore = snapshotStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        //与RabbitAdmin一致,每次(重新)建立连接时都进行声明
+        connectionFactory.addConnectionListener(this);
+    }
+
+    @Override
+    public void onCreate(Connection connection)
+    {
+        List<Declarable> declarables = commonMqManager
+                .getDeclarables(ConnectionGroups.DEFAULT_GROUP);
+        TopologyFingerprint fingerprint = null;
+        if (null != snapshotStore)
+        {
+            fingerprint = TopologyFingerprint
+                    .compute(brokerAddress(), declarables);
+            //仅信任进程内首次连接时的快照,断线重连后broker可能已丢失拓扑,需要完整声明
+            if (firstConnection.compareAndSet(true, false)
+                    && fingerprint.matches(snapshotStore.readDigest())
+                    && verify(connection, declarables))
+            {
+                log.info(
+                        "###CommonMqBulkDeclarer->declare### topology fingerprint:{} matches snapshot:{}, skip declare...",
+                        fingerprint, snapshotStore.getPath());
+                lastReport = BulkDeclareReport.skipped();
+                return;
+            }
+        }
+
+        BulkDeclareReport report = declare(connection, declarables);
+        lastReport = report;
+        if (null != fingerprint && report.isSuccess())
+        {
+            snapshotStore.write(fingerprint);
+        }
+    }
+
+    /**
+     * 快照只说明上次声明成功,broker可能已被重建或拓扑被手工删除,跳过声明前以passive声明确认:
+     * 检查全部交换机与按固定间隔抽样的VERIFY_QUEUE_SAMPLE个队列,任一不存在(404)时返回false
+     *
+     * @return 抽查的交换机与队列均存在
+     */
+    private boolean verify(Connection connection, List<Declarable> declarables)
+    {
+        List<String> exchanges = new ArrayList<>();
+        List<String> queues = new ArrayList<>();
+        for (Declarable declarable : declarables)
+        {
+            if (declarable instanceof Exchange
+                    && StringUtils.hasText(((Exchange) declarable).getName()))
+            {
+                exchanges.add(((Exchange) declarable).getName());
+            }
+            else if (declarable instanceof Queue
+                    && StringUtils.hasText(((Queue) declarable).getName()))
+            {
+                queues.add(((Queue) declarable).getName());
+            }
+        }
+        int step = Math.max(1, queues.size() / VERIFY_QUEUE_SAMPLE);
+        long start = System.nanoTime();
+        Channel channel = null;
+        String checking = null;
+        try
+        {
+            channel = connection.createChannel(false);
+            for (String exchange : exchanges)
+            {
+                checking = "Exchange:" + exchange;
+                channel.exchangeDeclarePassive(exchange);
+            }
+            for (int i = 0; i < queues.size(); i += step)
+            {
+                checking = "Queue:" + queues.get(i);
+                channel.queueDeclarePassive(queues.get(i));
+            }
+            log.debug(
+                    "###CommonMqBulkDeclarer->verify### {} exchanges and {} sampled queues exist, cost {}ms",
+                    exchanges.size(), (queues.size() + step - 1) / step,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return true;
+        }
+        catch (Exception e)
+        {
+            log.warn(
+                    "###CommonMqBulkDeclarer->verify### {} is missing on broker although snapshot matches, declare all, error:{}",
+                    checking, e.getMessage());
+            return false;
+        }
+        finally
+        {
+            closeQuietly(channel);
+        }
+    }
+
+    private String brokerAddress()
+    {
+        return connectionFactory.getHost() + ":" + connectionFactory.getPort()
+                + "/" + connectionFactory.getVirtualHost();
+    }
+
+    public BulkDeclareReport getLastReport()
+    {
+        return lastReport;
+    }
+
+    /**
+     * 批量声明
+     *
+     * @param connection  用于创建channel的连接
+     * @param declarables 需要声明的交换机、队列、绑定关系
+     * @return 声明报告
+     */
+    public BulkDeclareReport declare(Connection connection,
+            Collection<Declarable> declarables)
+    {
+        BulkDeclareReport report = new BulkDeclareReport();
+        long start = System.nanoTime();
+
+        List<Declarable> ordered = order(declarables);
+        Channel channel = null;
+        try
+        {
+            int batchIndex = 0;
+            for (int from = 0; from < ordered.size(); from += batchSize)
+            {
+                List<Declarable> batch = ordered
+                        .subList(from, Math.min(from + batchSize, ordered.size()));
+                if (null == channel || !channel.isOpen())
+                {
+                    channel = connection.createChannel(false);
+                }
+                channel = declareBatch(connection, channel, batch,
+                        batchIndex++, report);
+            }
+        }
+        finally
+        {
+            closeQuietly(channel);
+        }
+
+        report.finish(System.nanoTime() - start);
+        CommonMqMetrics metrics = commonMqManager.getMetrics();
+        metrics.phase(CommonMqMetrics.Phase.DECLARE)
+                .record(report.getTotalNanos());
+        metrics.onDeclareFailures(report.getFailedItems().size());
+        log.info(
+                "###CommonMqBulkDeclarer->declare### declared {} items in {} batches, cost {}ms, failed:{}",
+                ordered.size(), report.getBatchTimings().size(),
+                TimeUnit.NANOSECONDS.toMillis(report.getTotalNanos()),
+                report.getFailedItems());
+        return report;
+    }
+
+    private Channel declareBatch(Connection connection, Channel channel,
+            List<Declarable> batch, int batchIndex, BulkDeclareReport report)
+    {
+        long batchStart = System.nanoTime();
+        try
+        {
+            for (Declarable declarable : batch)
+            {
+                declareItem(channel, declarable, true);
+            }
+            //同步屏障:broker按序处理同一channel上的命令,屏障返回即代表之前的nowait声明均已成功
+            channel.exchangeDeclarePassive(BARRIER_EXCHANGE);
+
+            report.addBatch(new BulkDeclareReport.BatchTiming(batchIndex,
+                    batch.size(), System.nanoTime() - batchStart, false, 0));
+            log.debug(
+                    "###CommonMqBulkDeclarer->declare### batch:{} size:{} cost:{}us",
+                    batchIndex, batch.size(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - batchStart));
+            return channel;
+        }
+        catch (Exception e)
+        {
+            log.warn(
+                    "###CommonMqBulkDeclarer->declare### batch:{} failed, fallback to declare one by one, error:{}",
+                    batchIndex, e.getMessage());
+        }
+
+        //批次失败,channel已被broker关闭,逐条同步声明以定位失败条目
+        int failedCount = 0;
+        closeQuietly(channel);
+        channel = null;
+        for (Declarable declarable : batch)
+        {
+            try
+            {
+                if (null == channel || !channel.isOpen())
+                {
+                    channel = connection.createChannel(false);
+                }
+                declareItem(channel, declarable, false);
+            }
+            catch (Exception e)
+            {
+                failedCount++;
+                report.addFailedItem(describe(declarable));
+                log.error(
+                        "###CommonMqBulkDeclarer->declare### declare {} failed, error:",
+                        describe(declarable), e);
+                closeQuietly(channel);
+                channel = null;
+            }
+        }
+        report.addBatch(new BulkDeclareReport.BatchTiming(batchIndex,
+                batch.size(), System.nanoTime() - batchStart, true,
+                failedCount));
+        return channel;
+    }
+
+    private void declareItem(Channel channel, Declarable declarable,
+            boolean noWait) throws IOException
+    {
+        if (declarable instanceof Exchange)
+        {
+            Exchange exchange = (Exchange) declarable;
+            String type = exchange.getType();
+            Map<String, Object> arguments = exchange.getArguments();
+            if (exchange.isDelayed())
+            {
+                arguments = new HashMap<>(arguments);
+                arguments.put("x-delayed-type", type);
+                type = DELAYED_EXCHANGE_TYPE;
+            }
+
+            if (noWait)
+            {
+                channel.exchangeDeclareNoWait(exchange.getName(), type,
+                        exchange.isDurable(), exchange.isAutoDelete(),
+                        exchange.isInternal(), arguments);
+            }
+            else
+            {
+                channel.exchangeDeclare(exchange.getName(), type,
+                        exchange.isDurable(), exchange.isAutoDelete(),
+                        exchange.isInternal(), arguments);
+            }
+        }
+        else if (declarable instanceof Queue)
+        {
+            Queue queue = (Queue) declarable;
+            //服务端命名的队列需要同步拿到broker生成的队列名
+            if (noWait && StringUtils.hasText(queue.getName()))
+            {
+                channel.queueDeclareNoWait(queue.getName(), queue.isDurable(),
+                        queue.isExclusive(), queue.isAutoDelete(),
+                        queue.getArguments());
+            }
+            else
+            {
+                String actualName = channel.queueDeclare(queue.getName(),
+                        queue.isDurable(), queue.isExclusive(),
+                        queue.isAutoDelete(), queue.getArguments()).getQueue();
+                queue.setActualName(actualName);
+            }
+        }
+        else if (declarable instanceof Binding)
+        {
+            Binding binding = (Binding) declarable;
+            if (binding.isDestinationQueue())
+            {
+                if (noWait)
+                {
+                    channel.queueBindNoWait(binding.getDestination(),
+                            binding.getExchange(), binding.getRoutingKey(),
+                            binding.getArguments());
+                }
+                else
+                {
+                    channel.queueBind(binding.getDestination(),
+                            binding.getExchange(), binding.getRoutingKey(),
+                            binding.getArguments());
+                }
+            }
+            else
+            {
+                if (noWait)
+                {
+                    channel.exchangeBindNoWait(binding.getDestination(),
+                            binding.getExchange(), binding.getRoutingKey(),
+                            binding.getArguments());
+                }
+                else
+                {
+                    channel.exchangeBind(binding.getDestination(),
+                            binding.getExchange(), binding.getRoutingKey(),
+                            binding.getArguments());
+                }
+            }
+        }
+    }
+
+    /**
+     * 交换机与队列必须先于绑定关系声明
+     */
+    private static List<Declarable> order(Collection<Declarable> declarables)
+    {
+        List<Declarable> exchanges = new ArrayList<>();
+        List<Declarable> queues = new ArrayList<>();
+        List<Declarable> bindings = new ArrayList<>();
+        for (Declarable declarable : declarables)
+        {
+            if (declarable instanceof Exchange)
+            {
+                exchanges.add(declarable);
+            }
+            else if (declarable instanceof Queue)
+            {
+                queues.add(declarable);
+            }
+            else if (declarable instanceof Binding)
+            {
+                bindings.add(declarable);
+            }
+        }
+
+        List<Declarable> ordered = new ArrayList<>(
+                exchanges.size() + queues.size() + bindings.size());
+        ordered.addAll(exchanges);
+        ordered.addAll(queues);
+        ordered.addAll(bindings);
+        return ordered;
+    }
+
+    private static String describe(Declarable declarable)
+    {
+        if (declarable instanceof Exchange)
+        {
+            return "Exchange:" + ((Exchange) declarable).getName();
+        }
+        else if (declarable instanceof Queue)
+        {
+            return "Queue:" + ((Queue) declarable).getName();
+        }
+        else if (declarable instanceof Binding)
+        {
+            Binding binding = (Binding) declarable;
+            return "Binding:" + binding.getExchange() + "->"
+                    + binding.getDestination() + "(" + binding.getRoutingKey()
+                    + ")";
+        }
+        return String.valueOf(declarable);
+    }
+
+    private static void closeQuietly(Channel channel)
+    {
+        if (null == channel || !channel.isOpen())
+        {
+            return;
+        }
+        try
+        {
+            channel.close();
+        }
+        catch (Exception e)
+        {
+            log.debug(
+                    "###CommonMqBulkDeclarer->declare### close channel error:{}",
+                    e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.frank.amqp.helper.declare;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.config.DeclareMode;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.List;
+
+/**
+ * 在非默认连接分组的连接上声明该分组的交换机、队列、绑定关系
+ * 与RabbitAdmin一致,每次(重新)建立连接时都进行声明;
+ * bulk模式下以CommonMqBulkDeclarer流水线声明,其余模式通过分组的RabbitAdmin逐个声明,
+ * lazy模式下只有已被使用的交换机会出现在声明项中
+ */
+@Slf4j
+public class ConnectionGroupDeclarer implements InitializingBean
+{
+    private final ConnectionGroups connectionGroups;
+
+    private final CommonMqManager commonMqManager;
+
+    private final CommonMqProperties.Declare declareProperties;
+
+    public ConnectionGroupDeclarer(ConnectionGroups connectionGroups,
+            CommonMqManager commonMqManager,
+            CommonMqProperties.Declare declareProperties)
+    {
+        this.connectionGroups = connectionGroups;
+        this.commonMqManager = commonMqManager;
+        this.declareProperties = declareProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        for (String group : connectionGroups.getGroups())
+        {
+            if (ConnectionGroups.DEFAULT_GROUP.equals(group))
+            {
+                continue;
+            }
+            connectionGroups.getConnectionFactory(group)
+                    .addConnectionListener(new GroupListener(group));
+        }
+    }
+
+    private void declare(String group, Connection connection)
+    {
+        List<Declarable> declarables = commonMqManager.getDeclarables(group);
+        if (declarables.isEmpty())
+        {
+            return;
+        }
+
+        if (DeclareMode.BULK == declareProperties.getMode())
+        {
+            new CommonMqBulkDeclarer(connectionGroups.getConnectionFactory(group),
+                    commonMqManager, declareProperties.getBatchSize())
+                    .declare(connection, declarables);
+            return;
+        }
+
+        CommonMqMetrics metrics = commonMqManager.getMetrics();
+        long start = System.nanoTime();
+        try
+        {
+            AmqpAdminDeclarer.declare(connectionGroups.getAdmin(group),
+                    declarables);
+            log.debug(
+                    "###ConnectionGroupDeclarer->declare### group:{} declared {} items",
+                    group, declarables.size());
+        }
+        catch (RuntimeException e)
+        {
+            metrics.onDeclareFailures(1);
+            log.error(
+                    "###ConnectionGroupDeclarer->declare### group:{} declare failed, error:",
+                    group, e);
+        }
+        finally
+        {
+            metrics.phase(CommonMqMetrics.Phase.DECLARE)
+                    .record(System.nanoTime() - start);
+        }
+    }
+
+    private final class GroupListener implements ConnectionListener
+    {
+        private final String group;
+
+        private GroupListener(String group)
+        {
+            this.group = group;
+        }
+
+        @Override
+        public void onCreate(Connection connection)
+        {
+            declare(group, connection);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.frank.amqp.helper.declare;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.frank.amqp.helper.refresh.TopologyDiff;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Declarable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * lazy模式下的按需声明
+ * 交换机首次被使用时由CommonMqManager#activate注册其交换机、队列、绑定关系,并立即在broker上声明,
+ * 结果按交换机名称缓存,之后的调用只做一次集合查询;
+ * 声明项通过交换机所在连接分组的RabbitAdmin声明;
+ * 已注册的bean在之后的重连中由RabbitAdmin声明,因此首次声明失败(如broker暂不可用)时同样会在连接建立后补齐
+ */
+@Slf4j
+public class LazyTopologyDeclarer implements TopologyActivator
+{
+    private final CommonMqManager commonMqManager;
+
+    private final ConnectionGroups connectionGroups;
+
+    private final Set<String> activated = ConcurrentHashMap.newKeySet();
+
+    public LazyTopologyDeclarer(CommonMqManager commonMqManager,
+            ConnectionGroups connectionGroups)
+    {
+        this.commonMqManager = commonMqManager;
+        this.connectionGroups = connectionGroups;
+    }
+
+    @Override
+    public void activate(String exchange)
+    {
+        if (activated.contains(exchange))
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (activated.contains(exchange))
+            {
+                return;
+            }
+            TopologyDiff diff = commonMqManager.activate(exchange);
+            CommonMqMetrics metrics = commonMqManager.getMetrics();
+            long start = System.nanoTime();
+            try
+            {
+                for (Map.Entry<String, List<Declarable>> entry : ConnectionGroups
+                        .partition(diff.getAdded()).entrySet())
+                {
+                    AmqpAdminDeclarer.declare(
+                            connectionGroups.getAdmin(entry.getKey()),
+                            entry.getValue());
+                }
+                log.debug(
+                        "###LazyTopologyDeclarer->activate### exchange:{} declared {} items",
+                        exchange, diff.getAdded().size());
+            }
+            catch (RuntimeException e)
+            {
+                metrics.onDeclareFailures(1);
+                log.warn(
+                        "###LazyTopologyDeclarer->activate### exchange:{} declare failed, RabbitAdmin will declare it on the next connection, error:{}",
+                        exchange, e.getMessage());
+            }
+            finally
+            {
+                metrics.phase(CommonMqMetrics.Phase.DECLARE)
+                        .record(System.nanoTime() - start);
+            }
+            activated.add(exchange);
+        }
+    }
+
+    public boolean isActivated(String exchange)
+    {
+        return activated.contains(exchange);
+    }
+}
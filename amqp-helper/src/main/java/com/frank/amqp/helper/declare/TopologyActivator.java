@@ -0,0 +1,14 @@
+package com.frank.amqp.helper.declare;
+
+/**
+ * 按需声明交换机,lazy模式下由发送器与监听容器在首次使用交换机前调用
+ */
+public interface TopologyActivator
+{
+    /**
+     * 确保交换机及其队列、绑定关系已注册并声明,已声明过的交换机直接返回
+     *
+     * @param exchange 交换机名称
+     */
+    void activate(String exchange);
+}
@@ -0,0 +1,158 @@
+package com.frank.amqp.helper.declare;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 拓扑指纹
+ * 将broker地址与每个交换机、队列、绑定关系的全部声明属性规范化为字符串条目,
+ * 排序后计算SHA-256,与配置顺序、Map遍历顺序以及JVM无关
+ */
+public final class TopologyFingerprint
+{
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final List<String> entries;
+
+    private final byte[] digest;
+
+    TopologyFingerprint(List<String> entries, byte[] digest)
+    {
+        this.entries = Collections.unmodifiableList(entries);
+        this.digest = digest;
+    }
+
+    /**
+     * 计算拓扑指纹
+     *
+     * @param brokerAddress broker地址,拓扑相同但broker不同时指纹不同
+     * @param declarables   交换机、队列、绑定关系
+     * @return 指纹
+     */
+    public static TopologyFingerprint compute(String brokerAddress,
+            Collection<Declarable> declarables)
+    {
+        List<String> entries = new ArrayList<>(declarables.size() + 1);
+        entries.add("C|" + brokerAddress);
+        for (Declarable declarable : declarables)
+        {
+            String entry = canonicalize(declarable);
+            if (null != entry)
+            {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries);
+        return new TopologyFingerprint(entries, digest(entries));
+    }
+
+    static byte[] digest(List<String> entries)
+    {
+        try
+        {
+            MessageDigest messageDigest = MessageDigest
+                    .getInstance(DIGEST_ALGORITHM);
+            for (String entry : entries)
+            {
+                messageDigest.update(entry.getBytes(StandardCharsets.UTF_8));
+                messageDigest.update((byte) '\n');
+            }
+            return messageDigest.digest();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 声明项的规范化描述,包含全部声明属性,描述相同的声明项在broker上等价
+     */
+    public static String canonicalize(Declarable declarable)
+    {
+        if (declarable instanceof Exchange)
+        {
+            Exchange exchange = (Exchange) declarable;
+            return "E|" + exchange.getName() + "|" + exchange.getType() + "|"
+                    + exchange.isDurable() + "|" + exchange.isAutoDelete() + "|"
+                    + exchange.isInternal() + "|" + exchange.isDelayed() + "|"
+                    + sorted(exchange.getArguments());
+        }
+        else if (declarable instanceof Queue)
+        {
+            Queue queue = (Queue) declarable;
+            return "Q|" + queue.getName() + "|" + queue.isDurable() + "|"
+                    + queue.isExclusive() + "|" + queue.isAutoDelete() + "|"
+                    + sorted(queue.getArguments());
+        }
+        else if (declarable instanceof Binding)
+        {
+            Binding binding = (Binding) declarable;
+            return "B|" + binding.getExchange() + "|"
+                    + binding.getDestinationType() + "|"
+                    + binding.getDestination() + "|" + binding.getRoutingKey()
+                    + "|" + sorted(binding.getArguments());
+        }
+        return null;
+    }
+
+    private static String sorted(Map<String, Object> arguments)
+    {
+        return null == arguments || arguments.isEmpty()
+                ? "{}"
+                : new TreeMap<>(arguments).toString();
+    }
+
+    public List<String> getEntries()
+    {
+        return entries;
+    }
+
+    public byte[] getDigest()
+    {
+        return digest.clone();
+    }
+
+    public boolean matches(byte[] otherDigest)
+    {
+        return null != otherDigest && MessageDigest.isEqual(digest, otherDigest);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof TopologyFingerprint
+                && Arrays.equals(digest, ((TopologyFingerprint) o).digest);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(digest);
+    }
+}
@@ -0,0 +1,118 @@
+package com.frank.amqp.helper.declare;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 本地磁盘上的拓扑快照
+ * 文件格式(deflate压缩):
+ * int magic | short version | short digestLength | byte[] digest | long writtenAt | int entryCount | UTF entry...
+ * 写入时先写临时文件再原子替换,进程在写入过程中退出不会留下损坏的快照
+ */
+@Slf4j
+public class TopologySnapshotStore
+{
+    private static final int MAGIC = 0x414D5148;
+
+    private static final short VERSION = 1;
+
+    private final Path path;
+
+    public TopologySnapshotStore(Path path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * 读取快照中保存的拓扑指纹摘要
+     *
+     * @return 摘要,快照不存在或无法识别时返回null
+     */
+    public byte[] readDigest()
+    {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))))
+        {
+            if (MAGIC != in.readInt() || VERSION != in.readShort())
+            {
+                log.warn(
+                        "###TopologySnapshotStore->read### snapshot:{} format is unknown, ignore...",
+                        path);
+                return null;
+            }
+            byte[] digest = new byte[in.readShort()];
+            in.readFully(digest);
+            return digest;
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException e)
+        {
+            log.warn(
+                    "###TopologySnapshotStore->read### read snapshot:{} error:{}",
+                    path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 将拓扑指纹写入快照
+     */
+    public void write(TopologyFingerprint fingerprint)
+    {
+        try
+        {
+            Path parent = path.toAbsolutePath().getParent();
+            if (null != parent)
+            {
+                Files.createDirectories(parent);
+            }
+            Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+            byte[] digest = fingerprint.getDigest();
+            try (DataOutputStream out = new DataOutputStream(
+                    new DeflaterOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(tmpPath)))))
+            {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeShort(digest.length);
+                out.write(digest);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(fingerprint.getEntries().size());
+                for (String entry : fingerprint.getEntries())
+                {
+                    out.writeUTF(entry);
+                }
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            log.debug(
+                    "###TopologySnapshotStore->write### write snapshot:{} fingerprint:{} success!",
+                    path, fingerprint);
+        }
+        catch (IOException e)
+        {
+            log.warn(
+                    "###TopologySnapshotStore->write### write snapshot:{} error:{}",
+                    path, e.getMessage());
+        }
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+}
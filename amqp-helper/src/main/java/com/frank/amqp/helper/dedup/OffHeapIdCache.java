@@ -0,0 +1,268 @@
+package com.frank.amqp.helper.dedup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 堆外的消息id缓存,用于消费端去重
+ * 1.只保存id的64位散列与过期时刻,每条16字节,存放在DirectByteBuffer中,缓存数千万id也不增加GC扫描的对象;
+ * 2.按散列的高位分为多个段,段内开放寻址、线性探测,每个段各自加锁,消费者线程之间互不阻塞;
+ * 3.容量固定,探测窗口内没有空位或过期位时覆盖窗口内最早过期的条目,过期条目在查找时视为不存在并在写入时复用。
+ * 散列冲突会把不同的id误判为重复,64位散列在千万级条目下的概率可以忽略
+ */
+public class OffHeapIdCache
+{
+    private static final int SLOT_BYTES = 16;
+
+    private static final int EXPIRES_OFFSET = 8;
+
+    /**
+     * 单次查找与写入最多探测的槽位数
+     */
+    private static final int PROBE_LIMIT = 16;
+
+    private static final int MAX_SEGMENTS = 64;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final int slotMask;
+
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries 条目数上限,按段向上取整为2的幂
+     * @param ttlMillis  条目的有效时间
+     */
+    public OffHeapIdCache(long maxEntries, long ttlMillis)
+    {
+        if (maxEntries <= 0 || ttlMillis <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "###OffHeapIdCache### maxEntries and ttlMillis must be positive");
+        }
+        int segmentCount = (int) Math.min(MAX_SEGMENTS,
+                Math.max(1, Long.highestOneBit(maxEntries / (PROBE_LIMIT * 4))));
+        long slotsPerSegment = Math.max(PROBE_LIMIT,
+                Long.highestOneBit((maxEntries + segmentCount - 1) / segmentCount - 1) << 1);
+        if (slotsPerSegment * SLOT_BYTES > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(
+                    "###OffHeapIdCache### maxEntries " + maxEntries + " is too large");
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment((int) slotsPerSegment);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.slotMask = (int) slotsPerSegment - 1;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 计算id在命名空间内的64位散列,不同队列的相同id互不影响
+     *
+     * @return 非0的散列值
+     */
+    public static long hash(String namespace, String id)
+    {
+        //FNV-1a,命名空间与id之间以不会出现在字符中的值分隔,最后以murmur3的fmix64打散
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < namespace.length(); i++)
+        {
+            hash = (hash ^ namespace.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0x10000) * 0x100000001b3L;
+        for (int i = 0; i < id.length(); i++)
+        {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return 0 == hash ? 1 : hash;
+    }
+
+    /**
+     * @param key hash计算出的散列
+     * @return 是否存在未过期的条目,同时计入命中或未命中
+     */
+    public boolean contains(long key)
+    {
+        long now = System.currentTimeMillis();
+        Segment segment = segmentOf(key);
+        boolean found;
+        synchronized (segment)
+        {
+            found = segment.find(key, (int) key & slotMask, now) >= 0;
+        }
+        if (found)
+        {
+            hits.increment();
+        }
+        else
+        {
+            misses.increment();
+        }
+        return found;
+    }
+
+    /**
+     * 写入或续期条目
+     *
+     * @param key hash计算出的散列
+     */
+    public void put(long key)
+    {
+        long now = System.currentTimeMillis();
+        Segment segment = segmentOf(key);
+        synchronized (segment)
+        {
+            if (segment.put(key, (int) key & slotMask, now, now + ttlMillis))
+            {
+                evictions.increment();
+            }
+        }
+    }
+
+    private Segment segmentOf(long key)
+    {
+        return segments[(int) (key >>> 32) & segmentMask];
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * 容量不足时被覆盖的未过期条目数,持续增长说明maxEntries偏小
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * 已占用的槽位数,包括已过期但尚未被复用的条目
+     */
+    public long getSize()
+    {
+        long size = 0;
+        for (Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.occupied;
+            }
+        }
+        return size;
+    }
+
+    public long getCapacity()
+    {
+        return (long) segments.length * (slotMask + 1);
+    }
+
+    public long getTtlMillis()
+    {
+        return ttlMillis;
+    }
+
+    /**
+     * 单个段的槽位,格式: long key | long expiresAtMillis,key为0表示空位;
+     * 条目只会被覆盖,不会被清空,查找遇到空位即可结束
+     */
+    private final class Segment
+    {
+        private final ByteBuffer slots;
+
+        private int occupied;
+
+        private Segment(int slotCount)
+        {
+            this.slots = ByteBuffer.allocateDirect(slotCount * SLOT_BYTES);
+        }
+
+        private int find(long key, int start, long now)
+        {
+            for (int probe = 0; probe < PROBE_LIMIT; probe++)
+            {
+                int offset = ((start + probe) & slotMask) * SLOT_BYTES;
+                long slotKey = slots.getLong(offset);
+                if (0 == slotKey)
+                {
+                    return -1;
+                }
+                if (slotKey == key)
+                {
+                    return slots.getLong(offset + EXPIRES_OFFSET) > now ? offset : -1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return 是否覆盖了未过期的条目
+         */
+        private boolean put(long key, int start, long now, long expiresAt)
+        {
+            int target = -1;
+            int oldest = -1;
+            long oldestExpiresAt = Long.MAX_VALUE;
+            for (int probe = 0; probe < PROBE_LIMIT; probe++)
+            {
+                int offset = ((start + probe) & slotMask) * SLOT_BYTES;
+                long slotKey = slots.getLong(offset);
+                if (0 == slotKey)
+                {
+                    if (-1 == target)
+                    {
+                        target = offset;
+                        occupied++;
+                    }
+                    break;
+                }
+                long slotExpiresAt = slots.getLong(offset + EXPIRES_OFFSET);
+                if (slotKey == key)
+                {
+                    slots.putLong(offset + EXPIRES_OFFSET, expiresAt);
+                    return false;
+                }
+                //继续探测,之后的槽位可能已存在相同的key
+                if (-1 == target && slotExpiresAt <= now)
+                {
+                    target = offset;
+                }
+                if (slotExpiresAt < oldestExpiresAt)
+                {
+                    oldestExpiresAt = slotExpiresAt;
+                    oldest = offset;
+                }
+            }
+            boolean evicted = -1 == target;
+            if (evicted)
+            {
+                target = oldest;
+            }
+            slots.putLong(target, key);
+            slots.putLong(target + EXPIRES_OFFSET, expiresAt);
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.frank.amqp.helper.inject;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.config.ICommonMqConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+/**
+ * 在bean定义注册阶段完成拓扑解析与bean注册
+ * 1.从registry中取得ICommonMqConfig实例并解析出交换机、队列、绑定关系;
+ * 2.以实例作为instanceSupplier注册bean定义,此时容器尚未开始创建bean,注册不会触发元数据缓存的清理;
+ * 3.将已完成解析的CommonMqManager同样以instanceSupplier注册,其余依赖在容器正常创建bean时再解析。
+ * 注意:ICommonMqConfig会在后置处理阶段被提前实例化,此时@Value、@Autowired等注入尚不可用,
+ * 其实现需要能够独立返回配置
+ */
+@Slf4j
+public class CommonMqBeanRegistrar
+        implements BeanDefinitionRegistryPostProcessor, EnvironmentAware
+{
+    public static final String MANAGER_BEAN_NAME = "commonMqManager";
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment)
+    {
+        this.environment = environment;
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(
+            BeanDefinitionRegistry registry) throws BeansException
+    {
+        if (!(registry instanceof ListableBeanFactory))
+        {
+            log.debug(
+                    "###CommonMqBeanRegistrar### registry->registry is not a bean factory, can not get ICommonMqConfig...");
+            return;
+        }
+        if (registry.containsBeanDefinition(MANAGER_BEAN_NAME))
+        {
+            log.debug(
+                    "###CommonMqBeanRegistrar### registry->{} already exists, skip...",
+                    MANAGER_BEAN_NAME);
+            return;
+        }
+
+        ListableBeanFactory beanFactory = (ListableBeanFactory) registry;
+        String[] configNames = beanFactory
+                .getBeanNamesForType(ICommonMqConfig.class, false, false);
+        if (1 != configNames.length)
+        {
+            log.debug(
+                    "###CommonMqBeanRegistrar### registry->Expect one ICommonMqConfig but found {}...",
+                    configNames.length);
+            return;
+        }
+        ICommonMqConfig commonMqConfig = beanFactory
+                .getBean(configNames[0], ICommonMqConfig.class);
+
+        CommonMqProperties commonMqProperties = Binder.get(environment)
+                .bind("common.mq", CommonMqProperties.class)
+                .orElseGet(CommonMqProperties::new);
+
+        final CommonMqManager commonMqManager = new CommonMqManager(
+                commonMqConfig, new DynamicInjectAssistant(registry),
+                commonMqProperties);
+        try
+        {
+            commonMqManager.afterPropertiesSet();
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(
+                    "###CommonMqBeanRegistrar### registry->CommonMqManager init failed",
+                    e);
+        }
+
+        registry.registerBeanDefinition(MANAGER_BEAN_NAME, BeanDefinitionBuilder
+                .genericBeanDefinition(CommonMqManager.class,
+                        () -> commonMqManager).getBeanDefinition());
+        log.debug(
+                "###CommonMqBeanRegistrar### registry->register {} declarables success!",
+                commonMqManager.getDeclarables().size());
+    }
+
+    @Override
+    public void postProcessBeanFactory(
+            ConfigurableListableBeanFactory beanFactory) throws BeansException
+    {
+    }
+}
@@ -0,0 +1,120 @@
+package com.frank.amqp.helper.inject;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 动态注入bean
+ * 1.以已创建的实例作为instanceSupplier构建beanDefinition,不再通过反射拷贝实例成员;
+ * 2.通过registerBeanDefinition,将实例注入到spring容器中,拓扑刷新时通过removeBeanDefinition移除
+ * 未指定registry时在afterPropertiesSet中从上下文获取,
+ * 由CommonMqBeanRegistrar创建时则直接使用后置处理阶段的registry
+ */
+@Slf4j
+@Component
+public class DynamicInjectAssistant implements InitializingBean
+{
+    private BeanDefinitionRegistry registry;
+
+    public DynamicInjectAssistant()
+    {
+    }
+
+    public DynamicInjectAssistant(BeanDefinitionRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        if (null != registry)
+        {
+            return;
+        }
+
+        ApplicationContext applicationContext = ApplicationContextKeeper
+                .getApplicationContext();
+        if (null == applicationContext)
+        {
+            log.debug(
+                    "###DynamicInjectAssistant### afterPropertiesSet->Can not get applicationContext...");
+            return;
+        }
+
+        registry = (BeanDefinitionRegistry) applicationContext
+                .getAutowireCapableBeanFactory();
+    }
+
+    public <T> void inject(Map<String, T> beanMap, Class<T> beanClazz)
+    {
+        if (registry == null)
+        {
+            log.debug(
+                    "###DynamicInjectAssistant### inject-> registry is null, so can not dynamic inject bean to container...");
+            return;
+        }
+
+        for (Map.Entry<String, T> beanEntry : beanMap.entrySet())
+        {
+            final String beanName = beanEntry.getKey();
+            final T bean = beanEntry.getValue();
+            inject(bean, beanName, beanClazz);
+        }
+    }
+
+    /**
+     * 单Bean的动态注入
+     *
+     * @param bean
+     * @param beanName
+     * @param targetClazz
+     * @param <T>
+     */
+    public <T> void inject(Object bean, String beanName,
+            Class<T> targetClazz)
+    {
+        if (registry == null)
+        {
+            log.debug(
+                    "###DynamicInjectAssistant### inject-> registry is null, so can not dynamic inject bean to container...");
+            return;
+        }
+
+        final T instance = targetClazz.cast(bean);
+        //以已创建的实例作为instanceSupplier,容器创建bean时直接返回该实例
+        AbstractBeanDefinition beanDefinition = BeanDefinitionBuilder
+                .genericBeanDefinition(targetClazz, () -> instance)
+                .getBeanDefinition();
+        registry.registerBeanDefinition(beanName, beanDefinition);
+
+        log.debug(
+                "###DynamicInjectAssistant### inject->Dynamic inject bean:{} class:{} success!",
+                beanName, targetClazz);
+    }
+
+    /**
+     * 移除动态注入的bean,已创建的单例会一并销毁
+     *
+     * @param beanName
+     */
+    public void remove(String beanName)
+    {
+        if (registry == null || !registry.containsBeanDefinition(beanName))
+        {
+            return;
+        }
+
+        registry.removeBeanDefinition(beanName);
+        log.debug(
+                "###DynamicInjectAssistant### remove->Dynamic remove bean:{} success!",
+                beanName);
+    }
+}
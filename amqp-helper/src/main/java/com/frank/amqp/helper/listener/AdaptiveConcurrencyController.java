@@ -0,0 +1,143 @@
+package com.frank.amqp.helper.listener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+
+import java.util.Collection;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据队列深度与处理耗时周期性调整消费者数量
+ * 1.队列无积压时每个周期释放一个消费者,直至最小值;
+ * 2.有积压但本周期没有处理任何消息时增加一个消费者;
+ * 3.否则按 积压数 * 平均处理耗时 / 期望消化时间 计算所需的消费者数量,
+ * 需要扩容时一次扩到位,需要缩容时每个周期只减少一个,避免抖动。
+ */
+@Slf4j
+public class AdaptiveConcurrencyController
+{
+    private final Collection<ManagedQueue> managedQueues;
+
+    /**
+     * 查询队列深度所用的AmqpAdmin,各队列可能位于不同的broker
+     */
+    private final Function<ManagedQueue, AmqpAdmin> adminResolver;
+
+    private final long intervalMillis;
+
+    private final int targetDrainSeconds;
+
+    private ScheduledExecutorService scheduler;
+
+    public AdaptiveConcurrencyController(Collection<ManagedQueue> managedQueues,
+            AmqpAdmin amqpAdmin, long intervalMillis, int targetDrainSeconds)
+    {
+        this(managedQueues, managedQueue -> amqpAdmin, intervalMillis,
+                targetDrainSeconds);
+    }
+
+    public AdaptiveConcurrencyController(Collection<ManagedQueue> managedQueues,
+            Function<ManagedQueue, AmqpAdmin> adminResolver, long intervalMillis,
+            int targetDrainSeconds)
+    {
+        this.managedQueues = managedQueues;
+        this.adminResolver = adminResolver;
+        this.intervalMillis = intervalMillis;
+        this.targetDrainSeconds = Math.max(1, targetDrainSeconds);
+    }
+
+    public synchronized void start()
+    {
+        if (null != scheduler || intervalMillis <= 0)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "common-mq-concurrency-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjust, intervalMillis,
+                intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop()
+    {
+        if (null != scheduler)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    void adjust()
+    {
+        for (ManagedQueue managedQueue : managedQueues)
+        {
+            try
+            {
+                adjust(managedQueue);
+            }
+            catch (Exception e)
+            {
+                log.warn(
+                        "###AdaptiveConcurrencyController->adjust### queue:{} adjust failed, error:{}",
+                        managedQueue.getQueueName(), e.getMessage());
+            }
+        }
+    }
+
+    private void adjust(ManagedQueue managedQueue)
+    {
+        long[] stats = managedQueue.getStats().drain();
+        Properties queueProperties = adminResolver.apply(managedQueue)
+                .getQueueProperties(managedQueue.getQueueName());
+        if (null == queueProperties)
+        {
+            return;
+        }
+        Object messageCount = queueProperties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+        long depth = messageCount instanceof Number
+                ? ((Number) messageCount).longValue()
+                : 0;
+        managedQueue.getMetrics().setDepth(depth);
+
+        int current = managedQueue.getConcurrency();
+        int target = desiredConcurrency(depth, stats[0], stats[1], current);
+        if (target != current)
+        {
+            managedQueue.scaleTo(target);
+            log.debug(
+                    "###AdaptiveConcurrencyController->adjust### queue:{} depth:{} processed:{} consumers {} -> {}",
+                    managedQueue.getQueueName(), depth, stats[0], current,
+                    managedQueue.getConcurrency());
+        }
+    }
+
+    int desiredConcurrency(long depth, long processed, long processingNanos,
+            int current)
+    {
+        if (0 == depth)
+        {
+            return current - 1;
+        }
+        if (0 == processed)
+        {
+            return current + 1;
+        }
+
+        double averageSeconds = processingNanos / (double) processed / 1e9;
+        long needed = (long) Math.ceil(depth * averageSeconds / targetDrainSeconds);
+        if (needed > current)
+        {
+            return (int) Math.min(Integer.MAX_VALUE, needed);
+        }
+        return needed < current ? current - 1 : current;
+    }
+}
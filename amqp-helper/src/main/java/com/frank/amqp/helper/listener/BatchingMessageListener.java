@@ -0,0 +1,420 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import com.frank.amqp.helper.recorder.FlightEventType;
+import com.frank.amqp.helper.recorder.FlightRing;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.ImmediateAcknowledgeAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 批量消费策略,容器需使用MANUAL确认模式且prefetch不小于batchSize
+ * 1.每个消费者(即每个channel)各自攒批,攒够batchSize条时在消费者线程上处理,
+ * 最早的消息等待超过batchTimeoutMillis时,由共享调度线程上的定时检查交给本队列的处理线程处理,
+ * 处理耗时较长的队列不会推迟其他队列的超时批次;
+ * 2.处理完成后按投递顺序确认:连续成功的消息合并为一次multiple确认,被拒绝的消息单独nack,
+ * 配置了延迟重试的队列由RetryForwarder转发后正常确认;
+ * 3.攒批期间的消息尚未确认,channel关闭后由broker重新投递,同时丢弃该channel上未处理的批次;
+ * 4.开启去重时,已成功处理过的消息在加入批次前跳过并单独确认,批次中处理成功的消息写入去重缓存;
+ * 5.定时检查与处理线程在start时创建,stop时取消,由CommonMqListenerContainerRegistry随容器启停调用
+ */
+@Slf4j
+class BatchingMessageListener implements ChannelAwareMessageListener
+{
+    private final String queueName;
+
+    private final ICommonMqBatchListener delegate;
+
+    private final int batchSize;
+
+    private final long timeoutNanos;
+
+    private final RetryForwarder forwarder;
+
+    private final QueueListenerStats stats;
+
+    private final QueueMetrics metrics;
+
+    private final FlightRing flightRing;
+
+    private final DedupFilter dedup;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long sweepMillis;
+
+    private final Map<Channel, Batch> batches = new ConcurrentHashMap<>();
+
+    private ScheduledFuture<?> sweepFuture;
+
+    /**
+     * 处理超时批次的线程,每个队列一个
+     */
+    private ExecutorService timeoutExecutor;
+
+    /**
+     * @param forwarder  延迟重试的转发,为null时被拒绝的消息重新入队
+     * @param flightRing 队列的飞行记录,为null时不记录
+     * @param dedup      消费端去重,为null时不去重
+     * @param scheduler  检查超时批次的调度线程,多个队列共享,只做检查不处理批次
+     */
+    BatchingMessageListener(String queueName, ICommonMqBatchListener delegate,
+            int batchSize, long timeoutMillis, RetryForwarder forwarder,
+            QueueListenerStats stats, QueueMetrics metrics,
+            FlightRing flightRing, DedupFilter dedup,
+            ScheduledExecutorService scheduler)
+    {
+        this.queueName = queueName;
+        this.delegate = delegate;
+        this.batchSize = Math.max(1, batchSize);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.forwarder = forwarder;
+        this.stats = stats;
+        this.metrics = metrics;
+        this.flightRing = flightRing;
+        this.dedup = dedup;
+        this.scheduler = scheduler;
+        this.sweepMillis = Math.max(1, timeoutMillis / 4);
+    }
+
+    /**
+     * 开始检查超时批次,已开始时不做任何操作
+     */
+    synchronized void start()
+    {
+        if (null != sweepFuture)
+        {
+            return;
+        }
+        timeoutExecutor = Executors.newSingleThreadExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "common-mq-batch-" + queueName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweepFuture = scheduler.scheduleWithFixedDelay(this::sweep, sweepMillis,
+                sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 取消超时检查并丢弃未处理的批次,需在容器停止后调用;
+     * 攒批中的消息尚未确认,channel关闭后由broker重新投递
+     */
+    synchronized void stop()
+    {
+        if (null == sweepFuture)
+        {
+            return;
+        }
+        sweepFuture.cancel(false);
+        sweepFuture = null;
+        //正在处理的超时批次执行完毕后处理线程退出
+        timeoutExecutor.shutdown();
+        timeoutExecutor = null;
+        batches.clear();
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel)
+    {
+        Batch batch = batches.get(channel);
+        if (null == batch)
+        {
+            batch = batches.computeIfAbsent(channel, Batch::new);
+        }
+        batch.lock.lock();
+        try
+        {
+            if (null != dedup && dedup.isDuplicate(dedup.keyOf(message)))
+            {
+                ackDuplicate(batch.channel, message);
+                return;
+            }
+            batch.add(message);
+            if (batch.messages.size() >= batchSize)
+            {
+                flush(batch);
+            }
+        }
+        finally
+        {
+            batch.lock.unlock();
+        }
+    }
+
+    /**
+     * 重复的消息不进入批次,单独确认不影响之后以multiple确认的批次;调用方需持有batch.lock
+     */
+    private void ackDuplicate(Channel channel, Message message)
+    {
+        try
+        {
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        }
+        catch (Exception e)
+        {
+            log.debug(
+                    "###BatchingMessageListener->ack### queue:{} ack duplicate failed, it will be redelivered, error:{}",
+                    queueName, e.getMessage());
+        }
+    }
+
+    /**
+     * 将等待超时的批次交给处理线程,并移除已关闭channel上的批次
+     */
+    private void sweep()
+    {
+        ExecutorService executor = timeoutExecutor;
+        if (null == executor)
+        {
+            return;
+        }
+        try
+        {
+            for (Batch batch : batches.values())
+            {
+                if (!batch.channel.isOpen())
+                {
+                    batches.remove(batch.channel, batch);
+                    log.debug(
+                            "###BatchingMessageListener->sweep### queue:{} channel closed, discard pending messages",
+                            queueName);
+                    continue;
+                }
+                if (batch.isTimedOut() && batch.timeoutQueued.compareAndSet(false, true))
+                {
+                    executor.execute(() -> flushTimedOut(batch));
+                }
+            }
+        }
+        catch (RejectedExecutionException e)
+        {
+            log.debug(
+                    "###BatchingMessageListener->sweep### queue:{} stopped, skip timed out batches",
+                    queueName);
+        }
+        catch (RuntimeException e)
+        {
+            log.error(
+                    "###BatchingMessageListener->sweep### queue:{} sweep failed, error:",
+                    queueName, e);
+        }
+    }
+
+    private void flushTimedOut(Batch batch)
+    {
+        batch.lock.lock();
+        try
+        {
+            //等待处理期间批次可能已在消费者线程上攒满处理
+            if (batch.isTimedOut())
+            {
+                flush(batch);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            log.error(
+                    "###BatchingMessageListener->sweep### queue:{} flush timed out batch failed, error:",
+                    queueName, e);
+        }
+        finally
+        {
+            batch.timeoutQueued.set(false);
+            batch.lock.unlock();
+        }
+    }
+
+    /**
+     * 调用方需持有batch.lock
+     */
+    private void flush(Batch batch)
+    {
+        CommonMqBatch commonMqBatch = new CommonMqBatch(queueName,
+                batch.drain());
+        long start = System.nanoTime();
+        try
+        {
+            delegate.onBatch(commonMqBatch);
+        }
+        catch (ImmediateAcknowledgeAmqpException e)
+        {
+            log.debug(
+                    "###BatchingMessageListener->flush### queue:{} batch of {} acknowledged immediately",
+                    queueName, commonMqBatch.size());
+        }
+        catch (Exception e)
+        {
+            log.warn(
+                    "###BatchingMessageListener->flush### queue:{} batch of {} failed, error:",
+                    queueName, commonMqBatch.size(), e);
+            commonMqBatch.nackRemaining(e instanceof RuntimeException
+                    ? (RuntimeException) e
+                    : new AmqpException(e));
+        }
+        long end = System.nanoTime();
+        settle(batch.channel, commonMqBatch, end, end - start);
+    }
+
+    private void settle(Channel channel, CommonMqBatch batch, long end,
+            long nanos)
+    {
+        int size = batch.size();
+        long perMessageNanos = nanos / size;
+        stats.record(size, nanos);
+        long ackUpTo = -1;
+        try
+        {
+            for (int i = 0; i < size; i++)
+            {
+                Message message = batch.getMessages().get(i);
+                long deliveryTag = message.getMessageProperties().getDeliveryTag();
+                RuntimeException failure = batch.getFailure(i);
+                metrics.onConsumed(perMessageNanos, null == failure);
+                if (null != flightRing)
+                {
+                    flightRing.record(null == failure ? FlightEventType.ACK : FlightEventType.FAIL,
+                            message.getMessageProperties().getReceivedRoutingKey(),
+                            message.getBody().length, end, nanos);
+                }
+                if (null == failure && null != dedup)
+                {
+                    dedup.onProcessed(dedup.keyOf(message));
+                }
+                if (null != failure && null != forwarder)
+                {
+                    failure = forward(message, channel, failure);
+                }
+                if (null == failure)
+                {
+                    ackUpTo = deliveryTag;
+                    continue;
+                }
+                if (ackUpTo >= 0)
+                {
+                    channel.basicAck(ackUpTo, true);
+                    ackUpTo = -1;
+                }
+                channel.basicNack(deliveryTag, false,
+                        !rejectedWithoutRequeue(failure));
+            }
+            if (ackUpTo >= 0)
+            {
+                channel.basicAck(ackUpTo, true);
+            }
+        }
+        catch (Exception e)
+        {
+            log.debug(
+                    "###BatchingMessageListener->ack### queue:{} ack failed, unacked messages will be redelivered, error:{}",
+                    queueName, e.getMessage());
+        }
+    }
+
+    /**
+     * @return 转发成功时返回null,原消息正常确认
+     */
+    private RuntimeException forward(Message message, Channel channel,
+            RuntimeException failure)
+    {
+        try
+        {
+            forwarder.forward(message, channel, failure);
+            return null;
+        }
+        catch (AmqpRejectAndDontRequeueException e)
+        {
+            return e;
+        }
+    }
+
+    private static boolean rejectedWithoutRequeue(Throwable error)
+    {
+        for (Throwable cause = error; null != cause; cause = cause.getCause())
+        {
+            if (cause instanceof AmqpRejectAndDontRequeueException)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 单个channel上攒批中的消息,deliveryTag按投递顺序递增
+     */
+    private final class Batch
+    {
+        private final Channel channel;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private List<Message> messages = new ArrayList<>();
+
+        /**
+         * 批次中最早消息的到达时刻,0表示批次为空,供调度线程不加锁地判断是否超时
+         */
+        private volatile long pendingSince;
+
+        /**
+         * 超时批次已交给处理线程、尚未处理,避免调度线程重复提交
+         */
+        private final AtomicBoolean timeoutQueued = new AtomicBoolean();
+
+        private Batch(Channel channel)
+        {
+            this.channel = channel;
+        }
+
+        private boolean isTimedOut()
+        {
+            long since = pendingSince;
+            return 0 != since && System.nanoTime() - since >= timeoutNanos;
+        }
+
+        private void add(Message message)
+        {
+            long now = 0;
+            if (messages.isEmpty() || null != flightRing)
+            {
+                now = System.nanoTime();
+            }
+            if (messages.isEmpty())
+            {
+                pendingSince = 0 == now ? 1 : now;
+            }
+            messages.add(message);
+            if (null != flightRing)
+            {
+                flightRing.record(FlightEventType.DELIVER,
+                        message.getMessageProperties().getReceivedRoutingKey(),
+                        message.getBody().length, now, 0);
+            }
+        }
+
+        private List<Message> drain()
+        {
+            List<Message> drained = messages;
+            messages = new ArrayList<>(Math.min(batchSize, 1024));
+            pendingSince = 0;
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.frank.amqp.helper.listener;
+
+import org.springframework.amqp.core.Message;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 交给ICommonMqBatchListener处理的一批消息
+ * 未调用nack的消息在onBatch正常返回后视为处理成功
+ */
+public final class CommonMqBatch
+{
+    private final String queueName;
+
+    private final List<Message> messages;
+
+    private final RuntimeException[] failures;
+
+    CommonMqBatch(String queueName, List<Message> messages)
+    {
+        this.queueName = queueName;
+        this.messages = Collections.unmodifiableList(messages);
+        this.failures = new RuntimeException[messages.size()];
+    }
+
+    public String getQueueName()
+    {
+        return queueName;
+    }
+
+    /**
+     * @return 按投递顺序排列的消息
+     */
+    public List<Message> getMessages()
+    {
+        return messages;
+    }
+
+    public int size()
+    {
+        return messages.size();
+    }
+
+    /**
+     * 单独拒绝一条消息,处理方式与单条消费时抛出该异常相同:
+     * 配置了延迟重试的队列转发到重试梯度或停放队列,其余队列重新入队,
+     * AmqpRejectAndDontRequeueException不重新入队
+     *
+     * @param index 消息在getMessages()中的下标
+     * @param cause 失败原因
+     */
+    public void nack(int index, RuntimeException cause)
+    {
+        if (null == cause)
+        {
+            throw new IllegalArgumentException(
+                    "###CommonMqBatch### nack->cause must not be null");
+        }
+        failures[index] = cause;
+    }
+
+    /**
+     * @return 消息的失败原因,未拒绝时返回null
+     */
+    public RuntimeException getFailure(int index)
+    {
+        return failures[index];
+    }
+
+    /**
+     * 将尚未拒绝的消息全部以cause拒绝
+     */
+    void nackRemaining(RuntimeException cause)
+    {
+        for (int i = 0; i < failures.length; i++)
+        {
+            if (null == failures[i])
+            {
+                failures[i] = cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.config.ListenerExecutionMode;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.frank.amqp.helper.dedup.OffHeapIdCache;
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import com.frank.amqp.helper.recorder.FlightRecorder;
+import com.frank.amqp.helper.refresh.TopologyRefreshedEvent;
+import com.frank.amqp.helper.rpc.CommonMqRpcServer;
+import com.frank.amqp.helper.rpc.ICommonMqRpcHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * 为CommonMqManager创建的队列自动创建监听容器
+ * 只有存在对应ICommonMqConsumer的队列才会创建容器,预取数量与最小、最大消费者数量按队列配置,
+ * 运行期间由AdaptiveConcurrencyController在最小与最大消费者数量之间调整;
+ * 分区队列的监听器以配置中的队列名匹配,每个分区各创建一个容器,且固定为单个消费者以保证同一分区key的消息按序处理;
+ * 容器使用队列所属交换机所在连接分组的连接;
+ * ICommonMqPayloadListener接收按交换机编解码器解码后的消息对象,ICommonMqRpcHandler由CommonMqRpcServer解码请求并发送应答;
+ * 配置了重试梯度的队列,处理失败的消息由RetryingMessageListener转发到重试梯度或停放队列,不会重新入队;
+ * 开启去重的队列跳过已成功处理过的消息,单条消费由DedupMessageListener跳过,批量消费在消息加入批次前跳过,
+ * 所有队列共用一个堆外的OffHeapIdCache,RPC服务端不去重;
+ * 拓扑刷新后为新增的队列补充创建容器,从配置中移除的队列保留其容器以消费剩余的消息
+ */
+@Slf4j
+public class CommonMqListenerContainerRegistry
+        implements InitializingBean, SmartLifecycle, DisposableBean,
+        ApplicationListener<TopologyRefreshedEvent>
+{
+    private final ConnectionGroups connectionGroups;
+
+    private final CommonMqManager commonMqManager;
+
+    private final List<ICommonMqConsumer> listeners;
+
+    private final CommonMqProperties.Listener listenerProperties;
+
+    private final TopologyActivator topologyActivator;
+
+    private final MessageCodecRegistry messageCodecRegistry;
+
+    private final FlightRecorder flightRecorder;
+
+    private final Map<String, ICommonMqConsumer> listenerMap = new HashMap<>();
+
+    private final Map<String, ManagedQueue> managedQueues = new ConcurrentHashMap<>();
+
+    private AdaptiveConcurrencyController concurrencyController;
+
+    private OffHeapIdCache idempotencyCache;
+
+    /**
+     * 批量消费者检查超时批次的调度线程,存在批量消费者时创建
+     */
+    private ScheduledExecutorService batchScheduler;
+
+    private volatile boolean running;
+
+    /**
+     * @param connectionGroups   队列所在分组的连接
+     * @param listeners          队列消费者
+     * @param listenerProperties 监听容器配置
+     */
+    public static Builder builder(ConnectionGroups connectionGroups,
+            CommonMqManager commonMqManager, List<ICommonMqConsumer> listeners,
+            CommonMqProperties.Listener listenerProperties)
+    {
+        return new Builder(connectionGroups, commonMqManager, listeners,
+                listenerProperties);
+    }
+
+    public static Builder builder(ConnectionFactory connectionFactory,
+            CommonMqManager commonMqManager, List<ICommonMqConsumer> listeners,
+            CommonMqProperties.Listener listenerProperties)
+    {
+        return builder(new ConnectionGroups(connectionFactory), commonMqManager,
+                listeners, listenerProperties);
+    }
+
+    private CommonMqListenerContainerRegistry(Builder builder)
+    {
+        this.connectionGroups = builder.connectionGroups;
+        this.commonMqManager = builder.commonMqManager;
+        this.listeners = builder.listeners;
+        this.listenerProperties = builder.listenerProperties;
+        this.topologyActivator = builder.topologyActivator;
+        this.messageCodecRegistry = null == builder.messageCodecRegistry
+                ? new MessageCodecRegistry(new SimpleMessageConverter())
+                : builder.messageCodecRegistry;
+        this.flightRecorder = builder.flightRecorder;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        if (ListenerExecutionMode.VIRTUAL == listenerProperties.getExecutionMode()
+                && !VirtualThreads.isSupported())
+        {
+            throw new IllegalStateException(
+                    "###CommonMqListenerContainerRegistry### init->execution mode virtual requires JDK 21 or later, current:"
+                            + System.getProperty("java.version"));
+        }
+
+        for (ICommonMqConsumer listener : listeners)
+        {
+            if (!(listener instanceof ICommonMqListener
+                    || listener instanceof ICommonMqPayloadListener
+                    || listener instanceof ICommonMqBatchListener
+                    || listener instanceof ICommonMqRpcHandler))
+            {
+                throw new IllegalStateException(
+                        "###CommonMqListenerContainerRegistry### init->unsupported consumer type:"
+                                + listener.getClass().getName() + " of queue:"
+                                + listener.getQueueName());
+            }
+            if (null != listenerMap.put(listener.getQueueName(), listener))
+            {
+                throw new IllegalStateException(
+                        "###CommonMqListenerContainerRegistry### init->more than one listener for queue:"
+                                + listener.getQueueName());
+            }
+        }
+
+        CommonMqProperties.Dedup dedup = listenerProperties.getDedup();
+        if (dedup.isEnabled())
+        {
+            idempotencyCache = new OffHeapIdCache(dedup.getMaxEntries(),
+                    dedup.getTtlMillis());
+            log.info(
+                    "###CommonMqListenerContainerRegistry### init->dedup cache capacity:{} ttl:{}ms key:{}",
+                    idempotencyCache.getCapacity(), dedup.getTtlMillis(),
+                    null == dedup.getHeader() ? "message-id" : dedup.getHeader());
+        }
+
+        Map<String, ICommonMqConsumer> unmatched = new HashMap<>(listenerMap);
+        createManagedQueues(unmatched);
+        unmatched.keySet().forEach(queueName -> log.warn(
+                "###CommonMqListenerContainerRegistry### init->queue:{} is not declared by CommonMqManager, skip its listener...",
+                queueName));
+
+        concurrencyController = new AdaptiveConcurrencyController(
+                managedQueues.values(),
+                managedQueue -> connectionGroups
+                        .getAdmin(managedQueue.getConnectionGroup()),
+                listenerProperties.getScaleIntervalMillis(),
+                listenerProperties.getTargetDrainSeconds());
+    }
+
+    /**
+     * 为存在监听器且尚未创建容器的队列创建容器
+     *
+     * @param unmatched 尚未匹配到队列的监听器,匹配后移除
+     * @return 新创建的容器
+     */
+    private synchronized List<ManagedQueue> createManagedQueues(
+            Map<String, ICommonMqConsumer> unmatched)
+    {
+        List<ManagedQueue> created = new ArrayList<>();
+        for (ExchangeDefine exchangeDefine : commonMqManager.getTopology()
+                .getExchangeDefines())
+        {
+            for (QueueDefine queueDefine : exchangeDefine.getQueueDefines())
+            {
+                ICommonMqConsumer listener = listenerMap
+                        .get(queueDefine.getName());
+                if (null == listener)
+                {
+                    continue;
+                }
+                //lazy模式下监听的队列所在的交换机在创建容器前声明
+                if (null != topologyActivator)
+                {
+                    topologyActivator.activate(exchangeDefine.getName());
+                }
+                if (!commonMqManager.isRegistered(exchangeDefine.getName()))
+                {
+                    continue;
+                }
+                unmatched.remove(queueDefine.getName());
+                for (QueueDefine expanded : queueDefine.expand())
+                {
+                    if (managedQueues.containsKey(expanded.getName()))
+                    {
+                        continue;
+                    }
+                    ManagedQueue managedQueue = createManagedQueue(
+                            expanded.getName(), exchangeDefine,
+                            queueDefine, listener);
+                    managedQueues.put(expanded.getName(), managedQueue);
+                    created.add(managedQueue);
+                }
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public void onApplicationEvent(TopologyRefreshedEvent event)
+    {
+        List<ManagedQueue> created = createManagedQueues(new HashMap<>());
+        if (running)
+        {
+            created.forEach(CommonMqListenerContainerRegistry::startContainer);
+        }
+        created.forEach(managedQueue -> log.info(
+                "###CommonMqListenerContainerRegistry### refresh->queue:{} container created",
+                managedQueue.getQueueName()));
+    }
+
+    private ManagedQueue createManagedQueue(String queueName,
+            ExchangeDefine exchangeDefine, QueueDefine queueDefine,
+            ICommonMqConsumer listener)
+    {
+        final String group = connectionGroups
+                .groupOf(exchangeDefine.getName());
+        CommonMqProperties.QueueListener queueListener = listenerProperties
+                .resolve(queueDefine.getName());
+        //分区内的消息需按序处理,分区队列固定为单个消费者且不在虚拟线程上并行处理
+        //批量消费在消费者线程上攒批与确认,不在虚拟线程上执行
+        boolean batch = listener instanceof ICommonMqBatchListener;
+        boolean virtual = ListenerExecutionMode.VIRTUAL == listenerProperties
+                .getExecutionMode() && !queueDefine.isPartitioned() && !batch;
+        //虚拟线程模式下单个消费者只负责接收,并发度由prefetch限制
+        int minConcurrency = queueDefine.isPartitioned() || virtual
+                ? 1
+                : queueListener.getMinConcurrency();
+        int maxConcurrency = queueDefine.isPartitioned() || virtual
+                ? 1
+                : queueListener.getMaxConcurrency();
+        //未确认的消息达到prefetch后broker停止投递,批量消费时prefetch需容纳一整批
+        int prefetch = batch
+                ? Math.max(queueListener.getPrefetch(), queueListener.getBatchSize())
+                : queueListener.getPrefetch();
+        QueueListenerStats stats = new QueueListenerStats();
+        QueueMetrics metrics = commonMqManager.getMetrics()
+                .queue(queueName, exchangeDefine.getType());
+
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(
+                connectionGroups.getConnectionFactory(group));
+        container.setQueueNames(queueName);
+        container.setPrefetchCount(prefetch);
+        container.setConcurrentConsumers(Math.max(1, minConcurrency));
+        MessageListener messageListener;
+        boolean dedup = null != idempotencyCache
+                && !(listener instanceof ICommonMqRpcHandler)
+                && listenerProperties.getDedup().appliesTo(queueDefine.getName());
+        DedupFilter dedupFilter = dedup
+                ? new DedupFilter(queueName, idempotencyCache,
+                        listenerProperties.getDedup().getHeader(), metrics)
+                : null;
+        if (batch)
+        {
+            messageListener = new BatchingMessageListener(queueName,
+                    (ICommonMqBatchListener) listener,
+                    queueListener.getBatchSize(),
+                    queueListener.getBatchTimeoutMillis(),
+                    queueDefine.isRetryable()
+                            ? new RetryForwarder(queueName,
+                                    queueDefine.getRetryTiers(), metrics)
+                            : null,
+                    stats, metrics,
+                    null == flightRecorder ? null : flightRecorder.queue(queueName),
+                    dedupFilter, batchScheduler());
+            container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        }
+        else
+        {
+            if (listener instanceof ICommonMqRpcHandler)
+            {
+                messageListener = new CommonMqRpcServer(exchangeDefine.getName(),
+                        (ICommonMqRpcHandler) listener, messageCodecRegistry,
+                        new RabbitTemplate(connectionGroups.getConnectionFactory(group)));
+            }
+            else if (listener instanceof ICommonMqPayloadListener)
+            {
+                messageListener = new DecodingMessageListener(exchangeDefine.getName(),
+                        (ICommonMqPayloadListener) listener, messageCodecRegistry);
+            }
+            else
+            {
+                messageListener = (ICommonMqListener) listener;
+            }
+            messageListener = new TimedMessageListener(messageListener, stats,
+                    metrics,
+                    null == flightRecorder ? null : flightRecorder.queue(queueName));
+            if (dedup)
+            {
+                messageListener = new DedupMessageListener(messageListener,
+                        dedupFilter);
+            }
+            if (queueDefine.isRetryable())
+            {
+                messageListener = new RetryingMessageListener(queueName,
+                        queueDefine.getRetryTiers(), messageListener, metrics);
+                container.setDefaultRequeueRejected(false);
+            }
+            if (virtual)
+            {
+                messageListener = new VirtualThreadMessageListener(queueName,
+                        messageListener, queueListener.getPrefetch(),
+                        !queueDefine.isRetryable(),
+                        VirtualThreads.threadFactory("common-mq-" + queueName + "-"));
+                container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+            }
+        }
+        container.setMessageListener(messageListener);
+        container.setBeanName(queueName + "Container");
+        container.afterPropertiesSet();
+
+        log.debug(
+                "###CommonMqListenerContainerRegistry### init->queue:{} container init success, group:{} prefetch:{} concurrency:{}-{} virtual:{} dedup:{} batch:{}",
+                queueName, group, prefetch, minConcurrency,
+                maxConcurrency, virtual, dedup,
+                batch ? queueListener.getBatchSize() : 0);
+        return new ManagedQueue(queueName, group, container, stats, metrics,
+                minConcurrency, maxConcurrency);
+    }
+
+    private ScheduledExecutorService batchScheduler()
+    {
+        if (null == batchScheduler)
+        {
+            //只做超时检查,超时批次在各队列自己的处理线程上处理
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                    runnable ->
+                    {
+                        Thread thread = new Thread(runnable, "common-mq-batch-sweep");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            //容器停止时取消的检查任务立即移出队列,不再引用已停止的消费者
+            scheduler.setRemoveOnCancelPolicy(true);
+            batchScheduler = scheduler;
+        }
+        return batchScheduler;
+    }
+
+    /**
+     * @return 去重缓存,未开启去重时返回null
+     */
+    public OffHeapIdCache getIdempotencyCache()
+    {
+        return idempotencyCache;
+    }
+
+    public ManagedQueue getManagedQueue(String queueName)
+    {
+        return managedQueues.get(queueName);
+    }
+
+    public Collection<ManagedQueue> getManagedQueues()
+    {
+        return Collections.unmodifiableCollection(managedQueues.values());
+    }
+
+    @Override
+    public void start()
+    {
+        managedQueues.values().forEach(CommonMqListenerContainerRegistry::startContainer);
+        concurrencyController.start();
+        running = true;
+    }
+
+    @Override
+    public void stop()
+    {
+        concurrencyController.stop();
+        managedQueues.values().forEach(CommonMqListenerContainerRegistry::stopContainer);
+        running = false;
+    }
+
+    /**
+     * 批量消费者的超时检查先于容器启动
+     */
+    private static void startContainer(ManagedQueue managedQueue)
+    {
+        Object messageListener = managedQueue.getContainer().getMessageListener();
+        if (messageListener instanceof BatchingMessageListener)
+        {
+            ((BatchingMessageListener) messageListener).start();
+        }
+        managedQueue.getContainer().start();
+    }
+
+    /**
+     * 容器停止后取消批量消费者的超时检查,不再引用已停止的容器的批次
+     */
+    private static void stopContainer(ManagedQueue managedQueue)
+    {
+        managedQueue.getContainer().stop();
+        Object messageListener = managedQueue.getContainer().getMessageListener();
+        if (messageListener instanceof BatchingMessageListener)
+        {
+            ((BatchingMessageListener) messageListener).stop();
+        }
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup()
+    {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback)
+    {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public int getPhase()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void destroy()
+    {
+        managedQueues.values().forEach(managedQueue ->
+        {
+            stopContainer(managedQueue);
+            managedQueue.getContainer().destroy();
+        });
+        if (null != batchScheduler)
+        {
+            batchScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * CommonMqListenerContainerRegistry的可选配置,新增的配置项只在此处增加方法,不再增加构造器
+     */
+    public static final class Builder
+    {
+        private final ConnectionGroups connectionGroups;
+
+        private final CommonMqManager commonMqManager;
+
+        private final List<ICommonMqConsumer> listeners;
+
+        private final CommonMqProperties.Listener listenerProperties;
+
+        private TopologyActivator topologyActivator;
+
+        private MessageCodecRegistry messageCodecRegistry;
+
+        private FlightRecorder flightRecorder;
+
+        private Builder(ConnectionGroups connectionGroups,
+                CommonMqManager commonMqManager, List<ICommonMqConsumer> listeners,
+                CommonMqProperties.Listener listenerProperties)
+        {
+            this.connectionGroups = connectionGroups;
+            this.commonMqManager = commonMqManager;
+            this.listeners = listeners;
+            this.listenerProperties = listenerProperties;
+        }
+
+        /**
+         * @param topologyActivator lazy模式下的按需声明,为null时交换机已在启动时声明
+         */
+        public Builder topologyActivator(TopologyActivator topologyActivator)
+        {
+            this.topologyActivator = topologyActivator;
+            return this;
+        }
+
+        /**
+         * @param messageCodecRegistry ICommonMqPayloadListener解码消息所用的编解码器,为null时使用SimpleMessageConverter
+         */
+        public Builder messageCodecRegistry(MessageCodecRegistry messageCodecRegistry)
+        {
+            this.messageCodecRegistry = messageCodecRegistry;
+            return this;
+        }
+
+        /**
+         * @param flightRecorder 飞行记录器,为null时不记录
+         */
+        public Builder flightRecorder(FlightRecorder flightRecorder)
+        {
+            this.flightRecorder = flightRecorder;
+            return this;
+        }
+
+        public CommonMqListenerContainerRegistry build()
+        {
+            return new CommonMqListenerContainerRegistry(this);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+/**
+ * 按交换机的编解码器解码消息后回调ICommonMqPayloadListener
+ */
+class DecodingMessageListener implements MessageListener
+{
+    private final String exchange;
+
+    private final ICommonMqPayloadListener delegate;
+
+    private final MessageCodecRegistry messageCodecRegistry;
+
+    DecodingMessageListener(String exchange, ICommonMqPayloadListener delegate,
+            MessageCodecRegistry messageCodecRegistry)
+    {
+        this.exchange = exchange;
+        this.delegate = delegate;
+        this.messageCodecRegistry = messageCodecRegistry;
+    }
+
+    @Override
+    public void onMessage(Message message)
+    {
+        Object payload;
+        try
+        {
+            payload = messageCodecRegistry.decode(exchange, message);
+        }
+        catch (MessageConversionException e)
+        {
+            //无法解码的消息重新入队只会再次失败
+            throw new AmqpRejectAndDontRequeueException(
+                    "queue:" + delegate.getQueueName() + " decode failed", e);
+        }
+        delegate.onPayload(payload, message);
+    }
+}
@@ -0,0 +1,88 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.dedup.OffHeapIdCache;
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * 消费端去重的判断,由DedupMessageListener与BatchingMessageListener共用
+ * 以message-id或配置的消息头为key,处理前查询OffHeapIdCache,只有处理成功的消息才写入缓存;
+ * 没有id的消息不去重
+ */
+@Slf4j
+final class DedupFilter
+{
+    private final String queueName;
+
+    private final OffHeapIdCache cache;
+
+    private final String header;
+
+    private final QueueMetrics metrics;
+
+    /**
+     * @param header 作为key的消息头,为null时使用message-id
+     */
+    DedupFilter(String queueName, OffHeapIdCache cache, String header,
+            QueueMetrics metrics)
+    {
+        this.queueName = queueName;
+        this.cache = cache;
+        this.header = header;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return 消息在队列内的去重key,没有id时为0
+     */
+    long keyOf(Message message)
+    {
+        String id = idOf(message.getMessageProperties());
+        return null == id ? 0 : OffHeapIdCache.hash(queueName, id);
+    }
+
+    /**
+     * @param key keyOf的返回值
+     * @return 是否已成功处理过,同时计入命中或未命中
+     */
+    boolean isDuplicate(long key)
+    {
+        if (0 == key)
+        {
+            return false;
+        }
+        if (cache.contains(key))
+        {
+            metrics.onDedupHit();
+            log.debug(
+                    "###DedupFilter->isDuplicate### queue:{} skip duplicate message, key:{}",
+                    queueName, key);
+            return true;
+        }
+        metrics.onDedupMiss();
+        return false;
+    }
+
+    /**
+     * 消息处理成功后写入缓存
+     */
+    void onProcessed(long key)
+    {
+        if (0 != key)
+        {
+            cache.put(key);
+        }
+    }
+
+    private String idOf(MessageProperties messageProperties)
+    {
+        if (null == header)
+        {
+            return messageProperties.getMessageId();
+        }
+        Object value = messageProperties.getHeaders().get(header);
+        return null == value ? null : value.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.frank.amqp.helper.listener;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+
+/**
+ * 消费端去重的消费者装饰
+ * 以message-id或配置的消息头为key,处理前经DedupFilter查询OffHeapIdCache,命中时跳过处理并正常确认;
+ * 只有处理成功的消息才写入缓存,处理失败后重新投递的消息仍会处理;
+ * 没有id的消息不去重,同一id的消息并发投递时可能都被处理
+ */
+class DedupMessageListener implements MessageListener
+{
+    private final MessageListener delegate;
+
+    private final DedupFilter filter;
+
+    DedupMessageListener(MessageListener delegate, DedupFilter filter)
+    {
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    @Override
+    public void onMessage(Message message)
+    {
+        long key = filter.keyOf(message);
+        if (filter.isDuplicate(key))
+        {
+            return;
+        }
+        delegate.onMessage(message);
+        filter.onProcessed(key);
+    }
+}
@@ -0,0 +1,15 @@
+package com.frank.amqp.helper.listener;
+
+/**
+ * 批量处理消息的队列消费者
+ * 监听容器攒够batchSize条或最早的消息等待batchTimeoutMillis后回调onBatch,
+ * 处理完成后成功的消息以一次multiple确认,见CommonMqProperties.QueueListener;
+ * 部分消息处理失败时调用CommonMqBatch#nack单独拒绝,onBatch抛出异常时整批按该异常拒绝
+ */
+public interface ICommonMqBatchListener extends ICommonMqConsumer
+{
+    /**
+     * @param batch 按投递顺序排列的一批消息
+     */
+    void onBatch(CommonMqBatch batch) throws Exception;
+}
@@ -0,0 +1,16 @@
+package com.frank.amqp.helper.listener;
+
+/**
+ * 队列消费者的公共接口,需要将其实现注入到容器中
+ * 开启监听容器后,会为CommonMqManager创建的队列中存在对应消费者的队列创建监听容器,
+ * 由CommonMqListenerContainerRegistry按实现的具体接口选择处理方式:
+ * ICommonMqListener接收原始消息,ICommonMqPayloadListener接收解码后的消息对象,
+ * ICommonMqBatchListener按批接收消息,ICommonMqRpcHandler处理请求并返回应答
+ */
+public interface ICommonMqConsumer
+{
+    /**
+     * @return 消费的队列名称,分区队列为配置中不含分区下标的队列名
+     */
+    String getQueueName();
+}
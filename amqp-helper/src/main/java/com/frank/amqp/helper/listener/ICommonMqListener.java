@@ -0,0 +1,11 @@
+package com.frank.amqp.helper.listener;
+
+import org.springframework.amqp.core.MessageListener;
+
+/**
+ * 接收原始消息的队列消费者,需要将其实现注入到容器中
+ * 开启监听容器后,会为CommonMqManager创建的队列中存在对应消费者的队列创建监听容器
+ */
+public interface ICommonMqListener extends ICommonMqConsumer, MessageListener
+{
+}
@@ -0,0 +1,17 @@
+package com.frank.amqp.helper.listener;
+
+import org.springframework.amqp.core.Message;
+
+/**
+ * 接收解码后消息对象的队列消费者
+ * 消息体由监听容器按消息头x-codec或队列所属交换机的编解码器解码,见MessageCodecRegistry;
+ * 解码失败的消息不会重新入队
+ */
+public interface ICommonMqPayloadListener extends ICommonMqConsumer
+{
+    /**
+     * @param payload 解码后的消息对象
+     * @param message 原始消息,用于读取消息属性
+     */
+    void onPayload(Object payload, Message message);
+}
@@ -0,0 +1,98 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+/**
+ * 由helper创建监听容器的队列
+ */
+public class ManagedQueue
+{
+    private final String queueName;
+
+    private final String connectionGroup;
+
+    private final SimpleMessageListenerContainer container;
+
+    private final QueueListenerStats stats;
+
+    private final QueueMetrics metrics;
+
+    private final int minConcurrency;
+
+    private final int maxConcurrency;
+
+    private volatile int concurrency;
+
+    ManagedQueue(String queueName, String connectionGroup,
+            SimpleMessageListenerContainer container,
+            QueueListenerStats stats, QueueMetrics metrics, int minConcurrency,
+            int maxConcurrency)
+    {
+        this.queueName = queueName;
+        this.connectionGroup = connectionGroup;
+        this.container = container;
+        this.stats = stats;
+        this.metrics = metrics;
+        this.minConcurrency = Math.max(1, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.concurrency = this.minConcurrency;
+    }
+
+    public String getQueueName()
+    {
+        return queueName;
+    }
+
+    /**
+     * @return 队列所在的连接分组
+     */
+    public String getConnectionGroup()
+    {
+        return connectionGroup;
+    }
+
+    public SimpleMessageListenerContainer getContainer()
+    {
+        return container;
+    }
+
+    public int getMinConcurrency()
+    {
+        return minConcurrency;
+    }
+
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+
+    QueueListenerStats getStats()
+    {
+        return stats;
+    }
+
+    public QueueMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * 调整消费者数量,运行中的容器会立即增减消费者
+     */
+    synchronized void scaleTo(int target)
+    {
+        int bounded = Math.min(maxConcurrency, Math.max(minConcurrency, target));
+        if (bounded == concurrency)
+        {
+            return;
+        }
+        container.setConcurrentConsumers(bounded);
+        concurrency = bounded;
+    }
+}
@@ -0,0 +1,39 @@
+package com.frank.amqp.helper.listener;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个队列的消费统计,记录路径不分配对象
+ */
+public class QueueListenerStats
+{
+    private final LongAdder processed = new LongAdder();
+
+    private final LongAdder processingNanos = new LongAdder();
+
+    void record(long nanos)
+    {
+        processed.increment();
+        processingNanos.add(nanos);
+    }
+
+    /**
+     * 记录一批消息的总处理耗时
+     */
+    void record(int count, long nanos)
+    {
+        processed.add(count);
+        processingNanos.add(nanos);
+    }
+
+    /**
+     * 取出上次调用以来的统计并清零
+     *
+     * @return [处理条数, 处理总耗时纳秒]
+     */
+    long[] drain()
+    {
+        return new long[] { processed.sumThenReset(),
+                processingNanos.sumThenReset() };
+    }
+}
@@ -0,0 +1,107 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import com.frank.amqp.helper.retry.RetryTopology;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 将处理失败的消息按已重试次数转发到下一个重试梯度,超过全部梯度后转发到停放队列
+ * 转发在消费者的channel上完成、不等待broker应答,消费者线程不会因重试而阻塞;
+ * 以AmqpRejectAndDontRequeueException失败的消息视为无法处理,直接转发到停放队列;
+ * 转发失败时拒绝原消息,由队列的死信配置进入首个重试梯度
+ */
+@Slf4j
+class RetryForwarder
+{
+    private static final int MAX_ERROR_LENGTH = 256;
+
+    private final String queueName;
+
+    private final List<Long> retryTiers;
+
+    private final QueueMetrics metrics;
+
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    RetryForwarder(String queueName, List<Long> retryTiers, QueueMetrics metrics)
+    {
+        this.queueName = queueName;
+        this.retryTiers = retryTiers;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 转发失败的消息,转发成功后原消息可正常确认
+     *
+     * @throws AmqpRejectAndDontRequeueException 转发失败,原消息需拒绝且不重新入队
+     */
+    void forward(Message message, Channel channel, RuntimeException error)
+    {
+        MessageProperties messageProperties = message.getMessageProperties();
+        int attempt = attemptOf(messageProperties);
+        boolean park = error instanceof AmqpRejectAndDontRequeueException
+                || attempt >= retryTiers.size();
+        String routingKey = park
+                ? RetryTopology.parkingQueue(queueName)
+                : RetryTopology.retryQueue(queueName, retryTiers.get(attempt));
+
+        messageProperties.setHeader(RetryTopology.ATTEMPT_HEADER, attempt + 1);
+        messageProperties.setHeader(RetryTopology.ERROR_HEADER, describe(error));
+        try
+        {
+            channel.basicPublish(RetryTopology.retryExchange(queueName),
+                    routingKey, false,
+                    messagePropertiesConverter.fromMessageProperties(
+                            messageProperties, StandardCharsets.UTF_8.name()),
+                    message.getBody());
+        }
+        catch (Exception e)
+        {
+            log.warn(
+                    "###RetryForwarder->forward### queue:{} forward to {} failed, reject to dead letter, error:{}",
+                    queueName, routingKey, e.getMessage());
+            throw new AmqpRejectAndDontRequeueException(error);
+        }
+
+        if (park)
+        {
+            metrics.onParked();
+            log.warn(
+                    "###RetryForwarder->forward### queue:{} message parked after {} attempts, error:{}",
+                    queueName, attempt + 1, error.toString());
+        }
+        else
+        {
+            metrics.onRetried();
+            log.debug(
+                    "###RetryForwarder->forward### queue:{} message retry in {}ms, attempt:{}",
+                    queueName, retryTiers.get(attempt), attempt + 1);
+        }
+    }
+
+    private static int attemptOf(MessageProperties messageProperties)
+    {
+        Object attempt = messageProperties.getHeaders()
+                .get(RetryTopology.ATTEMPT_HEADER);
+        return attempt instanceof Number
+                ? Math.max(0, ((Number) attempt).intValue())
+                : 0;
+    }
+
+    private static String describe(Throwable error)
+    {
+        String description = error.toString();
+        return description.length() > MAX_ERROR_LENGTH
+                ? description.substring(0, MAX_ERROR_LENGTH)
+                : description;
+    }
+}
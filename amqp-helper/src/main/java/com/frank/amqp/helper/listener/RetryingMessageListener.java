@@ -0,0 +1,45 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.ImmediateAcknowledgeAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.util.List;
+
+/**
+ * 延迟重试策略
+ * 消息处理失败时不重新入队,而是由RetryForwarder转发到下一个重试梯度或停放队列,转发后原消息正常确认
+ */
+class RetryingMessageListener implements ChannelAwareMessageListener
+{
+    private final MessageListener delegate;
+
+    private final RetryForwarder forwarder;
+
+    RetryingMessageListener(String queueName, List<Long> retryTiers,
+            MessageListener delegate, QueueMetrics metrics)
+    {
+        this.delegate = delegate;
+        this.forwarder = new RetryForwarder(queueName, retryTiers, metrics);
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel)
+    {
+        try
+        {
+            delegate.onMessage(message);
+        }
+        catch (ImmediateAcknowledgeAmqpException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            forwarder.forward(message, channel, e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import com.frank.amqp.helper.recorder.FlightEventType;
+import com.frank.amqp.helper.recorder.FlightRing;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+
+/**
+ * 记录消息处理耗时的消费者装饰,配置了飞行记录时以同一组时间戳记录投递与处理结果
+ */
+class TimedMessageListener implements MessageListener
+{
+    private final MessageListener delegate;
+
+    private final QueueListenerStats stats;
+
+    private final QueueMetrics metrics;
+
+    private final FlightRing flightRing;
+
+    TimedMessageListener(MessageListener delegate, QueueListenerStats stats,
+            QueueMetrics metrics)
+    {
+        this(delegate, stats, metrics, null);
+    }
+
+    /**
+     * @param flightRing 队列的飞行记录,为null时不记录
+     */
+    TimedMessageListener(MessageListener delegate, QueueListenerStats stats,
+            QueueMetrics metrics, FlightRing flightRing)
+    {
+        this.delegate = delegate;
+        this.stats = stats;
+        this.metrics = metrics;
+        this.flightRing = flightRing;
+    }
+
+    @Override
+    public void onMessage(Message message)
+    {
+        long start = System.nanoTime();
+        if (null != flightRing)
+        {
+            flightRing.record(FlightEventType.DELIVER,
+                    message.getMessageProperties().getReceivedRoutingKey(),
+                    message.getBody().length, start, 0);
+        }
+        boolean success = false;
+        try
+        {
+            delegate.onMessage(message);
+            success = true;
+        }
+        finally
+        {
+            long end = System.nanoTime();
+            long nanos = end - start;
+            stats.record(nanos);
+            metrics.onConsumed(nanos, success);
+            if (null != flightRing)
+            {
+                flightRing.record(success ? FlightEventType.ACK : FlightEventType.FAIL,
+                        message.getMessageProperties().getReceivedRoutingKey(),
+                        message.getBody().length, end, nanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.frank.amqp.helper.listener;
+
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.ImmediateAcknowledgeAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 虚拟线程执行策略,容器需使用MANUAL确认模式且只有一个消费者
+ * 1.消费者线程只负责接收,每条消息提交到新的虚拟线程上处理,同时处理的消息数由与prefetch相同的信号量限制,
+ * 达到上限时消费者线程等待,不再从容器内部队列取消息;
+ * 2.处理完成的顺序与投递顺序无关,确认按投递顺序发出:连续已完成的消息合并为一次multiple确认,
+ * 之前的消息未完成时之后的消息暂不确认;
+ * 3.处理失败时与容器一致,AmqpRejectAndDontRequeueException不重新入队,其余异常按defaultRequeueRejected处理。
+ * channel关闭后无法确认的消息由broker重新投递
+ */
+@Slf4j
+class VirtualThreadMessageListener implements ChannelAwareMessageListener
+{
+    private final String queueName;
+
+    private final MessageListener delegate;
+
+    private final boolean defaultRequeueRejected;
+
+    private final ThreadFactory threadFactory;
+
+    private final Semaphore permits;
+
+    /**
+     * 当前channel的确认顺序,仅由消费者线程替换
+     */
+    private AckTracker tracker;
+
+    VirtualThreadMessageListener(String queueName, MessageListener delegate,
+            int maxConcurrency, boolean defaultRequeueRejected,
+            ThreadFactory threadFactory)
+    {
+        this.queueName = queueName;
+        this.delegate = delegate;
+        this.defaultRequeueRejected = defaultRequeueRejected;
+        this.threadFactory = threadFactory;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception
+    {
+        permits.acquire();
+        //重连后deliveryTag从1重新开始,按channel分别维护确认顺序
+        if (null == tracker || tracker.channel != channel)
+        {
+            tracker = new AckTracker(channel);
+        }
+        final AckTracker current = tracker;
+        final long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        current.dispatched(deliveryTag);
+        try
+        {
+            threadFactory.newThread(() -> process(message, channel, current,
+                    deliveryTag)).start();
+        }
+        catch (RuntimeException | Error e)
+        {
+            current.settle(deliveryTag, Outcome.REQUEUE);
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void process(Message message, Channel channel, AckTracker current,
+            long deliveryTag)
+    {
+        Outcome outcome = defaultRequeueRejected ? Outcome.REQUEUE : Outcome.REJECT;
+        try
+        {
+            if (delegate instanceof ChannelAwareMessageListener)
+            {
+                ((ChannelAwareMessageListener) delegate).onMessage(message,
+                        channel);
+            }
+            else
+            {
+                delegate.onMessage(message);
+            }
+            outcome = Outcome.ACK;
+        }
+        catch (ImmediateAcknowledgeAmqpException e)
+        {
+            outcome = Outcome.ACK;
+        }
+        catch (Exception e)
+        {
+            if (rejectedWithoutRequeue(e))
+            {
+                outcome = Outcome.REJECT;
+            }
+            log.warn(
+                    "###VirtualThreadMessageListener->process### queue:{} deliveryTag:{} failed, {}, error:",
+                    queueName, deliveryTag, outcome, e);
+        }
+        finally
+        {
+            current.settle(deliveryTag, outcome);
+            permits.release();
+        }
+    }
+
+    private static boolean rejectedWithoutRequeue(Throwable error)
+    {
+        for (Throwable cause = error; null != cause; cause = cause.getCause())
+        {
+            if (cause instanceof AmqpRejectAndDontRequeueException)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum Outcome
+    {
+        ACK, REJECT, REQUEUE
+    }
+
+    /**
+     * 单个channel上未确认消息的投递顺序
+     * 使用ReentrantLock而非synchronized,避免虚拟线程在确认的网络I/O期间占住载体线程
+     */
+    private final class AckTracker
+    {
+        private final Channel channel;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final ArrayDeque<Long> outstanding = new ArrayDeque<>();
+
+        private final Map<Long, Outcome> completed = new HashMap<>();
+
+        private AckTracker(Channel channel)
+        {
+            this.channel = channel;
+        }
+
+        private void dispatched(long deliveryTag)
+        {
+            lock.lock();
+            try
+            {
+                outstanding.addLast(deliveryTag);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void settle(long deliveryTag, Outcome outcome)
+        {
+            lock.lock();
+            try
+            {
+                completed.put(deliveryTag, outcome);
+                long ackUpTo = -1;
+                while (!outstanding.isEmpty())
+                {
+                    Outcome head = completed.remove(outstanding.peekFirst());
+                    if (null == head)
+                    {
+                        break;
+                    }
+                    long headTag = outstanding.pollFirst();
+                    if (Outcome.ACK == head)
+                    {
+                        ackUpTo = headTag;
+                        continue;
+                    }
+                    if (ackUpTo >= 0)
+                    {
+                        channel.basicAck(ackUpTo, true);
+                        ackUpTo = -1;
+                    }
+                    channel.basicNack(headTag, false, Outcome.REQUEUE == head);
+                }
+                if (ackUpTo >= 0)
+                {
+                    channel.basicAck(ackUpTo, true);
+                }
+            }
+            catch (Exception e)
+            {
+                log.debug(
+                        "###VirtualThreadMessageListener->ack### queue:{} ack failed, unacked messages will be redelivered, error:{}",
+                        queueName, e.getMessage());
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
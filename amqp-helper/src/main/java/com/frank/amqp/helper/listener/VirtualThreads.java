@@ -0,0 +1,81 @@
+package com.frank.amqp.helper.listener;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程的反射访问,本项目以Java 8编译,运行在JDK 21及以上时才可用
+ */
+@Slf4j
+public final class VirtualThreads
+{
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method FACTORY;
+
+    static
+    {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            //JDK 19、20未开启预览特性时方法存在但调用失败
+            factory.invoke(ofVirtual.invoke(null));
+        }
+        catch (Throwable e)
+        {
+            log.debug("###VirtualThreads### virtual threads unavailable:{}",
+                    e.toString());
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads()
+    {
+    }
+
+    /**
+     * @return 当前JVM是否支持虚拟线程
+     */
+    public static boolean isSupported()
+    {
+        return null != OF_VIRTUAL;
+    }
+
+    /**
+     * 创建虚拟线程工厂,线程名称为prefix加自增序号
+     *
+     * @throws IllegalStateException 当前JVM不支持虚拟线程
+     */
+    public static ThreadFactory threadFactory(String prefix)
+    {
+        if (!isSupported())
+        {
+            throw new IllegalStateException(
+                    "###VirtualThreads### virtual threads require JDK 21 or later, current:"
+                            + System.getProperty("java.version"));
+        }
+        try
+        {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(
+                    "###VirtualThreads### create virtual thread factory failed", e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.frank.amqp.helper.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * amqp-helper的运行统计,由CommonMqManager持有
+ * 1.拓扑初始化各阶段(parse、inject、bind、declare)的耗时与声明失败数;
+ * 2.每个交换机的发送、确认数与确认耗时直方图;
+ * 3.每个队列的消费数、处理耗时直方图与队列深度。
+ * 交换机与队列的统计对象在发送器、监听容器创建时获取并持有,记录路径不查表、不分配对象;
+ * 统计值均可直接读取,接入Micrometer等监控系统时以FunctionCounter、Gauge读取即可,并以exchangeType作为tag
+ */
+public final class CommonMqMetrics
+{
+    public static final String UNKNOWN_EXCHANGE_TYPE = "unknown";
+
+    /**
+     * 拓扑初始化阶段
+     */
+    public enum Phase
+    {
+        PARSE, INJECT, BIND, DECLARE
+    }
+
+    private final Map<Phase, PhaseTimer> phases = new EnumMap<>(Phase.class);
+
+    private final LongAdder declareFailures = new LongAdder();
+
+    private final Map<String, ExchangeMetrics> exchanges = new ConcurrentHashMap<>();
+
+    private final Map<String, QueueMetrics> queues = new ConcurrentHashMap<>();
+
+    public CommonMqMetrics()
+    {
+        for (Phase phase : Phase.values())
+        {
+            phases.put(phase, new PhaseTimer());
+        }
+    }
+
+    public PhaseTimer phase(Phase phase)
+    {
+        return phases.get(phase);
+    }
+
+    public void onDeclareFailures(int failures)
+    {
+        declareFailures.add(failures);
+    }
+
+    public long getDeclareFailures()
+    {
+        return declareFailures.sum();
+    }
+
+    /**
+     * 获取交换机的统计,不存在时创建
+     */
+    public ExchangeMetrics exchange(String exchange, String exchangeType)
+    {
+        return exchanges.computeIfAbsent(exchange, name -> new ExchangeMetrics(
+                name, null == exchangeType ? UNKNOWN_EXCHANGE_TYPE : exchangeType));
+    }
+
+    /**
+     * 获取队列的统计,不存在时创建
+     */
+    public QueueMetrics queue(String queue, String exchangeType)
+    {
+        return queues.computeIfAbsent(queue, name -> new QueueMetrics(name,
+                null == exchangeType ? UNKNOWN_EXCHANGE_TYPE : exchangeType));
+    }
+
+    public Collection<ExchangeMetrics> getExchanges()
+    {
+        return Collections.unmodifiableCollection(exchanges.values());
+    }
+
+    public Collection<QueueMetrics> getQueues()
+    {
+        return Collections.unmodifiableCollection(queues.values());
+    }
+}
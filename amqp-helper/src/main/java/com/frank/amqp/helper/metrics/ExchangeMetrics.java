@@ -0,0 +1,109 @@
+package com.frank.amqp.helper.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个交换机的发送统计
+ */
+public final class ExchangeMetrics
+{
+    private final String exchange;
+
+    private final String exchangeType;
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder confirmed = new LongAdder();
+
+    private final LongAdder nacked = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LatencyHistogram confirmLatency = new LatencyHistogram();
+
+    ExchangeMetrics(String exchange, String exchangeType)
+    {
+        this.exchange = exchange;
+        this.exchangeType = exchangeType;
+    }
+
+    /**
+     * 消息进入发送队列
+     */
+    public void onPublished()
+    {
+        published.increment();
+    }
+
+    /**
+     * @param latencyNanos 从写入channel到收到broker确认的耗时
+     */
+    public void onConfirmed(long latencyNanos)
+    {
+        confirmed.increment();
+        confirmLatency.record(latencyNanos);
+    }
+
+    public void onNacked()
+    {
+        nacked.increment();
+    }
+
+    /**
+     * 已进入发送队列的消息因channel异常或发送器关闭失败
+     */
+    public void onFailed()
+    {
+        failed.increment();
+    }
+
+    /**
+     * 因背压、不可路由或发送器已关闭,未进入发送队列即失败
+     */
+    public void onRejected()
+    {
+        rejected.increment();
+    }
+
+    public String getExchange()
+    {
+        return exchange;
+    }
+
+    public String getExchangeType()
+    {
+        return exchangeType;
+    }
+
+    public long getPublished()
+    {
+        return published.sum();
+    }
+
+    public long getConfirmed()
+    {
+        return confirmed.sum();
+    }
+
+    public long getNacked()
+    {
+        return nacked.sum();
+    }
+
+    public long getFailed()
+    {
+        return failed.sum();
+    }
+
+    public long getRejected()
+    {
+        return rejected.sum();
+    }
+
+    public LatencyHistogram getConfirmLatency()
+    {
+        return confirmLatency;
+    }
+}
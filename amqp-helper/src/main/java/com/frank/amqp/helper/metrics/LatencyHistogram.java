@@ -0,0 +1,135 @@
+package com.frank.amqp.helper.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定桶的耗时直方图
+ * 每个2的幂区间再等分为8个子桶,相对误差不超过12.5%,桶数组在创建时一次分配,
+ * 记录路径只做原子自增,不分配对象,可在高吞吐的发送与消费路径上常开
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(index(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public Snapshot snapshot()
+    {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, sum.sum(), max.get());
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | mantissa;
+    }
+
+    /**
+     * @return 桶内的最大值
+     */
+    static long upperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long base = SUB_BUCKETS | (index & (SUB_BUCKETS - 1));
+        return ((base + 1) << shift) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static final class Snapshot
+    {
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max)
+        {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getSum()
+        {
+            return sum;
+        }
+
+        public long getMax()
+        {
+            return max;
+        }
+
+        public double getMean()
+        {
+            return 0 == count ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile 0~1,如0.99
+         * @return 百分位耗时的上界(纳秒),不超过记录到的最大值
+         */
+        public long valueAtPercentile(double percentile)
+        {
+            if (0 == count)
+            {
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank))
+                {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.frank.amqp.helper.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 拓扑初始化阶段的耗时,启动与每次拓扑刷新各记录一次
+ */
+public final class PhaseTimer
+{
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private volatile long lastNanos;
+
+    public void record(long nanos)
+    {
+        count.increment();
+        totalNanos.add(nanos);
+        lastNanos = nanos;
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos.sum();
+    }
+
+    public long getLastNanos()
+    {
+        return lastNanos;
+    }
+}
@@ -0,0 +1,139 @@
+package com.frank.amqp.helper.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个队列的消费统计
+ */
+public final class QueueMetrics
+{
+    private final String queue;
+
+    private final String exchangeType;
+
+    private final LongAdder consumed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder retried = new LongAdder();
+
+    private final LongAdder parked = new LongAdder();
+
+    private final LongAdder dedupHits = new LongAdder();
+
+    private final LongAdder dedupMisses = new LongAdder();
+
+    private final LatencyHistogram processingLatency = new LatencyHistogram();
+
+    /**
+     * 最近一次采样的队列深度,未采样时为-1
+     */
+    private volatile long depth = -1;
+
+    QueueMetrics(String queue, String exchangeType)
+    {
+        this.queue = queue;
+        this.exchangeType = exchangeType;
+    }
+
+    /**
+     * @param processingNanos 消息处理耗时
+     * @param success         是否处理成功
+     */
+    public void onConsumed(long processingNanos, boolean success)
+    {
+        consumed.increment();
+        if (!success)
+        {
+            failed.increment();
+        }
+        processingLatency.record(processingNanos);
+    }
+
+    /**
+     * 处理失败的消息被转发到重试梯度
+     */
+    public void onRetried()
+    {
+        retried.increment();
+    }
+
+    /**
+     * 处理失败的消息超过全部重试梯度,被转发到停放队列
+     */
+    public void onParked()
+    {
+        parked.increment();
+    }
+
+    /**
+     * 去重缓存命中,消息作为重复消息跳过
+     */
+    public void onDedupHit()
+    {
+        dedupHits.increment();
+    }
+
+    /**
+     * 去重缓存未命中,消息正常处理
+     */
+    public void onDedupMiss()
+    {
+        dedupMisses.increment();
+    }
+
+    public void setDepth(long depth)
+    {
+        this.depth = depth;
+    }
+
+    public String getQueue()
+    {
+        return queue;
+    }
+
+    public String getExchangeType()
+    {
+        return exchangeType;
+    }
+
+    public long getConsumed()
+    {
+        return consumed.sum();
+    }
+
+    public long getFailed()
+    {
+        return failed.sum();
+    }
+
+    public long getRetried()
+    {
+        return retried.sum();
+    }
+
+    public long getParked()
+    {
+        return parked.sum();
+    }
+
+    public long getDedupHits()
+    {
+        return dedupHits.sum();
+    }
+
+    public long getDedupMisses()
+    {
+        return dedupMisses.sum();
+    }
+
+    public long getDepth()
+    {
+        return depth;
+    }
+
+    public LatencyHistogram getProcessingLatency()
+    {
+        return processingLatency;
+    }
+}
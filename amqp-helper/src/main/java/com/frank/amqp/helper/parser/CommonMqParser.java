@@ -0,0 +1,117 @@
+package com.frank.amqp.helper.parser;
+
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.HeadersExchange;
+import org.springframework.amqp.core.TopicExchange;
+
+import java.util.*;
+
+/**
+ * 基于的amqp的通用化MQ配置解析器
+ * 目前交换机类型支持fanout、direct、topic、headers
+ */
+public class CommonMqParser
+{
+    public static final String HEADERS_MATCH_ARGUMENT = "x-match";
+
+    public static final String HEADER_VALUE_SEPARATOR = "=";
+
+    private static Set<String> supportExchangeType = new HashSet<>(4);
+
+    static
+    {
+        supportExchangeType.add(ExchangeTypes.FANOUT);
+        supportExchangeType.add(ExchangeTypes.DIRECT);
+        supportExchangeType.add(ExchangeTypes.TOPIC);
+        supportExchangeType.add(ExchangeTypes.HEADERS);
+    }
+
+    public static boolean isExchangeTypeValid(String exchangeType)
+    {
+        return supportExchangeType.contains(exchangeType);
+    }
+
+    public static Exchange initExchange(String exchangeName,String exchangeType)
+    {
+        switch (exchangeType)
+        {
+            case "fanout":
+                return new FanoutExchange(exchangeName);
+            case "direct":
+                return new DirectExchange(exchangeName);
+            case "topic":
+                return new TopicExchange(exchangeName);
+            case "headers":
+                return new HeadersExchange(exchangeName);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 将headers交换机队列定义中的key=value条件转换为绑定参数
+     * 未指定x-match时默认为all
+     *
+     * @param headerConditions key=value形式的条件
+     * @return 绑定参数
+     */
+    public static Map<String,Object> parseHeaderArguments(
+            List<String> headerConditions)
+    {
+        Map<String,Object> arguments = new HashMap<>(
+                headerConditions.size() * 4 / 3 + 2);
+        for (String headerCondition : headerConditions)
+        {
+            int separator = headerCondition.indexOf(HEADER_VALUE_SEPARATOR);
+            if (separator <= 0)
+            {
+                continue;
+            }
+            arguments.put(headerCondition.substring(0, separator),
+                    headerCondition.substring(separator + 1));
+        }
+        arguments.putIfAbsent(HEADERS_MATCH_ARGUMENT, "all");
+        return arguments;
+    }
+
+    /**
+     * 交换机名称与队列定义是否合法
+     * 名称由CommonMqTopologyScanner单遍扫描校验
+     */
+    public static boolean isExchangeConfigValid(String exchangeName,
+            Map<String,List<String>> queueDefineMap)
+    {
+        return null != queueDefineMap
+                && !queueDefineMap.isEmpty()
+                && null != CommonMqTopologyScanner
+                .scanExchangeType(exchangeName, new ArrayList<>(1));
+    }
+
+    /**
+     * 解析队列定义串,格式错误的队列定义会被忽略
+     * 需要错误定位时请使用CommonMqTopologyScanner
+     *
+     * @return 队列名与routingKey列表的映射,未配置routingKey的队列对应null
+     */
+    public static Map<String,List<String>> parserQueueDefines(
+            String queueDefines)
+    {
+        List<QueueDefine> queueDefineList = CommonMqTopologyScanner
+                .scanQueueDefines(null, queueDefines, new ArrayList<>(0));
+        Map<String,List<String>> queueDefineMap = new HashMap<>(
+                queueDefineList.size() * 4 / 3 + 1);
+        for (QueueDefine queueDefine : queueDefineList)
+        {
+            queueDefineMap.put(queueDefine.getName(),
+                    queueDefine.getRoutingKeys().isEmpty()
+                            ? null
+                            : new ArrayList<>(queueDefine.getRoutingKeys()));
+        }
+        return queueDefineMap;
+    }
+
+}
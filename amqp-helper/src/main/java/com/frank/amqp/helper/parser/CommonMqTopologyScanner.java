@@ -0,0 +1,503 @@
+package com.frank.amqp.helper.parser;
+
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.MqTopology;
+import com.frank.amqp.helper.parser.model.ParseError;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import com.frank.amqp.helper.routing.Partitions;
+import org.springframework.amqp.core.ExchangeTypes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单遍扫描的拓扑配置解析器
+ * 对交换机名称与队列定义串均只做一次逐字符扫描,仅为最终的名称分配字符串,
+ * 不产生split带来的中间数组;格式错误的条目不会进入拓扑,而是以带下标的ParseError返回
+ * <p>
+ * 队列定义串的文法(与CommonMqParser一致):
+ * queueDefines := [defaultArgs ','] queueDefine (',' queueDefine)* [',']
+ * queueDefine  := queueName ['[' partitions ']'] [arguments] [':' routingKey ('&' routingKey)*]
+ * arguments    := '(' argument (',' argument)* ')'
+ * defaultArgs  := arguments
+ * headers交换机的routingKey位置为key=value形式的header条件,x-match可取all或any
+ * <p>
+ * 队列参数见QueueArguments,如 q1(quorum,max-length=100000,overflow=reject-publish):rk1;
+ * 参数中的retry=1s/10s/60s不作为队列参数,解析为队列定义的重试梯度;
+ * 位于首位、没有队列名的参数为交换机级别的默认参数,作用于该交换机下的全部队列,队列自身的参数优先,
+ * 如 (lazy,ttl=60000),q1,q2(ttl=1000)
+ * <p>
+ * 仅direct交换机支持分区队列,如 queue.orders[16]:key 展开为queue.orders.0 ~ queue.orders.15,
+ * 分别以key.0 ~ key.15绑定,命名与分区选择见Partitions
+ */
+public final class CommonMqTopologyScanner
+{
+    private static final String EXCHANGE_PREFIX = "exchange.";
+
+    private static final char EXCHANGE_SEGMENT_SEPARATOR = '.';
+
+    private static final char QUEUE_SEPARATOR = ',';
+
+    private static final char ROUTING_SEPARATOR = ':';
+
+    private static final char ROUTING_KEY_SEPARATOR = '&';
+
+    private static final char HEADER_VALUE_SEPARATOR = '=';
+
+    private static final char ARGUMENTS_START = '(';
+
+    private static final char ARGUMENTS_END = ')';
+
+    private static final char ARGUMENT_SEPARATOR = ',';
+
+    private static final char PARTITIONS_START = '[';
+
+    private static final char PARTITIONS_END = ']';
+
+    private static final String HEADERS_MATCH_ALL = "all";
+
+    private static final String HEADERS_MATCH_ANY = "any";
+
+    private CommonMqTopologyScanner()
+    {
+    }
+
+    /**
+     * 解析完整的交换机与队列定义映射
+     *
+     * @param config 交换机名称与队列定义串的映射
+     * @return 拓扑,包含解析错误
+     */
+    public static MqTopology scan(Map<String, String> config)
+    {
+        if (null == config || config.isEmpty())
+        {
+            return MqTopology.empty();
+        }
+
+        List<ParseError> errors = new ArrayList<>(0);
+        List<ExchangeDefine> exchangeDefines = new ArrayList<>(config.size());
+        for (Map.Entry<String, String> entry : config.entrySet())
+        {
+            ExchangeDefine exchangeDefine = scanExchange(entry.getKey(),
+                    entry.getValue(), errors);
+            if (null != exchangeDefine)
+            {
+                exchangeDefines.add(exchangeDefine);
+            }
+        }
+        return new MqTopology(exchangeDefines, errors);
+    }
+
+    /**
+     * 解析单个交换机
+     *
+     * @return 交换机定义,名称或队列定义不合法时返回null
+     */
+    public static ExchangeDefine scanExchange(String exchangeName,
+            String queueDefines, List<ParseError> errors)
+    {
+        String exchangeType = scanExchangeType(exchangeName, errors);
+        if (null == exchangeType)
+        {
+            return null;
+        }
+
+        List<QueueDefine> queueDefineList = scanQueueDefines(exchangeName,
+                exchangeType, queueDefines, errors);
+        if (queueDefineList.isEmpty())
+        {
+            errors.add(new ParseError(exchangeName, false, 0,
+                    "no valid queue defined"));
+            return null;
+        }
+        return new ExchangeDefine(exchangeName, exchangeType, queueDefineList);
+    }
+
+    /**
+     * 从exchange.type.xxx格式的交换机名称中解析交换机类型
+     *
+     * @return 交换机类型,名称不合法时返回null
+     */
+    public static String scanExchangeType(String exchangeName,
+            List<ParseError> errors)
+    {
+        if (null == exchangeName || !exchangeName
+                .startsWith(EXCHANGE_PREFIX))
+        {
+            errors.add(new ParseError(exchangeName, true, 0,
+                    "exchange name must start with '" + EXCHANGE_PREFIX + "'"));
+            return null;
+        }
+
+        final int typeStart = EXCHANGE_PREFIX.length();
+        final int typeEnd = exchangeName
+                .indexOf(EXCHANGE_SEGMENT_SEPARATOR, typeStart);
+        if (typeEnd < 0 || typeEnd == exchangeName.length() - 1)
+        {
+            errors.add(new ParseError(exchangeName, true,
+                    exchangeName.length(),
+                    "missing name segment after exchange type"));
+            return null;
+        }
+
+        String exchangeType = exchangeName.substring(typeStart, typeEnd);
+        if (!CommonMqParser.isExchangeTypeValid(exchangeType))
+        {
+            errors.add(new ParseError(exchangeName, true, typeStart,
+                    "unsupported exchange type '" + exchangeType + "'"));
+            return null;
+        }
+        return exchangeType;
+    }
+
+    /**
+     * 单遍扫描队列定义串
+     *
+     * @param exchangeName 所属交换机名称,用于错误定位
+     * @param queueDefines 队列定义串
+     * @param errors       错误收集
+     * @return 合法的队列定义,按出现顺序排列
+     */
+    public static List<QueueDefine> scanQueueDefines(String exchangeName,
+            String queueDefines, List<ParseError> errors)
+    {
+        return scanQueueDefines(exchangeName, null, queueDefines, errors);
+    }
+
+    /**
+     * 单遍扫描队列定义串,headers交换机额外校验key=value格式的header条件
+     *
+     * @param exchangeName 所属交换机名称,用于错误定位
+     * @param exchangeType 交换机类型,为null时不做类型相关的校验
+     * @param queueDefines 队列定义串
+     * @param errors       错误收集
+     * @return 合法的队列定义,按出现顺序排列
+     */
+    public static List<QueueDefine> scanQueueDefines(String exchangeName,
+            String exchangeType, String queueDefines, List<ParseError> errors)
+    {
+        final boolean headers = ExchangeTypes.HEADERS.equals(exchangeType);
+        final boolean partitionable = null == exchangeType
+                || ExchangeTypes.DIRECT.equals(exchangeType);
+        if (null == queueDefines || queueDefines.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+
+        final int length = queueDefines.length();
+        List<QueueDefine> queueDefineList = new ArrayList<>();
+        Set<String> queueNames = null;
+        Map<String, Object> defaultArguments = null;
+        int pos = 0;
+
+        //交换机级别的默认队列参数
+        if (ARGUMENTS_START == queueDefines.charAt(0))
+        {
+            defaultArguments = new HashMap<>(4);
+            int errorCount = errors.size();
+            pos = scanArguments(exchangeName, queueDefines, 0, defaultArguments, errors);
+            if (pos < length && QUEUE_SEPARATOR != queueDefines.charAt(pos))
+            {
+                errors.add(new ParseError(exchangeName, false, pos,
+                        "default queue arguments must be followed by ','"));
+            }
+            else if (QueueArguments.isConflicting(defaultArguments))
+            {
+                errors.add(new ParseError(exchangeName, false, 0,
+                        "quorum queue can not be lazy"));
+            }
+            if (errors.size() > errorCount)
+            {
+                return Collections.emptyList();
+            }
+            pos++;
+        }
+
+        while (pos < length)
+        {
+            //队列名
+            final int nameStart = pos;
+            while (pos < length)
+            {
+                char c = queueDefines.charAt(pos);
+                if (QUEUE_SEPARATOR == c || ROUTING_SEPARATOR == c
+                        || ARGUMENTS_START == c || PARTITIONS_START == c)
+                {
+                    break;
+                }
+                pos++;
+            }
+
+            boolean malformed = false;
+            if (nameStart == pos)
+            {
+                errors.add(new ParseError(exchangeName, false, nameStart,
+                        "empty queue name"));
+                malformed = true;
+            }
+            final String queueName = queueDefines.substring(nameStart, pos);
+
+            //分区数
+            int partitions = 0;
+            if (pos < length && PARTITIONS_START == queueDefines.charAt(pos))
+            {
+                final int partitionsStart = pos++;
+                while (pos < length && Character.isDigit(queueDefines.charAt(pos))
+                        && partitions <= Partitions.MAX_PARTITIONS)
+                {
+                    partitions = partitions * 10 + (queueDefines.charAt(pos) - '0');
+                    pos++;
+                }
+                if (pos >= length || PARTITIONS_END != queueDefines.charAt(pos)
+                        || partitions < 1 || partitions > Partitions.MAX_PARTITIONS)
+                {
+                    errors.add(new ParseError(exchangeName, false, partitionsStart,
+                            "partitions of queue '" + queueName + "' must be [1-"
+                                    + Partitions.MAX_PARTITIONS + "]"));
+                    malformed = true;
+                    while (pos < length && PARTITIONS_END != queueDefines.charAt(pos)
+                            && QUEUE_SEPARATOR != queueDefines.charAt(pos))
+                    {
+                        pos++;
+                    }
+                }
+                else if (!partitionable)
+                {
+                    errors.add(new ParseError(exchangeName, false, partitionsStart,
+                            "partitioned queue '" + queueName + "' requires a direct exchange"));
+                    malformed = true;
+                }
+                if (pos < length && PARTITIONS_END == queueDefines.charAt(pos))
+                {
+                    pos++;
+                }
+            }
+
+            //队列参数
+            Map<String, Object> arguments = defaultArguments;
+            if (pos < length && ARGUMENTS_START == queueDefines.charAt(pos))
+            {
+                arguments = null == defaultArguments
+                        ? new HashMap<>(4)
+                        : new HashMap<>(defaultArguments);
+                int argumentsStart = pos;
+                int errorCount = errors.size();
+                pos = scanArguments(exchangeName, queueDefines, pos, arguments, errors);
+                if (errors.size() > errorCount)
+                {
+                    malformed = true;
+                }
+                else if (QueueArguments.isConflicting(arguments))
+                {
+                    errors.add(new ParseError(exchangeName, false, argumentsStart,
+                            "quorum queue '" + queueName + "' can not be lazy"));
+                    malformed = true;
+                }
+            }
+            if (pos < length && QUEUE_SEPARATOR != queueDefines.charAt(pos)
+                    && ROUTING_SEPARATOR != queueDefines.charAt(pos))
+            {
+                errors.add(new ParseError(exchangeName, false, pos,
+                        "unexpected character in define of queue '" + queueName + "'"));
+                malformed = true;
+                while (pos < length && QUEUE_SEPARATOR != queueDefines.charAt(pos))
+                {
+                    pos++;
+                }
+            }
+
+            //routingKey列表
+            List<String> routingKeys = null;
+            if (pos < length && ROUTING_SEPARATOR == queueDefines.charAt(pos))
+            {
+                pos++;
+                int keyStart = pos;
+                int valueSeparator = -1;
+                while (true)
+                {
+                    char c = pos < length ? queueDefines.charAt(pos) : QUEUE_SEPARATOR;
+                    if (ROUTING_KEY_SEPARATOR == c || QUEUE_SEPARATOR == c)
+                    {
+                        if (keyStart == pos)
+                        {
+                            errors.add(new ParseError(exchangeName, false, pos,
+                                    "empty routing key for queue '" + queueName + "'"));
+                            malformed = true;
+                        }
+                        else if (headers && !isHeaderCondition(queueDefines,
+                                keyStart, valueSeparator, pos))
+                        {
+                            errors.add(new ParseError(exchangeName, false, keyStart,
+                                    "header condition of queue '" + queueName + "' must be key=value"));
+                            malformed = true;
+                        }
+                        else if (!malformed)
+                        {
+                            if (null == routingKeys)
+                            {
+                                routingKeys = new ArrayList<>(2);
+                            }
+                            routingKeys.add(queueDefines.substring(keyStart, pos));
+                        }
+
+                        if (QUEUE_SEPARATOR == c)
+                        {
+                            break;
+                        }
+                        keyStart = ++pos;
+                        valueSeparator = -1;
+                        continue;
+                    }
+                    if (HEADER_VALUE_SEPARATOR == c && valueSeparator < 0)
+                    {
+                        valueSeparator = pos;
+                    }
+                    if (ROUTING_SEPARATOR == c)
+                    {
+                        errors.add(new ParseError(exchangeName, false, pos,
+                                "unexpected '" + ROUTING_SEPARATOR + "' in routing keys of queue '" + queueName + "'"));
+                        malformed = true;
+                    }
+                    pos++;
+                }
+            }
+
+            if (!malformed && partitions > 0 && null == routingKeys)
+            {
+                errors.add(new ParseError(exchangeName, false, nameStart,
+                        "partitioned queue '" + queueName + "' requires a routing key"));
+                malformed = true;
+            }
+
+            if (!malformed)
+            {
+                if (null == queueNames)
+                {
+                    queueNames = new HashSet<>();
+                }
+                //重试梯度不是队列参数,单独保存
+                List<Long> retryTiers = QueueArguments.retryTiers(arguments);
+                if (!retryTiers.isEmpty())
+                {
+                    arguments = new HashMap<>(arguments);
+                    arguments.remove(QueueArguments.RETRY);
+                }
+                QueueDefine queueDefine = QueueDefine.builder(queueName)
+                        .routingKeys(routingKeys)
+                        .arguments(arguments)
+                        .partitions(partitions)
+                        .retryTiers(retryTiers)
+                        .build();
+                //分区队列展开后的队列名同样不能与其他队列重复
+                boolean duplicate = false;
+                for (QueueDefine expanded : queueDefine.expand())
+                {
+                    duplicate |= !queueNames.add(expanded.getName());
+                }
+                if (!duplicate)
+                {
+                    queueDefineList.add(queueDefine);
+                }
+                else
+                {
+                    errors.add(new ParseError(exchangeName, false, nameStart,
+                            "duplicate queue '" + queueName + "'"));
+                }
+            }
+
+            //跳过队列分隔符,允许末尾多余的分隔符
+            pos++;
+        }
+        return queueDefineList;
+    }
+
+    /**
+     * 扫描括号内的队列参数
+     *
+     * @param start 左括号的下标
+     * @return 右括号之后的下标,缺少右括号时为串的长度
+     */
+    private static int scanArguments(String exchangeName, String queueDefines,
+            int start, Map<String, Object> arguments, List<ParseError> errors)
+    {
+        final int length = queueDefines.length();
+        int pos = start + 1;
+        while (true)
+        {
+            final int keyStart = pos;
+            int valueSeparator = -1;
+            while (pos < length)
+            {
+                char c = queueDefines.charAt(pos);
+                if (ARGUMENT_SEPARATOR == c || ARGUMENTS_END == c)
+                {
+                    break;
+                }
+                if (HEADER_VALUE_SEPARATOR == c && valueSeparator < 0)
+                {
+                    valueSeparator = pos;
+                }
+                pos++;
+            }
+            if (pos >= length)
+            {
+                errors.add(new ParseError(exchangeName, false, start,
+                        "missing '" + ARGUMENTS_END + "' for queue arguments"));
+                return length;
+            }
+
+            if (keyStart == pos)
+            {
+                errors.add(new ParseError(exchangeName, false, pos,
+                        "empty queue argument"));
+            }
+            else
+            {
+                String key = queueDefines.substring(keyStart,
+                        valueSeparator < 0 ? pos : valueSeparator);
+                String value = valueSeparator < 0
+                        ? null
+                        : queueDefines.substring(valueSeparator + 1, pos);
+                String error = QueueArguments.apply(key, value, arguments);
+                if (null != error)
+                {
+                    errors.add(new ParseError(exchangeName, false, keyStart, error));
+                }
+            }
+
+            if (ARGUMENTS_END == queueDefines.charAt(pos))
+            {
+                return pos + 1;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * headers条件需为key=value,key不能为空;x-match的取值只能为all或any
+     */
+    private static boolean isHeaderCondition(String queueDefines, int keyStart,
+            int valueSeparator, int keyEnd)
+    {
+        if (valueSeparator <= keyStart)
+        {
+            return false;
+        }
+        if (queueDefines.startsWith(CommonMqParser.HEADERS_MATCH_ARGUMENT, keyStart)
+                && valueSeparator - keyStart == CommonMqParser.HEADERS_MATCH_ARGUMENT.length())
+        {
+            int valueLength = keyEnd - valueSeparator - 1;
+            return (valueLength == HEADERS_MATCH_ALL.length()
+                    && queueDefines.startsWith(HEADERS_MATCH_ALL, valueSeparator + 1))
+                    || (valueLength == HEADERS_MATCH_ANY.length()
+                    && queueDefines.startsWith(HEADERS_MATCH_ANY, valueSeparator + 1));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package com.frank.amqp.helper.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 队列定义中的参数简写与RabbitMQ队列参数的对应关系
+ * lazy                   x-queue-mode=lazy
+ * quorum                 x-queue-type=quorum
+ * max-length=N           x-max-length
+ * max-length-bytes=N     x-max-length-bytes
+ * ttl=N                  x-message-ttl(毫秒)
+ * expires=N              x-expires(毫秒)
+ * max-priority=N         x-max-priority
+ * overflow=V             x-overflow,取值drop-head、reject-publish、reject-publish-dlx
+ * dlx=V                  x-dead-letter-exchange
+ * dlk=V                  x-dead-letter-routing-key
+ * x-xxx=V                原样传递,数字值按整数传递
+ * retry=D1/D2/...        非队列参数,为队列生成延迟重试梯度与停放队列,见RetryTopology;
+ *                        延迟单位可为ms、s、m、h,无单位时为毫秒,如retry=1s/10s/60s
+ */
+public final class QueueArguments
+{
+    public static final String QUEUE_MODE = "x-queue-mode";
+
+    public static final String QUEUE_TYPE = "x-queue-type";
+
+    public static final String MAX_LENGTH = "x-max-length";
+
+    public static final String MAX_LENGTH_BYTES = "x-max-length-bytes";
+
+    public static final String MESSAGE_TTL = "x-message-ttl";
+
+    public static final String EXPIRES = "x-expires";
+
+    public static final String MAX_PRIORITY = "x-max-priority";
+
+    public static final String OVERFLOW = "x-overflow";
+
+    public static final String DEAD_LETTER_EXCHANGE = "x-dead-letter-exchange";
+
+    public static final String DEAD_LETTER_ROUTING_KEY = "x-dead-letter-routing-key";
+
+    /**
+     * 重试梯度在参数map中的key,不以x-开头,构建队列定义时会从参数中移除
+     */
+    public static final String RETRY = "retry";
+
+    public static final int MAX_RETRY_TIERS = 16;
+
+    private static final String RETRY_TIER_SEPARATOR = "/";
+
+    private static final String ARGUMENT_PREFIX = "x-";
+
+    private QueueArguments()
+    {
+    }
+
+    /**
+     * 将一个参数简写写入参数map
+     *
+     * @param key       参数名
+     * @param value     参数值,无值参数为null
+     * @param arguments 队列参数
+     * @return 错误信息,合法时返回null
+     */
+    public static String apply(String key, String value,
+            Map<String, Object> arguments)
+    {
+        switch (key)
+        {
+            case "lazy":
+                return flag(key, value, arguments, QUEUE_MODE, "lazy");
+            case "quorum":
+                return flag(key, value, arguments, QUEUE_TYPE, "quorum");
+            case "max-length":
+                return number(key, value, arguments, MAX_LENGTH);
+            case "max-length-bytes":
+                return number(key, value, arguments, MAX_LENGTH_BYTES);
+            case "ttl":
+                return number(key, value, arguments, MESSAGE_TTL);
+            case "expires":
+                return number(key, value, arguments, EXPIRES);
+            case "max-priority":
+                return number(key, value, arguments, MAX_PRIORITY);
+            case "overflow":
+                if (!"drop-head".equals(value) && !"reject-publish".equals(value)
+                        && !"reject-publish-dlx".equals(value))
+                {
+                    return "overflow must be drop-head, reject-publish or reject-publish-dlx";
+                }
+                arguments.put(OVERFLOW, value);
+                return null;
+            case "dlx":
+                return text(key, value, arguments, DEAD_LETTER_EXCHANGE);
+            case "dlk":
+                return text(key, value, arguments, DEAD_LETTER_ROUTING_KEY);
+            case RETRY:
+                List<Long> retryTiers = null == value ? null : parseRetryTiers(value);
+                if (null == retryTiers)
+                {
+                    return "queue argument 'retry' must be 1 to " + MAX_RETRY_TIERS
+                            + " increasing delays separated by '" + RETRY_TIER_SEPARATOR
+                            + "', e.g. retry=1s/10s/60s";
+                }
+                arguments.put(RETRY, retryTiers);
+                return null;
+            default:
+                if (!key.startsWith(ARGUMENT_PREFIX) || null == value)
+                {
+                    return "unknown queue argument '" + key + "'";
+                }
+                Object number = parseNumber(value);
+                arguments.put(key, null == number ? value : number);
+                return null;
+        }
+    }
+
+    /**
+     * quorum队列不支持lazy模式
+     */
+    public static boolean isConflicting(Map<String, Object> arguments)
+    {
+        return "quorum".equals(arguments.get(QUEUE_TYPE))
+                && arguments.containsKey(QUEUE_MODE);
+    }
+
+    /**
+     * @return 参数中的重试梯度(毫秒),未配置时为空列表
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Long> retryTiers(Map<String, Object> arguments)
+    {
+        Object retryTiers = null == arguments ? null : arguments.get(RETRY);
+        return retryTiers instanceof List
+                ? (List<Long>) retryTiers
+                : Collections.emptyList();
+    }
+
+    /**
+     * 解析重试梯度,梯度需严格递增
+     *
+     * @return 各梯度的延迟毫秒数,格式错误时返回null
+     */
+    private static List<Long> parseRetryTiers(String value)
+    {
+        String[] delays = value.split(RETRY_TIER_SEPARATOR, -1);
+        if (delays.length > MAX_RETRY_TIERS)
+        {
+            return null;
+        }
+        List<Long> retryTiers = new ArrayList<>(delays.length);
+        long previous = 0;
+        for (String delay : delays)
+        {
+            long millis = parseDelay(delay);
+            if (millis <= previous || millis > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+            retryTiers.add(millis);
+            previous = millis;
+        }
+        return Collections.unmodifiableList(retryTiers);
+    }
+
+    /**
+     * @return 延迟毫秒数,格式错误时返回-1
+     */
+    private static long parseDelay(String delay)
+    {
+        long unit = 1;
+        String digits = delay;
+        if (delay.endsWith("ms"))
+        {
+            digits = delay.substring(0, delay.length() - 2);
+        }
+        else if (delay.endsWith("s"))
+        {
+            unit = 1000;
+            digits = delay.substring(0, delay.length() - 1);
+        }
+        else if (delay.endsWith("m"))
+        {
+            unit = 60 * 1000;
+            digits = delay.substring(0, delay.length() - 1);
+        }
+        else if (delay.endsWith("h"))
+        {
+            unit = 60 * 60 * 1000;
+            digits = delay.substring(0, delay.length() - 1);
+        }
+        Object number = digits.startsWith("-") ? null : parseNumber(digits);
+        if (!(number instanceof Integer))
+        {
+            return -1;
+        }
+        return ((Integer) number) * unit;
+    }
+
+    private static String flag(String key, String value,
+            Map<String, Object> arguments, String argument, String argumentValue)
+    {
+        if (null != value)
+        {
+            return "queue argument '" + key + "' takes no value";
+        }
+        arguments.put(argument, argumentValue);
+        return null;
+    }
+
+    private static String number(String key, String value,
+            Map<String, Object> arguments, String argument)
+    {
+        Object number = null == value ? null : parseNumber(value);
+        if (null == number || ((Number) number).longValue() < 0)
+        {
+            return "queue argument '" + key + "' must be a non-negative integer";
+        }
+        arguments.put(argument, number);
+        return null;
+    }
+
+    private static String text(String key, String value,
+            Map<String, Object> arguments, String argument)
+    {
+        if (null == value)
+        {
+            return "queue argument '" + key + "' requires a value";
+        }
+        arguments.put(argument, value);
+        return null;
+    }
+
+    /**
+     * @return int范围内返回Integer,否则返回Long,非整数返回null
+     */
+    private static Object parseNumber(String value)
+    {
+        if (value.isEmpty() || value.length() > 19)
+        {
+            return null;
+        }
+        long result = 0;
+        int start = '-' == value.charAt(0) ? 1 : 0;
+        if (start == value.length())
+        {
+            return null;
+        }
+        for (int i = start; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return null;
+            }
+            result = result * 10 + (c - '0');
+            if (result < 0)
+            {
+                return null;
+            }
+        }
+        result = 0 == start ? result : -result;
+        return result >= Integer.MIN_VALUE && result <= Integer.MAX_VALUE
+                ? (Object) (int) result
+                : (Object) result;
+    }
+}
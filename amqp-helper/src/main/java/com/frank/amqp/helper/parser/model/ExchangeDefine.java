@@ -0,0 +1,78 @@
+package com.frank.amqp.helper.parser.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 解析后的交换机定义,不可变,队列按配置顺序保存
+ * 分区队列以配置中的定义保存,同时可按展开后的分区队列名查找分区的定义
+ */
+public final class ExchangeDefine
+{
+    private final String name;
+
+    private final String type;
+
+    private final Map<String, QueueDefine> queueDefineMap;
+
+    private final List<QueueDefine> queueDefines;
+
+    public ExchangeDefine(String name, String type,
+            List<QueueDefine> queueDefines)
+    {
+        this.name = name;
+        this.type = type;
+        Map<String, QueueDefine> queueDefineMap = new LinkedHashMap<>(
+                queueDefines.size() * 4 / 3 + 1);
+        for (QueueDefine queueDefine : queueDefines)
+        {
+            queueDefineMap.put(queueDefine.getName(), queueDefine);
+        }
+        this.queueDefines = Collections
+                .unmodifiableList(new ArrayList<>(queueDefineMap.values()));
+        for (QueueDefine queueDefine : this.queueDefines)
+        {
+            if (queueDefine.isPartitioned())
+            {
+                queueDefine.expand().forEach(partition -> queueDefineMap
+                        .put(partition.getName(), partition));
+            }
+        }
+        this.queueDefineMap = Collections.unmodifiableMap(queueDefineMap);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return 交换机类型,如fanout、direct
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    public List<QueueDefine> getQueueDefines()
+    {
+        return queueDefines;
+    }
+
+    /**
+     * @param queueName 队列名,包括分区队列展开后的队列名
+     */
+    public QueueDefine getQueueDefine(String queueName)
+    {
+        return queueDefineMap.get(queueName);
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + "=" + queueDefines;
+    }
+}
@@ -0,0 +1,66 @@
+package com.frank.amqp.helper.parser.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 解析后的完整拓扑,不可变,交换机按配置顺序保存
+ */
+public final class MqTopology
+{
+    private static final MqTopology EMPTY = new MqTopology(
+            Collections.emptyList(), Collections.emptyList());
+
+    private final Map<String, ExchangeDefine> exchangeDefineMap;
+
+    private final List<ExchangeDefine> exchangeDefines;
+
+    private final List<ParseError> errors;
+
+    public MqTopology(Collection<ExchangeDefine> exchangeDefines,
+            List<ParseError> errors)
+    {
+        Map<String, ExchangeDefine> exchangeDefineMap = new LinkedHashMap<>(
+                exchangeDefines.size() * 4 / 3 + 1);
+        for (ExchangeDefine exchangeDefine : exchangeDefines)
+        {
+            exchangeDefineMap.put(exchangeDefine.getName(), exchangeDefine);
+        }
+        this.exchangeDefineMap = Collections.unmodifiableMap(exchangeDefineMap);
+        this.exchangeDefines = Collections.unmodifiableList(
+                new ArrayList<>(exchangeDefineMap.values()));
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public static MqTopology empty()
+    {
+        return EMPTY;
+    }
+
+    public List<ExchangeDefine> getExchangeDefines()
+    {
+        return exchangeDefines;
+    }
+
+    public ExchangeDefine getExchangeDefine(String exchangeName)
+    {
+        return exchangeDefineMap.get(exchangeName);
+    }
+
+    /**
+     * @return 解析过程中发现的错误,出错的交换机或队列定义不会出现在拓扑中
+     */
+    public List<ParseError> getErrors()
+    {
+        return errors;
+    }
+
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+}
@@ -0,0 +1,57 @@
+package com.frank.amqp.helper.parser.model;
+
+/**
+ * 解析错误,position为出错字符在所属配置串中的下标
+ */
+public final class ParseError
+{
+    /**
+     * 出错的交换机名称
+     */
+    private final String exchangeName;
+
+    /**
+     * 是否为交换机名称本身的错误,否则为队列定义串中的错误
+     */
+    private final boolean inExchangeName;
+
+    private final int position;
+
+    private final String message;
+
+    public ParseError(String exchangeName, boolean inExchangeName,
+            int position, String message)
+    {
+        this.exchangeName = exchangeName;
+        this.inExchangeName = inExchangeName;
+        this.position = position;
+        this.message = message;
+    }
+
+    public String getExchangeName()
+    {
+        return exchangeName;
+    }
+
+    public boolean isInExchangeName()
+    {
+        return inExchangeName;
+    }
+
+    public int getPosition()
+    {
+        return position;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    @Override
+    public String toString()
+    {
+        return exchangeName + (inExchangeName ? " name" : " queueDefines")
+                + "[" + position + "]: " + message;
+    }
+}
@@ -0,0 +1,195 @@
+package com.frank.amqp.helper.parser.model;
+
+import com.frank.amqp.helper.routing.Partitions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 解析后的队列定义,不可变
+ */
+public final class QueueDefine
+{
+    private final String name;
+
+    private final List<String> routingKeys;
+
+    private final Map<String, Object> arguments;
+
+    /**
+     * 分区数,0表示非分区队列
+     */
+    private final int partitions;
+
+    /**
+     * 延迟重试梯度(毫秒),为空表示不生成重试拓扑
+     */
+    private final List<Long> retryTiers;
+
+    /**
+     * @param name 队列名称
+     */
+    public static Builder builder(String name)
+    {
+        return new Builder(name);
+    }
+
+    private QueueDefine(Builder builder)
+    {
+        this.name = builder.name;
+        this.routingKeys = null == builder.routingKeys || builder.routingKeys.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(builder.routingKeys);
+        this.arguments = null == builder.arguments || builder.arguments.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(builder.arguments);
+        this.partitions = builder.partitions;
+        this.retryTiers = null == builder.retryTiers || builder.retryTiers.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(builder.retryTiers);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return 需要绑定的routingKey,未配置时为空列表
+     */
+    public List<String> getRoutingKeys()
+    {
+        return routingKeys;
+    }
+
+    /**
+     * @return 声明队列时的参数(x-queue-type、x-max-length等),未配置时为空map
+     */
+    public Map<String, Object> getArguments()
+    {
+        return arguments;
+    }
+
+    public int getPartitions()
+    {
+        return partitions;
+    }
+
+    public boolean isPartitioned()
+    {
+        return partitions > 0;
+    }
+
+    /**
+     * @return 延迟重试梯度(毫秒),未配置时为空列表
+     */
+    public List<Long> getRetryTiers()
+    {
+        return retryTiers;
+    }
+
+    public boolean isRetryable()
+    {
+        return !retryTiers.isEmpty();
+    }
+
+    /**
+     * 展开为实际声明的队列定义,分区队列展开为每个分区一个队列,非分区队列返回自身
+     */
+    public List<QueueDefine> expand()
+    {
+        if (!isPartitioned())
+        {
+            return Collections.singletonList(this);
+        }
+
+        List<QueueDefine> queueDefines = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++)
+        {
+            List<String> partitionRoutingKeys = new ArrayList<>(routingKeys.size());
+            for (String routingKey : routingKeys)
+            {
+                partitionRoutingKeys.add(Partitions.routingKey(routingKey, i));
+            }
+            queueDefines.add(builder(Partitions.queueName(name, i))
+                    .routingKeys(partitionRoutingKeys)
+                    .arguments(arguments)
+                    .retryTiers(retryTiers)
+                    .build());
+        }
+        return queueDefines;
+    }
+
+    @Override
+    public String toString()
+    {
+        String define = isPartitioned() ? name + "[" + partitions + "]" : name;
+        define = arguments.isEmpty() ? define : define + arguments;
+        define = retryTiers.isEmpty() ? define : define + "(retry=" + retryTiers + ")";
+        return routingKeys.isEmpty() ? define : define + ":" + routingKeys;
+    }
+
+    /**
+     * QueueDefine的可选配置,新增的定义项只在此处增加方法,不再增加构造器
+     */
+    public static final class Builder
+    {
+        private final String name;
+
+        private List<String> routingKeys;
+
+        private Map<String, Object> arguments;
+
+        private int partitions;
+
+        private List<Long> retryTiers;
+
+        private Builder(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * @param routingKeys 需要绑定的routingKey,为null时不绑定
+         */
+        public Builder routingKeys(List<String> routingKeys)
+        {
+            this.routingKeys = routingKeys;
+            return this;
+        }
+
+        /**
+         * @param arguments 声明队列时的参数,为null时不带参数
+         */
+        public Builder arguments(Map<String, Object> arguments)
+        {
+            this.arguments = arguments;
+            return this;
+        }
+
+        /**
+         * @param partitions 分区数,0表示非分区队列
+         */
+        public Builder partitions(int partitions)
+        {
+            this.partitions = partitions;
+            return this;
+        }
+
+        /**
+         * @param retryTiers 延迟重试梯度(毫秒),为null时不生成重试拓扑
+         */
+        public Builder retryTiers(List<Long> retryTiers)
+        {
+            this.retryTiers = retryTiers;
+            return this;
+        }
+
+        public QueueDefine build()
+        {
+            return new QueueDefine(this);
+        }
+    }
+}
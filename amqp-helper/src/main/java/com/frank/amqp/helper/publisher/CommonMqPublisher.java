@@ -0,0 +1,896 @@
+package com.frank.amqp.helper.publisher;
+
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.frank.amqp.helper.metrics.ExchangeMetrics;
+import com.frank.amqp.helper.recorder.FlightEventType;
+import com.frank.amqp.helper.recorder.FlightRing;
+import com.frank.amqp.helper.routing.RoutingIndex;
+import com.frank.amqp.helper.spool.PublishSpool;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionProxy;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * 单个交换机的异步发送器
+ * 1.调用方线程只做消息转换与入队,不会被网络I/O或broker确认阻塞;
+ * 2.独占一个开启了publisher confirm的channel,由单个发送线程按序发送,
+ * 以deliveryTag为下标在环形的确认窗口中记录未确认的消息,乱序的单条确认使窗口槽位仍被占用时,
+ * 之后的请求暂存在发送线程上,槽位释放后按序发送;
+ * 3.broker的确认(包括multiple批量确认)由发送线程统一处理并完成对应的CompletableFuture;
+ * 4.未确认的消息数达到maxInFlight时,新的发送立即以PublisherBackpressureException失败;
+ * 5.传入多个连接时按连接数分为多个发送通道,每个通道独占一个连接上的channel与发送线程,
+ * 调用方线程按线程id固定到一个通道,通道间不共享锁,同一线程发送的消息保持顺序,maxInFlight在通道间均分;
+ * 6.传入PublishSpool时消息只追加到本地日志,由PublishSpool的转发线程发送,CompletableFuture在写入日志后即完成;
+ * 7.close之后到达发送线程的请求以AmqpException失败,不再发送。
+ * CompletableFuture在发送线程上完成,耗时的回调请使用*Async方法指定线程池
+ */
+@Slf4j
+public class CommonMqPublisher
+{
+    private static final String CHARSET = "UTF-8";
+
+    private static final long CLOSE_CONFIRM_TIMEOUT_MILLIS = 5000;
+
+    private static final Object STOP = new Object();
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4096;
+
+    private final String exchange;
+
+    private final MessageConverter messageConverter;
+
+    private final Supplier<RoutingIndex> routingIndexSupplier;
+
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final ExchangeMetrics metrics;
+
+    private final TopologyActivator topologyActivator;
+
+    private final int maxInFlight;
+
+    private final Lane[] lanes;
+
+    private final PublishSpool spool;
+
+    private final FlightRing flightRing;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param exchange            交换机名称
+     * @param connectionFactories 发送通道使用的连接,每个连接对应一个发送通道
+     * @param messageConverter    对象消息的转换器
+     */
+    public static Builder builder(String exchange,
+            List<ConnectionFactory> connectionFactories,
+            MessageConverter messageConverter)
+    {
+        return new Builder(exchange, connectionFactories, messageConverter);
+    }
+
+    public static Builder builder(String exchange,
+            ConnectionFactory connectionFactory, MessageConverter messageConverter)
+    {
+        return builder(exchange, Collections.singletonList(connectionFactory),
+                messageConverter);
+    }
+
+    private CommonMqPublisher(Builder builder)
+    {
+        String exchange = builder.exchange;
+        List<ConnectionFactory> connectionFactories = builder.connectionFactories;
+        if (connectionFactories.isEmpty())
+        {
+            throw new IllegalArgumentException(
+                    "###CommonMqPublisher### exchange:" + exchange
+                            + " requires at least one connection factory");
+        }
+        this.exchange = exchange;
+        this.metrics = null == builder.metrics
+                ? new CommonMqMetrics().exchange(exchange, null)
+                : builder.metrics;
+        this.topologyActivator = builder.topologyActivator;
+        this.messageConverter = builder.messageConverter;
+        this.routingIndexSupplier = builder.routingIndexSupplier;
+        this.maxInFlight = Math.max(1, builder.maxInFlight);
+        this.spool = builder.spool;
+        this.flightRing = builder.flightRing;
+
+        int laneCount = connectionFactories.size();
+        int laneMaxInFlight = Math.max(1,
+                (this.maxInFlight + laneCount - 1) / laneCount);
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++)
+        {
+            lanes[i] = new Lane(1 == laneCount
+                    ? "common-mq-publisher-" + exchange
+                    : "common-mq-publisher-" + exchange + "-" + i,
+                    connectionFactories.get(i), laneMaxInFlight);
+        }
+    }
+
+    public String getExchange()
+    {
+        return exchange;
+    }
+
+    /**
+     * 当前未确认(包括排队中)的消息数
+     */
+    public int getInFlight()
+    {
+        int inFlight = 0;
+        for (Lane lane : lanes)
+        {
+            inFlight += lane.maxInFlight - lane.inFlightPermits.availablePermits();
+        }
+        if (null != spool)
+        {
+            inFlight += (int) Math.min(Integer.MAX_VALUE, spool.getPending());
+        }
+        return inFlight;
+    }
+
+    /**
+     * 发送通道数
+     */
+    public int getLaneCount()
+    {
+        return lanes.length;
+    }
+
+    public CompletableFuture<Void> publish(String routingKey, Object payload)
+    {
+        return publish(routingKey, payload, new MessageProperties());
+    }
+
+    public CompletableFuture<Void> publish(String routingKey, Object payload,
+            MessageProperties messageProperties)
+    {
+        final Message message;
+        try
+        {
+            message = payload instanceof Message
+                    ? (Message) payload
+                    : messageConverter.toMessage(payload, messageProperties);
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+        return send(routingKey, message);
+    }
+
+    /**
+     * 异步发送消息
+     *
+     * @return broker确认后完成,nack、channel异常或背压时异常完成;
+     * 使用本地发送缓冲时写入日志后完成,日志已满时以SpoolFullException异常完成
+     */
+    public CompletableFuture<Void> send(String routingKey, Message message)
+    {
+        if (!running)
+        {
+            metrics.onRejected();
+            return failed(new AmqpException(
+                    "publisher of exchange '" + exchange + "' is closed"));
+        }
+
+        if (null != routingIndexSupplier)
+        {
+            try
+            {
+                routingIndexSupplier.get().checkRoutable(exchange, routingKey,
+                        message.getMessageProperties().getHeaders());
+            }
+            catch (AmqpException e)
+            {
+                metrics.onRejected();
+                return failed(e);
+            }
+        }
+
+        if (null != spool)
+        {
+            try
+            {
+                spool.append(routingKey,
+                        messagePropertiesConverter.fromMessageProperties(
+                                message.getMessageProperties(), CHARSET),
+                        message.getBody());
+            }
+            catch (RuntimeException e)
+            {
+                metrics.onRejected();
+                return failed(e);
+            }
+            metrics.onPublished();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        //按线程固定通道,同一线程的消息在同一channel上按序发送
+        Lane lane = 1 == lanes.length
+                ? lanes[0]
+                : lanes[(int) (Thread.currentThread().getId() % lanes.length)];
+        if (!lane.inFlightPermits.tryAcquire())
+        {
+            metrics.onRejected();
+            return failed(new PublisherBackpressureException(exchange,
+                    maxInFlight));
+        }
+
+        PublishRequest request = new PublishRequest(routingKey,
+                messagePropertiesConverter.fromMessageProperties(
+                        message.getMessageProperties(), CHARSET),
+                message.getBody());
+        lane.ensureWorker();
+        lane.events.offer(request);
+        metrics.onPublished();
+        //与close并发时发送线程可能已经退出,由调用方线程使请求失败
+        if (lane.stopped)
+        {
+            lane.rejectQueued();
+        }
+        return request.future;
+    }
+
+    /**
+     * 停止接收新消息,等待已发送消息的确认后关闭channel
+     */
+    public void close()
+    {
+        running = false;
+        for (Lane lane : lanes)
+        {
+            lane.stop();
+        }
+        for (Lane lane : lanes)
+        {
+            lane.awaitStopped();
+        }
+        if (null != spool)
+        {
+            spool.close();
+        }
+    }
+
+    private static CompletableFuture<Void> failed(Exception cause)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * 发送通道,以下状态除events、inFlightPermits、worker与stopped外仅由发送线程访问
+     */
+    private final class Lane
+    {
+        private final String threadName;
+
+        private final ConnectionFactory connectionFactory;
+
+        private final int maxInFlight;
+
+        private final Semaphore inFlightPermits;
+
+        /**
+         * 发送请求、broker确认与channel关闭事件均进入该队列,由发送线程串行处理
+         */
+        private final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+        private volatile Thread worker;
+
+        /**
+         * 发送线程已退出或从未启动且已停止,之后入队的请求不会再被处理
+         */
+        private volatile boolean stopped;
+
+        private final PublishRequest[] window;
+
+        private final int windowMask;
+
+        /**
+         * 确认窗口中对应槽位仍被占用而暂不发送的请求,按入队顺序排列
+         */
+        private final ArrayDeque<PublishRequest> deferred = new ArrayDeque<>();
+
+        private Channel channel;
+
+        private long oldestSeq;
+
+        private long nextSeq;
+
+        private Lane(String threadName, ConnectionFactory connectionFactory,
+                int maxInFlight)
+        {
+            this.threadName = threadName;
+            this.connectionFactory = connectionFactory;
+            this.maxInFlight = maxInFlight;
+            this.inFlightPermits = new Semaphore(maxInFlight);
+
+            int windowSize = Integer.highestOneBit(maxInFlight);
+            if (windowSize < maxInFlight)
+            {
+                windowSize <<= 1;
+            }
+            this.window = new PublishRequest[windowSize];
+            this.windowMask = windowSize - 1;
+        }
+
+        private void stop()
+        {
+            synchronized (this)
+            {
+                if (null == worker)
+                {
+                    stopped = true;
+                    return;
+                }
+            }
+            events.offer(STOP);
+        }
+
+        private void awaitStopped()
+        {
+            Thread currentWorker = worker;
+            if (null == currentWorker)
+            {
+                return;
+            }
+            try
+            {
+                currentWorker.join(CLOSE_CONFIRM_TIMEOUT_MILLIS * 2);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void ensureWorker()
+        {
+            if (null != worker)
+            {
+                return;
+            }
+            synchronized (this)
+            {
+                if (null == worker && !stopped)
+                {
+                    Thread thread = new Thread(this::runWorker, threadName);
+                    thread.setDaemon(true);
+                    thread.start();
+                    worker = thread;
+                }
+            }
+        }
+
+        private void runWorker()
+        {
+            try
+            {
+                for (;;)
+                {
+                    Object event = events.take();
+                    if (STOP == event)
+                    {
+                        shutdown();
+                        return;
+                    }
+                    handle(event);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                AmqpException cause = new AmqpException("publisher worker interrupted");
+                failDeferred(cause);
+                failAll(cause);
+                stopped = true;
+                rejectQueued();
+            }
+        }
+
+        private void handle(Object event)
+        {
+            if (event instanceof PublishRequest)
+            {
+                PublishRequest request = (PublishRequest) event;
+                //已有暂存的请求时排在其后,保持发送顺序
+                if (!deferred.isEmpty() || !doPublish(request))
+                {
+                    deferred.addLast(request);
+                }
+            }
+            else if (event instanceof ConfirmEvent)
+            {
+                ConfirmEvent confirm = (ConfirmEvent) event;
+                //过期channel上的确认直接忽略,其未确认消息已在channel关闭时失败
+                if (confirm.channel == channel)
+                {
+                    confirm(confirm.deliveryTag, confirm.multiple, confirm.ack);
+                    publishDeferred();
+                }
+            }
+            else if (event instanceof ShutdownEvent)
+            {
+                ShutdownEvent shutdown = (ShutdownEvent) event;
+                if (shutdown.channel == channel)
+                {
+                    channel = null;
+                    failAll(shutdown.cause);
+                    publishDeferred();
+                }
+            }
+        }
+
+        /**
+         * 按序发送暂存的请求,直到窗口槽位再次被占用
+         */
+        private void publishDeferred()
+        {
+            PublishRequest request;
+            while (null != (request = deferred.peekFirst()))
+            {
+                if (!doPublish(request))
+                {
+                    return;
+                }
+                deferred.pollFirst();
+            }
+        }
+
+        /**
+         * @return 请求已发送或已失败时返回true,确认窗口中对应的槽位仍被占用时返回false
+         */
+        private boolean doPublish(PublishRequest request)
+        {
+            try
+            {
+                Channel currentChannel = obtainChannel();
+                long seq = currentChannel.getNextPublishSeqNo();
+                int index = (int) (seq & windowMask);
+                //许可数只限制未确认的消息数,乱序的单条确认可能使最早与最新的未确认消息跨度超过窗口
+                if (null != window[index])
+                {
+                    return false;
+                }
+                window[index] = request;
+                if (oldestSeq == nextSeq)
+                {
+                    oldestSeq = seq;
+                }
+                nextSeq = seq + 1;
+                request.sentNanos = System.nanoTime();
+                currentChannel.basicPublish(exchange, request.routingKey, false,
+                        request.properties, request.body);
+                if (null != flightRing)
+                {
+                    flightRing.record(FlightEventType.PUBLISH, request.routingKey,
+                            request.body.length, request.sentNanos, 0);
+                }
+            }
+            catch (Exception e)
+            {
+                log.warn(
+                        "###CommonMqPublisher->publish### exchange:{} publish failed, error:{}",
+                        exchange, e.getMessage());
+                AmqpException cause = e instanceof AmqpException
+                        ? (AmqpException) e
+                        : new AmqpException(e);
+                //已放入窗口的请求由failAll完成,只有未放入窗口的请求在此单独完成,避免重复释放许可
+                failAll(cause);
+                if (!request.future.isDone())
+                {
+                    complete(request, cause);
+                }
+                closeChannel();
+            }
+            return true;
+        }
+
+        private void confirm(long deliveryTag, boolean multiple, boolean ack)
+        {
+            long from = multiple ? oldestSeq : deliveryTag;
+            long now = System.nanoTime();
+            for (long seq = from; seq <= deliveryTag && seq < nextSeq; seq++)
+            {
+                int index = (int) (seq & windowMask);
+                PublishRequest request = window[index];
+                if (null != request)
+                {
+                    window[index] = null;
+                    if (null != flightRing)
+                    {
+                        flightRing.record(ack ? FlightEventType.CONFIRM : FlightEventType.NACK,
+                                request.routingKey, request.body.length, now,
+                                now - request.sentNanos);
+                    }
+                    if (ack)
+                    {
+                        metrics.onConfirmed(now - request.sentNanos);
+                        complete(request, null);
+                    }
+                    else
+                    {
+                        metrics.onNacked();
+                        complete(request,
+                                new PublishNackException(exchange, request.routingKey));
+                    }
+                }
+            }
+            while (oldestSeq < nextSeq
+                    && null == window[(int) (oldestSeq & windowMask)])
+            {
+                oldestSeq++;
+            }
+        }
+
+        private void failAll(Exception cause)
+        {
+            for (long seq = oldestSeq; seq < nextSeq; seq++)
+            {
+                int index = (int) (seq & windowMask);
+                PublishRequest request = window[index];
+                if (null != request)
+                {
+                    window[index] = null;
+                    complete(request, cause);
+                }
+            }
+            oldestSeq = nextSeq = 0;
+        }
+
+        private void failDeferred(Exception cause)
+        {
+            PublishRequest request;
+            while (null != (request = deferred.pollFirst()))
+            {
+                complete(request, cause);
+            }
+        }
+
+        /**
+         * 使队列中尚未处理的请求失败,在发送线程退出后调用,可由调用方线程执行
+         */
+        private void rejectQueued()
+        {
+            AmqpException closed = closedException();
+            Object event;
+            while (null != (event = events.poll()))
+            {
+                if (event instanceof PublishRequest)
+                {
+                    complete((PublishRequest) event, closed);
+                }
+            }
+        }
+
+        private void complete(PublishRequest request, Exception cause)
+        {
+            inFlightPermits.release();
+            if (null == cause)
+            {
+                request.future.complete(null);
+            }
+            else
+            {
+                if (!(cause instanceof PublishNackException))
+                {
+                    metrics.onFailed();
+                }
+                request.future.completeExceptionally(cause);
+            }
+        }
+
+        private Channel obtainChannel() throws Exception
+        {
+            if (null != channel && channel.isOpen())
+            {
+                return channel;
+            }
+            //channel已关闭但关闭事件尚未处理,其未确认的消息不会再收到确认
+            if (null != channel)
+            {
+                channel = null;
+                failAll(new AmqpException("publisher channel of exchange '"
+                        + exchange + "' is closed"));
+            }
+
+            //lazy模式下在发送线程上按需声明交换机,已声明时只做一次集合查询
+            if (null != topologyActivator)
+            {
+                topologyActivator.activate(exchange);
+            }
+
+            //绕过CachingConnectionFactory的channel缓存,confirm模式的channel由发送器独占
+            Connection connection = connectionFactory.createConnection();
+            if (connection instanceof ConnectionProxy)
+            {
+                connection = ((ConnectionProxy) connection).getTargetConnection();
+            }
+            final Channel newChannel = connection.createChannel(false);
+            newChannel.confirmSelect();
+            newChannel.addConfirmListener(new ConfirmListener()
+            {
+                @Override
+                public void handleAck(long deliveryTag, boolean multiple)
+                {
+                    events.offer(new ConfirmEvent(newChannel, deliveryTag, multiple, true));
+                }
+
+                @Override
+                public void handleNack(long deliveryTag, boolean multiple)
+                {
+                    events.offer(new ConfirmEvent(newChannel, deliveryTag, multiple, false));
+                }
+            });
+            newChannel.addShutdownListener(cause -> events
+                    .offer(new ShutdownEvent(newChannel, new AmqpException(cause))));
+            channel = newChannel;
+            oldestSeq = nextSeq = 0;
+            log.debug(
+                    "###CommonMqPublisher->channel### exchange:{} open confirm channel:{}",
+                    exchange, newChannel.getChannelNumber());
+            return newChannel;
+        }
+
+        private void shutdown()
+        {
+            //STOP之后入队的请求不再发送,确认与channel关闭事件照常处理
+            AmqpException closed = closedException();
+            drainStopped(closed);
+            //等待已发送消息的确认,暂存的请求在槽位释放后继续发送
+            while (awaitConfirms())
+            {
+                drainStopped(closed);
+                if (deferred.isEmpty())
+                {
+                    break;
+                }
+            }
+            failDeferred(closed);
+            failAll(closed);
+            closeChannel();
+            stopped = true;
+            rejectQueued();
+        }
+
+        private void drainStopped(AmqpException closed)
+        {
+            Object event;
+            while (null != (event = events.poll()))
+            {
+                if (event instanceof PublishRequest)
+                {
+                    complete((PublishRequest) event, closed);
+                }
+                else
+                {
+                    handle(event);
+                }
+            }
+        }
+
+        /**
+         * @return 是否等到了已发送消息的确认
+         */
+        private boolean awaitConfirms()
+        {
+            Channel currentChannel = channel;
+            if (null == currentChannel || !currentChannel.isOpen()
+                    || oldestSeq == nextSeq)
+            {
+                return false;
+            }
+            try
+            {
+                currentChannel.waitForConfirms(CLOSE_CONFIRM_TIMEOUT_MILLIS);
+                return true;
+            }
+            catch (Exception e)
+            {
+                log.warn(
+                        "###CommonMqPublisher->close### exchange:{} wait for confirms failed, error:{}",
+                        exchange, e.getMessage());
+                return false;
+            }
+        }
+
+        private AmqpException closedException()
+        {
+            return new AmqpException(
+                    "publisher of exchange '" + exchange + "' is closed");
+        }
+
+        private void closeChannel()
+        {
+            Channel currentChannel = channel;
+            channel = null;
+            if (null == currentChannel || !currentChannel.isOpen())
+            {
+                return;
+            }
+            try
+            {
+                currentChannel.close();
+            }
+            catch (Exception e)
+            {
+                log.debug(
+                        "###CommonMqPublisher->close### exchange:{} close channel error:{}",
+                        exchange, e.getMessage());
+            }
+        }
+    }
+
+    private static final class PublishRequest
+    {
+        private final String routingKey;
+
+        private final AMQP.BasicProperties properties;
+
+        private final byte[] body;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * 写入channel的时间,仅由发送线程访问
+         */
+        private long sentNanos;
+
+        private PublishRequest(String routingKey,
+                AMQP.BasicProperties properties, byte[] body)
+        {
+            this.routingKey = null == routingKey ? "" : routingKey;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
+
+    private static final class ConfirmEvent
+    {
+        private final Channel channel;
+
+        private final long deliveryTag;
+
+        private final boolean multiple;
+
+        private final boolean ack;
+
+        private ConfirmEvent(Channel channel, long deliveryTag,
+                boolean multiple, boolean ack)
+        {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.multiple = multiple;
+            this.ack = ack;
+        }
+    }
+
+    private static final class ShutdownEvent
+    {
+        private final Channel channel;
+
+        private final Exception cause;
+
+        private ShutdownEvent(Channel channel, Exception cause)
+        {
+            this.channel = channel;
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * CommonMqPublisher的可选配置,新增的配置项只在此处增加方法,不再增加构造器
+     */
+    public static final class Builder
+    {
+        private final String exchange;
+
+        private final List<ConnectionFactory> connectionFactories;
+
+        private final MessageConverter messageConverter;
+
+        private Supplier<RoutingIndex> routingIndexSupplier;
+
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+        private ExchangeMetrics metrics;
+
+        private TopologyActivator topologyActivator;
+
+        private PublishSpool spool;
+
+        private FlightRing flightRing;
+
+        private Builder(String exchange,
+                List<ConnectionFactory> connectionFactories,
+                MessageConverter messageConverter)
+        {
+            this.exchange = exchange;
+            this.connectionFactories = connectionFactories;
+            this.messageConverter = messageConverter;
+        }
+
+        /**
+         * @param routingIndexSupplier 路由索引,为null时不在发送前校验可路由性
+         */
+        public Builder routingIndex(Supplier<RoutingIndex> routingIndexSupplier)
+        {
+            this.routingIndexSupplier = routingIndexSupplier;
+            return this;
+        }
+
+        /**
+         * @param maxInFlight 未确认消息数上限,在发送通道间均分
+         */
+        public Builder maxInFlight(int maxInFlight)
+        {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param metrics 交换机的发送统计,为null时使用独立的统计
+         */
+        public Builder metrics(ExchangeMetrics metrics)
+        {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param topologyActivator lazy模式下在首次打开channel前声明交换机,为null时不声明
+         */
+        public Builder topologyActivator(TopologyActivator topologyActivator)
+        {
+            this.topologyActivator = topologyActivator;
+            return this;
+        }
+
+        /**
+         * @param spool 本地发送缓冲,不为null时消息经由本地日志异步转发,关闭发送器时一并关闭
+         */
+        public Builder spool(PublishSpool spool)
+        {
+            this.spool = spool;
+            return this;
+        }
+
+        /**
+         * @param flightRing 交换机的飞行记录,不为null时记录每条消息的发送与确认
+         */
+        public Builder flightRing(FlightRing flightRing)
+        {
+            this.flightRing = flightRing;
+            return this;
+        }
+
+        public CommonMqPublisher build()
+        {
+            return new CommonMqPublisher(this);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.frank.amqp.helper.publisher;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.frank.amqp.helper.metrics.ExchangeMetrics;
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import com.frank.amqp.helper.recorder.FlightRecorder;
+import com.frank.amqp.helper.recorder.FlightRing;
+import com.frank.amqp.helper.refresh.TopologyRefreshedEvent;
+import com.frank.amqp.helper.routing.RoutingIndex;
+import com.frank.amqp.helper.spool.PublishJournal;
+import com.frank.amqp.helper.spool.PublishSpool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 为CommonMqManager创建的每个交换机生成一个CommonMqPublisher,
+ * 并以"交换机名称+Publisher"为名称注册到容器中;
+ * 每个分区队列额外生成一个PartitionedPublisher,以"队列名称+Publisher"为名称注册;
+ * 发送器使用交换机所在连接分组的连接,对象消息按交换机的编解码器编码;
+ * 开启本地发送缓冲的交换机在日志目录下以交换机名称建立子目录,由PublishSpool转发;
+ * 拓扑刷新后为新增的交换机与分区队列补充注册
+ */
+@Slf4j
+public class CommonMqPublisherRegistry
+        implements BeanFactoryAware, InitializingBean, DisposableBean,
+        ApplicationListener<TopologyRefreshedEvent>
+{
+    public static final String BEAN_NAME_SUFFIX = "Publisher";
+
+    private final ConnectionGroups connectionGroups;
+
+    private final CommonMqManager commonMqManager;
+
+    private final MessageCodecRegistry messageCodecRegistry;
+
+    private final int maxInFlight;
+
+    private final boolean checkRoutable;
+
+    private final TopologyActivator topologyActivator;
+
+    private final CommonMqProperties.Spool spool;
+
+    private final FlightRecorder flightRecorder;
+
+    private final Map<String, CommonMqPublisher> publishers = new ConcurrentHashMap<>();
+
+    private final Map<String, PartitionedPublisher> partitionedPublishers = new ConcurrentHashMap<>();
+
+    /**
+     * 发送器首个通道所用的发送连接下标,按创建顺序轮转,使单线程发送的交换机分散在不同连接上
+     */
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    /**
+     * @param connectionGroups 交换机所在分组的连接
+     */
+    public static Builder builder(ConnectionGroups connectionGroups,
+            CommonMqManager commonMqManager)
+    {
+        return new Builder(connectionGroups, commonMqManager);
+    }
+
+    public static Builder builder(ConnectionFactory connectionFactory,
+            CommonMqManager commonMqManager)
+    {
+        return builder(new ConnectionGroups(connectionFactory), commonMqManager);
+    }
+
+    private CommonMqPublisherRegistry(Builder builder)
+    {
+        this.connectionGroups = builder.connectionGroups;
+        this.commonMqManager = builder.commonMqManager;
+        this.messageCodecRegistry = null == builder.messageCodecRegistry
+                ? new MessageCodecRegistry(new SimpleMessageConverter())
+                : builder.messageCodecRegistry;
+        this.maxInFlight = builder.maxInFlight;
+        this.checkRoutable = builder.checkRoutable;
+        this.topologyActivator = builder.topologyActivator;
+        this.spool = builder.spool;
+        this.flightRecorder = builder.flightRecorder;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException
+    {
+        if (beanFactory instanceof ConfigurableListableBeanFactory)
+        {
+            this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        registerPublishers();
+    }
+
+    @Override
+    public void onApplicationEvent(TopologyRefreshedEvent event)
+    {
+        registerPublishers();
+    }
+
+    /**
+     * 注册尚未注册的发送器,已注册的分区发送器更新为最新的分区定义
+     */
+    private synchronized void registerPublishers()
+    {
+        //lazy模式下交换机尚未注册,以解析后的拓扑为准,交换机在首次发送时声明
+        for (ExchangeDefine exchangeDefine : commonMqManager.getTopology()
+                .getExchangeDefines())
+        {
+            final String beanName = exchangeDefine.getName() + BEAN_NAME_SUFFIX;
+            if (null == beanFactory || beanFactory.containsSingleton(beanName))
+            {
+                continue;
+            }
+            beanFactory.registerSingleton(beanName,
+                    getPublisher(exchangeDefine.getName()));
+            log.debug(
+                    "###CommonMqPublisherRegistry### init->Exchange:{} publisher init success!",
+                    exchangeDefine.getName());
+        }
+
+        for (ExchangeDefine exchangeDefine : commonMqManager.getTopology()
+                .getExchangeDefines())
+        {
+            for (QueueDefine queueDefine : exchangeDefine.getQueueDefines())
+            {
+                if (!queueDefine.isPartitioned())
+                {
+                    continue;
+                }
+                PartitionedPublisher existing = partitionedPublishers
+                        .get(queueDefine.getName());
+                if (null != existing)
+                {
+                    existing.update(queueDefine);
+                    continue;
+                }
+                PartitionedPublisher partitionedPublisher = new PartitionedPublisher(
+                        getPublisher(exchangeDefine.getName()), queueDefine);
+                partitionedPublishers.put(queueDefine.getName(),
+                        partitionedPublisher);
+                if (null != beanFactory)
+                {
+                    beanFactory.registerSingleton(
+                            queueDefine.getName() + BEAN_NAME_SUFFIX,
+                            partitionedPublisher);
+                }
+                log.debug(
+                        "###CommonMqPublisherRegistry### init->Queue:{} partitioned publisher init success, partitions:{}",
+                        queueDefine.getName(), queueDefine.getPartitions());
+            }
+        }
+    }
+
+    /**
+     * 获取交换机对应的发送器,不存在时创建
+     */
+    public CommonMqPublisher getPublisher(String exchange)
+    {
+        return publishers.computeIfAbsent(exchange, this::createPublisher);
+    }
+
+    /**
+     * 获取分区队列对应的发送器
+     *
+     * @param queueName 分区队列在配置中的名称,不含分区下标
+     * @return 发送器,非分区队列返回null
+     */
+    public PartitionedPublisher getPartitionedPublisher(String queueName)
+    {
+        return partitionedPublishers.get(queueName);
+    }
+
+    public Collection<CommonMqPublisher> getPublishers()
+    {
+        return Collections.unmodifiableCollection(publishers.values());
+    }
+
+    private CommonMqPublisher createPublisher(String exchange)
+    {
+        Supplier<RoutingIndex> routingIndexSupplier = checkRoutable
+                ? commonMqManager::getRoutingIndex
+                : null;
+        ExchangeDefine exchangeDefine = commonMqManager.getTopology()
+                .getExchangeDefine(exchange);
+        List<ConnectionFactory> stripes = new ArrayList<>(
+                connectionGroups.publisherConnectionFactoriesFor(exchange));
+        Collections.rotate(stripes,
+                -Math.floorMod(nextStripe.getAndIncrement(), stripes.size()));
+        ExchangeMetrics metrics = commonMqManager.getMetrics().exchange(exchange,
+                null == exchangeDefine ? null : exchangeDefine.getType());
+        FlightRing flightRing = null == flightRecorder
+                ? null
+                : flightRecorder.exchange(exchange);
+        return CommonMqPublisher.builder(exchange, stripes,
+                messageCodecRegistry.converterFor(exchange))
+                .routingIndex(routingIndexSupplier)
+                .maxInFlight(maxInFlight)
+                .metrics(metrics)
+                .topologyActivator(topologyActivator)
+                .spool(openSpool(exchange, stripes.get(0), metrics, flightRing))
+                .flightRing(flightRing)
+                .build();
+    }
+
+    /**
+     * 打开交换机的本地发送缓冲,转发线程使用发送器首个通道的连接
+     */
+    private PublishSpool openSpool(String exchange,
+            ConnectionFactory connectionFactory, ExchangeMetrics metrics,
+            FlightRing flightRing)
+    {
+        if (null == spool || !spool.appliesTo(exchange))
+        {
+            return null;
+        }
+        try
+        {
+            PublishJournal journal = new PublishJournal(
+                    Paths.get(spool.getDirectory()).resolve(exchange),
+                    spool.getSegmentBytes(), spool.getMaxSegments());
+            log.info(
+                    "###CommonMqPublisherRegistry### init->Exchange:{} spool:{} pending:{}",
+                    exchange, journal.getDirectory(), journal.getPending());
+            return PublishSpool.builder(exchange, journal, connectionFactory)
+                    .maxInFlight(maxInFlight)
+                    .metrics(metrics)
+                    .topologyActivator(topologyActivator)
+                    .flightRing(flightRing)
+                    .build();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(
+                    "###CommonMqPublisherRegistry### open spool of exchange:"
+                            + exchange + " failed", e);
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        publishers.values().forEach(CommonMqPublisher::close);
+    }
+
+    /**
+     * CommonMqPublisherRegistry的可选配置,新增的配置项只在此处增加方法,不再增加构造器
+     */
+    public static final class Builder
+    {
+        private final ConnectionGroups connectionGroups;
+
+        private final CommonMqManager commonMqManager;
+
+        private MessageCodecRegistry messageCodecRegistry;
+
+        private int maxInFlight = CommonMqPublisher.DEFAULT_MAX_IN_FLIGHT;
+
+        private boolean checkRoutable;
+
+        private TopologyActivator topologyActivator;
+
+        private CommonMqProperties.Spool spool;
+
+        private FlightRecorder flightRecorder;
+
+        private Builder(ConnectionGroups connectionGroups,
+                CommonMqManager commonMqManager)
+        {
+            this.connectionGroups = connectionGroups;
+            this.commonMqManager = commonMqManager;
+        }
+
+        /**
+         * @param messageCodecRegistry 按交换机选择对象消息的转换器,为null时使用SimpleMessageConverter
+         */
+        public Builder messageCodecRegistry(MessageCodecRegistry messageCodecRegistry)
+        {
+            this.messageCodecRegistry = messageCodecRegistry;
+            return this;
+        }
+
+        /**
+         * @param messageConverter 所有交换机共用的对象消息转换器
+         */
+        public Builder messageConverter(MessageConverter messageConverter)
+        {
+            return messageCodecRegistry(new MessageCodecRegistry(messageConverter));
+        }
+
+        /**
+         * @param maxInFlight 单个交换机未确认消息数上限
+         */
+        public Builder maxInFlight(int maxInFlight)
+        {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param checkRoutable 发送前是否通过路由索引校验消息可路由
+         */
+        public Builder checkRoutable(boolean checkRoutable)
+        {
+            this.checkRoutable = checkRoutable;
+            return this;
+        }
+
+        /**
+         * @param topologyActivator lazy模式下的按需声明,为null时交换机已在启动时声明
+         */
+        public Builder topologyActivator(TopologyActivator topologyActivator)
+        {
+            this.topologyActivator = topologyActivator;
+            return this;
+        }
+
+        /**
+         * @param spool 本地发送缓冲配置,为null时不使用
+         */
+        public Builder spool(CommonMqProperties.Spool spool)
+        {
+            this.spool = spool;
+            return this;
+        }
+
+        /**
+         * @param flightRecorder 飞行记录器,为null时不记录
+         */
+        public Builder flightRecorder(FlightRecorder flightRecorder)
+        {
+            this.flightRecorder = flightRecorder;
+            return this;
+        }
+
+        public CommonMqPublisherRegistry build()
+        {
+            return new CommonMqPublisherRegistry(this);
+        }
+    }
+}
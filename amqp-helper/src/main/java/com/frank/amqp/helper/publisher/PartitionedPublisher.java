@@ -0,0 +1,90 @@
+package com.frank.amqp.helper.publisher;
+
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import com.frank.amqp.helper.routing.Partitions;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分区队列的发送器
+ * 按分区key的一致性哈希选择分区,将routingKey改写为routingKey.分区下标后交由交换机的CommonMqPublisher发送,
+ * 同一分区key的消息始终进入同一个分区队列,由该分区唯一的消费者按序处理;
+ * 拓扑刷新后分区数或routingKey发生变化时由CommonMqPublisherRegistry更新
+ */
+public class PartitionedPublisher
+{
+    private final CommonMqPublisher publisher;
+
+    private volatile QueueDefine queueDefine;
+
+    public PartitionedPublisher(CommonMqPublisher publisher,
+            QueueDefine queueDefine)
+    {
+        this.publisher = publisher;
+        update(queueDefine);
+    }
+
+    void update(QueueDefine queueDefine)
+    {
+        if (!queueDefine.isPartitioned())
+        {
+            throw new IllegalArgumentException(
+                    "queue '" + queueDefine.getName() + "' is not partitioned");
+        }
+        this.queueDefine = queueDefine;
+    }
+
+    public String getQueueName()
+    {
+        return queueDefine.getName();
+    }
+
+    public int getPartitions()
+    {
+        return queueDefine.getPartitions();
+    }
+
+    public int partitionOf(String partitionKey)
+    {
+        return Partitions.partitionOf(partitionKey, getPartitions());
+    }
+
+    /**
+     * 以分区队列的第一个routingKey发送
+     */
+    public CompletableFuture<Void> publish(String partitionKey, Object payload)
+    {
+        return publish(queueDefine.getRoutingKeys().get(0), partitionKey, payload,
+                new MessageProperties());
+    }
+
+    public CompletableFuture<Void> publish(String routingKey,
+            String partitionKey, Object payload,
+            MessageProperties messageProperties)
+    {
+        return publisher.publish(partitionRoutingKey(routingKey, partitionKey),
+                payload, messageProperties);
+    }
+
+    public CompletableFuture<Void> send(String routingKey, String partitionKey,
+            Message message)
+    {
+        return publisher.send(partitionRoutingKey(routingKey, partitionKey),
+                message);
+    }
+
+    private String partitionRoutingKey(String routingKey, String partitionKey)
+    {
+        final QueueDefine current = queueDefine;
+        if (!current.getRoutingKeys().contains(routingKey))
+        {
+            throw new IllegalArgumentException("routingKey '" + routingKey
+                    + "' is not bound to partitioned queue '"
+                    + current.getName() + "'");
+        }
+        return Partitions.routingKey(routingKey,
+                Partitions.partitionOf(partitionKey, current.getPartitions()));
+    }
+}
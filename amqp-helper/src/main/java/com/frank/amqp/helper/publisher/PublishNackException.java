@@ -0,0 +1,17 @@
+package com.frank.amqp.helper.publisher;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * broker对消息返回了nack
+ */
+public class PublishNackException extends AmqpException
+{
+    private static final long serialVersionUID = 1L;
+
+    public PublishNackException(String exchange, String routingKey)
+    {
+        super("broker nacked message to exchange '" + exchange
+                + "' with routing key '" + routingKey + "'");
+    }
+}
@@ -0,0 +1,33 @@
+package com.frank.amqp.helper.publisher;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * 发送端未确认的消息数已达上限,调用方应稍后重试或降级
+ */
+public class PublisherBackpressureException extends AmqpException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String exchange;
+
+    private final int maxInFlight;
+
+    public PublisherBackpressureException(String exchange, int maxInFlight)
+    {
+        super("publisher of exchange '" + exchange + "' reached max in-flight "
+                + maxInFlight);
+        this.exchange = exchange;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public String getExchange()
+    {
+        return exchange;
+    }
+
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+}
@@ -0,0 +1,106 @@
+package com.frank.amqp.helper.recorder;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 飞行记录快照中的一条记录
+ */
+public final class FlightEntry
+{
+    private final String source;
+
+    private final boolean exchange;
+
+    private final long sequence;
+
+    private final FlightEventType type;
+
+    private final String routingKey;
+
+    private final int size;
+
+    private final long epochNanos;
+
+    private final long latencyNanos;
+
+    FlightEntry(String source, boolean exchange, long sequence,
+            FlightEventType type, String routingKey, int size, long epochNanos,
+            long latencyNanos)
+    {
+        this.source = source;
+        this.exchange = exchange;
+        this.sequence = sequence;
+        this.type = type;
+        this.routingKey = routingKey;
+        this.size = size;
+        this.epochNanos = epochNanos;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * @return 交换机或队列名称
+     */
+    public String getSource()
+    {
+        return source;
+    }
+
+    public boolean isExchange()
+    {
+        return exchange;
+    }
+
+    /**
+     * @return 在所属环形缓冲分片中的序号
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public FlightEventType getType()
+    {
+        return type;
+    }
+
+    public String getRoutingKey()
+    {
+        return routingKey;
+    }
+
+    /**
+     * @return 消息体字节数
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return 事件发生的墙上时间,纳秒
+     */
+    public long getEpochNanos()
+    {
+        return epochNanos;
+    }
+
+    public long getTimestampMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(epochNanos);
+    }
+
+    public long getLatencyNanos()
+    {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Instant.ofEpochSecond(0, epochNanos) + " "
+                + (exchange ? "exchange:" : "queue:") + source + " " + type
+                + " routingKey:" + routingKey + " size:" + size
+                + " latency:" + TimeUnit.NANOSECONDS.toMicros(latencyNanos) + "us";
+    }
+}
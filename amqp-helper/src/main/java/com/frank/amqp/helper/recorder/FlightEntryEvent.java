@@ -0,0 +1,73 @@
+package com.frank.amqp.helper.recorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 飞行记录条目对应的JFR事件,由FlightRecorder.dumpToJfr批量写入,
+ * 事件本身的时间为导出时刻,记录发生的时刻见recordedAt
+ */
+@Name("com.frank.amqp.helper.FlightEntry")
+@Label("AMQP Flight Entry")
+@Category("AMQP Helper")
+@Description("Message recorded by the amqp-helper flight recorder")
+@StackTrace(false)
+final class FlightEntryEvent extends Event
+{
+    @Label("Source")
+    String source;
+
+    @Label("Exchange")
+    boolean exchange;
+
+    @Label("Type")
+    String type;
+
+    @Label("Routing Key")
+    String routingKey;
+
+    @Label("Size")
+    @DataAmount
+    int size;
+
+    @Label("Recorded At")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long recordedAt;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    static int emit(Collection<FlightEntry> entries)
+    {
+        int emitted = 0;
+        for (FlightEntry entry : entries)
+        {
+            FlightEntryEvent event = new FlightEntryEvent();
+            if (!event.isEnabled())
+            {
+                return emitted;
+            }
+            event.source = entry.getSource();
+            event.exchange = entry.isExchange();
+            event.type = entry.getType().name();
+            event.routingKey = entry.getRoutingKey();
+            event.size = entry.getSize();
+            event.recordedAt = TimeUnit.NANOSECONDS.toMillis(entry.getEpochNanos());
+            event.latency = entry.getLatencyNanos();
+            event.commit();
+            emitted++;
+        }
+        return emitted;
+    }
+}
@@ -0,0 +1,37 @@
+package com.frank.amqp.helper.recorder;
+
+/**
+ * 飞行记录的事件类型
+ */
+public enum FlightEventType
+{
+    /**
+     * 消息写入channel
+     */
+    PUBLISH,
+
+    /**
+     * broker确认,latency为写入channel到确认的耗时
+     */
+    CONFIRM,
+
+    /**
+     * broker拒绝,latency为写入channel到nack的耗时
+     */
+    NACK,
+
+    /**
+     * 消息交给监听器处理
+     */
+    DELIVER,
+
+    /**
+     * 监听器处理成功,latency为处理耗时
+     */
+    ACK,
+
+    /**
+     * 监听器处理失败,latency为处理耗时
+     */
+    FAIL
+}
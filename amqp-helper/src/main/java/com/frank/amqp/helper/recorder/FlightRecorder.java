@@ -0,0 +1,163 @@
+package com.frank.amqp.helper.recorder;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息飞行记录器,为每个交换机与队列维护一个预分配的FlightRing,
+ * 记录发送、确认、投递、处理完成的时刻、耗时与消息大小,延迟突增时按需导出定位慢的交换机、routing key与队列;
+ * 记录本身不加锁、不分配对象,关闭时不创建记录器,发送与消费路径上只多一次null判断。
+ * 导出方式:
+ * 1.dump/snapshot直接读取;
+ * 2.注解为JMX MBean,开启spring.jmx.enabled时可经JConsole或jolokia调用dump;
+ * 3.dumpToJfr将当前快照作为JFR事件写入正在进行的Flight Recording,需要JDK 11+或带JFR的JDK 8
+ */
+@Slf4j
+@ManagedResource(objectName = "com.frank.amqp.helper:type=FlightRecorder",
+        description = "AMQP message flight recorder")
+public class FlightRecorder
+{
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+
+    private final long epochOffsetNanos;
+
+    private final Map<String, FlightRing> exchanges = new ConcurrentHashMap<>();
+
+    private final Map<String, FlightRing> queues = new ConcurrentHashMap<>();
+
+    public FlightRecorder()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 每个交换机、队列保留的条目数,向上取整为2的幂
+     */
+    public FlightRecorder(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "###FlightRecorder### capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+                - System.nanoTime();
+    }
+
+    /**
+     * @return 交换机的环形缓冲,首次调用时创建
+     */
+    public FlightRing exchange(String exchange)
+    {
+        return exchanges.computeIfAbsent(exchange,
+                name -> new FlightRing(name, true, capacity, epochOffsetNanos));
+    }
+
+    /**
+     * @return 队列的环形缓冲,首次调用时创建
+     */
+    public FlightRing queue(String queue)
+    {
+        return queues.computeIfAbsent(queue,
+                name -> new FlightRing(name, false, capacity, epochOffsetNanos));
+    }
+
+    /**
+     * @param name 交换机或队列名称,为null时返回全部
+     * @return 按发生时刻排序的条目
+     */
+    public List<FlightEntry> snapshot(String name)
+    {
+        List<FlightEntry> entries = new ArrayList<>();
+        for (FlightRing ring : exchanges.values())
+        {
+            if (null == name || ring.getName().equals(name))
+            {
+                entries.addAll(ring.snapshot());
+            }
+        }
+        for (FlightRing ring : queues.values())
+        {
+            if (null == name || ring.getName().equals(name))
+            {
+                entries.addAll(ring.snapshot());
+            }
+        }
+        entries.sort(Comparator.comparingLong(FlightEntry::getEpochNanos));
+        return entries;
+    }
+
+    public List<FlightEntry> snapshot()
+    {
+        return snapshot(null);
+    }
+
+    /**
+     * @param name 交换机或队列名称,为空时导出全部
+     * @return 每行一条记录的文本
+     */
+    @ManagedOperation(description = "Dump recorded entries of an exchange or queue, all when empty")
+    @ManagedOperationParameter(name = "name", description = "exchange or queue name")
+    public String dump(String name)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (FlightEntry entry : snapshot(null == name || name.isEmpty() ? null : name))
+        {
+            builder.append(entry).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 将当前快照写入JFR,只有存在进行中的Flight Recording时才会被保存
+     *
+     * @return 写入的条目数
+     */
+    @ManagedOperation(description = "Emit recorded entries as JFR events into the running recordings")
+    public int dumpToJfr()
+    {
+        if (!JfrSupport.AVAILABLE)
+        {
+            throw new IllegalStateException(
+                    "###FlightRecorder### dumpToJfr->jdk.jfr is not available on this JVM");
+        }
+        List<FlightEntry> entries = snapshot();
+        int emitted = JfrSupport.emit(entries);
+        log.info("###FlightRecorder### dumpToJfr->entries:{} emitted:{}",
+                entries.size(), emitted);
+        return emitted;
+    }
+
+    @ManagedAttribute(description = "Recorded exchanges")
+    public Set<String> getExchanges()
+    {
+        return new TreeSet<>(exchanges.keySet());
+    }
+
+    @ManagedAttribute(description = "Recorded queues")
+    public Set<String> getQueues()
+    {
+        return new TreeSet<>(queues.keySet());
+    }
+
+    @ManagedAttribute(description = "Entries kept per exchange or queue")
+    public int getCapacity()
+    {
+        return FlightRing.powerOfTwo(capacity);
+    }
+}
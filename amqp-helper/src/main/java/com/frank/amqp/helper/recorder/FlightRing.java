@@ -0,0 +1,198 @@
+package com.frank.amqp.helper.recorder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个交换机或队列的飞行记录环形缓冲
+ * 1.按写入线程分为若干分片,每个分片的字段按列预先分配为基本类型数组,
+ * 记录时只做一次分片内的原子自增与数组写入,不分配对象、不加锁,多个线程写入时互不争用同一缓存行;
+ * 2.写完字段后以有序写发布序号,读取方读取前后比较序号,并丢弃读取期间可能已被新一轮写入覆盖的条目;
+ * 3.容量为2的幂,分片写满后覆盖该分片最早的条目。
+ * 时间戳为System.nanoTime(),快照时按创建时刻的墙上时间换算
+ */
+public final class FlightRing
+{
+    private static final FlightEventType[] TYPES = FlightEventType.values();
+
+    private static final int MAX_STRIPES = 8;
+
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    /**
+     * 分片游标在cursors中的间隔,避免不同分片的游标位于同一缓存行
+     */
+    private static final int CURSOR_PADDING = 16;
+
+    private final String name;
+
+    private final boolean exchange;
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    private final AtomicLongArray cursors;
+
+    private final long epochOffsetNanos;
+
+    FlightRing(String name, boolean exchange, int capacity, long epochOffsetNanos)
+    {
+        int total = powerOfTwo(capacity);
+        int stripeCount = Math.min(Math.min(MAX_STRIPES,
+                powerOfTwo(Runtime.getRuntime().availableProcessors())),
+                Math.max(1, total / MIN_STRIPE_CAPACITY));
+        this.name = name;
+        this.exchange = exchange;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+            stripes[i] = new Stripe(total / stripeCount);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.cursors = new AtomicLongArray(stripeCount * CURSOR_PADDING);
+        this.epochOffsetNanos = epochOffsetNanos;
+    }
+
+    static int powerOfTwo(int value)
+    {
+        return Integer.highestOneBit(Math.max(2, value) - 1) << 1;
+    }
+
+    /**
+     * @param nanoTime     事件发生时的System.nanoTime()
+     * @param latencyNanos 事件对应的耗时,没有时为0
+     */
+    public void record(FlightEventType type, String routingKey, int size,
+            long nanoTime, long latencyNanos)
+    {
+        int stripeIndex = (int) Thread.currentThread().getId() & stripeMask;
+        long seq = cursors.getAndIncrement(stripeIndex * CURSOR_PADDING);
+        stripes[stripeIndex].write(seq, type, routingKey, size, nanoTime,
+                latencyNanos);
+    }
+
+    /**
+     * @return 当前保留的条目,按发生时刻排列
+     */
+    public List<FlightEntry> snapshot()
+    {
+        List<FlightEntry> entries = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i].read(i * CURSOR_PADDING, entries);
+        }
+        if (stripes.length > 1)
+        {
+            entries.sort(Comparator.comparingLong(FlightEntry::getEpochNanos));
+        }
+        return entries;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return 是否为交换机的记录,否则为队列的记录
+     */
+    public boolean isExchange()
+    {
+        return exchange;
+    }
+
+    public int getCapacity()
+    {
+        return stripes.length * stripes[0].capacity();
+    }
+
+    /**
+     * 累计记录的条目数
+     */
+    public long getRecorded()
+    {
+        long recorded = 0;
+        for (int i = 0; i < stripes.length; i++)
+        {
+            recorded += cursors.get(i * CURSOR_PADDING);
+        }
+        return recorded;
+    }
+
+    private final class Stripe
+    {
+        private final int mask;
+
+        /**
+         * 槽位中条目的序号加1,0表示空
+         */
+        private final AtomicLongArray published;
+
+        private final long[] timestamps;
+
+        private final long[] latencies;
+
+        private final int[] sizes;
+
+        private final byte[] types;
+
+        private final String[] routingKeys;
+
+        private Stripe(int capacity)
+        {
+            this.mask = capacity - 1;
+            this.published = new AtomicLongArray(capacity);
+            this.timestamps = new long[capacity];
+            this.latencies = new long[capacity];
+            this.sizes = new int[capacity];
+            this.types = new byte[capacity];
+            this.routingKeys = new String[capacity];
+        }
+
+        private int capacity()
+        {
+            return mask + 1;
+        }
+
+        private void write(long seq, FlightEventType type, String routingKey,
+                int size, long nanoTime, long latencyNanos)
+        {
+            int index = (int) seq & mask;
+            timestamps[index] = nanoTime;
+            latencies[index] = latencyNanos;
+            sizes[index] = size;
+            types[index] = (byte) type.ordinal();
+            routingKeys[index] = routingKey;
+            published.lazySet(index, seq + 1);
+        }
+
+        private void read(int cursorIndex, List<FlightEntry> entries)
+        {
+            long end = cursors.get(cursorIndex);
+            for (long seq = Math.max(0, end - mask - 1); seq < end; seq++)
+            {
+                int index = (int) seq & mask;
+                if (published.get(index) != seq + 1)
+                {
+                    continue;
+                }
+                long timestamp = timestamps[index];
+                long latency = latencies[index];
+                int size = sizes[index];
+                byte type = types[index];
+                String routingKey = routingKeys[index];
+                //槽位已被新一轮写入占用时,字段可能混有新旧两条记录
+                if (published.get(index) != seq + 1
+                        || cursors.get(cursorIndex) > seq + mask + 1)
+                {
+                    continue;
+                }
+                entries.add(new FlightEntry(name, exchange, seq, TYPES[type],
+                        routingKey, size, timestamp + epochOffsetNanos, latency));
+            }
+        }
+    }
+}
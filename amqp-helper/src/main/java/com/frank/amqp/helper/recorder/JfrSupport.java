@@ -0,0 +1,33 @@
+package com.frank.amqp.helper.recorder;
+
+import java.util.Collection;
+
+/**
+ * jdk.jfr可能不存在,只在确认可用后才加载FlightEntryEvent
+ */
+final class JfrSupport
+{
+    static final boolean AVAILABLE = isAvailable();
+
+    private JfrSupport()
+    {
+    }
+
+    private static boolean isAvailable()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    static int emit(Collection<FlightEntry> entries)
+    {
+        return FlightEntryEvent.emit(entries);
+    }
+}
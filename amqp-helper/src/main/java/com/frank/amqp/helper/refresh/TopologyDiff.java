@@ -0,0 +1,148 @@
+package com.frank.amqp.helper.refresh;
+
+import com.frank.amqp.helper.declare.TopologyFingerprint;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次拓扑刷新的变更,不可变
+ * 名称相同且声明属性相同的交换机、队列、绑定关系视为未变化,沿用原实例;
+ * 声明属性变化的绑定关系以移除旧绑定、新增新绑定的方式体现;
+ * 声明属性变化的交换机与队列无法在broker上原地修改,保留原实例并记录为冲突
+ */
+public final class TopologyDiff
+{
+    private static final TopologyDiff EMPTY = new TopologyDiff(
+            Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList());
+
+    private final List<Declarable> added;
+
+    private final List<Declarable> removed;
+
+    private final List<String> conflicts;
+
+    public TopologyDiff(List<Declarable> added, List<Declarable> removed,
+            List<String> conflicts)
+    {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    public static TopologyDiff empty()
+    {
+        return EMPTY;
+    }
+
+    /**
+     * @return 新增的交换机、队列、绑定关系,按创建顺序排列
+     */
+    public List<Declarable> getAdded()
+    {
+        return added;
+    }
+
+    /**
+     * @return 从配置中移除的交换机、队列、绑定关系
+     */
+    public List<Declarable> getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * @return 声明属性发生变化但无法应用的交换机与队列
+     */
+    public List<String> getConflicts()
+    {
+        return conflicts;
+    }
+
+    /**
+     * 将尚未在broker上应用的变更与之后的变更合并为一次变更
+     * 1.本次新增、之后又被移除的项相互抵消,既不声明也不解绑;
+     * 2.本次移除、之后又以相同声明属性新增的绑定关系不再解绑,避免声明后又被解除
+     *
+     * @param next 之后的变更
+     * @return 合并后的变更
+     */
+    public TopologyDiff merge(TopologyDiff next)
+    {
+        if (isEmpty())
+        {
+            return next;
+        }
+        if (next.isEmpty())
+        {
+            return this;
+        }
+
+        Set<Declarable> removedNext = identitySet(next.removed);
+        Set<Declarable> addedThis = identitySet(added);
+        List<Declarable> mergedAdded = new ArrayList<>(added.size() + next.added.size());
+        Set<String> addedBindings = new HashSet<>();
+        for (Declarable declarable : added)
+        {
+            if (!removedNext.contains(declarable))
+            {
+                mergedAdded.add(declarable);
+            }
+        }
+        mergedAdded.addAll(next.added);
+        for (Declarable declarable : mergedAdded)
+        {
+            if (declarable instanceof Binding)
+            {
+                addedBindings.add(TopologyFingerprint.canonicalize(declarable));
+            }
+        }
+
+        List<Declarable> mergedRemoved = new ArrayList<>(removed.size() + next.removed.size());
+        for (Declarable declarable : removed)
+        {
+            if (!(declarable instanceof Binding && addedBindings
+                    .contains(TopologyFingerprint.canonicalize(declarable))))
+            {
+                mergedRemoved.add(declarable);
+            }
+        }
+        for (Declarable declarable : next.removed)
+        {
+            if (!addedThis.contains(declarable))
+            {
+                mergedRemoved.add(declarable);
+            }
+        }
+
+        List<String> mergedConflicts = new ArrayList<>(conflicts);
+        mergedConflicts.addAll(next.conflicts);
+        return new TopologyDiff(mergedAdded, mergedRemoved, mergedConflicts);
+    }
+
+    private static Set<Declarable> identitySet(List<Declarable> declarables)
+    {
+        Set<Declarable> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(declarables);
+        return set;
+    }
+
+    public boolean isEmpty()
+    {
+        return added.isEmpty() && removed.isEmpty() && conflicts.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "added:" + added.size() + " removed:" + removed.size()
+                + " conflicts:" + conflicts;
+    }
+}
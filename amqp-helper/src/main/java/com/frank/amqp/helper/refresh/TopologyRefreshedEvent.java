@@ -0,0 +1,30 @@
+package com.frank.amqp.helper.refresh;
+
+import com.frank.amqp.helper.CommonMqManager;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 拓扑刷新完成且已在broker上应用后发布,仅在拓扑发生变化时发布
+ */
+public class TopologyRefreshedEvent extends ApplicationEvent
+{
+    private static final long serialVersionUID = 1L;
+
+    private final TopologyDiff diff;
+
+    public TopologyRefreshedEvent(CommonMqManager source, TopologyDiff diff)
+    {
+        super(source);
+        this.diff = diff;
+    }
+
+    public CommonMqManager getCommonMqManager()
+    {
+        return (CommonMqManager) getSource();
+    }
+
+    public TopologyDiff getDiff()
+    {
+        return diff;
+    }
+}
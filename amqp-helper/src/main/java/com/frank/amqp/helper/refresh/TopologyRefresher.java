@@ -0,0 +1,177 @@
+package com.frank.amqp.helper.refresh;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.declare.AmqpAdminDeclarer;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拓扑热刷新
+ * 1.由CommonMqManager#reload重新读取配置,得出新增与移除的交换机、队列、绑定关系,并同步容器中的bean;
+ * 2.在各连接分组的broker上按交换机、队列、绑定关系的顺序声明新增项,解除移除的绑定关系;
+ * 移除的交换机与队列不会在broker上删除,避免丢失队列中尚未消费的消息;
+ * 3.拓扑发生变化时发布TopologyRefreshedEvent,由发送器与监听容器为新增的交换机、队列补充注册。
+ * 容器中的bean在reload时已经更新,broker侧声明失败的变更会保留下来,与下一次刷新的变更合并后重试,
+ * 成功应用之前不会发布TopologyRefreshedEvent。
+ * 配置了刷新间隔时会周期性地检查配置,ICommonMqConfig可在getConfig中读取文件或配置中心,
+ * 配置未变化时不做任何操作
+ */
+@Slf4j
+public class TopologyRefresher
+        implements ApplicationEventPublisherAware, InitializingBean, DisposableBean
+{
+    private final CommonMqManager commonMqManager;
+
+    private final ConnectionGroups connectionGroups;
+
+    private final long intervalMillis;
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 已在容器中生效、尚未在broker上应用的变更
+     */
+    private TopologyDiff pending = TopologyDiff.empty();
+
+    public TopologyRefresher(CommonMqManager commonMqManager,
+            ConnectionGroups connectionGroups, long intervalMillis)
+    {
+        this.commonMqManager = commonMqManager;
+        this.connectionGroups = connectionGroups;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(
+            ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        if (intervalMillis <= 0)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "common-mq-topology-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, intervalMillis,
+                intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll()
+    {
+        try
+        {
+            refresh();
+        }
+        catch (Exception e)
+        {
+            log.warn(
+                    "###TopologyRefresher->refresh### refresh failed, retry on next poll, error:{}",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * 重新读取配置并应用拓扑变更
+     *
+     * @return 拓扑变更,包含之前声明失败、本次重试的变更
+     * @throws IllegalStateException 新配置存在格式错误,此时不做任何变更
+     * @throws org.springframework.amqp.AmqpException broker侧声明失败,变更保留到下次刷新时重试
+     */
+    public synchronized TopologyDiff refresh()
+    {
+        TopologyDiff diff = pending.merge(commonMqManager.reload());
+        pending = diff;
+        if (diff.isEmpty())
+        {
+            return diff;
+        }
+
+        CommonMqMetrics metrics = commonMqManager.getMetrics();
+        long start = System.nanoTime();
+        try
+        {
+            for (Map.Entry<String, List<Declarable>> entry : ConnectionGroups
+                    .partition(diff.getAdded()).entrySet())
+            {
+                AmqpAdminDeclarer.declare(
+                        connectionGroups.getAdmin(entry.getKey()),
+                        entry.getValue());
+            }
+        }
+        catch (RuntimeException e)
+        {
+            metrics.onDeclareFailures(1);
+            throw e;
+        }
+        finally
+        {
+            metrics.phase(CommonMqMetrics.Phase.DECLARE)
+                    .record(System.nanoTime() - start);
+        }
+        pending = TopologyDiff.empty();
+        for (Declarable declarable : diff.getRemoved())
+        {
+            if (declarable instanceof Binding)
+            {
+                unbind((Binding) declarable);
+            }
+        }
+        log.info("###TopologyRefresher->refresh### topology refreshed, {}", diff);
+
+        if (null != applicationEventPublisher)
+        {
+            applicationEventPublisher.publishEvent(
+                    new TopologyRefreshedEvent(commonMqManager, diff));
+        }
+        return diff;
+    }
+
+    private void unbind(Binding binding)
+    {
+        try
+        {
+            connectionGroups.getAdmin(ConnectionGroups.groupOf(binding))
+                    .removeBinding(binding);
+        }
+        catch (Exception e)
+        {
+            log.warn(
+                    "###TopologyRefresher->refresh### remove binding {}->{} failed, error:{}",
+                    binding.getExchange(), binding.getDestination(),
+                    e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (null != scheduler)
+        {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.frank.amqp.helper.retry;
+
+/**
+ * 延迟重试拓扑的命名规则
+ * 队列定义中配置retry=1s/10s/60s时,CommonMqManager为队列queueName额外生成:
+ * 1.重试交换机exchange.direct.queueName.retry;
+ * 2.每个梯度一个重试队列queueName.retry.延迟毫秒数,以队列名为routingKey绑定到重试交换机,
+ * 队列的x-message-ttl为该梯度的延迟,消息过期后经默认交换机投递回queueName;
+ * 3.停放队列queueName.parking,以队列名为routingKey绑定到重试交换机,保存超过全部梯度仍失败的消息,不会被自动消费;
+ * 4.queueName本身以重试交换机为死信交换机、首个梯度为死信routingKey,未经重试策略处理的拒绝也会进入首个梯度。
+ * 分区队列的每个分区各自生成一套重试拓扑
+ */
+public final class RetryTopology
+{
+    /**
+     * 消息已重试的次数,由重试策略在每次转发时递增
+     */
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+
+    /**
+     * 最近一次处理失败的异常信息
+     */
+    public static final String ERROR_HEADER = "x-retry-last-error";
+
+    private static final String RETRY_EXCHANGE_PREFIX = "exchange.direct.";
+
+    private static final String RETRY_SUFFIX = ".retry";
+
+    private static final String PARKING_SUFFIX = ".parking";
+
+    private RetryTopology()
+    {
+    }
+
+    public static String retryExchange(String queueName)
+    {
+        return RETRY_EXCHANGE_PREFIX + queueName + RETRY_SUFFIX;
+    }
+
+    /**
+     * @param delayMillis 梯度的延迟毫秒数
+     */
+    public static String retryQueue(String queueName, long delayMillis)
+    {
+        return queueName + RETRY_SUFFIX + "." + delayMillis;
+    }
+
+    public static String parkingQueue(String queueName)
+    {
+        return queueName + PARKING_SUFFIX;
+    }
+}
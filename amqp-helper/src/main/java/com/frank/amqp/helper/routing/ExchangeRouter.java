@@ -0,0 +1,17 @@
+package com.frank.amqp.helper.routing;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个交换机的预编译路由
+ */
+interface ExchangeRouter
+{
+    /**
+     * @param routingKey 消息的routingKey
+     * @param headers    消息header,非headers交换机可为null
+     * @return 目标队列,不可修改
+     */
+    List<String> route(String routingKey, Map<String, Object> headers);
+}
@@ -0,0 +1,109 @@
+package com.frank.amqp.helper.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * headers交换机路由
+ * 每个绑定预编译为key/value数组形式的匹配器,与broker一致忽略x-开头的参数
+ */
+class HeadersRouter implements ExchangeRouter
+{
+    private static final String MATCH_ARGUMENT = "x-match";
+
+    private static final String MATCH_ANY = "any";
+
+    private final List<HeaderMatcher> matchers = new ArrayList<>();
+
+    void bind(Map<String, Object> arguments, String queue)
+    {
+        List<String> keys = new ArrayList<>(arguments.size());
+        List<String> values = new ArrayList<>(arguments.size());
+        for (Map.Entry<String, Object> argument : arguments.entrySet())
+        {
+            if (argument.getKey().startsWith("x-"))
+            {
+                continue;
+            }
+            keys.add(argument.getKey());
+            values.add(null == argument.getValue() ? null : String.valueOf(argument.getValue()));
+        }
+        matchers.add(new HeaderMatcher(queue,
+                MATCH_ANY.equals(String.valueOf(arguments.get(MATCH_ARGUMENT))),
+                keys.toArray(new String[0]), values.toArray(new String[0])));
+    }
+
+    @Override
+    public List<String> route(String routingKey, Map<String, Object> headers)
+    {
+        Set<String> matched = null;
+        for (HeaderMatcher matcher : matchers)
+        {
+            if (matcher.matches(headers))
+            {
+                if (null == matched)
+                {
+                    matched = new LinkedHashSet<>();
+                }
+                matched.add(matcher.queue);
+            }
+        }
+        return null == matched
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(matched));
+    }
+
+    private static class HeaderMatcher
+    {
+        private final String queue;
+
+        private final boolean any;
+
+        private final String[] keys;
+
+        /**
+         * 为null时只要求header存在
+         */
+        private final String[] values;
+
+        HeaderMatcher(String queue, boolean any, String[] keys, String[] values)
+        {
+            this.queue = queue;
+            this.any = any;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        boolean matches(Map<String, Object> headers)
+        {
+            if (0 == keys.length)
+            {
+                return !any;
+            }
+            if (null == headers || headers.isEmpty())
+            {
+                return false;
+            }
+
+            for (int i = 0; i < keys.length; i++)
+            {
+                Object header = headers.get(keys[i]);
+                boolean hit = null != header
+                        && (null == values[i] || values[i].equals(header.toString()));
+                if (any && hit)
+                {
+                    return true;
+                }
+                if (!any && !hit)
+                {
+                    return false;
+                }
+            }
+            return !any;
+        }
+    }
+}
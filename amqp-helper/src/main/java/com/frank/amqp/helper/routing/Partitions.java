@@ -0,0 +1,83 @@
+package com.frank.amqp.helper.routing;
+
+/**
+ * 分区队列的命名与分区选择
+ * 分区队列queueName[N]展开为queueName.0 ~ queueName.(N-1),
+ * 分别以routingKey.0 ~ routingKey.(N-1)绑定到direct交换机;
+ * 消息按分区key的一致性哈希(jump consistent hash)选择分区,同一key始终落在同一分区,
+ * 分区数调整时只有约1/N的key会迁移到其他分区
+ */
+public final class Partitions
+{
+    public static final char PARTITION_SEPARATOR = '.';
+
+    /**
+     * 单个分区队列允许的最大分区数
+     */
+    public static final int MAX_PARTITIONS = 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Partitions()
+    {
+    }
+
+    public static String queueName(String queueName, int partition)
+    {
+        return queueName + PARTITION_SEPARATOR + partition;
+    }
+
+    public static String routingKey(String routingKey, int partition)
+    {
+        return routingKey + PARTITION_SEPARATOR + partition;
+    }
+
+    /**
+     * 选择分区key所在的分区
+     *
+     * @param partitionKey 分区key,如订单号,为null时固定落在0号分区
+     * @param partitions   分区数
+     * @return 分区下标
+     */
+    public static int partitionOf(String partitionKey, int partitions)
+    {
+        if (partitions <= 1 || null == partitionKey)
+        {
+            return 0;
+        }
+        return jumpConsistentHash(hash(partitionKey), partitions);
+    }
+
+    /**
+     * 64位FNV-1a哈希,与JVM无关,保证不同进程对同一key选择相同的分区
+     */
+    private static long hash(String partitionKey)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < partitionKey.length(); i++)
+        {
+            char c = partitionKey.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Lamping & Veach, A Fast, Minimal Memory, Consistent Hash Algorithm
+     */
+    private static int jumpConsistentHash(long key, int buckets)
+    {
+        long b = -1;
+        long j = 0;
+        while (j < buckets)
+        {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
@@ -0,0 +1,204 @@
+package com.frank.amqp.helper.routing;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Queue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 进程内路由索引
+ * 根据CommonMqManager创建的交换机、队列、绑定关系预编译每个交换机的路由:
+ * fanout为固定队列列表,direct为routingKey哈希表,topic为单词前缀树,headers为预编译的匹配器;
+ * 发送前即可判断消息能否路由,无需依赖mandatory与return回调的往返。
+ * 默认交换机("")按routingKey等于队列名路由,交换机到交换机的绑定不在索引范围内。
+ * 索引构建后不可变,可被多线程并发读取
+ */
+public final class RoutingIndex
+{
+    private static final String DEFAULT_EXCHANGE = "";
+
+    private static final int TOPIC_CACHE_LIMIT = 10000;
+
+    private static final RoutingIndex EMPTY = new RoutingIndex(
+            Collections.emptyMap(), Collections.emptySet());
+
+    private final Map<String, ExchangeRouter> routers;
+
+    private final Set<String> queues;
+
+    private RoutingIndex(Map<String, ExchangeRouter> routers,
+            Set<String> queues)
+    {
+        this.routers = routers;
+        this.queues = queues;
+    }
+
+    public static RoutingIndex empty()
+    {
+        return EMPTY;
+    }
+
+    /**
+     * 根据声明项构建路由索引
+     *
+     * @param declarables 交换机、队列、绑定关系
+     * @return 路由索引
+     */
+    public static RoutingIndex build(Collection<Declarable> declarables)
+    {
+        Map<String, String> exchangeTypes = new HashMap<>();
+        Set<String> queues = new LinkedHashSet<>();
+        List<Binding> bindings = new ArrayList<>();
+        for (Declarable declarable : declarables)
+        {
+            if (declarable instanceof Exchange)
+            {
+                Exchange exchange = (Exchange) declarable;
+                exchangeTypes.put(exchange.getName(), exchange.getType());
+            }
+            else if (declarable instanceof Queue)
+            {
+                queues.add(((Queue) declarable).getName());
+            }
+            else if (declarable instanceof Binding)
+            {
+                bindings.add((Binding) declarable);
+            }
+        }
+
+        Map<String, Map<String, Set<String>>> directBindings = new HashMap<>();
+        Map<String, Set<String>> fanoutBindings = new HashMap<>();
+        Map<String, ExchangeRouter> routers = new HashMap<>(
+                exchangeTypes.size() * 4 / 3 + 1);
+        for (Binding binding : bindings)
+        {
+            final String exchangeType = exchangeTypes.get(binding.getExchange());
+            if (null == exchangeType || !binding.isDestinationQueue())
+            {
+                continue;
+            }
+
+            switch (exchangeType)
+            {
+                case ExchangeTypes.FANOUT:
+                    fanoutBindings.computeIfAbsent(binding.getExchange(),
+                            e -> new LinkedHashSet<>()).add(binding.getDestination());
+                    break;
+                case ExchangeTypes.DIRECT:
+                    directBindings.computeIfAbsent(binding.getExchange(),
+                            e -> new HashMap<>())
+                            .computeIfAbsent(binding.getRoutingKey(),
+                                    k -> new LinkedHashSet<>())
+                            .add(binding.getDestination());
+                    break;
+                case ExchangeTypes.TOPIC:
+                    ((TopicRouter) routers.computeIfAbsent(binding.getExchange(),
+                            e -> new TopicRouter(TOPIC_CACHE_LIMIT)))
+                            .bind(binding.getRoutingKey(), binding.getDestination());
+                    break;
+                case ExchangeTypes.HEADERS:
+                    ((HeadersRouter) routers.computeIfAbsent(binding.getExchange(),
+                            e -> new HeadersRouter()))
+                            .bind(binding.getArguments(), binding.getDestination());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        fanoutBindings.forEach((exchange, destinations) ->
+        {
+            final List<String> fanoutQueues = freeze(destinations);
+            routers.put(exchange, (routingKey, headers) -> fanoutQueues);
+        });
+        directBindings.forEach((exchange, keyBindings) ->
+        {
+            final Map<String, List<String>> keyQueues = new HashMap<>(
+                    keyBindings.size() * 4 / 3 + 1);
+            keyBindings.forEach((routingKey, destinations) ->
+                    keyQueues.put(routingKey, freeze(destinations)));
+            routers.put(exchange, (routingKey, headers) ->
+                    keyQueues.getOrDefault(routingKey, Collections.emptyList()));
+        });
+        //已声明但没有任何绑定的交换机
+        exchangeTypes.keySet().forEach(exchange -> routers.putIfAbsent(exchange,
+                (routingKey, headers) -> Collections.emptyList()));
+
+        return new RoutingIndex(routers, Collections.unmodifiableSet(queues));
+    }
+
+    /**
+     * 是否为索引内的交换机,索引外的交换机无法判断路由
+     */
+    public boolean containsExchange(String exchange)
+    {
+        return DEFAULT_EXCHANGE.equals(exchange) || routers.containsKey(exchange);
+    }
+
+    public List<String> route(String exchange, String routingKey)
+    {
+        return route(exchange, routingKey, null);
+    }
+
+    /**
+     * 解析消息会被路由到的队列
+     *
+     * @param exchange   交换机名称
+     * @param routingKey routingKey
+     * @param headers    消息header,仅headers交换机使用
+     * @return 目标队列,交换机不在索引内或无匹配时为空列表
+     */
+    public List<String> route(String exchange, String routingKey,
+            Map<String, Object> headers)
+    {
+        if (DEFAULT_EXCHANGE.equals(exchange))
+        {
+            return queues.contains(routingKey)
+                    ? Collections.singletonList(routingKey)
+                    : Collections.emptyList();
+        }
+
+        ExchangeRouter router = routers.get(exchange);
+        if (null == router)
+        {
+            return Collections.emptyList();
+        }
+        return router.route(null == routingKey ? "" : routingKey, headers);
+    }
+
+    public boolean isRoutable(String exchange, String routingKey,
+            Map<String, Object> headers)
+    {
+        return !route(exchange, routingKey, headers).isEmpty();
+    }
+
+    /**
+     * 发送前校验消息可路由,索引外的交换机不做校验
+     *
+     * @throws UnroutableMessageException 索引内的交换机无法路由该消息
+     */
+    public void checkRoutable(String exchange, String routingKey,
+            Map<String, Object> headers)
+    {
+        if (containsExchange(exchange)
+                && !isRoutable(exchange, routingKey, headers))
+        {
+            throw new UnroutableMessageException(exchange, routingKey);
+        }
+    }
+
+    private static List<String> freeze(Set<String> destinations)
+    {
+        return Collections.unmodifiableList(new ArrayList<>(destinations));
+    }
+}
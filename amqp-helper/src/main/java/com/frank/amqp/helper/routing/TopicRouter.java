@@ -0,0 +1,149 @@
+package com.frank.amqp.helper.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * topic交换机路由
+ * 绑定的routingKey模式按"."切分为单词构建前缀树,*匹配一个单词,#匹配零个或多个单词;
+ * routingKey的匹配结果会被缓存,缓存达到上限后不再新增
+ */
+class TopicRouter implements ExchangeRouter
+{
+    private static final String SINGLE_WORD = "*";
+
+    private static final String MULTI_WORDS = "#";
+
+    private static final String[] NO_WORDS = new String[0];
+
+    private final Node root = new Node();
+
+    private final Map<String, List<String>> resultCache = new ConcurrentHashMap<>();
+
+    private final int cacheLimit;
+
+    TopicRouter(int cacheLimit)
+    {
+        this.cacheLimit = cacheLimit;
+    }
+
+    void bind(String pattern, String queue)
+    {
+        Node node = root;
+        for (String word : split(pattern))
+        {
+            if (SINGLE_WORD.equals(word))
+            {
+                node = null == node.singleWord ? (node.singleWord = new Node()) : node.singleWord;
+            }
+            else if (MULTI_WORDS.equals(word))
+            {
+                node = null == node.multiWords ? (node.multiWords = new Node()) : node.multiWords;
+            }
+            else
+            {
+                node = node.children.computeIfAbsent(word, w -> new Node());
+            }
+        }
+        node.queues.add(queue);
+    }
+
+    @Override
+    public List<String> route(String routingKey, Map<String, Object> headers)
+    {
+        List<String> queues = resultCache.get(routingKey);
+        if (null != queues)
+        {
+            return queues;
+        }
+
+        Set<String> matched = new LinkedHashSet<>();
+        match(root, split(routingKey), 0, matched);
+        queues = matched.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(matched));
+        if (resultCache.size() < cacheLimit)
+        {
+            resultCache.put(routingKey, queues);
+        }
+        return queues;
+    }
+
+    private static void match(Node node, String[] words, int index,
+            Set<String> matched)
+    {
+        if (null != node.multiWords)
+        {
+            //#可以吞掉剩余单词中的任意个(包括零个)
+            for (int i = index; i <= words.length; i++)
+            {
+                match(node.multiWords, words, i, matched);
+            }
+        }
+
+        if (index == words.length)
+        {
+            matched.addAll(node.queues);
+            return;
+        }
+
+        Node child = node.children.get(words[index]);
+        if (null != child)
+        {
+            match(child, words, index + 1, matched);
+        }
+        if (null != node.singleWord)
+        {
+            match(node.singleWord, words, index + 1, matched);
+        }
+    }
+
+    private static String[] split(String key)
+    {
+        //空routingKey没有单词,只能被#或空模式匹配,*必须恰好匹配一个单词
+        if (key.isEmpty())
+        {
+            return NO_WORDS;
+        }
+
+        int count = 1;
+        for (int i = 0; i < key.length(); i++)
+        {
+            if ('.' == key.charAt(i))
+            {
+                count++;
+            }
+        }
+
+        String[] words = new String[count];
+        int start = 0;
+        int index = 0;
+        for (int i = 0; i < key.length(); i++)
+        {
+            if ('.' == key.charAt(i))
+            {
+                words[index++] = key.substring(start, i);
+                start = i + 1;
+            }
+        }
+        words[index] = key.substring(start);
+        return words;
+    }
+
+    private static class Node
+    {
+        private final Map<String, Node> children = new HashMap<>(4);
+
+        private final List<String> queues = new ArrayList<>(1);
+
+        private Node singleWord;
+
+        private Node multiWords;
+    }
+}
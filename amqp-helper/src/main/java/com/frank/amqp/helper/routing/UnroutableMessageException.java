@@ -0,0 +1,33 @@
+package com.frank.amqp.helper.routing;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * 消息在发送前即可判定无法路由到任何队列
+ */
+public class UnroutableMessageException extends AmqpException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    public UnroutableMessageException(String exchange, String routingKey)
+    {
+        super("no queue bound to exchange '" + exchange
+                + "' matches routing key '" + routingKey + "'");
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+    }
+
+    public String getExchange()
+    {
+        return exchange;
+    }
+
+    public String getRoutingKey()
+    {
+        return routingKey;
+    }
+}
@@ -0,0 +1,382 @@
+package com.frank.amqp.helper.rpc;
+
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpReplyTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionProxy;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个direct交换机的异步RPC客户端
+ * 1.请求与应答使用同一个channel,应答经由RabbitMQ的direct reply-to(amq.rabbitmq.reply-to)直接投递到该channel,
+ * 无需为每次调用声明临时应答队列;
+ * 2.未返回的调用登记在无锁的CorrelationTable中,关联id即correlationId,调用方线程只做编码、登记与发送;
+ * 3.应答在channel的消费线程上完成对应的CompletableFuture,超时由扫描线程按sweepIntervalMillis的精度完成,
+ * 请求的expiration与超时时间相同,超时的请求不会再被服务端处理;
+ * 4.channel关闭后其上未返回的调用立即失败,下次调用时重新打开channel。
+ * CompletableFuture在消费线程上完成,耗时的回调请使用*Async方法指定线程池
+ */
+@Slf4j
+public class CommonMqRpcClient
+{
+    public static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private static final String CHARSET = "UTF-8";
+
+    private final String exchange;
+
+    private final Set<String> routingKeys;
+
+    private final ConnectionFactory connectionFactory;
+
+    private final MessageCodecRegistry messageCodecRegistry;
+
+    private final TopologyActivator topologyActivator;
+
+    private final long timeoutMillis;
+
+    private final CorrelationTable<PendingCall> pendingCalls;
+
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final ScheduledExecutorService sweeper;
+
+    private final Object channelMonitor = new Object();
+
+    private volatile Channel channel;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param exchange             direct交换机名称
+     * @param routingKeys          允许调用的routing key,为空时不限制
+     * @param connectionFactory    交换机所在分组的连接
+     * @param messageCodecRegistry 请求与应答的编解码器
+     * @param topologyActivator    lazy模式下在首次打开channel前声明交换机,为null时不声明
+     * @param timeoutMillis        默认超时时间
+     * @param maxInFlight          未返回的调用数上限
+     * @param sweepIntervalMillis  超时扫描间隔
+     */
+    public CommonMqRpcClient(String exchange, Set<String> routingKeys,
+            ConnectionFactory connectionFactory,
+            MessageCodecRegistry messageCodecRegistry,
+            TopologyActivator topologyActivator, long timeoutMillis,
+            int maxInFlight, long sweepIntervalMillis)
+    {
+        this.exchange = exchange;
+        this.routingKeys = Collections.unmodifiableSet(new HashSet<>(routingKeys));
+        this.connectionFactory = connectionFactory;
+        this.messageCodecRegistry = messageCodecRegistry;
+        this.topologyActivator = topologyActivator;
+        this.timeoutMillis = timeoutMillis;
+        this.pendingCalls = new CorrelationTable<>(maxInFlight);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "common-mq-rpc-" + exchange);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, sweepIntervalMillis);
+        this.sweeper.scheduleWithFixedDelay(this::expire, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public String getExchange()
+    {
+        return exchange;
+    }
+
+    public Set<String> getRoutingKeys()
+    {
+        return routingKeys;
+    }
+
+    /**
+     * 当前未返回的调用数
+     */
+    public int getInFlight()
+    {
+        return pendingCalls.size();
+    }
+
+    public CompletableFuture<Object> call(String routingKey, Object payload)
+    {
+        return call(routingKey, payload, timeoutMillis);
+    }
+
+    /**
+     * 按交换机的编解码器编码请求并解码应答,空应答解码为null
+     */
+    public CompletableFuture<Object> call(String routingKey, Object payload,
+            long timeoutMillis)
+    {
+        final Message request;
+        try
+        {
+            request = payload instanceof Message
+                    ? (Message) payload
+                    : messageCodecRegistry.converterFor(exchange)
+                            .toMessage(payload, new MessageProperties());
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+        return sendAndReceive(routingKey, request, timeoutMillis)
+                .thenApply(reply -> 0 == reply.getBody().length
+                        ? null
+                        : messageCodecRegistry.decode(exchange, reply));
+    }
+
+    public CompletableFuture<Message> sendAndReceive(String routingKey,
+            Message request)
+    {
+        return sendAndReceive(routingKey, request, timeoutMillis);
+    }
+
+    /**
+     * 异步发送请求
+     *
+     * @return 收到应答后完成;超时以AmqpReplyTimeoutException、服务端异常以CommonMqRpcException、
+     * channel异常以AmqpException异常完成
+     */
+    public CompletableFuture<Message> sendAndReceive(String routingKey,
+            Message request, long timeoutMillis)
+    {
+        if (!running)
+        {
+            return failed(new AmqpException(
+                    "rpc client of exchange '" + exchange + "' is closed"));
+        }
+        if (!routingKeys.isEmpty() && !routingKeys.contains(routingKey))
+        {
+            return failed(new AmqpException("routing key '" + routingKey
+                    + "' of exchange '" + exchange + "' is not configured for rpc"));
+        }
+
+        PendingCall call = new PendingCall(routingKey, request);
+        long correlationId = pendingCalls.register(call,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        if (correlationId < 0)
+        {
+            return failed(new CommonMqRpcException(
+                    "rpc client of exchange '" + exchange
+                            + "' reached max in-flight " + pendingCalls.capacity()));
+        }
+
+        MessageProperties messageProperties = request.getMessageProperties();
+        messageProperties.setReplyTo(DIRECT_REPLY_TO);
+        messageProperties.setCorrelationId(Long.toString(correlationId));
+        messageProperties.setExpiration(Long.toString(timeoutMillis));
+        try
+        {
+            Channel current = channel();
+            call.channel = current;
+            //amqp-client对同一channel上的并发发送加锁,单条消息的帧不会交错
+            current.basicPublish(exchange, routingKey, false,
+                    messagePropertiesConverter.fromMessageProperties(
+                            messageProperties, CHARSET),
+                    request.getBody());
+        }
+        catch (Exception e)
+        {
+            if (null != pendingCalls.remove(correlationId))
+            {
+                call.future.completeExceptionally(e instanceof AmqpException
+                        ? e
+                        : new AmqpException(e));
+            }
+        }
+        return call.future;
+    }
+
+    /**
+     * 停止接收新的调用,未返回的调用以AmqpException失败
+     */
+    public void close()
+    {
+        running = false;
+        sweeper.shutdownNow();
+        AmqpException closed = new AmqpException(
+                "rpc client of exchange '" + exchange + "' is closed");
+        pendingCalls.removeIf(call -> true,
+                call -> call.future.completeExceptionally(closed));
+        synchronized (channelMonitor)
+        {
+            Channel current = channel;
+            channel = null;
+            if (null != current && current.isOpen())
+            {
+                try
+                {
+                    current.close();
+                }
+                catch (Exception e)
+                {
+                    log.debug(
+                            "###CommonMqRpcClient->close### exchange:{} close channel error:{}",
+                            exchange, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Channel channel() throws Exception
+    {
+        Channel current = channel;
+        if (null != current && current.isOpen())
+        {
+            return current;
+        }
+        synchronized (channelMonitor)
+        {
+            current = channel;
+            if (null != current && current.isOpen())
+            {
+                return current;
+            }
+            if (null != topologyActivator)
+            {
+                topologyActivator.activate(exchange);
+            }
+            //direct reply-to的应答只投递到发起消费的channel,该channel由客户端独占
+            Connection connection = connectionFactory.createConnection();
+            if (connection instanceof ConnectionProxy)
+            {
+                connection = ((ConnectionProxy) connection).getTargetConnection();
+            }
+            final Channel newChannel = connection.createChannel(false);
+            newChannel.addShutdownListener(cause -> onChannelClosed(newChannel, cause));
+            newChannel.basicConsume(DIRECT_REPLY_TO, true, new DefaultConsumer(newChannel)
+            {
+                @Override
+                public void handleDelivery(String consumerTag,
+                        Envelope envelope, AMQP.BasicProperties properties,
+                        byte[] body)
+                {
+                    onReply(envelope, properties, body);
+                }
+            });
+            channel = newChannel;
+            log.debug(
+                    "###CommonMqRpcClient->channel### exchange:{} open reply channel:{}",
+                    exchange, newChannel.getChannelNumber());
+            return newChannel;
+        }
+    }
+
+    private void onReply(Envelope envelope, AMQP.BasicProperties properties,
+            byte[] body)
+    {
+        final long correlationId;
+        try
+        {
+            correlationId = Long.parseLong(properties.getCorrelationId());
+        }
+        catch (NumberFormatException e)
+        {
+            log.warn(
+                    "###CommonMqRpcClient->reply### exchange:{} drop reply with correlationId:{}",
+                    exchange, properties.getCorrelationId());
+            return;
+        }
+        PendingCall call = pendingCalls.remove(correlationId);
+        if (null == call)
+        {
+            log.debug(
+                    "###CommonMqRpcClient->reply### exchange:{} drop late reply, correlationId:{}",
+                    exchange, correlationId);
+            return;
+        }
+        Message reply = new Message(body,
+                messagePropertiesConverter.toMessageProperties(properties,
+                        envelope, CHARSET));
+        Object error = reply.getMessageProperties().getHeaders()
+                .get(CommonMqRpcServer.ERROR_HEADER);
+        if (null != error)
+        {
+            call.future.completeExceptionally(new CommonMqRpcException(
+                    "rpc of exchange '" + exchange + "' routing key '"
+                            + call.routingKey + "' failed: " + error));
+            return;
+        }
+        call.future.complete(reply);
+    }
+
+    private void onChannelClosed(Channel closed, ShutdownSignalException cause)
+    {
+        synchronized (channelMonitor)
+        {
+            if (channel == closed)
+            {
+                channel = null;
+            }
+        }
+        //应答只能回到原channel,其上未返回的调用不会再有应答
+        AmqpException error = new AmqpException(
+                "reply channel of exchange '" + exchange + "' closed", cause);
+        pendingCalls.removeIf(call -> call.channel == closed,
+                call -> call.future.completeExceptionally(error));
+        if (running && !cause.isInitiatedByApplication())
+        {
+            log.warn(
+                    "###CommonMqRpcClient->channel### exchange:{} reply channel closed, error:{}",
+                    exchange, cause.getMessage());
+        }
+    }
+
+    private void expire()
+    {
+        pendingCalls.expire(System.nanoTime(),
+                call -> call.future.completeExceptionally(
+                        new AmqpReplyTimeoutException("rpc of exchange '"
+                                + exchange + "' routing key '" + call.routingKey
+                                + "' timed out", call.request)));
+    }
+
+    private static <T> CompletableFuture<T> failed(Exception cause)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private static final class PendingCall
+    {
+        private final String routingKey;
+
+        private final Message request;
+
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        /**
+         * 发送请求所用的channel,发送前为null
+         */
+        private volatile Channel channel;
+
+        private PendingCall(String routingKey, Message request)
+        {
+            this.routingKey = routingKey;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.frank.amqp.helper.rpc;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * RPC调用失败:服务端处理时抛出异常,或客户端未返回的调用数已达上限
+ */
+public class CommonMqRpcException extends AmqpException
+{
+    private static final long serialVersionUID = 1L;
+
+    public CommonMqRpcException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,178 @@
+package com.frank.amqp.helper.rpc;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import com.frank.amqp.helper.refresh.TopologyRefreshedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 为配置了RPC routing key的direct交换机生成CommonMqRpcClient,
+ * 并以"交换机名称+RpcClient"为名称注册到容器中;
+ * 客户端使用交换机所在连接分组的连接,请求与应答按交换机的编解码器编解码;
+ * 服务端由实现ICommonMqRpcHandler的监听器提供,见CommonMqListenerContainerRegistry;
+ * 拓扑刷新后为新增的交换机补充注册
+ */
+@Slf4j
+public class CommonMqRpcRegistry
+        implements BeanFactoryAware, InitializingBean, DisposableBean,
+        ApplicationListener<TopologyRefreshedEvent>
+{
+    public static final String BEAN_NAME_SUFFIX = "RpcClient";
+
+    private final ConnectionGroups connectionGroups;
+
+    private final CommonMqManager commonMqManager;
+
+    private final MessageCodecRegistry messageCodecRegistry;
+
+    private final TopologyActivator topologyActivator;
+
+    private final CommonMqProperties.Rpc rpcProperties;
+
+    private final Map<String, CommonMqRpcClient> clients = new ConcurrentHashMap<>();
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    /**
+     * @param topologyActivator lazy模式下的按需声明,为null时交换机已在启动时声明
+     */
+    public CommonMqRpcRegistry(ConnectionGroups connectionGroups,
+            CommonMqManager commonMqManager,
+            MessageCodecRegistry messageCodecRegistry,
+            TopologyActivator topologyActivator,
+            CommonMqProperties.Rpc rpcProperties)
+    {
+        this.connectionGroups = connectionGroups;
+        this.commonMqManager = commonMqManager;
+        this.messageCodecRegistry = messageCodecRegistry;
+        this.topologyActivator = topologyActivator;
+        this.rpcProperties = rpcProperties;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException
+    {
+        if (beanFactory instanceof ConfigurableListableBeanFactory)
+        {
+            this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        registerClients();
+    }
+
+    @Override
+    public void onApplicationEvent(TopologyRefreshedEvent event)
+    {
+        registerClients();
+    }
+
+    /**
+     * 为配置中已存在于拓扑、尚未注册的交换机创建客户端
+     */
+    private synchronized void registerClients()
+    {
+        for (Map.Entry<String, Set<String>> entry : rpcProperties
+                .getRoutingKeys().entrySet())
+        {
+            String exchange = entry.getKey();
+            if (clients.containsKey(exchange))
+            {
+                continue;
+            }
+            ExchangeDefine exchangeDefine = commonMqManager.getTopology()
+                    .getExchangeDefine(exchange);
+            if (null == exchangeDefine)
+            {
+                log.warn(
+                        "###CommonMqRpcRegistry### init->Exchange:{} is not declared by CommonMqManager, skip its rpc client...",
+                        exchange);
+                continue;
+            }
+            if (!ExchangeTypes.DIRECT.equals(exchangeDefine.getType()))
+            {
+                throw new IllegalStateException(
+                        "###CommonMqRpcRegistry### init->rpc requires a direct exchange, Exchange:"
+                                + exchange + " type:" + exchangeDefine.getType());
+            }
+            warnUnboundRoutingKeys(exchangeDefine, entry.getValue());
+
+            CommonMqRpcClient client = new CommonMqRpcClient(exchange,
+                    entry.getValue(),
+                    connectionGroups.connectionFactoryFor(exchange),
+                    messageCodecRegistry, topologyActivator,
+                    rpcProperties.getTimeoutMillis(),
+                    rpcProperties.getMaxInFlight(),
+                    rpcProperties.getSweepIntervalMillis());
+            clients.put(exchange, client);
+            if (null != beanFactory)
+            {
+                beanFactory.registerSingleton(exchange + BEAN_NAME_SUFFIX,
+                        client);
+            }
+            log.debug(
+                    "###CommonMqRpcRegistry### init->Exchange:{} rpc client init success, routingKeys:{}",
+                    exchange, entry.getValue());
+        }
+    }
+
+    private void warnUnboundRoutingKeys(ExchangeDefine exchangeDefine,
+            Set<String> routingKeys)
+    {
+        for (String routingKey : routingKeys)
+        {
+            boolean bound = false;
+            for (QueueDefine queueDefine : exchangeDefine.getQueueDefines())
+            {
+                bound |= queueDefine.getRoutingKeys().contains(routingKey);
+            }
+            if (!bound)
+            {
+                log.warn(
+                        "###CommonMqRpcRegistry### init->Exchange:{} routingKey:{} is not bound to any queue, calls will time out",
+                        exchangeDefine.getName(), routingKey);
+            }
+        }
+    }
+
+    /**
+     * @return 交换机对应的客户端,未配置时返回null
+     */
+    public CommonMqRpcClient getClient(String exchange)
+    {
+        return clients.get(exchange);
+    }
+
+    public Collection<CommonMqRpcClient> getClients()
+    {
+        return Collections.unmodifiableCollection(clients.values());
+    }
+
+    @Override
+    public void destroy()
+    {
+        clients.values().forEach(CommonMqRpcClient::close);
+    }
+}
@@ -0,0 +1,111 @@
+package com.frank.amqp.helper.rpc;
+
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+/**
+ * 将ICommonMqRpcHandler适配为队列的消息监听器
+ * 请求按交换机的编解码器解码,应答经默认交换机发送到请求的replyTo,并带回请求的correlationId;
+ * 处理失败时应答头x-rpc-error携带异常信息,请求正常确认;
+ * 没有replyTo的请求按单向消息处理,处理失败时与普通监听器一致
+ */
+@Slf4j
+public class CommonMqRpcServer implements MessageListener
+{
+    public static final String ERROR_HEADER = "x-rpc-error";
+
+    private final String exchange;
+
+    private final ICommonMqRpcHandler handler;
+
+    private final MessageCodecRegistry messageCodecRegistry;
+
+    private final AmqpTemplate replyTemplate;
+
+    /**
+     * @param exchange      队列所属的交换机,用于选择编解码器
+     * @param replyTemplate 发送应答所用的模板
+     */
+    public CommonMqRpcServer(String exchange, ICommonMqRpcHandler handler,
+            MessageCodecRegistry messageCodecRegistry,
+            AmqpTemplate replyTemplate)
+    {
+        this.exchange = exchange;
+        this.handler = handler;
+        this.messageCodecRegistry = messageCodecRegistry;
+        this.replyTemplate = replyTemplate;
+    }
+
+    @Override
+    public void onMessage(Message request)
+    {
+        MessageProperties requestProperties = request.getMessageProperties();
+        String replyTo = requestProperties.getReplyTo();
+        final Object result;
+        try
+        {
+            result = handler.handle(messageCodecRegistry.decode(exchange, request),
+                    request);
+        }
+        catch (MessageConversionException e)
+        {
+            if (null == replyTo)
+            {
+                //无法解码的请求重新入队只会再次失败
+                throw new AmqpRejectAndDontRequeueException(
+                        "queue:" + handler.getQueueName() + " decode failed", e);
+            }
+            replyError(replyTo, requestProperties, e);
+            return;
+        }
+        catch (Exception e)
+        {
+            if (null == replyTo)
+            {
+                throw e instanceof RuntimeException
+                        ? (RuntimeException) e
+                        : new AmqpException(e);
+            }
+            log.warn(
+                    "###CommonMqRpcServer->handle### queue:{} correlationId:{} failed, error:",
+                    handler.getQueueName(), requestProperties.getCorrelationId(), e);
+            replyError(replyTo, requestProperties, e);
+            return;
+        }
+
+        if (null == replyTo)
+        {
+            return;
+        }
+        MessageProperties replyProperties = replyProperties(requestProperties);
+        Message reply = null == result
+                ? new Message(new byte[0], replyProperties)
+                : messageCodecRegistry.converterFor(exchange).toMessage(result,
+                        replyProperties);
+        replyTemplate.send("", replyTo, reply);
+    }
+
+    private void replyError(String replyTo, MessageProperties requestProperties,
+            Exception error)
+    {
+        MessageProperties replyProperties = replyProperties(requestProperties);
+        replyProperties.setHeader(ERROR_HEADER,
+                error.getClass().getName() + ": " + error.getMessage());
+        replyTemplate.send("", replyTo, new Message(new byte[0], replyProperties));
+    }
+
+    private static MessageProperties replyProperties(
+            MessageProperties requestProperties)
+    {
+        MessageProperties replyProperties = new MessageProperties();
+        replyProperties.setCorrelationId(requestProperties.getCorrelationId());
+        return replyProperties;
+    }
+}
@@ -0,0 +1,135 @@
+package com.frank.amqp.helper.rpc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 无锁的开放寻址关联表,以递增的关联id定位槽位
+ * 1.登记时取下一个id,id对应的槽位(id & mask)为空时以CAS占用,被占用时继续取下一个id,即在id空间上线性探测,
+ * 查找与删除只需访问一个槽位,删除后无需墓碑;
+ * 2.槽位中保存id,迟到的应答即使落在已被新调用复用的槽位上也不会误删;
+ * 3.超时由外部线程周期性扫描全部槽位完成。
+ * 容量取不小于maxInFlight的2的幂,连续探测容量次仍无空槽位时登记失败
+ */
+final class CorrelationTable<T>
+{
+    private final AtomicReferenceArray<Entry<T>> slots;
+
+    private final int mask;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    CorrelationTable(int maxInFlight)
+    {
+        int capacity = Integer.highestOneBit(Math.max(2, maxInFlight) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param deadlineNanos 超时时刻,System.nanoTime()的取值
+     * @return 关联id,表已满时返回-1
+     */
+    long register(T value, long deadlineNanos)
+    {
+        for (int probe = 0; probe <= mask; probe++)
+        {
+            long id = nextId.getAndIncrement();
+            int index = (int) (id & mask);
+            if (null == slots.get(index)
+                    && slots.compareAndSet(index, null,
+                            new Entry<>(id, value, deadlineNanos)))
+            {
+                size.incrementAndGet();
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 关联id对应的值,已超时、已删除或不存在时返回null
+     */
+    T remove(long id)
+    {
+        int index = (int) (id & mask);
+        Entry<T> entry = slots.get(index);
+        if (null == entry || entry.id != id
+                || !slots.compareAndSet(index, entry, null))
+        {
+            return null;
+        }
+        size.decrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * 删除已超时的登记
+     *
+     * @param onExpired 对每个被删除的值回调
+     */
+    void expire(long nowNanos, Consumer<T> onExpired)
+    {
+        scan(entry -> nowNanos - entry.deadlineNanos >= 0, onExpired);
+    }
+
+    /**
+     * 删除满足条件的登记
+     *
+     * @param onRemoved 对每个被删除的值回调
+     */
+    void removeIf(Predicate<T> filter, Consumer<T> onRemoved)
+    {
+        scan(entry -> filter.test(entry.value), onRemoved);
+    }
+
+    private void scan(EntryFilter<T> filter, Consumer<T> onRemoved)
+    {
+        for (int index = 0; index <= mask; index++)
+        {
+            Entry<T> entry = slots.get(index);
+            if (null != entry && filter.test(entry)
+                    && slots.compareAndSet(index, entry, null))
+            {
+                size.decrementAndGet();
+                onRemoved.accept(entry.value);
+            }
+        }
+    }
+
+    int size()
+    {
+        return size.get();
+    }
+
+    int capacity()
+    {
+        return mask + 1;
+    }
+
+    private interface EntryFilter<T>
+    {
+        boolean test(Entry<T> entry);
+    }
+
+    private static final class Entry<T>
+    {
+        private final long id;
+
+        private final T value;
+
+        private final long deadlineNanos;
+
+        private Entry(long id, T value, long deadlineNanos)
+        {
+            this.id = id;
+            this.value = value;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.frank.amqp.helper.rpc;
+
+import com.frank.amqp.helper.listener.ICommonMqConsumer;
+import org.springframework.amqp.core.Message;
+
+/**
+ * RPC服务端,需要将其实现注入到容器中
+ * 开启监听容器后,队列的请求按交换机的编解码器解码后回调handle,返回值以同一编解码器编码后发送到请求的replyTo;
+ * 处理抛出异常时向调用方返回错误应答,请求不会重新入队
+ */
+public interface ICommonMqRpcHandler extends ICommonMqConsumer
+{
+    /**
+     * @param request 解码后的请求对象
+     * @param message 原始请求消息,用于读取消息属性
+     * @return 应答对象,为null时返回空应答
+     */
+    Object handle(Object request, Message message) throws Exception;
+}
@@ -0,0 +1,217 @@
+package com.frank.amqp.helper.spi;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.codec.MessageCodec;
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.config.ICommonMqConfig;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.declare.CommonMqBulkDeclarer;
+import com.frank.amqp.helper.declare.ConnectionGroupDeclarer;
+import com.frank.amqp.helper.declare.LazyTopologyDeclarer;
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.frank.amqp.helper.declare.TopologySnapshotStore;
+import com.frank.amqp.helper.inject.ApplicationContextKeeper;
+import com.frank.amqp.helper.inject.CommonMqBeanRegistrar;
+import com.frank.amqp.helper.inject.DynamicInjectAssistant;
+import com.frank.amqp.helper.listener.CommonMqListenerContainerRegistry;
+import com.frank.amqp.helper.listener.ICommonMqConsumer;
+import com.frank.amqp.helper.publisher.CommonMqPublisherRegistry;
+import com.frank.amqp.helper.recorder.FlightRecorder;
+import com.frank.amqp.helper.refresh.TopologyRefresher;
+import com.frank.amqp.helper.rpc.CommonMqRpcRegistry;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+@Configuration
+@AutoConfigureAfter(RabbitAutoConfiguration.class)
+@EnableConfigurationProperties(CommonMqProperties.class)
+public class CustomMqAutoConfiguration
+{
+    @Bean
+    public ApplicationContextKeeper applicationContextKeeper()
+    {
+        return new ApplicationContextKeeper();
+    }
+
+    @Bean
+    @ConditionalOnClass(value = {ApplicationContextKeeper.class})
+    @ConditionalOnMissingBean
+    public DynamicInjectAssistant dynamicInjectAssistant()
+    {
+        return new DynamicInjectAssistant();
+    }
+
+    @ConditionalOnClass(value = {AmqpTemplate.class, ICommonMqConfig.class })
+    @ConditionalOnProperty(prefix = "common.mq.inject", name = "mode", havingValue = "registrar")
+    @ConditionalOnMissingBean
+    @Bean
+    public static CommonMqBeanRegistrar commonMqBeanRegistrar()
+    {
+        return new CommonMqBeanRegistrar();
+    }
+
+    @ConditionalOnClass(value = {AmqpTemplate.class, ICommonMqConfig.class })
+    @ConditionalOnProperty(prefix = "common.mq.inject", name = "mode", havingValue = "assistant", matchIfMissing = true)
+    @ConditionalOnMissingBean
+    @Bean
+    public CommonMqManager commonMqManager(ICommonMqConfig commonMqConfig,
+            DynamicInjectAssistant dynamicInjectAssistant,
+            CommonMqProperties commonMqProperties)
+    {
+        return new CommonMqManager(commonMqConfig, dynamicInjectAssistant,
+                commonMqProperties);
+    }
+
+    @ConditionalOnMissingBean
+    @Bean
+    public MessageCodecRegistry messageCodecRegistry(
+            ObjectProvider<MessageCodec> codecs,
+            ObjectProvider<MessageConverter> messageConverter,
+            CommonMqProperties commonMqProperties)
+    {
+        return new MessageCodecRegistry(
+                codecs.orderedStream().collect(Collectors.toList()),
+                messageConverter.getIfUnique(), commonMqProperties.getCodec());
+    }
+
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public ConnectionGroups connectionGroups(ConnectionFactory connectionFactory,
+            CommonMqProperties commonMqProperties)
+    {
+        return ConnectionGroups.create(connectionFactory, commonMqProperties);
+    }
+
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public ConnectionGroupDeclarer connectionGroupDeclarer(
+            ConnectionGroups connectionGroups, CommonMqManager commonMqManager,
+            CommonMqProperties commonMqProperties)
+    {
+        return new ConnectionGroupDeclarer(connectionGroups, commonMqManager,
+                commonMqProperties.getDeclare());
+    }
+
+    @ConditionalOnProperty(prefix = "common.mq.declare", name = "mode", havingValue = "bulk")
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public CommonMqBulkDeclarer commonMqBulkDeclarer(
+            ConnectionFactory connectionFactory, CommonMqManager commonMqManager,
+            CommonMqProperties commonMqProperties)
+    {
+        final String snapshotPath = commonMqProperties.getDeclare()
+                .getSnapshotPath();
+        return new CommonMqBulkDeclarer(connectionFactory, commonMqManager,
+                commonMqProperties.getDeclare().getBatchSize(),
+                StringUtils.hasText(snapshotPath)
+                        ? new TopologySnapshotStore(Paths.get(snapshotPath))
+                        : null);
+    }
+
+    @ConditionalOnProperty(prefix = "common.mq.declare", name = "mode", havingValue = "lazy")
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public LazyTopologyDeclarer lazyTopologyDeclarer(
+            ConnectionGroups connectionGroups, CommonMqManager commonMqManager)
+    {
+        return new LazyTopologyDeclarer(commonMqManager, connectionGroups);
+    }
+
+    @ConditionalOnProperty(prefix = "common.mq.recorder", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean
+    @Bean
+    public FlightRecorder flightRecorder(CommonMqProperties commonMqProperties)
+    {
+        return new FlightRecorder(commonMqProperties.getRecorder().getCapacity());
+    }
+
+    @ConditionalOnProperty(prefix = "common.mq.publisher", name = "enabled", havingValue = "true")
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public CommonMqPublisherRegistry commonMqPublisherRegistry(
+            ConnectionGroups connectionGroups, CommonMqManager commonMqManager,
+            MessageCodecRegistry messageCodecRegistry,
+            ObjectProvider<TopologyActivator> topologyActivator,
+            ObjectProvider<FlightRecorder> flightRecorder,
+            CommonMqProperties commonMqProperties)
+    {
+        CommonMqProperties.Publisher publisher = commonMqProperties.getPublisher();
+        return CommonMqPublisherRegistry.builder(connectionGroups, commonMqManager)
+                .messageCodecRegistry(messageCodecRegistry)
+                .maxInFlight(publisher.getMaxInFlight())
+                .checkRoutable(publisher.isCheckRoutable())
+                .topologyActivator(topologyActivator.getIfAvailable())
+                .spool(publisher.getSpool())
+                .flightRecorder(flightRecorder.getIfAvailable())
+                .build();
+    }
+
+    @ConditionalOnProperty(prefix = "common.mq.rpc", name = "enabled", havingValue = "true")
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public CommonMqRpcRegistry commonMqRpcRegistry(
+            ConnectionGroups connectionGroups, CommonMqManager commonMqManager,
+            MessageCodecRegistry messageCodecRegistry,
+            ObjectProvider<TopologyActivator> topologyActivator,
+            CommonMqProperties commonMqProperties)
+    {
+        return new CommonMqRpcRegistry(connectionGroups, commonMqManager,
+                messageCodecRegistry, topologyActivator.getIfAvailable(),
+                commonMqProperties.getRpc());
+    }
+
+    @ConditionalOnProperty(prefix = "common.mq.listener", name = "enabled", havingValue = "true")
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public CommonMqListenerContainerRegistry commonMqListenerContainerRegistry(
+            ConnectionGroups connectionGroups, CommonMqManager commonMqManager,
+            ObjectProvider<ICommonMqConsumer> listeners,
+            ObjectProvider<TopologyActivator> topologyActivator,
+            MessageCodecRegistry messageCodecRegistry,
+            ObjectProvider<FlightRecorder> flightRecorder,
+            CommonMqProperties commonMqProperties)
+    {
+        return CommonMqListenerContainerRegistry.builder(connectionGroups,
+                commonMqManager,
+                listeners.orderedStream().collect(Collectors.toList()),
+                commonMqProperties.getListener())
+                .topologyActivator(topologyActivator.getIfAvailable())
+                .messageCodecRegistry(messageCodecRegistry)
+                .flightRecorder(flightRecorder.getIfAvailable())
+                .build();
+    }
+
+    @ConditionalOnBean(value = {ConnectionFactory.class})
+    @ConditionalOnMissingBean
+    @Bean
+    public TopologyRefresher topologyRefresher(
+            ConnectionGroups connectionGroups, CommonMqManager commonMqManager,
+            CommonMqProperties commonMqProperties)
+    {
+        return new TopologyRefresher(commonMqManager, connectionGroups,
+                commonMqProperties.getRefresh().getIntervalMillis());
+    }
+}
@@ -0,0 +1,61 @@
+package com.frank.amqp.helper.spool;
+
+/**
+ * 从发送日志中读出的一条记录
+ */
+public final class JournalRecord
+{
+    private final long sequence;
+
+    private final int endOffset;
+
+    private final String routingKey;
+
+    private final byte[] properties;
+
+    private final byte[] body;
+
+    JournalRecord(long sequence, int endOffset, String routingKey,
+            byte[] properties, byte[] body)
+    {
+        this.sequence = sequence;
+        this.endOffset = endOffset;
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    /**
+     * @return 记录所在分段的序号
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return 记录在分段内的结束位置
+     */
+    public int getEndOffset()
+    {
+        return endOffset;
+    }
+
+    public String getRoutingKey()
+    {
+        return routingKey;
+    }
+
+    /**
+     * @return 由PropertiesCodec编码的消息属性
+     */
+    public byte[] getProperties()
+    {
+        return properties;
+    }
+
+    public byte[] getBody()
+    {
+        return body;
+    }
+}
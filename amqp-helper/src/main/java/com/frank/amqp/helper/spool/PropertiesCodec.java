@@ -0,0 +1,377 @@
+package com.frank.amqp.helper.spool;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.LongString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 发送日志中消息属性的编解码
+ * 格式为版本号、标记各属性是否存在的位图,随后按位图顺序写入存在的属性;
+ * headers的值以一个字节的类型标记开头,类型与AMQP字段表一致,LongString按String还原,
+ * 不支持的类型在追加时即失败,与直接发送时的行为相同
+ */
+final class PropertiesCodec
+{
+    private static final int VERSION = 1;
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final int CONTENT_TYPE = 1;
+
+    private static final int CONTENT_ENCODING = 1 << 1;
+
+    private static final int HEADERS = 1 << 2;
+
+    private static final int DELIVERY_MODE = 1 << 3;
+
+    private static final int PRIORITY = 1 << 4;
+
+    private static final int CORRELATION_ID = 1 << 5;
+
+    private static final int REPLY_TO = 1 << 6;
+
+    private static final int EXPIRATION = 1 << 7;
+
+    private static final int MESSAGE_ID = 1 << 8;
+
+    private static final int TIMESTAMP = 1 << 9;
+
+    private static final int TYPE = 1 << 10;
+
+    private static final int USER_ID = 1 << 11;
+
+    private static final int APP_ID = 1 << 12;
+
+    private static final int CLUSTER_ID = 1 << 13;
+
+    private PropertiesCodec()
+    {
+    }
+
+    static byte[] encode(AMQP.BasicProperties properties)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            int flags = (null == properties.getContentType() ? 0 : CONTENT_TYPE)
+                    | (null == properties.getContentEncoding() ? 0 : CONTENT_ENCODING)
+                    | (null == properties.getHeaders() ? 0 : HEADERS)
+                    | (null == properties.getDeliveryMode() ? 0 : DELIVERY_MODE)
+                    | (null == properties.getPriority() ? 0 : PRIORITY)
+                    | (null == properties.getCorrelationId() ? 0 : CORRELATION_ID)
+                    | (null == properties.getReplyTo() ? 0 : REPLY_TO)
+                    | (null == properties.getExpiration() ? 0 : EXPIRATION)
+                    | (null == properties.getMessageId() ? 0 : MESSAGE_ID)
+                    | (null == properties.getTimestamp() ? 0 : TIMESTAMP)
+                    | (null == properties.getType() ? 0 : TYPE)
+                    | (null == properties.getUserId() ? 0 : USER_ID)
+                    | (null == properties.getAppId() ? 0 : APP_ID)
+                    | (null == properties.getClusterId() ? 0 : CLUSTER_ID);
+            out.writeByte(VERSION);
+            out.writeShort(flags);
+            writeString(properties.getContentType(), out);
+            writeString(properties.getContentEncoding(), out);
+            if (null != properties.getHeaders())
+            {
+                writeTable(properties.getHeaders(), out, 0);
+            }
+            if (null != properties.getDeliveryMode())
+            {
+                out.writeByte(properties.getDeliveryMode());
+            }
+            if (null != properties.getPriority())
+            {
+                out.writeByte(properties.getPriority());
+            }
+            writeString(properties.getCorrelationId(), out);
+            writeString(properties.getReplyTo(), out);
+            writeString(properties.getExpiration(), out);
+            writeString(properties.getMessageId(), out);
+            if (null != properties.getTimestamp())
+            {
+                out.writeLong(properties.getTimestamp().getTime());
+            }
+            writeString(properties.getType(), out);
+            writeString(properties.getUserId(), out);
+            writeString(properties.getAppId(), out);
+            writeString(properties.getClusterId(), out);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            //ByteArrayOutputStream不会抛出IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static AMQP.BasicProperties decode(byte[] encoded) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        int version = in.readUnsignedByte();
+        if (VERSION != version)
+        {
+            throw new IOException("unsupported properties version:" + version);
+        }
+        int flags = in.readUnsignedShort();
+        AMQP.BasicProperties.Builder builder = new AMQP.BasicProperties.Builder();
+        builder.contentType(readString(flags, CONTENT_TYPE, in));
+        builder.contentEncoding(readString(flags, CONTENT_ENCODING, in));
+        if (0 != (flags & HEADERS))
+        {
+            builder.headers(readTable(in, 0));
+        }
+        if (0 != (flags & DELIVERY_MODE))
+        {
+            builder.deliveryMode(in.readUnsignedByte());
+        }
+        if (0 != (flags & PRIORITY))
+        {
+            builder.priority(in.readUnsignedByte());
+        }
+        builder.correlationId(readString(flags, CORRELATION_ID, in));
+        builder.replyTo(readString(flags, REPLY_TO, in));
+        builder.expiration(readString(flags, EXPIRATION, in));
+        builder.messageId(readString(flags, MESSAGE_ID, in));
+        if (0 != (flags & TIMESTAMP))
+        {
+            builder.timestamp(new Date(in.readLong()));
+        }
+        builder.type(readString(flags, TYPE, in));
+        builder.userId(readString(flags, USER_ID, in));
+        builder.appId(readString(flags, APP_ID, in));
+        builder.clusterId(readString(flags, CLUSTER_ID, in));
+        if (in.available() > 0)
+        {
+            throw new IOException(in.available() + " trailing bytes");
+        }
+        return builder.build();
+    }
+
+    private static void writeString(String value, DataOutputStream out)
+            throws IOException
+    {
+        if (null != value)
+        {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8), out);
+        }
+    }
+
+    private static String readString(int flags, int flag, DataInputStream in)
+            throws IOException
+    {
+        return 0 == (flags & flag) ? null : new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(byte[] value, DataOutputStream out)
+            throws IOException
+    {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0 || length > in.available())
+        {
+            throw new IOException("invalid length:" + length);
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    private static void writeTable(Map<String, Object> table,
+            DataOutputStream out, int depth) throws IOException
+    {
+        out.writeInt(table.size());
+        for (Map.Entry<String, Object> entry : table.entrySet())
+        {
+            writeBytes(entry.getKey().getBytes(StandardCharsets.UTF_8), out);
+            writeValue(entry.getValue(), out, depth);
+        }
+    }
+
+    private static Map<String, Object> readTable(DataInputStream in, int depth)
+            throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0 || size > in.available())
+        {
+            throw new IOException("invalid table size:" + size);
+        }
+        Map<String, Object> table = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++)
+        {
+            table.put(new String(readBytes(in), StandardCharsets.UTF_8),
+                    readValue(in, depth));
+        }
+        return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(Object value, DataOutputStream out,
+            int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IllegalArgumentException(
+                    "header nested deeper than " + MAX_DEPTH);
+        }
+        if (null == value)
+        {
+            out.writeByte('V');
+        }
+        else if (value instanceof String)
+        {
+            out.writeByte('S');
+            writeBytes(((String) value).getBytes(StandardCharsets.UTF_8), out);
+        }
+        else if (value instanceof LongString)
+        {
+            out.writeByte('S');
+            writeBytes(((LongString) value).getBytes(), out);
+        }
+        else if (value instanceof Integer)
+        {
+            out.writeByte('I');
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Long)
+        {
+            out.writeByte('l');
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Short)
+        {
+            out.writeByte('s');
+            out.writeShort((Short) value);
+        }
+        else if (value instanceof Byte)
+        {
+            out.writeByte('b');
+            out.writeByte((Byte) value);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.writeByte('t');
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Float)
+        {
+            out.writeByte('f');
+            out.writeFloat((Float) value);
+        }
+        else if (value instanceof Double)
+        {
+            out.writeByte('d');
+            out.writeDouble((Double) value);
+        }
+        else if (value instanceof BigDecimal)
+        {
+            out.writeByte('D');
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeInt(decimal.scale());
+            writeBytes(decimal.unscaledValue().toByteArray(), out);
+        }
+        else if (value instanceof Date)
+        {
+            out.writeByte('T');
+            out.writeLong(((Date) value).getTime());
+        }
+        else if (value instanceof byte[])
+        {
+            out.writeByte('x');
+            writeBytes((byte[]) value, out);
+        }
+        else if (value instanceof Map)
+        {
+            out.writeByte('F');
+            writeTable((Map<String, Object>) value, out, depth + 1);
+        }
+        else if (value instanceof List)
+        {
+            out.writeByte('A');
+            List<Object> list = (List<Object>) value;
+            out.writeInt(list.size());
+            for (Object element : list)
+            {
+                writeValue(element, out, depth + 1);
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                    "invalid header value type:" + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in, int depth)
+            throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("header nested deeper than " + MAX_DEPTH);
+        }
+        int type = in.readUnsignedByte();
+        switch (type)
+        {
+            case 'V':
+                return null;
+            case 'S':
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case 'I':
+                return in.readInt();
+            case 'l':
+                return in.readLong();
+            case 's':
+                return in.readShort();
+            case 'b':
+                return in.readByte();
+            case 't':
+                return in.readBoolean();
+            case 'f':
+                return in.readFloat();
+            case 'd':
+                return in.readDouble();
+            case 'D':
+                int scale = in.readInt();
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case 'T':
+                return new Date(in.readLong());
+            case 'x':
+                return readBytes(in);
+            case 'F':
+                return readTable(in, depth + 1);
+            case 'A':
+                int size = in.readInt();
+                if (size < 0 || size > in.available())
+                {
+                    throw new IOException("invalid array size:" + size);
+                }
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    list.add(readValue(in, depth + 1));
+                }
+                return list;
+            default:
+                throw new IOException("unknown header value type:" + type);
+        }
+    }
+}
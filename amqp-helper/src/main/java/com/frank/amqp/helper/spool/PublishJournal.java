@@ -0,0 +1,488 @@
+package com.frank.amqp.helper.spool;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个交换机的本地发送日志,由固定数量的内存映射分段文件组成
+ * 1.追加写:消息在调用方线程上直接写入映射内存,不经过中间缓冲区,记录长度最后写入,读取方不会看到写了一半的记录;
+ * 2.顺序读:只有一个读取方按追加顺序读取,发送失败时回退到已确认位置重新读取;
+ * 3.确认:已确认位置写入分段头,全部确认的分段归还复用,进程重启后从已确认位置继续。
+ * 分段格式: int magic | int version | long sequence | long confirmedOffset | record... | int 0
+ * 记录格式: int length | short routingKeyLength | byte[] routingKey | int propertiesLength | byte[] properties | byte[] body
+ * 映射内存由操作系统异步刷盘,可保证进程崩溃后不丢失,操作系统崩溃时可能丢失尾部记录
+ */
+@Slf4j
+public class PublishJournal implements Closeable
+{
+    private static final int MAGIC = 0x434D514A;
+
+    private static final int VERSION = 1;
+
+    private static final int SEQUENCE_OFFSET = 8;
+
+    private static final int CONFIRMED_OFFSET = 16;
+
+    static final int HEADER_BYTES = 24;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int maxSegments;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 使用中的分段,按序号排列,最后一个为写入分段
+     */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    /**
+     * 已全部确认、可复用的分段
+     */
+    private final ArrayDeque<Segment> free = new ArrayDeque<>();
+
+    private int slots;
+
+    private long nextSequence;
+
+    private Segment readSegment;
+
+    private int readOffset;
+
+    private long pending;
+
+    private boolean closed;
+
+    /**
+     * @param directory    分段文件目录,不存在时创建
+     * @param segmentBytes 单个分段的字节数
+     * @param maxSegments  分段数上限,全部写满且未确认时追加失败
+     * @throws IOException 目录或分段文件无法读写
+     */
+    public PublishJournal(Path directory, int segmentBytes, int maxSegments)
+            throws IOException
+    {
+        if (segmentBytes <= HEADER_BYTES * 2 || maxSegments < 2)
+        {
+            throw new IllegalArgumentException(
+                    "###PublishJournal### segmentBytes must be larger than "
+                            + HEADER_BYTES * 2 + " and maxSegments at least 2");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    private void recover() throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                int slot = Integer.parseInt(name.substring(
+                        SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+                slots = Math.max(slots, slot + 1);
+                Segment segment = new Segment(slot, map(file));
+                if (!segment.recover())
+                {
+                    free.add(segment);
+                    continue;
+                }
+                segments.put(segment.sequence, segment);
+                nextSequence = Math.max(nextSequence, segment.sequence + 1);
+            }
+        }
+
+        //除写入分段外,全部确认的分段直接复用
+        while (segments.size() > 1)
+        {
+            Segment first = segments.firstEntry().getValue();
+            if (first.confirmedOffset < first.writeOffset)
+            {
+                break;
+            }
+            segments.pollFirstEntry();
+            free.add(first);
+        }
+        for (Segment segment : segments.values())
+        {
+            pending += segment.countRecords(segment.confirmedOffset);
+        }
+        rewind();
+        if (pending > 0)
+        {
+            log.info(
+                    "###PublishJournal->recover### journal:{} recovered {} unconfirmed records in {} segments",
+                    directory, pending, segments.size());
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            //映射在通道关闭后仍然有效
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @throws IllegalArgumentException 记录超过单个分段的容量
+     * @throws SpoolFullException       全部分段已写满且未确认
+     */
+    public void append(String routingKey, byte[] properties, byte[] body)
+    {
+        byte[] routingKeyBytes = routingKey.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + routingKeyBytes.length + 4 + properties.length
+                + body.length;
+        //记录本身与其后的结束标记
+        int required = 4 + length + 4;
+        if (HEADER_BYTES + required > segmentBytes)
+        {
+            throw new IllegalArgumentException(
+                    "###PublishJournal### record of " + length
+                            + " bytes exceeds segment size " + segmentBytes);
+        }
+
+        lock.lock();
+        try
+        {
+            if (closed)
+            {
+                throw new IllegalStateException(
+                        "###PublishJournal### journal:" + directory + " is closed");
+            }
+            Map.Entry<Long, Segment> last = segments.lastEntry();
+            Segment tail = null == last ? null : last.getValue();
+            if (null == tail || tail.writeOffset + required > segmentBytes)
+            {
+                tail = roll();
+            }
+
+            int offset = tail.writeOffset;
+            ByteBuffer buffer = tail.buffer.duplicate();
+            buffer.position(offset + 4);
+            buffer.putShort((short) routingKeyBytes.length).put(routingKeyBytes)
+                    .putInt(properties.length).put(properties).put(body)
+                    .putInt(0);
+            tail.buffer.putInt(offset, length);
+            tail.writeOffset = offset + 4 + length;
+            pending++;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private Segment roll() throws SpoolFullException
+    {
+        Segment segment = free.poll();
+        if (null == segment)
+        {
+            if (slots >= maxSegments)
+            {
+                throw new SpoolFullException(directory.toString(), maxSegments,
+                        segmentBytes);
+            }
+            try
+            {
+                segment = new Segment(slots, map(directory.resolve(
+                        SEGMENT_PREFIX + slots + SEGMENT_SUFFIX)));
+                slots++;
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(
+                        "###PublishJournal### create segment in " + directory
+                                + " failed", e);
+            }
+        }
+        segment.reset(nextSequence++);
+        segments.put(segment.sequence, segment);
+        if (null == readSegment)
+        {
+            readSegment = segment;
+            readOffset = HEADER_BYTES;
+        }
+        return segment;
+    }
+
+    /**
+     * 读取下一条尚未读取的记录,仅由单个读取方调用
+     *
+     * @return 记录,没有新记录时返回null
+     */
+    public JournalRecord next()
+    {
+        lock.lock();
+        try
+        {
+            while (null != readSegment)
+            {
+                if (readOffset < readSegment.writeOffset)
+                {
+                    JournalRecord record = readSegment.read(readOffset);
+                    readOffset = record.getEndOffset();
+                    return record;
+                }
+                Map.Entry<Long, Segment> following = segments
+                        .higherEntry(readSegment.sequence);
+                if (null == following)
+                {
+                    return null;
+                }
+                readSegment = following.getValue();
+                readOffset = HEADER_BYTES;
+            }
+            return null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按读取顺序确认记录,该记录及之前的记录均视为已确认
+     *
+     * @param record  最后一条已确认的记录
+     * @param records 本次确认的记录数
+     */
+    public void confirm(JournalRecord record, int records)
+    {
+        lock.lock();
+        try
+        {
+            pending -= records;
+            Segment segment = segments.get(record.getSequence());
+            if (null == segment)
+            {
+                return;
+            }
+            segment.confirm(record.getEndOffset());
+            //之前的分段均已全部确认,写入分段之外的已确认分段归还复用
+            while (!segments.isEmpty())
+            {
+                Segment first = segments.firstEntry().getValue();
+                boolean finished = first.sequence < segment.sequence
+                        || first.confirmedOffset >= first.writeOffset;
+                if (!finished || first == segments.lastEntry().getValue()
+                        || first == readSegment)
+                {
+                    break;
+                }
+                segments.pollFirstEntry();
+                first.release();
+                free.add(first);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取位置回退到最早未确认的记录,已发送但未确认的记录会被再次读取
+     */
+    public void rewind()
+    {
+        lock.lock();
+        try
+        {
+            Map.Entry<Long, Segment> first = segments.firstEntry();
+            readSegment = null == first ? null : first.getValue();
+            readOffset = null == first
+                    ? HEADER_BYTES
+                    : first.getValue().confirmedOffset;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 已追加但未确认的记录数
+     */
+    public long getPending()
+    {
+        lock.lock();
+        try
+        {
+            return pending;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * 将映射内存写回磁盘并拒绝新的追加,文件保留供下次启动继续发送
+     */
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments.values())
+            {
+                segment.buffer.force();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private final class Segment
+    {
+        private final int slot;
+
+        private final MappedByteBuffer buffer;
+
+        private long sequence;
+
+        private int writeOffset;
+
+        private int confirmedOffset;
+
+        private Segment(int slot, MappedByteBuffer buffer)
+        {
+            this.slot = slot;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 读取分段头并扫描出写入位置
+         *
+         * @return 分段是否有效
+         */
+        private boolean recover()
+        {
+            if (MAGIC != buffer.getInt(0) || VERSION != buffer.getInt(4))
+            {
+                return false;
+            }
+            sequence = buffer.getLong(SEQUENCE_OFFSET);
+            int offset = HEADER_BYTES;
+            for (;;)
+            {
+                int length = offset + 4 <= segmentBytes ? buffer.getInt(offset) : 0;
+                if (length <= 0 || offset + 4 + length > segmentBytes)
+                {
+                    break;
+                }
+                offset += 4 + length;
+            }
+            writeOffset = offset;
+            long confirmed = buffer.getLong(CONFIRMED_OFFSET);
+            confirmedOffset = (int) Math.max(HEADER_BYTES,
+                    Math.min(confirmed, writeOffset));
+            return true;
+        }
+
+        private long countRecords(int from)
+        {
+            long count = 0;
+            for (int offset = from; offset < writeOffset;
+                    offset += 4 + buffer.getInt(offset))
+            {
+                count++;
+            }
+            return count;
+        }
+
+        private void reset(long newSequence)
+        {
+            sequence = newSequence;
+            writeOffset = HEADER_BYTES;
+            confirmedOffset = HEADER_BYTES;
+            buffer.putInt(HEADER_BYTES, 0);
+            buffer.putLong(CONFIRMED_OFFSET, HEADER_BYTES);
+            buffer.putLong(SEQUENCE_OFFSET, newSequence);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(0, MAGIC);
+            log.debug(
+                    "###PublishJournal->roll### journal:{} segment slot:{} sequence:{}",
+                    directory, slot, newSequence);
+        }
+
+        /**
+         * 归还复用前清除分段头,之前的分段没有写入确认位置,重启时不能再当作未确认的分段恢复
+         */
+        private void release()
+        {
+            buffer.putInt(0, 0);
+        }
+
+        private void confirm(int offset)
+        {
+            if (offset > confirmedOffset)
+            {
+                confirmedOffset = offset;
+                buffer.putLong(CONFIRMED_OFFSET, offset);
+            }
+        }
+
+        private JournalRecord read(int offset)
+        {
+            ByteBuffer record = buffer.duplicate();
+            int length = record.getInt(offset);
+            record.position(offset + 4);
+            byte[] routingKey = new byte[record.getShort() & 0xFFFF];
+            record.get(routingKey);
+            byte[] properties = new byte[record.getInt()];
+            record.get(properties);
+            byte[] body = new byte[length - 2 - routingKey.length - 4
+                    - properties.length];
+            record.get(body);
+            return new JournalRecord(sequence, offset + 4 + length,
+                    new String(routingKey, StandardCharsets.UTF_8), properties,
+                    body);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.frank.amqp.helper.spool;
+
+import com.frank.amqp.helper.declare.TopologyActivator;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.frank.amqp.helper.metrics.ExchangeMetrics;
+import com.frank.amqp.helper.recorder.FlightEventType;
+import com.frank.amqp.helper.recorder.FlightRing;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionProxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单个交换机的本地发送缓冲
+ * 1.调用方线程只把消息追加到PublishJournal,broker阻塞连接(flow control)或故障切换时调用方不受影响;
+ * 2.由单个转发线程按追加顺序读取日志,在独占的confirm channel上发送,broker确认后推进日志的已确认位置;
+ * 3.channel异常、nack或无法建立连接时,关闭channel并回退到最早未确认的记录,间隔RETRY_INTERVAL_MILLIS后重新发送,
+ * 交换机内的消息顺序不变,回退可能导致已到达broker但尚未确认的消息重复投递。
+ * 关闭时最多等待CLOSE_DRAIN_TIMEOUT_MILLIS转发剩余消息,未转发的消息保留在日志中,下次启动后继续发送
+ */
+@Slf4j
+public class PublishSpool implements Closeable
+{
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4096;
+
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+
+    private static final long CLOSE_DRAIN_TIMEOUT_MILLIS = 5000;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String exchange;
+
+    private final PublishJournal journal;
+
+    private final ConnectionFactory connectionFactory;
+
+    private final int maxInFlight;
+
+    private final ExchangeMetrics metrics;
+
+    private final TopologyActivator topologyActivator;
+
+    private final FlightRing flightRing;
+
+    /**
+     * broker确认与channel关闭事件,由转发线程处理
+     */
+    private final ConcurrentLinkedQueue<Object> events = new ConcurrentLinkedQueue<>();
+
+    private final Thread drainer;
+
+    private volatile boolean running = true;
+
+    /**
+     * 以下状态仅由转发线程访问
+     * 已发送未确认的记录,以channel的publish序号排列
+     */
+    private final TreeMap<Long, InFlight> window = new TreeMap<>();
+
+    private Channel channel;
+
+    private long retryAtMillis;
+
+    /**
+     * @param exchange          交换机名称
+     * @param journal           交换机独占的发送日志
+     * @param connectionFactory 转发所用的连接
+     */
+    public static Builder builder(String exchange, PublishJournal journal,
+            ConnectionFactory connectionFactory)
+    {
+        return new Builder(exchange, journal, connectionFactory);
+    }
+
+    private PublishSpool(Builder builder)
+    {
+        this.exchange = builder.exchange;
+        this.journal = builder.journal;
+        this.connectionFactory = builder.connectionFactory;
+        this.maxInFlight = Math.max(1, builder.maxInFlight);
+        this.metrics = null == builder.metrics
+                ? new CommonMqMetrics().exchange(exchange, null)
+                : builder.metrics;
+        this.topologyActivator = builder.topologyActivator;
+        this.flightRing = builder.flightRing;
+        this.drainer = new Thread(this::drain, "common-mq-spool-" + exchange);
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * 追加消息,写入日志后立即返回
+     *
+     * @throws SpoolFullException 日志已满
+     */
+    public void append(String routingKey, AMQP.BasicProperties properties,
+            byte[] body)
+    {
+        //转发时可原样还原包括headers在内的全部属性
+        byte[] encoded = PropertiesCodec.encode(properties);
+        journal.append(null == routingKey ? "" : routingKey, encoded, body);
+        LockSupport.unpark(drainer);
+    }
+
+    /**
+     * @return 已写入日志但尚未被broker确认的消息数
+     */
+    public long getPending()
+    {
+        return journal.getPending();
+    }
+
+    /**
+     * 停止接收新消息,在超时时间内转发剩余消息后关闭日志
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark(drainer);
+        try
+        {
+            drainer.join(CLOSE_DRAIN_TIMEOUT_MILLIS * 2);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        long pending = journal.getPending();
+        if (pending > 0)
+        {
+            log.warn(
+                    "###PublishSpool->close### exchange:{} {} messages remain in journal:{}, will be sent after restart",
+                    exchange, pending, journal.getDirectory());
+        }
+    }
+
+    private void drain()
+    {
+        long deadline = 0;
+        for (;;)
+        {
+            if (!running)
+            {
+                if (0 == deadline)
+                {
+                    deadline = System.currentTimeMillis()
+                            + CLOSE_DRAIN_TIMEOUT_MILLIS;
+                }
+                if (0 == journal.getPending()
+                        || System.currentTimeMillis() > deadline)
+                {
+                    break;
+                }
+            }
+
+            boolean progressed = handleEvents();
+            if (null == channel && !openChannel())
+            {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(
+                        Math.max(1, retryAtMillis - System.currentTimeMillis())));
+                continue;
+            }
+            progressed |= publishAvailable();
+            if (!progressed)
+            {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        closeChannel();
+    }
+
+    private boolean handleEvents()
+    {
+        boolean handled = false;
+        Object event;
+        while (null != (event = events.poll()))
+        {
+            handled = true;
+            if (event instanceof ConfirmEvent)
+            {
+                ConfirmEvent confirm = (ConfirmEvent) event;
+                //过期channel上的确认直接忽略,其记录已在回退后重新发送
+                if (confirm.channel != channel)
+                {
+                    continue;
+                }
+                if (!confirm.ack)
+                {
+                    metrics.onNacked();
+                    recordNack(confirm.deliveryTag);
+                    fail("nacked by broker");
+                    continue;
+                }
+                Map<Long, InFlight> acked = confirm.multiple
+                        ? window.headMap(confirm.deliveryTag, true)
+                        : window.subMap(confirm.deliveryTag, true,
+                                confirm.deliveryTag, true);
+                acked.values().forEach(inFlight -> inFlight.acked = true);
+                advance();
+            }
+            else if (event instanceof ShutdownEvent)
+            {
+                ShutdownEvent shutdown = (ShutdownEvent) event;
+                if (shutdown.channel == channel)
+                {
+                    fail(shutdown.cause.getMessage());
+                }
+            }
+        }
+        return handled;
+    }
+
+    /**
+     * 从最早的记录开始连续确认,确认可能乱序到达,只有之前的记录都已确认时才推进日志
+     */
+    private void advance()
+    {
+        long now = System.nanoTime();
+        JournalRecord last = null;
+        int count = 0;
+        while (!window.isEmpty() && window.firstEntry().getValue().acked)
+        {
+            InFlight inFlight = window.pollFirstEntry().getValue();
+            metrics.onConfirmed(now - inFlight.sentNanos);
+            if (null != flightRing)
+            {
+                flightRing.record(FlightEventType.CONFIRM,
+                        inFlight.record.getRoutingKey(),
+                        inFlight.record.getBody().length, now,
+                        now - inFlight.sentNanos);
+            }
+            last = inFlight.record;
+            count++;
+        }
+        if (null != last)
+        {
+            journal.confirm(last, count);
+        }
+    }
+
+    private void recordNack(long deliveryTag)
+    {
+        InFlight inFlight = window.get(deliveryTag);
+        if (null != flightRing && null != inFlight)
+        {
+            long now = System.nanoTime();
+            flightRing.record(FlightEventType.NACK,
+                    inFlight.record.getRoutingKey(),
+                    inFlight.record.getBody().length, now,
+                    now - inFlight.sentNanos);
+        }
+    }
+
+    private boolean publishAvailable()
+    {
+        boolean published = false;
+        while (window.size() < maxInFlight)
+        {
+            JournalRecord record = journal.next();
+            if (null == record)
+            {
+                break;
+            }
+            try
+            {
+                long seq = channel.getNextPublishSeqNo();
+                long sentNanos = System.nanoTime();
+                window.put(seq, new InFlight(record, sentNanos));
+                channel.basicPublish(exchange, record.getRoutingKey(), false,
+                        decode(record), record.getBody());
+                if (null != flightRing)
+                {
+                    flightRing.record(FlightEventType.PUBLISH,
+                            record.getRoutingKey(), record.getBody().length,
+                            sentNanos, 0);
+                }
+                published = true;
+            }
+            catch (Exception e)
+            {
+                fail(e.getMessage());
+                return true;
+            }
+        }
+        return published;
+    }
+
+    private AMQP.BasicProperties decode(JournalRecord record)
+    {
+        try
+        {
+            return PropertiesCodec.decode(record.getProperties());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.error(
+                    "###PublishSpool->decode### exchange:{} properties of record in segment:{} is corrupted, send without properties",
+                    exchange, record.getSequence());
+            return new AMQP.BasicProperties();
+        }
+    }
+
+    private boolean openChannel()
+    {
+        if (System.currentTimeMillis() < retryAtMillis)
+        {
+            return false;
+        }
+        try
+        {
+            if (null != topologyActivator)
+            {
+                topologyActivator.activate(exchange);
+            }
+            //绕过CachingConnectionFactory的channel缓存,confirm模式的channel由转发线程独占
+            Connection connection = connectionFactory.createConnection();
+            if (connection instanceof ConnectionProxy)
+            {
+                connection = ((ConnectionProxy) connection).getTargetConnection();
+            }
+            final Channel newChannel = connection.createChannel(false);
+            newChannel.confirmSelect();
+            newChannel.addConfirmListener(new ConfirmListener()
+            {
+                @Override
+                public void handleAck(long deliveryTag, boolean multiple)
+                {
+                    offer(new ConfirmEvent(newChannel, deliveryTag, multiple, true));
+                }
+
+                @Override
+                public void handleNack(long deliveryTag, boolean multiple)
+                {
+                    offer(new ConfirmEvent(newChannel, deliveryTag, multiple, false));
+                }
+            });
+            newChannel.addShutdownListener(cause -> offer(
+                    new ShutdownEvent(newChannel, new AmqpException(cause))));
+            channel = newChannel;
+            window.clear();
+            journal.rewind();
+            log.debug(
+                    "###PublishSpool->channel### exchange:{} open confirm channel:{}, pending:{}",
+                    exchange, newChannel.getChannelNumber(), journal.getPending());
+            return true;
+        }
+        catch (Exception e)
+        {
+            retryAtMillis = System.currentTimeMillis() + RETRY_INTERVAL_MILLIS;
+            log.warn(
+                    "###PublishSpool->channel### exchange:{} open channel failed, retry in {}ms, pending:{}, error:{}",
+                    exchange, RETRY_INTERVAL_MILLIS, journal.getPending(),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    private void offer(Object event)
+    {
+        events.offer(event);
+        LockSupport.unpark(drainer);
+    }
+
+    private void fail(String reason)
+    {
+        log.warn(
+                "###PublishSpool->drain### exchange:{} channel failed, resend {} unconfirmed messages in {}ms, error:{}",
+                exchange, window.size(), RETRY_INTERVAL_MILLIS, reason);
+        closeChannel();
+        window.clear();
+        journal.rewind();
+        retryAtMillis = System.currentTimeMillis() + RETRY_INTERVAL_MILLIS;
+    }
+
+    private void closeChannel()
+    {
+        Channel currentChannel = channel;
+        channel = null;
+        if (null == currentChannel || !currentChannel.isOpen())
+        {
+            return;
+        }
+        try
+        {
+            currentChannel.close();
+        }
+        catch (Exception e)
+        {
+            log.debug(
+                    "###PublishSpool->close### exchange:{} close channel error:{}",
+                    exchange, e.getMessage());
+        }
+    }
+
+    private static final class InFlight
+    {
+        private final JournalRecord record;
+
+        private final long sentNanos;
+
+        private boolean acked;
+
+        private InFlight(JournalRecord record, long sentNanos)
+        {
+            this.record = record;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private static final class ConfirmEvent
+    {
+        private final Channel channel;
+
+        private final long deliveryTag;
+
+        private final boolean multiple;
+
+        private final boolean ack;
+
+        private ConfirmEvent(Channel channel, long deliveryTag,
+                boolean multiple, boolean ack)
+        {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.multiple = multiple;
+            this.ack = ack;
+        }
+    }
+
+    private static final class ShutdownEvent
+    {
+        private final Channel channel;
+
+        private final Exception cause;
+
+        private ShutdownEvent(Channel channel, Exception cause)
+        {
+            this.channel = channel;
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * PublishSpool的可选配置,新增的配置项只在此处增加方法,不再增加构造器
+     */
+    public static final class Builder
+    {
+        private final String exchange;
+
+        private final PublishJournal journal;
+
+        private final ConnectionFactory connectionFactory;
+
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+        private ExchangeMetrics metrics;
+
+        private TopologyActivator topologyActivator;
+
+        private FlightRing flightRing;
+
+        private Builder(String exchange, PublishJournal journal,
+                ConnectionFactory connectionFactory)
+        {
+            this.exchange = exchange;
+            this.journal = journal;
+            this.connectionFactory = connectionFactory;
+        }
+
+        /**
+         * @param maxInFlight 转发时未确认消息数上限
+         */
+        public Builder maxInFlight(int maxInFlight)
+        {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param metrics 交换机的发送统计,为null时使用独立的统计
+         */
+        public Builder metrics(ExchangeMetrics metrics)
+        {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param topologyActivator lazy模式下在首次打开channel前声明交换机,为null时不声明
+         */
+        public Builder topologyActivator(TopologyActivator topologyActivator)
+        {
+            this.topologyActivator = topologyActivator;
+            return this;
+        }
+
+        /**
+         * @param flightRing 交换机的飞行记录,不为null时记录转发与确认
+         */
+        public Builder flightRing(FlightRing flightRing)
+        {
+            this.flightRing = flightRing;
+            return this;
+        }
+
+        /**
+         * 创建并启动转发线程
+         */
+        public PublishSpool build()
+        {
+            return new PublishSpool(this);
+        }
+    }
+}
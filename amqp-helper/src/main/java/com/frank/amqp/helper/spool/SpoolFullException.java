@@ -0,0 +1,25 @@
+package com.frank.amqp.helper.spool;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * 发送日志的全部分段已写满且尚未被broker确认,broker长时间不可用时出现
+ */
+public class SpoolFullException extends AmqpException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String journal;
+
+    public SpoolFullException(String journal, int maxSegments, int segmentBytes)
+    {
+        super("publish journal '" + journal + "' is full, " + maxSegments
+                + " segments of " + segmentBytes + " bytes are unconfirmed");
+        this.journal = journal;
+    }
+
+    public String getJournal()
+    {
+        return journal;
+    }
+}
@@ -0,0 +1,957 @@
+package com.frank.amqp.helper.broker;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.impl.AMQImpl;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的AMQP broker替身,供单元测试与基准测试在无网络、无RabbitMQ的环境下运行
+ * 1.以spring-rabbit的ConnectionFactory接入,channel为动态代理,只实现本项目与监听容器用到的命令;
+ * 2.支持direct、fanout、topic、headers与默认交换机的路由,声明结果保存在内存中;
+ * 支持direct reply-to,应答经默认交换机发送到请求channel独占的应答队列;
+ * 3.publisher confirm在basicPublish返回前逐条确认,消费按basicQos限制未确认消息数,
+ * 投递回调与真实客户端一样在每个channel独占的线程上串行执行。
+ * 不模拟网络与持久化开销,结果只用于同一台机器上前后版本的相对比较
+ */
+public class InProcessBroker implements ConnectionFactory
+{
+    private static final String DEFAULT_EXCHANGE = "";
+
+    private static final String X_MATCH = "x-match";
+
+    private static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private static final String SERVER_NAMED_PREFIX = "amq.gen-";
+
+    private final Map<String, BrokerExchange> exchanges = new ConcurrentHashMap<>();
+
+    private final Map<String, BrokerQueue> queues = new ConcurrentHashMap<>();
+
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+
+    private final AtomicLong consumerTags = new AtomicLong();
+
+    private final AtomicLong declareCount = new AtomicLong();
+
+    private final BrokerConnection connection = new BrokerConnection();
+
+    private volatile boolean connected;
+
+    public InProcessBroker()
+    {
+        for (String type : new String[] { ExchangeTypes.DIRECT,
+                ExchangeTypes.FANOUT, ExchangeTypes.TOPIC,
+                ExchangeTypes.HEADERS })
+        {
+            exchanges.put("amq." + type, new BrokerExchange(type));
+        }
+        exchanges.put("amq.match", new BrokerExchange(ExchangeTypes.HEADERS));
+    }
+
+    /**
+     * 首次获取连接时回调ConnectionListener,与CachingConnectionFactory一致
+     */
+    @Override
+    public Connection createConnection() throws AmqpException
+    {
+        if (!connected)
+        {
+            synchronized (this)
+            {
+                if (!connected)
+                {
+                    connected = true;
+                    for (ConnectionListener listener : connectionListeners)
+                    {
+                        listener.onCreate(connection);
+                    }
+                }
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    public String getHost()
+    {
+        return "in-process";
+    }
+
+    @Override
+    public int getPort()
+    {
+        return 0;
+    }
+
+    @Override
+    public String getVirtualHost()
+    {
+        return "/";
+    }
+
+    @Override
+    public String getUsername()
+    {
+        return "guest";
+    }
+
+    @Override
+    public void addConnectionListener(ConnectionListener listener)
+    {
+        connectionListeners.add(listener);
+        if (connected)
+        {
+            listener.onCreate(connection);
+        }
+    }
+
+    @Override
+    public boolean removeConnectionListener(ConnectionListener listener)
+    {
+        return connectionListeners.remove(listener);
+    }
+
+    @Override
+    public void clearConnectionListeners()
+    {
+        connectionListeners.clear();
+    }
+
+    /**
+     * 清空声明的交换机、队列与消息,预置的amq.*交换机保留
+     */
+    public void reset()
+    {
+        exchanges.keySet().removeIf(name -> !name.startsWith("amq."));
+        for (BrokerExchange exchange : exchanges.values())
+        {
+            exchange.bindings.clear();
+        }
+        queues.clear();
+        declareCount.set(0);
+    }
+
+    public int getExchangeCount()
+    {
+        return exchanges.size();
+    }
+
+    public int getQueueCount()
+    {
+        return queues.size();
+    }
+
+    /**
+     * @return 收到的交换机、队列与绑定声明命令数
+     */
+    public long getDeclareCount()
+    {
+        return declareCount.get();
+    }
+
+    /**
+     * @return 队列中未投递的消息数,队列不存在时为-1
+     */
+    public int getMessageCount(String queueName)
+    {
+        BrokerQueue queue = queues.get(queueName);
+        if (null == queue)
+        {
+            return -1;
+        }
+        synchronized (queue)
+        {
+            return queue.ready.size();
+        }
+    }
+
+    private void declareExchange(String name, String type)
+    {
+        declareCount.incrementAndGet();
+        exchanges.computeIfAbsent(name, key -> new BrokerExchange(type));
+    }
+
+    private String declareQueue(String name)
+    {
+        declareCount.incrementAndGet();
+        String actualName = name.isEmpty()
+                ? SERVER_NAMED_PREFIX + consumerTags.incrementAndGet()
+                : name;
+        queues.computeIfAbsent(actualName, BrokerQueue::new);
+        return actualName;
+    }
+
+    private void bind(String queueName, String exchangeName, String routingKey,
+            Map<String, Object> arguments) throws IOException
+    {
+        declareCount.incrementAndGet();
+        BrokerExchange exchange = requireExchange(exchangeName);
+        BrokerQueue queue = requireQueue(queueName);
+        exchange.bindings.add(new BrokerBinding(queue, routingKey,
+                null == arguments
+                        ? Collections.emptyMap()
+                        : new ConcurrentHashMap<>(arguments)));
+    }
+
+    private void unbind(String queueName, String exchangeName,
+            String routingKey)
+    {
+        BrokerExchange exchange = exchanges.get(exchangeName);
+        if (null != exchange)
+        {
+            exchange.bindings.removeIf(binding -> binding.queue.name
+                    .equals(queueName) && binding.routingKey.equals(routingKey));
+        }
+    }
+
+    private BrokerExchange requireExchange(String name) throws IOException
+    {
+        BrokerExchange exchange = exchanges.get(name);
+        if (null == exchange)
+        {
+            throw new IOException("NOT_FOUND - no exchange '" + name + "'");
+        }
+        return exchange;
+    }
+
+    private BrokerQueue requireQueue(String name) throws IOException
+    {
+        BrokerQueue queue = queues.get(name);
+        if (null == queue)
+        {
+            throw new IOException("NOT_FOUND - no queue '" + name + "'");
+        }
+        return queue;
+    }
+
+    private Set<BrokerQueue> route(String exchangeName, String routingKey,
+            AMQP.BasicProperties properties) throws IOException
+    {
+        if (DEFAULT_EXCHANGE.equals(exchangeName))
+        {
+            BrokerQueue queue = queues.get(routingKey);
+            return null == queue
+                    ? Collections.emptySet()
+                    : Collections.singleton(queue);
+        }
+
+        BrokerExchange exchange = requireExchange(exchangeName);
+        Set<BrokerQueue> matched = new LinkedHashSet<>();
+        for (BrokerBinding binding : exchange.bindings)
+        {
+            if (matches(exchange.type, binding, routingKey, properties))
+            {
+                matched.add(binding.queue);
+            }
+        }
+        return matched;
+    }
+
+    private static boolean matches(String type, BrokerBinding binding,
+            String routingKey, AMQP.BasicProperties properties)
+    {
+        switch (type)
+        {
+            case ExchangeTypes.FANOUT:
+                return true;
+            case ExchangeTypes.TOPIC:
+                return topicMatches(binding.routingKey.split("\\.", -1), 0,
+                        routingKey.split("\\.", -1), 0);
+            case ExchangeTypes.HEADERS:
+                return headersMatch(binding.arguments,
+                        null == properties ? null : properties.getHeaders());
+            default:
+                return binding.routingKey.equals(routingKey);
+        }
+    }
+
+    private static boolean topicMatches(String[] pattern, int p, String[] words,
+            int w)
+    {
+        if (p == pattern.length)
+        {
+            return w == words.length;
+        }
+        if ("#".equals(pattern[p]))
+        {
+            for (int skip = w; skip <= words.length; skip++)
+            {
+                if (topicMatches(pattern, p + 1, words, skip))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return w < words.length
+                && ("*".equals(pattern[p]) || pattern[p].equals(words[w]))
+                && topicMatches(pattern, p + 1, words, w + 1);
+    }
+
+    private static boolean headersMatch(Map<String, Object> arguments,
+            Map<String, Object> headers)
+    {
+        boolean any = "any".equals(String.valueOf(arguments.get(X_MATCH)));
+        boolean matchedAny = false;
+        for (Map.Entry<String, Object> argument : arguments.entrySet())
+        {
+            if (argument.getKey().startsWith("x-"))
+            {
+                continue;
+            }
+            Object value = null == headers ? null : headers.get(argument.getKey());
+            boolean matched = null != value && String.valueOf(argument.getValue())
+                    .equals(String.valueOf(value));
+            if (any && matched)
+            {
+                return true;
+            }
+            if (!any && !matched)
+            {
+                return false;
+            }
+            matchedAny |= matched;
+        }
+        return !any || matchedAny;
+    }
+
+    private static final class BrokerExchange
+    {
+        private final String type;
+
+        private final List<BrokerBinding> bindings = new CopyOnWriteArrayList<>();
+
+        private BrokerExchange(String type)
+        {
+            this.type = type;
+        }
+    }
+
+    private static final class BrokerBinding
+    {
+        private final BrokerQueue queue;
+
+        private final String routingKey;
+
+        private final Map<String, Object> arguments;
+
+        private BrokerBinding(BrokerQueue queue, String routingKey,
+                Map<String, Object> arguments)
+        {
+            this.queue = queue;
+            this.routingKey = null == routingKey ? "" : routingKey;
+            this.arguments = arguments;
+        }
+    }
+
+    private static final class BrokerMessage
+    {
+        private final String exchange;
+
+        private final String routingKey;
+
+        private final AMQP.BasicProperties properties;
+
+        private final byte[] body;
+
+        private boolean redelivered;
+
+        private BrokerMessage(String exchange, String routingKey,
+                AMQP.BasicProperties properties, byte[] body)
+        {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 队列状态均在队列锁内访问,投递回调提交到消费者channel的线程上执行
+     */
+    private static final class BrokerQueue
+    {
+        private final String name;
+
+        private final ArrayDeque<BrokerMessage> ready = new ArrayDeque<>();
+
+        private final List<BrokerConsumer> consumers = new ArrayList<>();
+
+        private int nextConsumer;
+
+        private BrokerQueue(String name)
+        {
+            this.name = name;
+        }
+
+        private synchronized void enqueue(BrokerMessage message)
+        {
+            ready.addLast(message);
+            dispatch();
+        }
+
+        private synchronized void requeue(BrokerMessage message)
+        {
+            message.redelivered = true;
+            ready.addFirst(message);
+            dispatch();
+        }
+
+        private synchronized void dispatch()
+        {
+            while (!ready.isEmpty() && !consumers.isEmpty())
+            {
+                BrokerConsumer target = null;
+                for (int i = 0; i < consumers.size() && null == target; i++)
+                {
+                    BrokerConsumer candidate = consumers
+                            .get((nextConsumer + i) % consumers.size());
+                    if (candidate.hasCredit())
+                    {
+                        target = candidate;
+                        nextConsumer = (nextConsumer + i + 1) % consumers.size();
+                    }
+                }
+                if (null == target)
+                {
+                    return;
+                }
+                target.deliver(this, ready.pollFirst());
+            }
+        }
+    }
+
+    private static final class BrokerConsumer
+    {
+        private final BrokerChannel channel;
+
+        private final String tag;
+
+        private final Consumer consumer;
+
+        private final boolean autoAck;
+
+        private BrokerConsumer(BrokerChannel channel, String tag,
+                Consumer consumer, boolean autoAck)
+        {
+            this.channel = channel;
+            this.tag = tag;
+            this.consumer = consumer;
+            this.autoAck = autoAck;
+        }
+
+        private boolean hasCredit()
+        {
+            return autoAck || channel.hasCredit();
+        }
+
+        private void deliver(BrokerQueue queue, BrokerMessage message)
+        {
+            long deliveryTag = channel.track(queue, message, autoAck);
+            Envelope envelope = new Envelope(deliveryTag, message.redelivered,
+                    message.exchange, message.routingKey);
+            channel.execute(() -> consumer.handleDelivery(tag, envelope,
+                    message.properties, message.body));
+        }
+    }
+
+    /**
+     * 消费者回调,异常由投递线程忽略
+     */
+    private interface ConsumerCallback
+    {
+        void run() throws Exception;
+    }
+
+    private static final class Unacked
+    {
+        private final BrokerQueue queue;
+
+        private final BrokerMessage message;
+
+        private Unacked(BrokerQueue queue, BrokerMessage message)
+        {
+            this.queue = queue;
+            this.message = message;
+        }
+    }
+
+    private final class BrokerConnection implements Connection
+    {
+        @Override
+        public Channel createChannel(boolean transactional) throws AmqpException
+        {
+            BrokerChannel handler = new BrokerChannel(
+                    channelNumbers.incrementAndGet());
+            return (Channel) Proxy.newProxyInstance(
+                    Channel.class.getClassLoader(),
+                    new Class<?>[] { Channel.class }, handler);
+        }
+
+        @Override
+        public void close() throws AmqpException
+        {
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public int getLocalPort()
+        {
+            return 0;
+        }
+
+        @Override
+        public void addBlockedListener(BlockedListener listener)
+        {
+        }
+
+        @Override
+        public boolean removeBlockedListener(BlockedListener listener)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * channel的动态代理实现,未模拟的命令返回对应返回类型的默认值
+     */
+    private final class BrokerChannel implements InvocationHandler
+    {
+        private final int number;
+
+        private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+
+        private final Map<String, BrokerConsumer> consumers = new ConcurrentHashMap<>();
+
+        /**
+         * 未确认的投递,以deliveryTag升序排列,在channel锁内访问
+         */
+        private final Map<Long, Unacked> unacked = new TreeMap<>();
+
+        private volatile ExecutorService dispatcher;
+
+        private volatile boolean open = true;
+
+        private boolean confirmMode;
+
+        private long publishSeq;
+
+        private long deliveryTags;
+
+        private int prefetch;
+
+        /**
+         * 消费amq.rabbitmq.reply-to时分配的应答队列
+         */
+        private volatile String replyQueue;
+
+        private BrokerChannel(int number)
+        {
+            this.number = number;
+        }
+
+        @Override
+        public Object invoke(Object target, Method method, Object[] args)
+                throws Throwable
+        {
+            String name = method.getName();
+            switch (name)
+            {
+                case "equals":
+                    return target == args[0];
+                case "hashCode":
+                    return System.identityHashCode(target);
+                case "toString":
+                    return "InProcessChannel#" + number;
+                case "getChannelNumber":
+                    return number;
+                case "isOpen":
+                    return open;
+                case "close":
+                case "abort":
+                    close();
+                    return null;
+                case "exchangeDeclare":
+                case "exchangeDeclareNoWait":
+                    declareExchange((String) args[0], String.valueOf(args[1])
+                            .toLowerCase());
+                    return new AMQImpl.Exchange.DeclareOk();
+                case "exchangeDeclarePassive":
+                    requireExchange((String) args[0]);
+                    return new AMQImpl.Exchange.DeclareOk();
+                case "queueDeclare":
+                case "queueDeclareNoWait":
+                    String queueName = declareQueue(null == args || 0 == args.length
+                            ? ""
+                            : (String) args[0]);
+                    return declareOk(queues.get(queueName));
+                case "queueDeclarePassive":
+                    return declareOk(requireQueue((String) args[0]));
+                case "queueBind":
+                case "queueBindNoWait":
+                    bind((String) args[0], (String) args[1], (String) args[2],
+                            args.length > 3 ? arguments(args[3]) : null);
+                    return new AMQImpl.Queue.BindOk();
+                case "queueUnbind":
+                    unbind((String) args[0], (String) args[1], (String) args[2]);
+                    return new AMQImpl.Queue.UnbindOk();
+                case "confirmSelect":
+                    synchronized (this)
+                    {
+                        if (!confirmMode)
+                        {
+                            confirmMode = true;
+                            publishSeq = 1;
+                        }
+                    }
+                    return new AMQImpl.Confirm.SelectOk();
+                case "getNextPublishSeqNo":
+                    synchronized (this)
+                    {
+                        return confirmMode ? publishSeq : 0L;
+                    }
+                case "addConfirmListener":
+                    confirmListeners.add((ConfirmListener) args[0]);
+                    return null;
+                case "waitForConfirms":
+                    return true;
+                case "basicPublish":
+                    publish(args);
+                    return null;
+                case "basicQos":
+                    synchronized (this)
+                    {
+                        //basicQos(prefetchSize, prefetchCount, global)或basicQos(prefetchCount[, global])
+                        prefetch = (Integer) args[3 == args.length ? 1 : 0];
+                    }
+                    return null;
+                case "basicConsume":
+                    return consume(args);
+                case "basicCancel":
+                    cancel((String) args[0]);
+                    return null;
+                case "basicAck":
+                    settle((Long) args[0], (Boolean) args[1], false);
+                    return null;
+                case "basicNack":
+                    settle((Long) args[0], (Boolean) args[1], (Boolean) args[2]);
+                    return null;
+                case "basicReject":
+                    settle((Long) args[0], false, (Boolean) args[1]);
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private void publish(Object[] args) throws IOException
+        {
+            String exchange = (String) args[0];
+            String routingKey = (String) args[1];
+            AMQP.BasicProperties properties = (AMQP.BasicProperties) args[args.length - 2];
+            byte[] body = (byte[]) args[args.length - 1];
+            if (null != properties
+                    && DIRECT_REPLY_TO.equals(properties.getReplyTo()))
+            {
+                if (null == replyQueue)
+                {
+                    throw new IOException(
+                            "PRECONDITION_FAILED - fast reply consumer does not exist");
+                }
+                properties = properties.builder().replyTo(replyQueue).build();
+            }
+            for (BrokerQueue queue : route(exchange, routingKey, properties))
+            {
+                queue.enqueue(new BrokerMessage(exchange, routingKey,
+                        null == properties ? new AMQP.BasicProperties() : properties,
+                        body));
+            }
+
+            long seq;
+            synchronized (this)
+            {
+                if (!confirmMode)
+                {
+                    return;
+                }
+                seq = publishSeq++;
+            }
+            for (ConfirmListener listener : confirmListeners)
+            {
+                listener.handleAck(seq, false);
+            }
+        }
+
+        private String consume(Object[] args) throws IOException
+        {
+            String queueName = (String) args[0];
+            if (DIRECT_REPLY_TO.equals(queueName))
+            {
+                replyQueue = DIRECT_REPLY_TO + ".channel-" + number;
+                queues.computeIfAbsent(replyQueue, BrokerQueue::new);
+                queueName = replyQueue;
+            }
+            BrokerQueue queue = requireQueue(queueName);
+            boolean autoAck = args.length > 2 && args[1] instanceof Boolean
+                    && (Boolean) args[1];
+            Consumer consumer = (Consumer) args[args.length - 1];
+            String tag = args.length > 3 && args[2] instanceof String
+                    && !((String) args[2]).isEmpty()
+                            ? (String) args[2]
+                            : "amq.ctag-" + consumerTags.incrementAndGet();
+            BrokerConsumer brokerConsumer = new BrokerConsumer(this, tag,
+                    consumer, autoAck);
+            consumers.put(tag, brokerConsumer);
+            execute(() -> consumer.handleConsumeOk(tag));
+            synchronized (queue)
+            {
+                queue.consumers.add(brokerConsumer);
+                queue.dispatch();
+            }
+            return tag;
+        }
+
+        private void cancel(String tag)
+        {
+            BrokerConsumer consumer = consumers.remove(tag);
+            if (null == consumer)
+            {
+                return;
+            }
+            for (BrokerQueue queue : queues.values())
+            {
+                synchronized (queue)
+                {
+                    //服务端命名的队列按exclusive、auto-delete处理,最后一个消费者取消后删除
+                    if (queue.consumers.remove(consumer)
+                            && queue.consumers.isEmpty()
+                            && queue.name.startsWith(SERVER_NAMED_PREFIX))
+                    {
+                        queues.remove(queue.name);
+                    }
+                }
+            }
+            execute(() -> consumer.consumer.handleCancelOk(tag));
+        }
+
+        private synchronized boolean hasCredit()
+        {
+            return open && (prefetch <= 0 || unacked.size() < prefetch);
+        }
+
+        private synchronized long track(BrokerQueue queue,
+                BrokerMessage message, boolean autoAck)
+        {
+            long deliveryTag = ++deliveryTags;
+            if (!autoAck)
+            {
+                unacked.put(deliveryTag, new Unacked(queue, message));
+            }
+            return deliveryTag;
+        }
+
+        /**
+         * 确认或拒绝投递,释放的额度会触发对应队列的再次投递
+         */
+        private void settle(long deliveryTag, boolean multiple, boolean requeue)
+        {
+            List<Unacked> settled = new ArrayList<>();
+            synchronized (this)
+            {
+                if (multiple)
+                {
+                    Iterator<Map.Entry<Long, Unacked>> iterator = unacked
+                            .entrySet().iterator();
+                    while (iterator.hasNext())
+                    {
+                        Map.Entry<Long, Unacked> entry = iterator.next();
+                        if (entry.getKey() > deliveryTag)
+                        {
+                            break;
+                        }
+                        settled.add(entry.getValue());
+                        iterator.remove();
+                    }
+                }
+                else
+                {
+                    Unacked entry = unacked.remove(deliveryTag);
+                    if (null != entry)
+                    {
+                        settled.add(entry);
+                    }
+                }
+            }
+
+            Set<BrokerQueue> affected = new LinkedHashSet<>();
+            for (Unacked entry : settled)
+            {
+                if (requeue)
+                {
+                    entry.queue.requeue(entry.message);
+                }
+                affected.add(entry.queue);
+            }
+            for (BrokerQueue queue : affected)
+            {
+                queue.dispatch();
+            }
+        }
+
+        private void close()
+        {
+            List<Unacked> pending;
+            synchronized (this)
+            {
+                if (!open)
+                {
+                    return;
+                }
+                open = false;
+                pending = new ArrayList<>(unacked.values());
+                unacked.clear();
+            }
+            for (String tag : new ArrayList<>(consumers.keySet()))
+            {
+                cancel(tag);
+            }
+            //与broker一致,channel关闭时未确认的消息重新入队
+            for (Unacked entry : pending)
+            {
+                entry.queue.requeue(entry.message);
+            }
+            if (null != replyQueue)
+            {
+                queues.remove(replyQueue);
+            }
+            ExecutorService current = dispatcher;
+            if (null != current)
+            {
+                current.shutdown();
+            }
+        }
+
+        private void execute(ConsumerCallback callback)
+        {
+            ExecutorService current = dispatcher;
+            if (null == current)
+            {
+                synchronized (this)
+                {
+                    if (null == dispatcher)
+                    {
+                        dispatcher = Executors.newSingleThreadExecutor(task -> {
+                            Thread thread = new Thread(task,
+                                    "in-process-broker-channel-" + number);
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    }
+                    current = dispatcher;
+                }
+            }
+            if (current.isShutdown())
+            {
+                return;
+            }
+            current.execute(() -> {
+                try
+                {
+                    callback.run();
+                }
+                catch (Exception e)
+                {
+                    //与客户端一致,消费者回调异常不影响channel上的其余投递
+                }
+            });
+        }
+
+        private AMQP.Queue.DeclareOk declareOk(BrokerQueue queue)
+        {
+            synchronized (queue)
+            {
+                return new AMQImpl.Queue.DeclareOk(queue.name,
+                        queue.ready.size(), queue.consumers.size());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> arguments(Object argument)
+    {
+        return (Map<String, Object>) argument;
+    }
+
+    private static Object defaultValue(Class<?> type)
+    {
+        if (!type.isPrimitive() || void.class == type)
+        {
+            return null;
+        }
+        if (boolean.class == type)
+        {
+            return false;
+        }
+        if (long.class == type)
+        {
+            return 0L;
+        }
+        if (double.class == type)
+        {
+            return 0D;
+        }
+        if (float.class == type)
+        {
+            return 0F;
+        }
+        if (char.class == type)
+        {
+            return (char) 0;
+        }
+        if (byte.class == type)
+        {
+            return (byte) 0;
+        }
+        if (short.class == type)
+        {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
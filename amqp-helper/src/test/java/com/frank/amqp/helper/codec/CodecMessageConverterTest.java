@@ -0,0 +1,163 @@
+package com.frank.amqp.helper.codec;
+
+import com.frank.amqp.helper.config.CommonMqProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CodecMessageConverter的编解码往返、压缩阈值、x-codec解析与解压上限
+ */
+public class CodecMessageConverterTest
+{
+    private static final int THRESHOLD = 1024;
+
+    private static final int MAX_INFLATED = 64 * 1024;
+
+    private MessageCodecRegistry registry;
+
+    @Before
+    public void setUp()
+    {
+        CommonMqProperties.Codec properties = new CommonMqProperties.Codec();
+        properties.setCompressThreshold(THRESHOLD);
+        properties.setMaxInflatedBytes(MAX_INFLATED);
+        properties.getExchanges().put("exchange.direct.binary", CompactBinaryCodec.NAME);
+        properties.getExchanges().put("exchange.direct.bytes", RawBytesCodec.NAME);
+        registry = new MessageCodecRegistry(Collections.emptyList(), null, properties);
+    }
+
+    @Test
+    public void roundTripsBelowThresholdUncompressed()
+    {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("id", 42L);
+        payload.put("name", "order");
+        MessageConverter converter = registry.converterFor("exchange.direct.binary");
+
+        Message message = converter.toMessage(payload, new MessageProperties());
+
+        assertTrue(message.getBody().length < THRESHOLD);
+        assertNull(message.getMessageProperties().getContentEncoding());
+        assertEquals(CompactBinaryCodec.NAME, message.getMessageProperties()
+                .getHeaders().get(CodecMessageConverter.CODEC_HEADER));
+        assertEquals(payload, converter.fromMessage(message));
+    }
+
+    @Test
+    public void compressesAtThreshold()
+    {
+        MessageConverter converter = registry.converterFor("exchange.direct.bytes");
+        byte[] payload = repeat(THRESHOLD);
+
+        Message message = converter.toMessage(payload, new MessageProperties());
+
+        assertEquals(CodecMessageConverter.DEFLATE,
+                message.getMessageProperties().getContentEncoding());
+        assertTrue(message.getBody().length < THRESHOLD);
+        assertArrayEquals(payload, (byte[]) converter.fromMessage(message));
+
+        //阈值以下不压缩
+        Message small = converter.toMessage(repeat(THRESHOLD - 1), new MessageProperties());
+        assertNull(small.getMessageProperties().getContentEncoding());
+        assertEquals(THRESHOLD - 1, small.getBody().length);
+    }
+
+    @Test
+    public void sendsIncompressibleBodyAsIs()
+    {
+        MessageConverter converter = registry.converterFor("exchange.direct.bytes");
+        byte[] payload = new byte[4 * THRESHOLD];
+        new Random(7).nextBytes(payload);
+
+        Message message = converter.toMessage(payload, new MessageProperties());
+
+        assertNull(message.getMessageProperties().getContentEncoding());
+        assertArrayEquals(payload, message.getBody());
+    }
+
+    @Test
+    public void resolvesCodecFromHeader()
+    {
+        Message message = registry.converterFor("exchange.direct.bytes")
+                .toMessage("raw", new MessageProperties());
+
+        //x-codec优先于交换机的编解码器
+        assertArrayEquals("raw".getBytes(), (byte[]) registry
+                .converterFor("exchange.direct.binary").fromMessage(message));
+        //未配置编解码器的交换机按x-codec解码
+        assertArrayEquals("raw".getBytes(),
+                (byte[]) registry.decode("exchange.direct.other", message));
+        //没有x-codec时使用交换机的编解码器
+        Message plain = new Message("plain".getBytes(), new MessageProperties());
+        assertArrayEquals("plain".getBytes(), (byte[]) registry
+                .converterFor("exchange.direct.bytes").fromMessage(plain));
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void rejectsUnknownCodec()
+    {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setHeader(CodecMessageConverter.CODEC_HEADER, "missing");
+        registry.converterFor("exchange.direct.binary")
+                .fromMessage(new Message(new byte[1], messageProperties));
+    }
+
+    @Test
+    public void inflatesUpToLimit() throws IOException
+    {
+        byte[] payload = repeat(MAX_INFLATED);
+
+        Object decoded = registry.converterFor("exchange.direct.bytes")
+                .fromMessage(deflated(payload));
+
+        assertArrayEquals(payload, (byte[]) decoded);
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void rejectsBodyInflatingPastLimit() throws IOException
+    {
+        //几KB的压缩数据即可解压出远超上限的消息体
+        registry.converterFor("exchange.direct.bytes")
+                .fromMessage(deflated(new byte[64 * MAX_INFLATED]));
+    }
+
+    private static byte[] repeat(int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = (byte) ('a' + i % 16);
+        }
+        return bytes;
+    }
+
+    private static Message deflated(byte[] body) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out))
+        {
+            deflater.write(body);
+        }
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentEncoding(CodecMessageConverter.DEFLATE);
+        messageProperties.setHeader(CodecMessageConverter.CODEC_HEADER, RawBytesCodec.NAME);
+        return new Message(out.toByteArray(), messageProperties);
+    }
+}
@@ -0,0 +1,125 @@
+package com.frank.amqp.helper.declare;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.inject.DynamicInjectAssistant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CommonMqBulkDeclarer按拓扑快照跳过声明或完整声明的判断
+ */
+public class CommonMqBulkDeclarerTest
+{
+    private final Map<String, String> config = new LinkedHashMap<>();
+
+    private InProcessBroker broker;
+
+    private CommonMqManager manager;
+
+    private Path snapshotDir;
+
+    private TopologySnapshotStore snapshotStore;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        broker = new InProcessBroker();
+        config.put("exchange.direct.orders", "created:order.created,paid:order.paid");
+        manager = new CommonMqManager(() -> new LinkedHashMap<>(config),
+                new DynamicInjectAssistant(new DefaultListableBeanFactory()),
+                new CommonMqProperties());
+        manager.afterPropertiesSet();
+        snapshotDir = Files.createTempDirectory("topology-snapshot");
+        snapshotStore = new TopologySnapshotStore(snapshotDir.resolve("topology.snapshot"));
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(snapshotStore.getPath());
+        Files.deleteIfExists(snapshotDir);
+    }
+
+    @Test
+    public void skipsDeclareWhenSnapshotMatchesAndTopologyExists()
+    {
+        //首次启动没有快照,完整声明后写入快照
+        BulkDeclareReport first = connect(newDeclarer());
+        assertFalse(first.isSkipped());
+        assertTrue(first.isSuccess());
+        assertTrue(Files.exists(snapshotStore.getPath()));
+        long declared = broker.getDeclareCount();
+
+        //重启后指纹与快照一致且broker上拓扑存在,跳过声明
+        BulkDeclareReport restarted = connect(newDeclarer());
+        assertTrue(restarted.isSkipped());
+        assertEquals(declared, broker.getDeclareCount());
+    }
+
+    @Test
+    public void declaresAfterReconnect()
+    {
+        CommonMqBulkDeclarer declarer = newDeclarer();
+        connect(declarer);
+        connect(newDeclarer());
+        long declared = broker.getDeclareCount();
+
+        //同一进程内的重连不信任快照
+        BulkDeclareReport reconnected = connect(declarer);
+
+        assertFalse(reconnected.isSkipped());
+        assertTrue(broker.getDeclareCount() > declared);
+    }
+
+    @Test
+    public void declaresWhenTopologyChanged() throws Exception
+    {
+        connect(newDeclarer());
+        config.put("exchange.topic.events", "audit:event.#");
+        manager.reload();
+
+        BulkDeclareReport report = connect(newDeclarer());
+
+        assertFalse(report.isSkipped());
+        assertEquals(3, broker.getQueueCount());
+    }
+
+    @Test
+    public void declaresWhenBrokerLostTopology()
+    {
+        connect(newDeclarer());
+        //broker被重建,快照仍与配置一致
+        broker.reset();
+
+        BulkDeclareReport report = connect(newDeclarer());
+
+        assertFalse(report.isSkipped());
+        assertTrue(report.isSuccess());
+        assertEquals(2, broker.getQueueCount());
+    }
+
+    private CommonMqBulkDeclarer newDeclarer()
+    {
+        return new CommonMqBulkDeclarer(broker, manager, 100, snapshotStore);
+    }
+
+    private BulkDeclareReport connect(CommonMqBulkDeclarer declarer)
+    {
+        declarer.onCreate(broker.createConnection());
+        return declarer.getLastReport();
+    }
+}
@@ -0,0 +1,95 @@
+package com.frank.amqp.helper.declare;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TopologyFingerprint与声明顺序、参数顺序无关,与声明属性、broker地址相关
+ */
+public class TopologyFingerprintTest
+{
+    private static final String BROKER = "localhost:5672//";
+
+    @Test
+    public void ignoresDeclarableAndArgumentOrder()
+    {
+        List<Declarable> declarables = topology(false, "ttl-first");
+        List<Declarable> reordered = new ArrayList<>(topology(false, "mode-first"));
+        Collections.reverse(reordered);
+
+        TopologyFingerprint fingerprint = TopologyFingerprint.compute(BROKER, declarables);
+        TopologyFingerprint other = TopologyFingerprint.compute(BROKER, reordered);
+
+        assertEquals(fingerprint, other);
+        assertEquals(fingerprint.toString(), other.toString());
+        assertEquals(fingerprint.getEntries(), other.getEntries());
+        assertTrue(fingerprint.matches(other.getDigest()));
+    }
+
+    @Test
+    public void changesWithAttributesAndBroker()
+    {
+        TopologyFingerprint fingerprint = TopologyFingerprint.compute(BROKER,
+                topology(false, "ttl-first"));
+
+        assertNotEquals(fingerprint, TopologyFingerprint.compute(BROKER,
+                topology(true, "ttl-first")));
+        assertNotEquals(fingerprint, TopologyFingerprint.compute("otherhost:5672//",
+                topology(false, "ttl-first")));
+        assertFalse(fingerprint.matches(null));
+        assertFalse(fingerprint.matches(new byte[0]));
+    }
+
+    @Test
+    public void returnsDefensiveDigestCopy()
+    {
+        TopologyFingerprint fingerprint = TopologyFingerprint.compute(BROKER,
+                topology(false, "ttl-first"));
+        byte[] digest = fingerprint.getDigest();
+        digest[0] ^= 1;
+
+        assertFalse(fingerprint.matches(digest));
+        assertTrue(fingerprint.matches(fingerprint.getDigest()));
+    }
+
+    /**
+     * @param autoDelete 队列是否自动删除
+     * @param order      参数的插入顺序
+     */
+    private static List<Declarable> topology(boolean autoDelete, String order)
+    {
+        Map<String, Object> arguments = new LinkedHashMap<>();
+        if ("ttl-first".equals(order))
+        {
+            arguments.put("x-message-ttl", 60000);
+            arguments.put("x-queue-mode", "lazy");
+        }
+        else
+        {
+            arguments.put("x-queue-mode", "lazy");
+            arguments.put("x-message-ttl", 60000);
+        }
+        DirectExchange exchange = new DirectExchange("exchange.direct.orders");
+        Queue created = new Queue("queue.created", true, false, autoDelete, arguments);
+        Queue paid = new Queue("queue.paid");
+        Binding createdBinding = BindingBuilder.bind(created).to(exchange).with("created");
+        Binding paidBinding = BindingBuilder.bind(paid).to(exchange).with("paid");
+        return Arrays.asList(exchange, created, paid, createdBinding, paidBinding);
+    }
+}
@@ -0,0 +1,126 @@
+package com.frank.amqp.helper.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OffHeapIdCache的容量、过期与覆盖
+ */
+public class OffHeapIdCacheTest
+{
+    /**
+     * 16个条目时只有一个段,探测窗口覆盖整个段
+     */
+    private static final int SMALL = 16;
+
+    @Test
+    public void findsPutKeysWithoutEviction()
+    {
+        OffHeapIdCache cache = new OffHeapIdCache(1 << 16, 60000);
+        for (int i = 0; i < 10000; i++)
+        {
+            cache.put(OffHeapIdCache.hash("orders", "id-" + i));
+        }
+
+        for (int i = 0; i < 10000; i++)
+        {
+            assertTrue(cache.contains(OffHeapIdCache.hash("orders", "id-" + i)));
+        }
+        //相同id在其他命名空间中不存在
+        assertFalse(cache.contains(OffHeapIdCache.hash("payments", "id-0")));
+        assertEquals(0, cache.getEvictions());
+        assertEquals(10000, cache.getSize());
+        assertEquals(10000, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1 << 16, cache.getCapacity());
+    }
+
+    @Test
+    public void renewsExistingKey()
+    {
+        OffHeapIdCache cache = new OffHeapIdCache(SMALL, 60000);
+        long key = OffHeapIdCache.hash("orders", "id");
+
+        cache.put(key);
+        cache.put(key);
+
+        assertEquals(1, cache.getSize());
+        assertEquals(0, cache.getEvictions());
+        assertTrue(cache.contains(key));
+    }
+
+    @Test
+    public void evictsEarliestExpiringEntryWhenFull() throws InterruptedException
+    {
+        OffHeapIdCache cache = new OffHeapIdCache(SMALL, 60000);
+        assertEquals(SMALL, cache.getCapacity());
+        long[] keys = new long[SMALL + 1];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = OffHeapIdCache.hash("orders", "id-" + i);
+            assertNotEquals(0, keys[i]);
+        }
+        //过期时刻逐个递增,覆盖顺序确定
+        for (int i = 0; i < SMALL; i++)
+        {
+            cache.put(keys[i]);
+            Thread.sleep(2);
+        }
+        assertEquals(0, cache.getEvictions());
+
+        cache.put(keys[SMALL]);
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(SMALL, cache.getSize());
+        assertFalse(cache.contains(keys[0]));
+        for (int i = 1; i <= SMALL; i++)
+        {
+            assertTrue("key " + i, cache.contains(keys[i]));
+        }
+    }
+
+    @Test
+    public void countsEvictionsUnderSustainedOverflow()
+    {
+        OffHeapIdCache cache = new OffHeapIdCache(SMALL, 60000);
+        for (int i = 0; i < 1000; i++)
+        {
+            long key = OffHeapIdCache.hash("orders", "id-" + i);
+            cache.put(key);
+            assertTrue(cache.contains(key));
+        }
+
+        assertEquals(1000 - SMALL, cache.getEvictions());
+        assertEquals(SMALL, cache.getSize());
+    }
+
+    @Test
+    public void reusesExpiredSlotsWithoutEviction() throws InterruptedException
+    {
+        OffHeapIdCache cache = new OffHeapIdCache(SMALL, 20);
+        for (int i = 0; i < SMALL; i++)
+        {
+            cache.put(OffHeapIdCache.hash("orders", "old-" + i));
+        }
+        Thread.sleep(50);
+
+        assertFalse(cache.contains(OffHeapIdCache.hash("orders", "old-0")));
+        for (int i = 0; i < SMALL; i++)
+        {
+            cache.put(OffHeapIdCache.hash("orders", "new-" + i));
+        }
+
+        assertEquals(0, cache.getEvictions());
+        assertEquals(SMALL, cache.getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity()
+    {
+        new OffHeapIdCache(0, 60000);
+    }
+}
@@ -0,0 +1,253 @@
+package com.frank.amqp.helper.listener;
+
+import com.frank.amqp.helper.dedup.OffHeapIdCache;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.frank.amqp.helper.metrics.QueueMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BatchingMessageListener按投递顺序发出的确认
+ */
+public class BatchingMessageListenerTest
+{
+    private static final String QUEUE = "batch.queue";
+
+    private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<BatchingMessageListener> listeners = new ArrayList<>();
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    private QueueMetrics metrics;
+
+    private RecordingChannel channel;
+
+    @Before
+    public void setUp()
+    {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        metrics = new CommonMqMetrics().queue(QUEUE, null);
+        channel = new RecordingChannel();
+    }
+
+    @After
+    public void tearDown()
+    {
+        listeners.forEach(BatchingMessageListener::stop);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void acksFullBatchWithOneMultipleAck()
+    {
+        BatchingMessageListener listener = listener(4, 60000, batch ->
+        {
+        }, null);
+
+        deliver(listener, channel, 1, 4);
+
+        assertEquals(Collections.singletonList(Arrays.asList(1L, 2L, 3L, 4L)), batches);
+        assertEquals(Collections.singletonList("ack:4:true"), channel.getAcks());
+    }
+
+    @Test
+    public void splitsCumulativeAckAroundRejectedMessages()
+    {
+        BatchingMessageListener listener = listener(6, 60000, batch ->
+        {
+            batch.nack(1, new IllegalStateException("retry later"));
+            batch.nack(2, new AmqpRejectAndDontRequeueException("bad message"));
+            batch.nack(5, new IllegalStateException("retry later"));
+        }, null);
+
+        deliver(listener, channel, 1, 6);
+
+        assertEquals(Arrays.asList("ack:1:true", "nack:2:true", "nack:3:false",
+                "ack:5:true", "nack:6:true"), channel.getAcks());
+    }
+
+    @Test
+    public void rejectsWholeBatchWhenListenerThrows()
+    {
+        BatchingMessageListener listener = listener(3, 60000, batch ->
+        {
+            batch.nack(0, new AmqpRejectAndDontRequeueException("bad message"));
+            throw new IllegalStateException("database down");
+        }, null);
+
+        deliver(listener, channel, 1, 3);
+
+        assertEquals(Arrays.asList("nack:1:false", "nack:2:true", "nack:3:true"),
+                channel.getAcks());
+    }
+
+    @Test
+    public void flushesPartialBatchAfterTimeout() throws InterruptedException
+    {
+        BatchingMessageListener listener = listener(10, 20, batch ->
+        {
+        }, null);
+
+        deliver(listener, channel, 1, 3);
+
+        assertEquals(Collections.singletonList("ack:3:true"),
+                channel.awaitAcks(1, 5000));
+        assertEquals(Collections.singletonList(Arrays.asList(1L, 2L, 3L)), batches);
+    }
+
+    @Test
+    public void batchesEachChannelSeparately()
+    {
+        RecordingChannel other = new RecordingChannel();
+        BatchingMessageListener listener = listener(2, 60000, batch ->
+        {
+        }, null);
+
+        deliver(listener, channel, 1, 1);
+        deliver(listener, other, 1, 1);
+        assertTrue(batches.isEmpty());
+        deliver(listener, channel, 2, 1);
+        deliver(listener, other, 2, 1);
+
+        assertEquals(Collections.singletonList("ack:2:true"), channel.getAcks());
+        assertEquals(Collections.singletonList("ack:2:true"), other.getAcks());
+    }
+
+    @Test
+    public void acksProcessedDuplicateOutsideTheBatch()
+    {
+        DedupFilter dedup = new DedupFilter(QUEUE, new OffHeapIdCache(1024, 60000),
+                null, metrics);
+        BatchingMessageListener listener = listener(2, 60000, batch ->
+        {
+        }, dedup);
+        listener.onMessage(message(1, "a"), channel.getChannel());
+        listener.onMessage(message(2, "b"), channel.getChannel());
+
+        //重复的a单独确认,不进入批次,也不会以multiple确认c之前未处理的消息
+        listener.onMessage(message(3, "c"), channel.getChannel());
+        listener.onMessage(message(4, "a"), channel.getChannel());
+        listener.onMessage(message(5, "d"), channel.getChannel());
+
+        assertEquals(Arrays.asList("ack:2:true", "ack:4:false", "ack:5:true"),
+                channel.getAcks());
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L, 5L)),
+                batches);
+        assertEquals(1, metrics.getDedupHits());
+    }
+
+    @Test
+    public void stopCancelsTimeoutSweep() throws InterruptedException
+    {
+        BatchingMessageListener listener = listener(10, 20, batch ->
+        {
+        }, null);
+        deliver(listener, channel, 1, 2);
+
+        listener.stop();
+
+        //检查任务已移出调度线程,不再引用该消费者,未处理的批次被丢弃
+        assertTrue(scheduler.getQueue().isEmpty());
+        Thread.sleep(100);
+        assertTrue(batches.isEmpty());
+        assertTrue(channel.getAcks().isEmpty());
+    }
+
+    @Test
+    public void slowTimedOutBatchDoesNotDelayOtherQueues() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        BatchingMessageListener slow = listener(10, 20, batch ->
+        {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, null);
+        BatchingMessageListener fast = listener(10, 20, batch ->
+        {
+        }, null);
+        RecordingChannel other = new RecordingChannel();
+
+        deliver(slow, channel, 1, 1);
+        Thread.sleep(50);
+        deliver(fast, other, 1, 1);
+
+        //slow的超时批次阻塞在自己的处理线程上,共享的调度线程仍能提交fast的超时批次
+        assertEquals(Collections.singletonList("ack:1:true"), other.awaitAcks(1, 5000));
+        assertTrue(channel.getAcks().isEmpty());
+        release.countDown();
+        assertEquals(Collections.singletonList("ack:1:true"), channel.awaitAcks(1, 5000));
+    }
+
+    private BatchingMessageListener listener(int batchSize, long timeoutMillis,
+            BatchHandler handler, DedupFilter dedup)
+    {
+        ICommonMqBatchListener delegate = new ICommonMqBatchListener()
+        {
+            @Override
+            public String getQueueName()
+            {
+                return QUEUE;
+            }
+
+            @Override
+            public void onBatch(CommonMqBatch batch)
+            {
+                List<Long> tags = new ArrayList<>(batch.size());
+                for (Message message : batch.getMessages())
+                {
+                    tags.add(message.getMessageProperties().getDeliveryTag());
+                }
+                batches.add(tags);
+                handler.handle(batch);
+            }
+        };
+        BatchingMessageListener listener = new BatchingMessageListener(QUEUE,
+                delegate, batchSize, timeoutMillis, null,
+                new QueueListenerStats(), metrics, null, dedup, scheduler);
+        listener.start();
+        listeners.add(listener);
+        return listener;
+    }
+
+    private static void deliver(BatchingMessageListener listener,
+            RecordingChannel channel, long firstTag, int count)
+    {
+        for (long tag = firstTag; tag < firstTag + count; tag++)
+        {
+            listener.onMessage(RecordingChannel.message(tag), channel.getChannel());
+        }
+    }
+
+    private static Message message(long deliveryTag, String messageId)
+    {
+        Message message = RecordingChannel.message(deliveryTag);
+        message.getMessageProperties().setMessageId(messageId);
+        return message;
+    }
+
+    private interface BatchHandler
+    {
+        void handle(CommonMqBatch batch);
+    }
+}
@@ -0,0 +1,97 @@
+package com.frank.amqp.helper.listener;
+
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只记录确认命令的channel替身,确认记为"ack:tag:multiple"与"nack:tag:requeue"
+ */
+final class RecordingChannel
+{
+    private final List<String> acks = new ArrayList<>();
+
+    private volatile boolean open = true;
+
+    private final Channel channel = (Channel) Proxy.newProxyInstance(
+            Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+            (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                    case "basicAck":
+                        record("ack:" + args[0] + ":" + args[1]);
+                        return null;
+                    case "basicNack":
+                        record("nack:" + args[0] + ":" + args[2]);
+                        return null;
+                    case "isOpen":
+                        return open;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "RecordingChannel@" + Integer.toHexString(
+                                System.identityHashCode(proxy));
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    Channel getChannel()
+    {
+        return channel;
+    }
+
+    void close()
+    {
+        open = false;
+    }
+
+    /**
+     * @return 至今为止的确认命令,按发出顺序排列
+     */
+    synchronized List<String> getAcks()
+    {
+        return new ArrayList<>(acks);
+    }
+
+    /**
+     * 等待确认命令达到指定条数
+     *
+     * @return 至今为止的确认命令
+     */
+    synchronized List<String> awaitAcks(int count, long timeoutMillis)
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining;
+        while (acks.size() < count
+                && (remaining = deadline - System.currentTimeMillis()) > 0)
+        {
+            wait(remaining);
+        }
+        return new ArrayList<>(acks);
+    }
+
+    private synchronized void record(String ack)
+    {
+        acks.add(ack);
+        notifyAll();
+    }
+
+    static Message message(long deliveryTag)
+    {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        properties.setReceivedRoutingKey("rk");
+        return new Message(String.valueOf(deliveryTag)
+                .getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
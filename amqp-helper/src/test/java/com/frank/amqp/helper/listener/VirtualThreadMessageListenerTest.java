@@ -0,0 +1,227 @@
+package com.frank.amqp.helper.listener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * VirtualThreadMessageListener乱序完成时仍按投递顺序确认
+ * 测试中以平台线程代替虚拟线程,处理线程结束即表示该消息已结算
+ */
+public class VirtualThreadMessageListenerTest
+{
+    private static final String QUEUE = "vt.queue";
+
+    /**
+     * 每条消息在对应的latch打开后才完成处理,按消息编号
+     */
+    private final Map<Long, CountDownLatch> gates = new ConcurrentHashMap<>();
+
+    /**
+     * 处理时抛出的异常,按消息编号
+     */
+    private final Map<Long, RuntimeException> failures = new ConcurrentHashMap<>();
+
+    private final Map<Long, Thread> threads = new ConcurrentHashMap<>();
+
+    private final List<Thread> created = Collections.synchronizedList(new ArrayList<>());
+
+    private RecordingChannel channel;
+
+    @Before
+    public void setUp()
+    {
+        channel = new RecordingChannel();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        gates.values().forEach(CountDownLatch::countDown);
+        for (Thread thread : new ArrayList<>(created))
+        {
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void holdsAcksUntilEarlierMessagesComplete() throws Exception
+    {
+        VirtualThreadMessageListener listener = listener(8, true);
+        deliver(listener, channel, 1, 5);
+
+        complete(3);
+        complete(2);
+        complete(5);
+        assertTrue(channel.getAcks().isEmpty());
+
+        complete(1);
+        assertEquals(Collections.singletonList("ack:3:true"), channel.getAcks());
+
+        complete(4);
+        assertEquals(Arrays.asList("ack:3:true", "ack:5:true"), channel.getAcks());
+    }
+
+    @Test
+    public void settlesFailuresInDeliveryOrder() throws Exception
+    {
+        VirtualThreadMessageListener listener = listener(8, true);
+        failures.put(2L, new IllegalStateException("retry later"));
+        failures.put(3L, new AmqpRejectAndDontRequeueException("bad message"));
+        deliver(listener, channel, 1, 5);
+
+        complete(5);
+        complete(3);
+        complete(4);
+        complete(2);
+        assertTrue(channel.getAcks().isEmpty());
+        complete(1);
+
+        assertEquals(Arrays.asList("ack:1:true", "nack:2:true", "nack:3:false",
+                "ack:5:true"), channel.getAcks());
+    }
+
+    @Test
+    public void rejectsWithoutRequeueWhenRequeueDisabled() throws Exception
+    {
+        VirtualThreadMessageListener listener = listener(8, false);
+        failures.put(1L, new IllegalStateException("retry later"));
+        deliver(listener, channel, 1, 2);
+
+        complete(2);
+        complete(1);
+
+        assertEquals(Arrays.asList("nack:1:false", "ack:2:true"), channel.getAcks());
+    }
+
+    @Test
+    public void tracksEachChannelSeparately() throws Exception
+    {
+        VirtualThreadMessageListener listener = listener(8, true);
+        deliver(listener, channel, 1, 2);
+        complete(2);
+
+        //重连后deliveryTag从1重新开始,旧channel上未完成的消息不阻塞新channel的确认
+        RecordingChannel reconnected = new RecordingChannel();
+        deliverOne(listener, reconnected, 1, 101);
+        complete(101);
+        assertTrue(channel.getAcks().isEmpty());
+        assertEquals(Collections.singletonList("ack:1:true"), reconnected.getAcks());
+
+        complete(1);
+        assertEquals(Collections.singletonList("ack:2:true"), channel.getAcks());
+    }
+
+    @Test
+    public void limitsConcurrentProcessing() throws Exception
+    {
+        VirtualThreadMessageListener listener = listener(2, true);
+        deliver(listener, channel, 1, 2);
+
+        Thread consumer = new Thread(() ->
+        {
+            try
+            {
+                deliver(listener, channel, 3, 1);
+            }
+            catch (Exception e)
+            {
+                throw new IllegalStateException(e);
+            }
+        });
+        consumer.start();
+        consumer.join(200);
+        assertTrue("third message must wait for a permit", consumer.isAlive());
+
+        complete(2);
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        complete(3);
+        complete(1);
+        assertEquals(Collections.singletonList("ack:3:true"), channel.getAcks());
+    }
+
+    private VirtualThreadMessageListener listener(int maxConcurrency,
+            boolean defaultRequeueRejected)
+    {
+        MessageListener delegate = message ->
+        {
+            long id = Long.parseLong(new String(message.getBody(),
+                    StandardCharsets.UTF_8));
+            try
+            {
+                gates.get(id).await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            RuntimeException failure = failures.get(id);
+            if (null != failure)
+            {
+                throw failure;
+            }
+        };
+        ThreadFactory threadFactory = runnable ->
+        {
+            Thread thread = new Thread(runnable);
+            created.add(thread);
+            return thread;
+        };
+        return new VirtualThreadMessageListener(QUEUE, delegate, maxConcurrency,
+                defaultRequeueRejected, threadFactory);
+    }
+
+    private void deliver(VirtualThreadMessageListener listener,
+            RecordingChannel target, long firstTag, int count) throws Exception
+    {
+        for (long tag = firstTag; tag < firstTag + count; tag++)
+        {
+            deliverOne(listener, target, tag, tag);
+        }
+    }
+
+    /**
+     * 投递消息并记录处理该消息的线程
+     *
+     * @param id 消息body中的编号,用于放行与等待,不同channel上的deliveryTag可能相同
+     */
+    private void deliverOne(VirtualThreadMessageListener listener,
+            RecordingChannel target, long deliveryTag, long id) throws Exception
+    {
+        gates.put(id, new CountDownLatch(1));
+        Message message = new Message(String.valueOf(id).getBytes(StandardCharsets.UTF_8),
+                RecordingChannel.message(deliveryTag).getMessageProperties());
+        int before = created.size();
+        listener.onMessage(message, target.getChannel());
+        threads.put(id, created.get(before));
+    }
+
+    /**
+     * 放行消息并等待处理线程结束,结束时确认已经发出
+     */
+    private void complete(long id) throws InterruptedException
+    {
+        gates.get(id).countDown();
+        Thread thread = threads.get(id);
+        thread.join(5000);
+        assertFalse("message " + id + " not settled", thread.isAlive());
+    }
+}
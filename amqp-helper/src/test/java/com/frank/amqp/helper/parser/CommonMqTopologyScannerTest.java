@@ -0,0 +1,153 @@
+package com.frank.amqp.helper.parser;
+
+import com.frank.amqp.helper.parser.model.ExchangeDefine;
+import com.frank.amqp.helper.parser.model.MqTopology;
+import com.frank.amqp.helper.parser.model.ParseError;
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CommonMqTopologyScanner的文法与错误下标
+ */
+public class CommonMqTopologyScannerTest
+{
+    private static final String DIRECT = "exchange.direct.orders";
+
+    @Test
+    public void scansQueuesRoutingKeysAndArguments()
+    {
+        Map<String, String> config = new LinkedHashMap<>();
+        config.put(DIRECT,
+                "(lazy,ttl=60000),q1,q2(ttl=1000,retry=1s/10s):rk2&rk3,q3[4]:key,");
+        config.put("exchange.topic.events", "audit:order.*&#.paid");
+        config.put("exchange.headers.docs", "pdf:x-match=any&format=pdf&type=doc");
+
+        MqTopology topology = CommonMqTopologyScanner.scan(config);
+
+        assertFalse(topology.getErrors().toString(), topology.hasErrors());
+        ExchangeDefine orders = topology.getExchangeDefine(DIRECT);
+        assertEquals("direct", orders.getType());
+        assertEquals(3, orders.getQueueDefines().size());
+
+        QueueDefine q1 = orders.getQueueDefine("q1");
+        assertTrue(q1.getRoutingKeys().isEmpty());
+        assertEquals("lazy", q1.getArguments().get(QueueArguments.QUEUE_MODE));
+        assertEquals(60000, q1.getArguments().get(QueueArguments.MESSAGE_TTL));
+
+        //队列自身的参数优先于默认参数,retry不作为队列参数
+        QueueDefine q2 = orders.getQueueDefine("q2");
+        assertEquals(Arrays.asList("rk2", "rk3"), q2.getRoutingKeys());
+        assertEquals(1000, q2.getArguments().get(QueueArguments.MESSAGE_TTL));
+        assertEquals("lazy", q2.getArguments().get(QueueArguments.QUEUE_MODE));
+        assertFalse(q2.getArguments().containsKey(QueueArguments.RETRY));
+        assertEquals(Arrays.asList(1000L, 10000L), q2.getRetryTiers());
+
+        QueueDefine q3 = orders.getQueueDefine("q3");
+        assertEquals(4, q3.getPartitions());
+        List<QueueDefine> partitions = q3.expand();
+        assertEquals(4, partitions.size());
+        assertEquals("q3.2", partitions.get(2).getName());
+        assertEquals(Collections.singletonList("key.2"),
+                partitions.get(2).getRoutingKeys());
+
+        assertEquals(Arrays.asList("order.*", "#.paid"), topology
+                .getExchangeDefine("exchange.topic.events")
+                .getQueueDefine("audit").getRoutingKeys());
+        assertEquals(Arrays.asList("x-match=any", "format=pdf", "type=doc"),
+                topology.getExchangeDefine("exchange.headers.docs")
+                        .getQueueDefine("pdf").getRoutingKeys());
+    }
+
+    @Test
+    public void reportsExchangeNameErrors()
+    {
+        assertExchangeNameError("foo.direct.x", 0);
+        assertExchangeNameError("exchange.direct", 15);
+        assertExchangeNameError("exchange.direct.", 16);
+        assertExchangeNameError("exchange.fancy.x", 9);
+    }
+
+    @Test
+    public void reportsQueueDefineErrorPositions()
+    {
+        assertQueueError(DIRECT, "q0,:rk", 3, "empty queue name", "q0");
+        assertQueueError(DIRECT, "q1[0]:rk,q0", 2, "partitions", "q0");
+        assertQueueError(DIRECT, "q1(lazy:rk", 2, "missing ')'");
+        assertQueueError(DIRECT, "q1(lazy)x:rk,q0", 8, "unexpected character", "q0");
+        assertQueueError(DIRECT, "q1:a&&b,q0", 5, "empty routing key", "q0");
+        assertQueueError(DIRECT, "q1(size=1):rk,q0", 3, "unknown queue argument", "q0");
+        assertQueueError(DIRECT, "q0:a,q0:b", 5, "duplicate queue", "q0");
+        assertQueueError(DIRECT, "q0,q1[2]:k,q1.1", 11, "duplicate queue", "q0", "q1");
+        assertQueueError(DIRECT, "(lazy),q0,q1(quorum)", 12, "can not be lazy", "q0");
+        assertQueueError(DIRECT, "(lazy)q1", 6, "must be followed by ','");
+        assertQueueError(DIRECT, "q0,q1[2]", 3, "requires a routing key", "q0");
+        assertQueueError("exchange.topic.t", "q1[4]:k,q0", 2, "requires a direct exchange", "q0");
+        assertQueueError("exchange.headers.h", "q1:format,q0:a=b", 3, "must be key=value", "q0");
+        assertQueueError("exchange.headers.h", "q1:x-match=some,q0:a=b", 3, "must be key=value", "q0");
+    }
+
+    @Test
+    public void reportsExchangeWithoutValidQueue()
+    {
+        List<ParseError> errors = new ArrayList<>();
+
+        assertNull(CommonMqTopologyScanner.scanExchange(DIRECT, "", errors));
+
+        assertEquals(1, errors.size());
+        assertEquals(0, errors.get(0).getPosition());
+        assertFalse(errors.get(0).isInExchangeName());
+        assertEquals("no valid queue defined", errors.get(0).getMessage());
+    }
+
+    private static void assertExchangeNameError(String exchangeName,
+            int position)
+    {
+        List<ParseError> errors = new ArrayList<>();
+
+        assertNull(CommonMqTopologyScanner.scanExchangeType(exchangeName, errors));
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).isInExchangeName());
+        assertEquals(exchangeName, errors.get(0).getExchangeName());
+        assertEquals(exchangeName, position, errors.get(0).getPosition());
+    }
+
+    /**
+     * 出错的队列不进入结果,同一串中的其他队列不受影响
+     */
+    private static void assertQueueError(String exchangeName,
+            String queueDefines, int position, String message,
+            String... validQueues)
+    {
+        List<ParseError> errors = new ArrayList<>();
+        String exchangeType = CommonMqTopologyScanner.scanExchangeType(
+                exchangeName, errors);
+
+        List<QueueDefine> queueDefineList = CommonMqTopologyScanner
+                .scanQueueDefines(exchangeName, exchangeType, queueDefines, errors);
+
+        assertEquals(queueDefines + " " + errors, 1, errors.size());
+        ParseError error = errors.get(0);
+        assertFalse(error.isInExchangeName());
+        assertEquals(queueDefines, position, error.getPosition());
+        assertTrue(error.getMessage(), error.getMessage().contains(message));
+        List<String> names = new ArrayList<>();
+        for (QueueDefine queueDefine : queueDefineList)
+        {
+            names.add(queueDefine.getName());
+        }
+        assertEquals(queueDefines, Arrays.asList(validQueues), names);
+    }
+}
@@ -0,0 +1,112 @@
+package com.frank.amqp.helper.parser;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * QueueArguments的参数简写、取值校验与quorum、lazy冲突检查
+ */
+public class QueueArgumentsTest
+{
+    @Test
+    public void mapsAliasesToQueueArguments()
+    {
+        Map<String, Object> arguments = new HashMap<>();
+
+        assertNull(QueueArguments.apply("lazy", null, arguments));
+        assertNull(QueueArguments.apply("max-length", "1000", arguments));
+        assertNull(QueueArguments.apply("max-length-bytes", "10000000000", arguments));
+        assertNull(QueueArguments.apply("ttl", "60000", arguments));
+        assertNull(QueueArguments.apply("expires", "1800000", arguments));
+        assertNull(QueueArguments.apply("max-priority", "10", arguments));
+        assertNull(QueueArguments.apply("overflow", "reject-publish", arguments));
+        assertNull(QueueArguments.apply("dlx", "exchange.direct.dead", arguments));
+        assertNull(QueueArguments.apply("dlk", "dead", arguments));
+
+        assertEquals("lazy", arguments.get(QueueArguments.QUEUE_MODE));
+        assertEquals(1000, arguments.get(QueueArguments.MAX_LENGTH));
+        //超出int范围的数值按Long传递
+        assertEquals(10000000000L, arguments.get(QueueArguments.MAX_LENGTH_BYTES));
+        assertEquals(60000, arguments.get(QueueArguments.MESSAGE_TTL));
+        assertEquals(1800000, arguments.get(QueueArguments.EXPIRES));
+        assertEquals(10, arguments.get(QueueArguments.MAX_PRIORITY));
+        assertEquals("reject-publish", arguments.get(QueueArguments.OVERFLOW));
+        assertEquals("exchange.direct.dead", arguments.get(QueueArguments.DEAD_LETTER_EXCHANGE));
+        assertEquals("dead", arguments.get(QueueArguments.DEAD_LETTER_ROUTING_KEY));
+        assertEquals(9, arguments.size());
+
+        Map<String, Object> quorum = new HashMap<>();
+        assertNull(QueueArguments.apply("quorum", null, quorum));
+        assertEquals("quorum", quorum.get(QueueArguments.QUEUE_TYPE));
+    }
+
+    @Test
+    public void passesRawArgumentsThrough()
+    {
+        Map<String, Object> arguments = new HashMap<>();
+
+        assertNull(QueueArguments.apply("x-single-active-consumer", "true", arguments));
+        assertNull(QueueArguments.apply("x-delivery-limit", "5", arguments));
+        assertNull(QueueArguments.apply("x-offset", "-1", arguments));
+
+        assertEquals("true", arguments.get("x-single-active-consumer"));
+        assertEquals(5, arguments.get("x-delivery-limit"));
+        assertEquals(-1, arguments.get("x-offset"));
+    }
+
+    @Test
+    public void rejectsInvalidValues()
+    {
+        assertError("lazy", "true", "takes no value");
+        assertError("ttl", null, "non-negative integer");
+        assertError("ttl", "-1", "non-negative integer");
+        assertError("max-length", "10k", "non-negative integer");
+        assertError("max-length", "99999999999999999999", "non-negative integer");
+        assertError("overflow", "drop-tail", "overflow must be");
+        assertError("dlx", null, "requires a value");
+        assertError("size", "1", "unknown queue argument");
+        assertError("x-max-length", null, "unknown queue argument");
+    }
+
+    @Test
+    public void detectsQuorumLazyConflict()
+    {
+        Map<String, Object> arguments = new HashMap<>();
+        QueueArguments.apply("quorum", null, arguments);
+        assertFalse(QueueArguments.isConflicting(arguments));
+
+        QueueArguments.apply("lazy", null, arguments);
+        assertTrue(QueueArguments.isConflicting(arguments));
+
+        //以原始参数指定时同样冲突
+        Map<String, Object> raw = new HashMap<>();
+        QueueArguments.apply("x-queue-mode", "lazy", raw);
+        QueueArguments.apply("x-queue-type", "quorum", raw);
+        assertTrue(QueueArguments.isConflicting(raw));
+
+        Map<String, Object> classic = new HashMap<>();
+        QueueArguments.apply("x-queue-type", "classic", classic);
+        QueueArguments.apply("lazy", null, classic);
+        assertFalse(QueueArguments.isConflicting(classic));
+    }
+
+    /**
+     * 非法的参数不写入参数map
+     */
+    private static void assertError(String key, String value, String message)
+    {
+        Map<String, Object> arguments = new HashMap<>();
+
+        String error = QueueArguments.apply(key, value, arguments);
+
+        assertTrue(key + "=" + value, null != error && error.contains(message));
+        assertTrue(arguments.isEmpty());
+    }
+}
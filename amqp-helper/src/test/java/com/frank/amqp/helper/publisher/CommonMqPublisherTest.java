@@ -0,0 +1,401 @@
+package com.frank.amqp.helper.publisher;
+
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.metrics.CommonMqMetrics;
+import com.frank.amqp.helper.metrics.ExchangeMetrics;
+import com.frank.amqp.helper.routing.RoutingIndex;
+import com.frank.amqp.helper.routing.UnroutableMessageException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CommonMqPublisher经InProcessBroker的发送与确认
+ */
+public class CommonMqPublisherTest
+{
+    private static final String EXCHANGE = "exchange.direct.orders";
+
+    private static final String QUEUE = "orders";
+
+    private static final String ROUTING_KEY = "order.created";
+
+    private InProcessBroker broker;
+
+    private CommonMqPublisher publisher;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        broker = new InProcessBroker();
+        Channel channel = broker.createConnection().createChannel(false);
+        channel.exchangeDeclare(EXCHANGE, "direct");
+        channel.queueDeclare(QUEUE, true, false, false, null);
+        channel.queueBind(QUEUE, EXCHANGE, ROUTING_KEY);
+        channel.close();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (null != publisher)
+        {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void completesFuturesAsConfirmWindowWrapsAround() throws Exception
+    {
+        publisher = CommonMqPublisher.builder(EXCHANGE, broker,
+                new SimpleMessageConverter()).maxInFlight(8).build();
+
+        //每次最多8条未确认,确认窗口反复回绕
+        for (int round = 0; round < 25; round++)
+        {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+            {
+                futures.add(publisher.publish(ROUTING_KEY, "order-" + round + "-" + i));
+            }
+            for (CompletableFuture<Void> future : futures)
+            {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        }
+
+        assertEquals(200, broker.getMessageCount(QUEUE));
+        assertEquals(0, publisher.getInFlight());
+    }
+
+    @Test
+    public void defersSendWhileSlotAwaitsOutOfOrderConfirm() throws Exception
+    {
+        HeldConfirms confirms = new HeldConfirms();
+        publisher = CommonMqPublisher.builder(EXCHANGE,
+                confirms.connectionFactory(broker), new SimpleMessageConverter())
+                .maxInFlight(4).build();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 1; i <= 4; i++)
+        {
+            futures.add(publisher.publish(ROUTING_KEY, "order-" + i));
+        }
+        awaitMessages(4);
+
+        //1未确认时2~4的确认释放了许可,但窗口大小为4,5的槽位仍被1占用
+        confirms.ack(3, false);
+        confirms.ack(2, false);
+        confirms.ack(4, false);
+        futures.get(3).get(5, TimeUnit.SECONDS);
+        for (int i = 5; i <= 7; i++)
+        {
+            futures.add(publisher.publish(ROUTING_KEY, "order-" + i));
+        }
+        Thread.sleep(100);
+        assertEquals(4, broker.getMessageCount(QUEUE));
+        assertFalse(futures.get(0).isDone());
+        assertFalse(futures.get(4).isDone());
+
+        confirms.ack(1, false);
+        futures.get(0).get(5, TimeUnit.SECONDS);
+        awaitMessages(7);
+        confirms.ack(7, true);
+
+        for (CompletableFuture<Void> future : futures)
+        {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, publisher.getInFlight());
+        assertEquals(Arrays.asList("order-1", "order-2", "order-3", "order-4",
+                "order-5", "order-6", "order-7"), confirms.published);
+    }
+
+    @Test
+    public void failsOnlyNackedMessageAmongOutOfOrderConfirms() throws Exception
+    {
+        HeldConfirms confirms = new HeldConfirms();
+        publisher = CommonMqPublisher.builder(EXCHANGE,
+                confirms.connectionFactory(broker), new SimpleMessageConverter())
+                .maxInFlight(2).build();
+        CompletableFuture<Void> first = publisher.publish(ROUTING_KEY, "order-1");
+        CompletableFuture<Void> second = publisher.publish(ROUTING_KEY, "order-2");
+        awaitMessages(2);
+
+        confirms.ack(2, false);
+        second.get(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> third = publisher.publish(ROUTING_KEY, "order-3");
+        confirms.nack(1, false);
+
+        assertFailed(first, PublishNackException.class);
+        awaitMessages(3);
+        confirms.ack(3, false);
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(0, publisher.getInFlight());
+    }
+
+    @Test
+    public void releasesPermitOnceWhenPublishThrows() throws Exception
+    {
+        HeldConfirms confirms = new HeldConfirms();
+        confirms.failing.add("broken");
+        ExchangeMetrics metrics = new CommonMqMetrics().exchange(EXCHANGE, null);
+        publisher = CommonMqPublisher.builder(EXCHANGE,
+                confirms.connectionFactory(broker), new SimpleMessageConverter())
+                .maxInFlight(4).metrics(metrics).build();
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertFailed(publisher.publish(ROUTING_KEY, "broken"), AmqpException.class);
+        }
+
+        //每次失败只释放一次许可,未确认数不会变为负数
+        assertEquals(0, publisher.getInFlight());
+        assertEquals(3, metrics.getFailed());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 1; i <= 5; i++)
+        {
+            futures.add(publisher.publish(ROUTING_KEY, "order-" + i));
+        }
+        //许可仍为maxInFlight,第5条因背压被拒绝
+        assertFailed(futures.get(4), AmqpException.class);
+        awaitMessages(4);
+        assertEquals(4, publisher.getInFlight());
+        confirms.ack(4, true);
+        for (CompletableFuture<Void> future : futures.subList(0, 4))
+        {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, publisher.getInFlight());
+    }
+
+    @Test
+    public void completesEverySendRacingClose() throws Exception
+    {
+        publisher = CommonMqPublisher.builder(EXCHANGE, broker,
+                new SimpleMessageConverter()).build();
+        List<CompletableFuture<Void>> futures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            Thread sender = new Thread(() ->
+            {
+                started.countDown();
+                for (int i = 0; i < 2000; i++)
+                {
+                    futures.add(publisher.publish(ROUTING_KEY, "order-" + i));
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        started.await();
+
+        publisher.close();
+        for (Thread sender : senders)
+        {
+            sender.join();
+        }
+
+        for (CompletableFuture<Void> future : futures)
+        {
+            try
+            {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            catch (ExecutionException e)
+            {
+                //close之后的发送与背压均以AmqpException失败
+                assertTrue(String.valueOf(e.getCause()),
+                        e.getCause() instanceof AmqpException);
+            }
+        }
+        assertEquals(0, publisher.getInFlight());
+    }
+
+    @Test
+    public void failsUnroutableMessageBeforeSending() throws Exception
+    {
+        List<Declarable> declarables = Arrays.asList(new DirectExchange(EXCHANGE),
+                new Queue(QUEUE), new Binding(QUEUE, Binding.DestinationType.QUEUE,
+                        EXCHANGE, ROUTING_KEY, null));
+        RoutingIndex routingIndex = RoutingIndex.build(declarables);
+        publisher = CommonMqPublisher.builder(EXCHANGE, broker,
+                new SimpleMessageConverter())
+                .routingIndex(() -> routingIndex).build();
+
+        publisher.publish(ROUTING_KEY, "routable").get(5, TimeUnit.SECONDS);
+        assertFailed(publisher.publish("order.unknown", "lost"),
+                UnroutableMessageException.class);
+
+        assertEquals(1, broker.getMessageCount(QUEUE));
+    }
+
+    @Test
+    public void failsSendAfterClose() throws Exception
+    {
+        publisher = CommonMqPublisher.builder(EXCHANGE, broker,
+                new SimpleMessageConverter()).build();
+        publisher.publish(ROUTING_KEY, "before close").get(5, TimeUnit.SECONDS);
+
+        publisher.close();
+
+        assertFailed(publisher.publish(ROUTING_KEY, "after close"),
+                AmqpException.class);
+        assertEquals(1, broker.getMessageCount(QUEUE));
+    }
+
+    private void awaitMessages(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && broker.getMessageCount(QUEUE) < count; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, broker.getMessageCount(QUEUE));
+    }
+
+    private static void assertFailed(CompletableFuture<Void> future,
+            Class<? extends Throwable> cause) throws InterruptedException
+    {
+        try
+        {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected " + cause.getSimpleName());
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(String.valueOf(e.getCause()), cause.isInstance(e.getCause()));
+        }
+        catch (TimeoutException e)
+        {
+            fail("future of " + cause.getSimpleName() + " not completed");
+        }
+    }
+
+    /**
+     * 截留broker发出的publisher confirm,由测试按任意顺序确认
+     */
+    private static final class HeldConfirms
+    {
+        private final List<ConfirmListener> listeners = new CopyOnWriteArrayList<>();
+
+        private final List<String> published = new CopyOnWriteArrayList<>();
+
+        /**
+         * 发送这些body时basicPublish抛出IOException
+         */
+        private final List<String> failing = new CopyOnWriteArrayList<>();
+
+        private ConnectionFactory connectionFactory(ConnectionFactory target)
+        {
+            return proxy(ConnectionFactory.class, (method, args) ->
+                    "createConnection".equals(method.getName())
+                            ? connection(target.createConnection())
+                            : invoke(target, method, args));
+        }
+
+        private Connection connection(Connection target)
+        {
+            return proxy(Connection.class, (method, args) ->
+                    "createChannel".equals(method.getName())
+                            ? channel((Channel) invoke(target, method, args))
+                            : invoke(target, method, args));
+        }
+
+        private Channel channel(Channel target)
+        {
+            return proxy(Channel.class, (method, args) ->
+            {
+                if ("addConfirmListener".equals(method.getName()) && 1 == args.length)
+                {
+                    listeners.add((ConfirmListener) args[0]);
+                    return null;
+                }
+                if ("basicPublish".equals(method.getName()))
+                {
+                    String body = new String((byte[]) args[args.length - 1],
+                            StandardCharsets.UTF_8);
+                    if (failing.contains(body))
+                    {
+                        throw new IOException("publish of " + body + " failed");
+                    }
+                    published.add(body);
+                }
+                return invoke(target, method, args);
+            });
+        }
+
+        private void ack(long deliveryTag, boolean multiple) throws IOException
+        {
+            for (ConfirmListener listener : listeners)
+            {
+                listener.handleAck(deliveryTag, multiple);
+            }
+        }
+
+        private void nack(long deliveryTag, boolean multiple) throws IOException
+        {
+            for (ConfirmListener listener : listeners)
+            {
+                listener.handleNack(deliveryTag, multiple);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, Forwarder forwarder)
+        {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(),
+                    new Class<?>[]{type},
+                    (proxy, method, args) -> forwarder.forward(method, args));
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args)
+                throws Throwable
+        {
+            try
+            {
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private interface Forwarder
+    {
+        Object forward(Method method, Object[] args) throws Throwable;
+    }
+}
@@ -0,0 +1,91 @@
+package com.frank.amqp.helper.refresh;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 未应用的拓扑变更与之后变更的合并
+ */
+public class TopologyDiffTest
+{
+    private static final List<Declarable> NONE = Collections.emptyList();
+
+    private static final List<String> NO_CONFLICTS = Collections.emptyList();
+
+    @Test
+    public void keepsEitherSideWhenOtherIsEmpty()
+    {
+        TopologyDiff diff = new TopologyDiff(Collections.singletonList(new Queue("q1")),
+                NONE, NO_CONFLICTS);
+
+        assertSame(diff, diff.merge(TopologyDiff.empty()));
+        assertSame(diff, TopologyDiff.empty().merge(diff));
+    }
+
+    @Test
+    public void cancelsAdditionRemovedLater()
+    {
+        Queue kept = new Queue("kept");
+        Queue dropped = new Queue("dropped");
+        Queue later = new Queue("later");
+        TopologyDiff pending = new TopologyDiff(Arrays.asList(kept, dropped), NONE,
+                NO_CONFLICTS);
+        TopologyDiff next = new TopologyDiff(Collections.singletonList(later),
+                Collections.singletonList(dropped), Collections.singletonList("x"));
+
+        TopologyDiff merged = pending.merge(next);
+
+        assertEquals(Arrays.asList(kept, later), merged.getAdded());
+        //dropped从未在broker上声明,也不需要解绑或删除
+        assertTrue(merged.getRemoved().isEmpty());
+        assertEquals(Collections.singletonList("x"), merged.getConflicts());
+    }
+
+    @Test
+    public void keepsBindingRemovedAndAddedBackUnchanged()
+    {
+        Binding removed = binding("rk");
+        Binding addedBack = binding("rk");
+        Binding replaced = binding("old");
+        Binding replacement = binding("new");
+        TopologyDiff pending = new TopologyDiff(NONE, Arrays.asList(removed, replaced),
+                NO_CONFLICTS);
+        TopologyDiff next = new TopologyDiff(Arrays.asList(addedBack, replacement),
+                NONE, NO_CONFLICTS);
+
+        TopologyDiff merged = pending.merge(next);
+
+        assertEquals(Arrays.asList(addedBack, replacement), merged.getAdded());
+        //声明属性相同的绑定关系不再解绑,否则会解除刚声明的绑定
+        assertEquals(Collections.singletonList(replaced), merged.getRemoved());
+    }
+
+    @Test
+    public void mergesIntoEmptyWhenChangesCancelOut()
+    {
+        DirectExchange exchange = new DirectExchange("exchange.direct.orders");
+        TopologyDiff pending = new TopologyDiff(Collections.singletonList(exchange),
+                NONE, NO_CONFLICTS);
+        TopologyDiff next = new TopologyDiff(NONE, Collections.singletonList(exchange),
+                NO_CONFLICTS);
+
+        assertTrue(pending.merge(next).isEmpty());
+    }
+
+    private static Binding binding(String routingKey)
+    {
+        return new Binding("q1", Binding.DestinationType.QUEUE,
+                "exchange.direct.orders", routingKey, null);
+    }
+}
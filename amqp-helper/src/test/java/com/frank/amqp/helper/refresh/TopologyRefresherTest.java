@@ -0,0 +1,140 @@
+package com.frank.amqp.helper.refresh;
+
+import com.frank.amqp.helper.CommonMqManager;
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.config.CommonMqProperties;
+import com.frank.amqp.helper.connection.ConnectionGroups;
+import com.frank.amqp.helper.inject.DynamicInjectAssistant;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TopologyRefresher在broker侧声明失败后的重试
+ */
+public class TopologyRefresherTest
+{
+    private final Map<String, String> config = new LinkedHashMap<>();
+
+    private final List<TopologyRefreshedEvent> events = new ArrayList<>();
+
+    private InProcessBroker broker;
+
+    private volatile boolean brokerDown;
+
+    /**
+     * broker预置的交换机数
+     */
+    private int builtInExchanges;
+
+    private TopologyRefresher refresher;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        broker = new InProcessBroker();
+        builtInExchanges = broker.getExchangeCount();
+        config.put("exchange.direct.orders", "orders:order.created");
+        CommonMqManager manager = new CommonMqManager(() -> new LinkedHashMap<>(config),
+                new DynamicInjectAssistant(new DefaultListableBeanFactory()),
+                new CommonMqProperties());
+        manager.afterPropertiesSet();
+        refresher = new TopologyRefresher(manager,
+                new ConnectionGroups(flaky(broker)), 0);
+        refresher.setApplicationEventPublisher(event ->
+                events.add((TopologyRefreshedEvent) event));
+    }
+
+    @Test
+    public void retriesFailedDeclareOnNextRefresh()
+    {
+        config.put("exchange.topic.events", "events:event.#");
+        brokerDown = true;
+        try
+        {
+            refresher.refresh();
+            fail("declare should fail while broker is down");
+        }
+        catch (AmqpException e)
+        {
+            //声明失败,bean已更新但broker上没有新增的交换机
+        }
+        assertEquals(builtInExchanges, broker.getExchangeCount());
+        assertTrue(events.isEmpty());
+
+        //配置未再变化,保留的变更在下次刷新时重试
+        brokerDown = false;
+        TopologyDiff diff = refresher.refresh();
+
+        assertEquals(3, diff.getAdded().size());
+        assertEquals(builtInExchanges + 1, broker.getExchangeCount());
+        assertEquals(1, broker.getQueueCount());
+        assertEquals(1, events.size());
+        assertEquals(3, events.get(0).getDiff().getAdded().size());
+        assertTrue(refresher.refresh().isEmpty());
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void dropsFailedAdditionRemovedBeforeRetry()
+    {
+        config.put("exchange.topic.events", "events:event.#");
+        brokerDown = true;
+        try
+        {
+            refresher.refresh();
+            fail("declare should fail while broker is down");
+        }
+        catch (AmqpException e)
+        {
+            //声明失败
+        }
+
+        //重试前配置又移除了新增的交换机,两次变更相互抵消
+        config.remove("exchange.topic.events");
+        brokerDown = false;
+
+        assertTrue(refresher.refresh().isEmpty());
+        assertEquals(builtInExchanges, broker.getExchangeCount());
+        assertTrue(events.isEmpty());
+    }
+
+    /**
+     * brokerDown为true时无法建立连接
+     */
+    private ConnectionFactory flaky(ConnectionFactory target)
+    {
+        return (ConnectionFactory) Proxy.newProxyInstance(
+                ConnectionFactory.class.getClassLoader(),
+                new Class<?>[]{ConnectionFactory.class}, (proxy, method, args) ->
+                {
+                    if ("createConnection".equals(method.getName()) && brokerDown)
+                    {
+                        throw new AmqpConnectException(new ConnectException("broker down"));
+                    }
+                    try
+                    {
+                        return method.invoke(target, args);
+                    }
+                    catch (InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,122 @@
+package com.frank.amqp.helper.routing;
+
+import com.frank.amqp.helper.parser.model.QueueDefine;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Partitions的分区选择稳定性与分区队列的展开命名
+ */
+public class PartitionsTest
+{
+    /**
+     * 分区结果与JVM、进程无关,发送方与消费方的版本不同也必须一致,取值一旦发布不能改变
+     */
+    @Test
+    public void pinsPartitionOfKnownKeys()
+    {
+        assertEquals(5, Partitions.partitionOf("order-1", 8));
+        assertEquals(6, Partitions.partitionOf("order-2", 8));
+        assertEquals(7, Partitions.partitionOf("order-42", 8));
+        assertEquals(5, Partitions.partitionOf("用户-7", 8));
+        assertEquals(1, Partitions.partitionOf("", 8));
+        assertEquals(309, Partitions.partitionOf("order-1", 1024));
+        assertEquals(857, Partitions.partitionOf("用户-7", 1024));
+    }
+
+    @Test
+    public void usesFirstPartitionForSingleOrNullKey()
+    {
+        assertEquals(0, Partitions.partitionOf(null, 8));
+        assertEquals(0, Partitions.partitionOf("order-1", 1));
+        assertEquals(0, Partitions.partitionOf("order-1", 0));
+    }
+
+    @Test
+    public void staysInRangeAndSpreadsKeys()
+    {
+        int partitions = 16;
+        int[] counts = new int[partitions];
+        for (int i = 0; i < 16000; i++)
+        {
+            int partition = Partitions.partitionOf("order-" + i, partitions);
+            assertTrue(partition >= 0 && partition < partitions);
+            counts[partition]++;
+        }
+        for (int count : counts)
+        {
+            assertTrue(Arrays.toString(counts), count > 800 && count < 1200);
+        }
+    }
+
+    /**
+     * 增加一个分区时,key要么保持原分区,要么迁移到新增的分区
+     */
+    @Test
+    public void movesKeysOnlyToAddedPartition()
+    {
+        int moved = 0;
+        int keys = 10000;
+        for (int i = 0; i < keys; i++)
+        {
+            String key = "order-" + i;
+            int before = Partitions.partitionOf(key, 7);
+            int after = Partitions.partitionOf(key, 8);
+            if (before != after)
+            {
+                assertEquals(key, 7, after);
+                moved++;
+            }
+        }
+        //约1/8的key迁移
+        assertTrue(String.valueOf(moved), moved > keys / 10 && moved < keys / 6);
+    }
+
+    @Test
+    public void expandsPartitionedQueue()
+    {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-queue-mode", "lazy");
+        QueueDefine queueDefine = QueueDefine.builder("queue.order")
+                .routingKeys(Arrays.asList("created", "paid"))
+                .arguments(arguments)
+                .partitions(3)
+                .build();
+
+        List<QueueDefine> expanded = queueDefine.expand();
+
+        assertEquals(3, expanded.size());
+        for (int i = 0; i < 3; i++)
+        {
+            QueueDefine partition = expanded.get(i);
+            assertEquals("queue.order." + i, partition.getName());
+            assertEquals(Partitions.queueName("queue.order", i), partition.getName());
+            assertEquals(Arrays.asList("created." + i, "paid." + i),
+                    partition.getRoutingKeys());
+            assertEquals(arguments, partition.getArguments());
+            assertEquals(1, partition.expand().size());
+        }
+    }
+
+    @Test
+    public void expandsUnpartitionedQueueToItself()
+    {
+        QueueDefine queueDefine = QueueDefine.builder("queue.order")
+                .routingKeys(Collections.singletonList("created"))
+                .build();
+
+        List<QueueDefine> expanded = queueDefine.expand();
+
+        assertEquals(1, expanded.size());
+        assertSame(queueDefine, expanded.get(0));
+    }
+}
@@ -0,0 +1,174 @@
+package com.frank.amqp.helper.routing;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.HeadersExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RoutingIndex的topic通配符与headers条件匹配
+ */
+public class RoutingIndexTest
+{
+    private static final String TOPIC = "exchange.topic.events";
+
+    private static final String HEADERS = "exchange.headers.docs";
+
+    private static final String DIRECT = "exchange.direct.orders";
+
+    private RoutingIndex index;
+
+    @Before
+    public void setUp()
+    {
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(new TopicExchange(TOPIC));
+        declarables.add(new HeadersExchange(HEADERS));
+        declarables.add(new DirectExchange(DIRECT));
+        declarables.add(new DirectExchange("exchange.direct.unbound"));
+        bindTopic(declarables, "exact", "order.created");
+        bindTopic(declarables, "single", "order.*");
+        bindTopic(declarables, "tail", "order.#");
+        bindTopic(declarables, "middle", "order.*.eu");
+        bindTopic(declarables, "anywhere", "#.paid");
+        bindTopic(declarables, "all", "#");
+        bindHeaders(declarables, "pdf-all", "all", "format", "pdf", "lang", "en");
+        bindHeaders(declarables, "pdf-any", "any", "format", "pdf", "lang", "en");
+        bindHeaders(declarables, "has-trace", "all", "trace", null);
+        bindHeaders(declarables, "everything", "all");
+        declarables.add(new Queue("q1"));
+        declarables.add(new Binding("q1", Binding.DestinationType.QUEUE,
+                DIRECT, "rk1", null));
+        index = RoutingIndex.build(declarables);
+    }
+
+    @Test
+    public void matchesTopicWildcards()
+    {
+        assertRoutes(index.route(TOPIC, "order.created"),
+                "exact", "single", "tail", "all");
+        //#可以匹配零个单词,*必须恰好匹配一个
+        assertRoutes(index.route(TOPIC, "order"), "tail", "all");
+        assertRoutes(index.route(TOPIC, "order.created.eu"),
+                "tail", "middle", "all");
+        assertRoutes(index.route(TOPIC, "order.x.y.eu"), "tail", "all");
+        assertRoutes(index.route(TOPIC, "paid"), "anywhere", "all");
+        assertRoutes(index.route(TOPIC, "invoice.eu.paid"), "anywhere", "all");
+        assertRoutes(index.route(TOPIC, "invoice.created"), "all");
+        //重复路由命中缓存,结果不变
+        assertRoutes(index.route(TOPIC, "order.created"),
+                "exact", "single", "tail", "all");
+    }
+
+    @Test
+    public void matchesEmptyRoutingKeyWithoutSingleWord()
+    {
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(new TopicExchange(TOPIC));
+        bindTopic(declarables, "one-word", "*");
+        bindTopic(declarables, "empty", "");
+        bindTopic(declarables, "all", "#");
+        RoutingIndex empty = RoutingIndex.build(declarables);
+
+        //空routingKey没有单词,*不能匹配
+        assertRoutes(empty.route(TOPIC, ""), "empty", "all");
+        assertRoutes(empty.route(TOPIC, "order"), "one-word", "all");
+        assertRoutes(empty.route(TOPIC, "order.created"), "all");
+    }
+
+    @Test
+    public void matchesHeaders()
+    {
+        assertRoutes(index.route(HEADERS, null,
+                headers("format", "pdf", "lang", "en")),
+                "pdf-all", "pdf-any", "everything");
+        assertRoutes(index.route(HEADERS, null,
+                headers("format", "pdf", "lang", "de")),
+                "pdf-any", "everything");
+        assertRoutes(index.route(HEADERS, null, headers("lang", "en")),
+                "pdf-any", "everything");
+        //值为null的条件只要求header存在
+        assertRoutes(index.route(HEADERS, null, headers("trace", "abc")),
+                "has-trace", "everything");
+        assertRoutes(index.route(HEADERS, null, null), "everything");
+    }
+
+    @Test
+    public void routesDirectAndDefaultExchange()
+    {
+        assertRoutes(index.route(DIRECT, "rk1"), "q1");
+        assertRoutes(index.route(DIRECT, "rk2"));
+        assertRoutes(index.route("", "q1"), "q1");
+        assertRoutes(index.route("", "missing"));
+        assertRoutes(index.route("exchange.direct.unbound", "rk1"));
+    }
+
+    @Test
+    public void checksRoutableOnlyForIndexedExchanges()
+    {
+        assertTrue(index.isRoutable(DIRECT, "rk1", null));
+        assertFalse(index.isRoutable(DIRECT, "rk2", null));
+        index.checkRoutable(DIRECT, "rk1", null);
+        //索引外的交换机无法判断,不做校验
+        assertFalse(index.containsExchange("exchange.direct.other"));
+        index.checkRoutable("exchange.direct.other", "rk2", null);
+    }
+
+    @Test(expected = UnroutableMessageException.class)
+    public void rejectsUnroutableMessage()
+    {
+        index.checkRoutable(DIRECT, "rk2", null);
+    }
+
+    private static void bindTopic(List<Declarable> declarables, String queue,
+            String pattern)
+    {
+        declarables.add(new Queue(queue));
+        declarables.add(new Binding(queue, Binding.DestinationType.QUEUE,
+                TOPIC, pattern, null));
+    }
+
+    private static void bindHeaders(List<Declarable> declarables,
+            String queue, String match, String... conditions)
+    {
+        Map<String, Object> arguments = headers(conditions);
+        arguments.put("x-match", match);
+        declarables.add(new Queue(queue));
+        declarables.add(new Binding(queue, Binding.DestinationType.QUEUE,
+                HEADERS, "", arguments));
+    }
+
+    private static Map<String, Object> headers(String... keyValues)
+    {
+        Map<String, Object> headers = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+        {
+            headers.put(keyValues[i], keyValues[i + 1]);
+        }
+        return headers;
+    }
+
+    private static void assertRoutes(List<String> queues, String... expected)
+    {
+        List<String> actual = new ArrayList<>(queues);
+        List<String> expectedList = new ArrayList<>(Arrays.asList(expected));
+        Collections.sort(actual);
+        Collections.sort(expectedList);
+        assertEquals(expectedList, actual);
+    }
+}
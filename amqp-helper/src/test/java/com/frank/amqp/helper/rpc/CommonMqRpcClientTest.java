@@ -0,0 +1,171 @@
+package com.frank.amqp.helper.rpc;
+
+import com.frank.amqp.helper.broker.InProcessBroker;
+import com.frank.amqp.helper.codec.MessageCodecRegistry;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CommonMqRpcClient在应答channel关闭时只让该channel上发出的调用失败
+ */
+public class CommonMqRpcClientTest
+{
+    private static final String EXCHANGE = "calc";
+
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+
+    private final Map<Channel, ShutdownListener> shutdownListeners = new ConcurrentHashMap<>();
+
+    private final Map<Channel, Boolean> killed = new ConcurrentHashMap<>();
+
+    private CommonMqRpcClient client;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        InProcessBroker broker = new InProcessBroker();
+        Channel admin = broker.createConnection().createChannel(false);
+        admin.exchangeDeclare(EXCHANGE, "direct");
+        admin.queueDeclare("calc.add", true, false, false, null);
+        admin.queueBind("calc.add", EXCHANGE, "add");
+        client = new CommonMqRpcClient(EXCHANGE, Collections.emptySet(),
+                tracking(broker), new MessageCodecRegistry(new SimpleMessageConverter()),
+                null, 60_000, 16, 60_000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        client.close();
+    }
+
+    @Test
+    public void failsOnlyCallsOfClosedChannel() throws Exception
+    {
+        CompletableFuture<Message> first = client.sendAndReceive("add", request());
+        assertEquals(1, channels.size());
+        Channel firstChannel = channels.get(0);
+
+        //channel已断开但关闭通知尚未到达,下一次调用打开新的channel
+        killed.put(firstChannel, Boolean.TRUE);
+        CompletableFuture<Message> second = client.sendAndReceive("add", request());
+        assertEquals(2, channels.size());
+        assertEquals(2, client.getInFlight());
+
+        shutdownListeners.get(firstChannel).shutdownCompleted(
+                new ShutdownSignalException(false, false, null, firstChannel));
+
+        assertTrue(first.isCompletedExceptionally());
+        try
+        {
+            first.get(0, TimeUnit.MILLISECONDS);
+            fail("call of closed channel should fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof AmqpException);
+        }
+        assertFalse(second.isDone());
+        assertEquals(1, client.getInFlight());
+    }
+
+    private static Message request()
+    {
+        return new Message("1+1".getBytes(), new MessageProperties());
+    }
+
+    /**
+     * 记录客户端打开的channel及其关闭监听,killed中的channel视为已断开
+     */
+    private ConnectionFactory tracking(ConnectionFactory target)
+    {
+        return (ConnectionFactory) Proxy.newProxyInstance(
+                ConnectionFactory.class.getClassLoader(),
+                new Class<?>[]{ConnectionFactory.class}, (proxy, method, args) ->
+                {
+                    Object result = invoke(target, method, args);
+                    return "createConnection".equals(method.getName())
+                            ? tracking((Connection) result)
+                            : result;
+                });
+    }
+
+    private Connection tracking(Connection target)
+    {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) ->
+                {
+                    Object result = invoke(target, method, args);
+                    if (!"createChannel".equals(method.getName()))
+                    {
+                        return result;
+                    }
+                    Channel channel = tracking((Channel) result);
+                    channels.add(channel);
+                    return channel;
+                });
+    }
+
+    private Channel tracking(Channel target)
+    {
+        return (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(),
+                new Class<?>[]{Channel.class}, (proxy, method, args) ->
+                {
+                    switch (method.getName())
+                    {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "addShutdownListener":
+                            shutdownListeners.put((Channel) proxy, (ShutdownListener) args[0]);
+                            return null;
+                        case "isOpen":
+                            return !killed.containsKey(proxy) && target.isOpen();
+                        default:
+                            return invoke(target, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.frank.amqp.helper.rpc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CorrelationTable的探测、id校验与并发删除
+ */
+public class CorrelationTableTest
+{
+    @Test
+    public void roundsCapacityUpToPowerOfTwo()
+    {
+        assertEquals(2, new CorrelationTable<String>(1).capacity());
+        assertEquals(4, new CorrelationTable<String>(4).capacity());
+        assertEquals(8, new CorrelationTable<String>(5).capacity());
+    }
+
+    @Test
+    public void returnsMinusOneWhenProbeExhausted()
+    {
+        CorrelationTable<String> table = new CorrelationTable<>(4);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            long id = table.register("call-" + i, Long.MAX_VALUE);
+            assertTrue(id > 0);
+            ids.add(id);
+        }
+
+        assertEquals(-1L, table.register("overflow", Long.MAX_VALUE));
+        assertEquals(4, table.size());
+
+        //释放一个槽位后继续探测可以找到它
+        assertEquals("call-1", table.remove(ids.get(1)));
+        long id = table.register("retry", Long.MAX_VALUE);
+        assertTrue(id > 0);
+        assertEquals("retry", table.remove(id));
+    }
+
+    @Test
+    public void rejectsLateReplyOnReusedSlot()
+    {
+        CorrelationTable<String> table = new CorrelationTable<>(2);
+        long first = table.register("first", Long.MAX_VALUE);
+        assertEquals("first", table.remove(first));
+
+        //下一个落在同一槽位的id复用该槽位
+        long second = table.register("second", Long.MAX_VALUE);
+        long reused = table.register("reused", Long.MAX_VALUE);
+        assertEquals(first & 1, reused & 1);
+
+        //first的迟到应答不能删除复用槽位上的新调用
+        assertNull(table.remove(first));
+        assertEquals(2, table.size());
+        assertEquals("reused", table.remove(reused));
+        assertEquals("second", table.remove(second));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void expiresOnlyPastDeadline()
+    {
+        CorrelationTable<String> table = new CorrelationTable<>(8);
+        long now = System.nanoTime();
+        table.register("expired", now - 1);
+        table.register("due", now);
+        long live = table.register("live", now + 1_000_000_000L);
+        List<String> expired = new ArrayList<>();
+
+        table.expire(now, expired::add);
+
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains("expired"));
+        assertTrue(expired.contains("due"));
+        assertEquals(1, table.size());
+        assertEquals("live", table.remove(live));
+    }
+
+    @Test
+    public void removesMatching()
+    {
+        CorrelationTable<String> table = new CorrelationTable<>(8);
+        long kept = table.register("b-1", Long.MAX_VALUE);
+        table.register("a-1", Long.MAX_VALUE);
+        table.register("a-2", Long.MAX_VALUE);
+        List<String> removed = new ArrayList<>();
+
+        table.removeIf(value -> value.startsWith("a-"), removed::add);
+
+        assertEquals(2, removed.size());
+        assertEquals(1, table.size());
+        assertEquals("b-1", table.remove(kept));
+    }
+
+    @Test
+    public void expireRacingRemoveDeliversEachValueOnce() throws Exception
+    {
+        final int count = 256;
+        for (int round = 0; round < 200; round++)
+        {
+            final CorrelationTable<Integer> table = new CorrelationTable<>(count);
+            final AtomicIntegerArray delivered = new AtomicIntegerArray(count);
+            final long[] ids = new long[count];
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++)
+            {
+                //全部已超时,扫描线程与应答线程争抢同一批登记
+                ids[i] = table.register(i, now);
+            }
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread replier = new Thread(() -> {
+                await(start);
+                for (int i = count - 1; i >= 0; i--)
+                {
+                    Integer value = table.remove(ids[i]);
+                    if (null != value)
+                    {
+                        delivered.incrementAndGet(value);
+                    }
+                }
+            });
+            Thread sweeper = new Thread(() -> {
+                await(start);
+                table.expire(now, delivered::incrementAndGet);
+            });
+            replier.start();
+            sweeper.start();
+            start.countDown();
+            replier.join();
+            sweeper.join();
+
+            assertEquals(0, table.size());
+            for (int i = 0; i < count; i++)
+            {
+                assertEquals(1, delivered.get(i));
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
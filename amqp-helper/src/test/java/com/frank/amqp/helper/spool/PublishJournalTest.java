@@ -0,0 +1,214 @@
+package com.frank.amqp.helper.spool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * PublishJournal跨分段的读取、确认、回退与重启恢复
+ */
+public class PublishJournalTest
+{
+    private static final String ROUTING_KEY = "rk";
+
+    private static final byte[] PROPERTIES = {1, 2};
+
+    /**
+     * 每条记录4字节长度 + 2字节routingKey长度 + "rk" + 4字节属性长度 + 2字节属性 + 5字节body
+     */
+    private static final int RECORD_BYTES = 4 + 2 + 2 + 4 + 2 + 5;
+
+    private static final int RECORDS_PER_SEGMENT = 12;
+
+    /**
+     * 恰好容纳RECORDS_PER_SEGMENT条记录与结束标记
+     */
+    private static final int SEGMENT_BYTES = PublishJournal.HEADER_BYTES
+            + RECORDS_PER_SEGMENT * RECORD_BYTES + 4;
+
+    private Path directory;
+
+    private PublishJournal journal;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("publish-journal");
+        journal = new PublishJournal(directory, SEGMENT_BYTES, 8);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void readsRecordsInOrderAcrossSegmentRolls()
+    {
+        append(0, 30);
+
+        List<JournalRecord> records = readAll();
+
+        assertEquals(30, records.size());
+        for (int i = 0; i < records.size(); i++)
+        {
+            assertRecord(i, records.get(i));
+        }
+        assertEquals(0, records.get(RECORDS_PER_SEGMENT - 1).getSequence());
+        assertEquals(1, records.get(RECORDS_PER_SEGMENT).getSequence());
+        assertEquals(2, records.get(29).getSequence());
+        assertEquals(30, journal.getPending());
+        //读完后追加的记录继续可读
+        append(30, 1);
+        assertRecord(30, journal.next());
+        assertNull(journal.next());
+    }
+
+    @Test
+    public void rewindsToFirstUnconfirmedRecordAcrossSegments()
+    {
+        append(0, 30);
+        List<JournalRecord> records = readAll();
+
+        journal.confirm(records.get(4), 5);
+        journal.rewind();
+
+        assertRecord(5, journal.next());
+        assertEquals(25, journal.getPending());
+
+        //确认落在第二个分段,第一个分段归还复用
+        readAll();
+        journal.confirm(records.get(14), 10);
+        journal.rewind();
+
+        List<JournalRecord> reread = readAll();
+        assertEquals(15, reread.size());
+        for (int i = 0; i < reread.size(); i++)
+        {
+            assertRecord(15 + i, reread.get(i));
+        }
+        assertEquals(15, journal.getPending());
+    }
+
+    @Test
+    public void recoversUnconfirmedRecordsAfterReopen() throws IOException
+    {
+        append(0, 30);
+        List<JournalRecord> records = readAll();
+        journal.confirm(records.get(16), 17);
+        journal.close();
+
+        journal = new PublishJournal(directory, SEGMENT_BYTES, 8);
+
+        assertEquals(13, journal.getPending());
+        List<JournalRecord> recovered = readAll();
+        assertEquals(13, recovered.size());
+        for (int i = 0; i < recovered.size(); i++)
+        {
+            assertRecord(17 + i, recovered.get(i));
+        }
+        //恢复后继续在原有序号之后追加
+        append(30, RECORDS_PER_SEGMENT);
+        List<JournalRecord> appended = readAll();
+        assertEquals(RECORDS_PER_SEGMENT, appended.size());
+        assertRecord(30, appended.get(0));
+        assertEquals(3, appended.get(appended.size() - 1).getSequence());
+        assertEquals(13 + RECORDS_PER_SEGMENT, journal.getPending());
+    }
+
+    @Test
+    public void recoversNothingWhenAllConfirmed() throws IOException
+    {
+        append(0, 20);
+        List<JournalRecord> records = readAll();
+        journal.confirm(records.get(19), 20);
+        journal.close();
+
+        journal = new PublishJournal(directory, SEGMENT_BYTES, 8);
+
+        assertEquals(0, journal.getPending());
+        assertNull(journal.next());
+    }
+
+    @Test
+    public void rejectsAppendWhenAllSegmentsUnconfirmed() throws IOException
+    {
+        journal.close();
+        journal = new PublishJournal(directory, SEGMENT_BYTES, 2);
+        append(0, 2 * RECORDS_PER_SEGMENT);
+        try
+        {
+            append(2 * RECORDS_PER_SEGMENT, 1);
+            fail("journal should be full");
+        }
+        catch (SpoolFullException e)
+        {
+            //全部分段均未确认
+        }
+
+        //确认后第一个分段归还复用
+        List<JournalRecord> records = readAll();
+        journal.confirm(records.get(records.size() - 1), records.size());
+        append(2 * RECORDS_PER_SEGMENT, 1);
+
+        JournalRecord record = journal.next();
+        assertRecord(2 * RECORDS_PER_SEGMENT, record);
+        assertEquals(2, record.getSequence());
+        assertEquals(1, journal.getPending());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRecordLargerThanSegment()
+    {
+        journal.append(ROUTING_KEY, PROPERTIES, new byte[SEGMENT_BYTES]);
+    }
+
+    private void append(int from, int count)
+    {
+        for (int i = from; i < from + count; i++)
+        {
+            journal.append(ROUTING_KEY, PROPERTIES, body(i));
+        }
+    }
+
+    private List<JournalRecord> readAll()
+    {
+        List<JournalRecord> records = new ArrayList<>();
+        for (JournalRecord record = journal.next(); null != record; record = journal.next())
+        {
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static byte[] body(int index)
+    {
+        return String.format("m%04d", index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertRecord(int index, JournalRecord record)
+    {
+        assertEquals(ROUTING_KEY, record.getRoutingKey());
+        assertArrayEquals(PROPERTIES, record.getProperties());
+        assertArrayEquals("record " + index, body(index), record.getBody());
+    }
+}